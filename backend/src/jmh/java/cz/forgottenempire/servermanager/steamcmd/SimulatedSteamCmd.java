@@ -0,0 +1,115 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ProcessFactory;
+import cz.forgottenempire.servermanager.steamauth.SteamAuth;
+import cz.forgottenempire.servermanager.steamauth.SteamAuthService;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoChangedEvent;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoRepository;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdLogWriter;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdOutputLineParser;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdOutputProcessor;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Wires the SteamCMD pipeline (executor, output processing, SteamCMD log) to the SteamCMD simulator from
+ * 'tools/steamcmd-simulator' for benchmarks which drive the pipeline without Steam.
+ */
+public class SimulatedSteamCmd {
+
+    private static final String SIMULATOR_PATH_PROPERTY = "steamcmd.simulator";
+    private static final Path SIMULATOR_RELATIVE_PATH = Path.of("tools", "steamcmd-simulator", "steamcmd");
+
+    private SimulatedSteamCmd() {
+    }
+
+    /**
+     * Writes a launcher for the simulator with the given configuration into the directory.
+     *
+     * @return path of the launcher, to be used as 'steamcmd.path'
+     */
+    public static Path createLauncher(Path directory, Properties simulatorConfig) throws IOException {
+        Path configFile = directory.resolve("simulator.properties");
+        try (BufferedWriter writer = Files.newBufferedWriter(configFile)) {
+            simulatorConfig.store(writer, "SteamCMD simulator configuration");
+        }
+
+        Path launcher = directory.resolve("steamcmd");
+        Files.writeString(launcher, "#!/bin/sh\n"
+                + "STEAMCMD_SIMULATOR_CONFIG='" + configFile.toAbsolutePath() + "' exec '"
+                + findSimulator().toAbsolutePath() + "' \"$@\"\n");
+        if (!launcher.toFile().setExecutable(true)) {
+            throw new IOException("Could not make " + launcher + " executable");
+        }
+        return launcher;
+    }
+
+    /**
+     * Registers the SteamCMD beans. The context has to provide the 'steamcmd.path' and 'directory.*' properties and
+     * a MeterRegistry.
+     */
+    public static void registerBeans(GenericApplicationContext context) {
+        context.registerBean(PathsFactory.class);
+        context.registerBean(ProcessFactory.class);
+        context.registerBean(SteamAuthService.class, SimulatedSteamCmd::createSteamAuthService);
+        context.registerBean(SteamCmdItemInfoRepository.class);
+        context.registerBean(SteamCmdLogWriter.class);
+        context.registerBean(SteamCmdOutputLineParser.class);
+        context.registerBean(SteamCmdOutputProcessor.class);
+        context.registerBean(SteamCmdExecutor.class);
+        context.registerBean(SteamCmdDiskSpaceGuard.class);
+        context.registerBean(SteamCmdJobStore.class, SimulatedSteamCmd::createJobStore);
+        context.registerBean(SteamCmdService.class);
+    }
+
+    private static SteamAuthService createSteamAuthService() {
+        SteamAuth steamAuth = new SteamAuth(1L, "simulator", "simulator", null);
+        return new SteamAuthService(null) {
+            @Override
+            public SteamAuth getAuthAccount() {
+                return steamAuth;
+            }
+        };
+    }
+
+    private static SteamCmdJobStore createJobStore() {
+        // benchmarks run without a database, jobs are not stored
+        return new SteamCmdJobStore(null) {
+            @Override
+            public long save(SteamCmdJob job) {
+                return 0;
+            }
+
+            @Override
+            public void delete(long id) {
+            }
+
+            @Override
+            public void onItemInfoChanged(SteamCmdItemInfoChangedEvent event) {
+            }
+        };
+    }
+
+    private static Path findSimulator() {
+        String configuredPath = System.getProperty(SIMULATOR_PATH_PROPERTY);
+        if (configuredPath != null) {
+            return Path.of(configuredPath);
+        }
+        // benchmarks run either from the root project or from the backend directory
+        Path simulator = SIMULATOR_RELATIVE_PATH;
+        if (!Files.isExecutable(simulator)) {
+            simulator = Path.of("..").resolve(SIMULATOR_RELATIVE_PATH);
+        }
+        if (!Files.isExecutable(simulator)) {
+            throw new IllegalStateException("SteamCMD simulator not found, set its path as system property '"
+                    + SIMULATOR_PATH_PROPERTY + "'");
+        }
+        return simulator;
+    }
+}
@@ -0,0 +1,107 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdOutputLineParser;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.lines.SteamCmdOutputLine;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.lines.SteamCmdOutputLineFactory;
+import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Compares the single-pass SteamCMD output parser with the previous regex based implementation on SteamCMD
+ * transcripts. Every invocation parses the whole transcript. Run with 'gradlew :backend:jmh'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SteamCmdOutputParsingBenchmark {
+
+    @Param({"workshop-download.log", "server-update.log"})
+    private String transcript;
+
+    private List<String> lines;
+    private SteamCmdJob job;
+    private final SteamCmdOutputLineParser lineParser = new SteamCmdOutputLineParser();
+    private final SteamCmdOutputLineFactory lineFactory = new SteamCmdOutputLineFactory();
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream transcriptStream = getClass().getResourceAsStream("/steamcmd/" + transcript);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(transcriptStream, StandardCharsets.UTF_8))) {
+            lines = reader.lines().toList();
+        }
+
+        SteamCmdParameters parameters = new SteamCmdParameters.Builder().build();
+        if (transcript.startsWith("server")) {
+            job = new SteamCmdJob(ServerType.ARMA3, parameters, Set.of(new SteamCmdInstallTarget(
+                    Path.of("/servers/ARMA3"), Constants.SERVER_IDS.get(ServerType.ARMA3))));
+        } else {
+            WorkshopMod mod = new WorkshopMod(450814997L);
+            mod.setServerType(ServerType.ARMA3);
+            job = new SteamCmdJob(List.of(mod), parameters, Set.of(new SteamCmdInstallTarget(
+                    Path.of("/mods"), Constants.GAME_IDS.get(ServerType.ARMA3))));
+        }
+    }
+
+    @Benchmark
+    public void singlePassParser(Blackhole blackhole) {
+        Consumer<SteamCmdItemInfo> consumer = blackhole::consume;
+        for (String line : lines) {
+            lineParser.parse(line, job, consumer);
+        }
+    }
+
+    @Benchmark
+    public void regexFactory(Blackhole blackhole) {
+        for (String line : lines) {
+            for (String normalizedLine : normalizeLine(line)) {
+                SteamCmdOutputLine lineObject = lineFactory.createSteamCmdOutputLine(normalizedLine, job);
+                if (lineObject != null) {
+                    SteamCmdItemInfo itemInfo = lineObject.parseInfo();
+                    blackhole.consume(itemInfo);
+                }
+            }
+        }
+    }
+
+    // the line normalization which was done for every line before it was passed to the factory
+    private static String[] normalizeLine(String line) {
+        String normalizedLine = line.toLowerCase().trim();
+        String[] lines;
+        boolean isTwoLinesWithoutLineBreak = !normalizedLine.startsWith("downloading item") && normalizedLine.contains("downloading item");
+        if (isTwoLinesWithoutLineBreak) {
+            lines = normalizedLine.split("downloading item");
+            lines[1] = "downloading item" + lines[1];
+        } else {
+            lines = new String[]{normalizedLine};
+        }
+        return lines;
+    }
+}
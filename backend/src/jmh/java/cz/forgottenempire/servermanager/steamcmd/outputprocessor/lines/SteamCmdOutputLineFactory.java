@@ -2,11 +2,12 @@ package cz.forgottenempire.servermanager.steamcmd.outputprocessor.lines;
 
 import cz.forgottenempire.servermanager.common.Constants;
 import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
-import org.springframework.stereotype.Component;
 
 import java.util.regex.Pattern;
 
-@Component
+/**
+ * The regex based line dispatcher used before {@code SteamCmdOutputLineParser}, kept as the benchmark baseline.
+ */
 public class SteamCmdOutputLineFactory {
 
     private static final String UPDATE_STATE_REGEX_PREFIX = "update state \\(0x\\d+\\) ";
@@ -0,0 +1,111 @@
+package cz.forgottenempire.servermanager.util;
+
+import org.apache.commons.io.FileExistsException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass lowercase conversion of a mod directory with the previous implementation, which listed
+ * every subtree again for each of its directories and moved every entry. The synthetic mod has 100 000 files in
+ * 1 000 directories; a part of the names is mixed case, as after a typical mod update. The tree is created again
+ * before every iteration. Run with 'gradlew :backend:jmh -PjmhIncludes=DirectoryToLowercaseBenchmark'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirectoryToLowercaseBenchmark {
+
+    private static final int TOP_LEVEL_DIRECTORIES = 10;
+    private static final int DIRECTORIES_PER_TOP_LEVEL_DIRECTORY = 100;
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    @Param({"legacy", "single-pass", "parallel"})
+    private String implementation;
+
+    // share of the entries with mixed case names
+    @Param({"0.1", "1"})
+    private double mixedCaseRate;
+
+    private Path modDirectory;
+    private ExecutorService executor;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        modDirectory = Files.createTempDirectory("lowercase-benchmark");
+        executor = Executors.newFixedThreadPool(4);
+        int entry = 0;
+        for (int i = 0; i < TOP_LEVEL_DIRECTORIES; i++) {
+            Path topLevelDirectory = modDirectory.resolve(name("Addons_" + i, entry++));
+            for (int j = 0; j < DIRECTORIES_PER_TOP_LEVEL_DIRECTORY; j++) {
+                Path directory = Files.createDirectories(topLevelDirectory.resolve(name("Data_" + j, entry++)));
+                for (int k = 0; k < FILES_PER_DIRECTORY; k++) {
+                    Files.createFile(directory.resolve(name("Texture_" + k + ".PAA", entry++)));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void directoryToLowercase() throws IOException {
+        switch (implementation) {
+            case "legacy" -> legacyDirectoryToLowercase(modDirectory.toFile());
+            case "single-pass" -> FileSystemUtils.directoryToLowercase(modDirectory.toFile());
+            case "parallel" -> FileSystemUtils.directoryToLowercase(modDirectory, executor);
+            default -> throw new IllegalArgumentException(implementation);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        FileUtils.deleteDirectory(modDirectory.toFile());
+    }
+
+    // spreads the mixed case names evenly over the tree
+    private String name(String mixedCaseName, int entry) {
+        boolean mixedCase = Math.floor((entry + 1) * mixedCaseRate) > Math.floor(entry * mixedCaseRate);
+        return mixedCase ? mixedCaseName : mixedCaseName.toLowerCase();
+    }
+
+    private static void legacyDirectoryToLowercase(File directory) throws IOException {
+        Collection<File> files = FileUtils.listFilesAndDirs(directory, TrueFileFilter.TRUE, TrueFileFilter.TRUE);
+        files.remove(directory);
+        for (File file : files) {
+            File newFile = new File(file.getParent(), file.getName().toLowerCase());
+            try {
+                if (file.isDirectory()) {
+                    legacyDirectoryToLowercase(file);
+                    FileUtils.moveDirectory(file, newFile);
+                } else if (file.isFile()) {
+                    FileUtils.moveFile(file, newFile);
+                }
+            } catch (FileExistsException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import cz.forgottenempire.servermanager.steamcmd.SimulatedSteamCmd;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobPriority;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installs hundreds of mods end to end (SteamCMD queue, SteamCMD run with output processing, installation of
+ * the downloaded files) against the SteamCMD simulator from 'tools/steamcmd-simulator'. Every invocation installs
+ * all the mods as a background update, the time per stage is printed after every iteration. The database is left
+ * out, saving the mod only marks it as done.
+ * <p>
+ * Run with 'gradlew :backend:jmh -PjmhIncludes=WorkshopInstallationPipelineBenchmark'.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class WorkshopInstallationPipelineBenchmark {
+
+    private static final long FIRST_MOD_ID = 3_000_000_000L;
+    private static final long MOD_SIZE = 10L << 20;
+
+    @Param({"200"})
+    private int modCount;
+
+    @Param({"1", "4"})
+    private int workers;
+
+    @Param({"0", "0.02"})
+    private double timeoutRate;
+
+    private Path workDirectory;
+    private AnnotationConfigApplicationContext context;
+    private MeterRegistry meterRegistry;
+    private WorkshopInstallerService installerService;
+    private List<WorkshopMod> mods;
+    private Map<Long, Long> submittedAtNanos;
+    private long[] endToEndNanos;
+    private CountDownLatch installedMods;
+    private long startedAtNanos;
+    private long finishedAtNanos;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("steamcmd-pipeline-benchmark");
+        Path serversDirectory = Files.createDirectories(workDirectory.resolve("servers"));
+        Files.createDirectories(serversDirectory.resolve(ServerType.ARMA3.name()));
+
+        Properties simulatorConfig = new Properties();
+        simulatorConfig.setProperty("startup-delay-ms", "1000");
+        simulatorConfig.setProperty("login-delay-ms", "500");
+        simulatorConfig.setProperty("item-size-bytes", String.valueOf(MOD_SIZE));
+        simulatorConfig.setProperty("bytes-per-second", String.valueOf(100L << 20));
+        simulatorConfig.setProperty("timeout-rate", String.valueOf(timeoutRate));
+        Path steamCmdPath = SimulatedSteamCmd.createLauncher(workDirectory, simulatorConfig);
+
+        meterRegistry = new SimpleMeterRegistry();
+        meterRegistry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                // the percentile and max cover the whole iteration instead of the last couple of minutes
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.95)
+                        .expiry(Duration.ofDays(1))
+                        .bufferLength(1)
+                        .build()
+                        .merge(config);
+            }
+        });
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "steamcmd.path", steamCmdPath.toString(),
+                "steamcmd.workers", workers,
+                "directory.servers", serversDirectory.toString(),
+                "directory.mods", workDirectory.resolve("mods").toString(),
+                "directory.logs", workDirectory.resolve("logs").toString()
+        )));
+        context.registerBean(MeterRegistry.class, () -> meterRegistry);
+        SimulatedSteamCmd.registerBeans(context);
+        context.registerBean(WorkshopModsService.class, RecordingModsService::new);
+        context.registerBean(ServerInstallationService.class, Arma3ServerInstallationService::new);
+        context.registerBean(ModFileManifestStore.class);
+        context.registerBean(ModFileHasher.class);
+        context.registerBean(ModDeduplicationService.class);
+        context.registerBean(BiKeyReconciliationService.class);
+        context.registerBean(ModPostInstallPipeline.class);
+        context.registerBean(WorkshopInstallerService.class);
+        context.refresh();
+        installerService = context.getBean(WorkshopInstallerService.class);
+
+        mods = new ArrayList<>(modCount);
+        for (long modId = FIRST_MOD_ID; modId < FIRST_MOD_ID + modCount; modId++) {
+            WorkshopMod mod = new WorkshopMod(modId);
+            mod.setName("Simulated mod " + modId);
+            mod.setServerType(ServerType.ARMA3);
+            // known size, so the disk space check doesn't assume the default size of a new mod
+            mod.setFileSize(MOD_SIZE);
+            mods.add(mod);
+        }
+        submittedAtNanos = new ConcurrentHashMap<>();
+        endToEndNanos = new long[modCount];
+        installedMods = new CountDownLatch(modCount);
+    }
+
+    @Benchmark
+    public void installMods() throws InterruptedException {
+        startedAtNanos = System.nanoTime();
+        mods.forEach(mod -> submittedAtNanos.put(mod.getId(), startedAtNanos));
+        installerService.installOrUpdateMods(mods, SteamCmdJobPriority.BACKGROUND);
+        installedMods.await();
+        finishedAtNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        printReport();
+        context.close();
+        FileUtils.deleteDirectory(workDirectory.toFile());
+    }
+
+    private void printReport() {
+        double seconds = (finishedAtNanos - startedAtNanos) / 1e9;
+        long failedMods = mods.stream().filter(mod -> mod.getErrorStatus() != null).count();
+        System.out.printf("%n%d mods in %.2f s (%.1f mods/s), %d failed%n",
+                modCount, seconds, modCount / seconds, failedMods);
+        System.out.printf("%-24s %8s %10s %10s %10s%n", "stage", "count", "mean [ms]", "p95 [ms]", "max [ms]");
+        printStage("queue wait (per job)", meterRegistry.get("steamcmd.queue.wait").timers());
+        printStage("steamcmd (per job)", meterRegistry.get("steamcmd.job.duration").timers());
+        printStage("installation (per mod)", meterRegistry.get("workshop.installation.duration").timers());
+        for (ModPostInstallPipeline.Stage stage : ModPostInstallPipeline.Stage.values()) {
+            String stageName = stage.name().toLowerCase(Locale.ROOT);
+            printStage("  " + stageName, meterRegistry.get("workshop.installation.stage").tag("stage", stageName)
+                    .timers());
+        }
+
+        long[] sortedEndToEndNanos = endToEndNanos.clone();
+        Arrays.sort(sortedEndToEndNanos);
+        System.out.printf("%-24s %8d %10.1f %10.1f %10.1f%n", "end to end (per mod)", modCount,
+                Arrays.stream(sortedEndToEndNanos).average().orElse(0) / 1e6,
+                sortedEndToEndNanos[(int) Math.ceil(modCount * 0.95) - 1] / 1e6,
+                sortedEndToEndNanos[modCount - 1] / 1e6);
+    }
+
+    /**
+     * Percentiles of separate timers can't be combined, the highest p95 of the timers with any records is printed.
+     * All the mods are installed with the same priority, so only one of the per-priority timers has records.
+     */
+    private static void printStage(String stage, Collection<Timer> timers) {
+        long count = timers.stream().mapToLong(Timer::count).sum();
+        double totalMillis = timers.stream().mapToDouble(timer -> timer.totalTime(TimeUnit.MILLISECONDS)).sum();
+        double p95Millis = timers.stream()
+                .filter(timer -> timer.count() > 0)
+                .flatMap(timer -> Arrays.stream(timer.takeSnapshot().percentileValues()))
+                .mapToDouble(percentile -> percentile.value(TimeUnit.MILLISECONDS))
+                .max().orElse(0);
+        double maxMillis = timers.stream().mapToDouble(timer -> timer.max(TimeUnit.MILLISECONDS)).max().orElse(0);
+        System.out.printf("%-24s %8d %10.1f %10.1f %10.1f%n",
+                stage, count, count > 0 ? totalMillis / count : 0, p95Millis, maxMillis);
+    }
+
+    private class RecordingModsService extends WorkshopModsService {
+
+        private RecordingModsService() {
+            super(null, null, null);
+        }
+
+        @Override
+        public Collection<WorkshopMod> getAllMods() {
+            // BiKeys of the other mods are applied together with the installed mod's
+            return mods;
+        }
+
+        @Override
+        public List<WorkshopMod> saveAllMods(List<WorkshopMod> savedMods) {
+            // the installation of a mod ends by saving it
+            savedMods.forEach(mod -> {
+                int index = (int) (mod.getId() - FIRST_MOD_ID);
+                endToEndNanos[index] = System.nanoTime() - submittedAtNanos.get(mod.getId());
+                installedMods.countDown();
+            });
+            return savedMods;
+        }
+    }
+
+    private static class Arma3ServerInstallationService extends ServerInstallationService {
+
+        private Arma3ServerInstallationService() {
+            super(null);
+        }
+
+        @Override
+        public boolean isServerInstalled(ServerType type) {
+            // keys are copied and mods linked into the server directory like on a real installation
+            return type == ServerType.ARMA3;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package cz.forgottenempire.servermanager.common;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.http.HttpClient;
 import java.time.Clock;
+import java.time.Duration;
 
 @Configuration
 public class CommonConfiguration {
@@ -15,12 +18,17 @@ public class CommonConfiguration {
     }
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(@Value("${steam.request-timeout-seconds:10}") long requestTimeoutSeconds) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Duration.ofSeconds(requestTimeoutSeconds));
+        requestFactory.setReadTimeout(Duration.ofSeconds(requestTimeoutSeconds));
+        return new RestTemplate(requestFactory);
     }
 
     @Bean
-    public HttpClient httpClient() {
-        return HttpClient.newHttpClient();
+    public HttpClient httpClient(@Value("${steam.request-timeout-seconds:10}") long requestTimeoutSeconds) {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .build();
     }
 }
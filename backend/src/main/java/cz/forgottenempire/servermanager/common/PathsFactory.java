@@ -47,10 +47,26 @@ public class PathsFactory {
                 String.valueOf(Constants.GAME_IDS.get(type)));
     }
 
+    public Path getWorkshopManifestPath(ServerType type) {
+        return Path.of(getModsBasePath().toString(), "steamapps", "workshop",
+                "appworkshop_" + Constants.GAME_IDS.get(type) + ".acf");
+    }
+
     public Path getModInstallationPath(Long modId, ServerType type) {
         return Path.of(getModsPath(type).toString(), String.valueOf(modId));
     }
 
+    public Path getModFileManifestPath(long modId) {
+        return Path.of(getModsBasePath().toString(), ".manifests", modId + ".json");
+    }
+
+    /**
+     * @return path of the list of keys which were installed into the server's keys directory from mods
+     */
+    public Path getModKeysManifestPath(ServerType type) {
+        return Path.of(getModsBasePath().toString(), ".manifests", "keys-" + type.name() + ".json");
+    }
+
     public Path getModLinkPath(String modName, ServerType type) {
         return Path.of(getServerPath(type).toString(), modName);
     }
@@ -121,6 +137,10 @@ public class PathsFactory {
         return Path.of(logsBasePath.toString(), "steamcmd", "steamcmd_" + formattedDate + ".log").toFile();
     }
 
+    public Path getSteamCmdWorkerHomePath(int workerId) {
+        return Path.of(getModsBasePath().toString(), ".steamcmd", "worker_" + workerId);
+    }
+
     private Path getServerExecutable(ServerType type) {
         return Path.of(getServerPath(type).toString(), Constants.SERVER_EXECUTABLES.get(type));
     }
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.lang.ProcessBuilder.Redirect;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -13,25 +14,53 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class ProcessFactory {
 
+    private static final File UNBUFFER_EXECUTABLE = new File("/usr/bin/unbuffer");
+
     public Process startProcess(File executable, List<String> parameters) throws IOException {
         File directory = executable.getParentFile();
         return startProcess(executable, parameters, directory);
     }
 
     public Process startProcessWithUnbufferedOutput(File executable, List<String> parameters) throws IOException {
+        return startProcessWithUnbufferedOutput(executable, parameters, Map.of());
+    }
+
+    public Process startProcessWithUnbufferedOutput(File executable, List<String> parameters,
+            Map<String, String> environment) throws IOException {
         File directory = executable.getParentFile();
 
-        File unbufferExecutable = new File("/usr/bin/unbuffer");
-        if (!unbufferExecutable.canExecute()) {
+        if (!isUnbufferAvailable()) {
             log.warn("'unbuffer' command is not installed or not executable, starting process with standard output. Handling the process output might be unreliable.");
-            return startProcess(executable, parameters, directory);
+            return startProcess(executable, parameters, directory, environment);
         }
 
         List<String> unbufferParameters = new ArrayList<>();
         unbufferParameters.add(executable.getAbsolutePath());
         unbufferParameters.addAll(parameters);
 
-        return startProcess(unbufferExecutable, unbufferParameters, directory);
+        return startProcess(UNBUFFER_EXECUTABLE, unbufferParameters, directory, environment);
+    }
+
+    /**
+     * Starts a process which is controlled through its standard input. Requires 'unbuffer', as the process would
+     * otherwise buffer its output and interactive prompts would never be received.
+     */
+    public Process startInteractiveProcess(File executable, List<String> parameters,
+            Map<String, String> environment) throws IOException {
+        if (!isUnbufferAvailable()) {
+            throw new IllegalStateException("'unbuffer' command is required for starting interactive processes");
+        }
+
+        List<String> unbufferParameters = new ArrayList<>();
+        unbufferParameters.add("-p");
+        unbufferParameters.add(executable.getAbsolutePath());
+        unbufferParameters.addAll(parameters);
+
+        return startProcess(UNBUFFER_EXECUTABLE, unbufferParameters, executable.getParentFile(), environment);
+    }
+
+    public boolean isUnbufferAvailable() {
+        return UNBUFFER_EXECUTABLE.canExecute();
     }
 
     public Process startProcess(File executable, List<String> parameters, File directory) throws IOException {
@@ -39,6 +68,13 @@ public class ProcessFactory {
                 .start();
     }
 
+    public Process startProcess(File executable, List<String> parameters, File directory,
+            Map<String, String> environment) throws IOException {
+        ProcessBuilder processBuilder = getBaseProcessBuilder(executable, parameters, directory);
+        processBuilder.environment().putAll(environment);
+        return processBuilder.start();
+    }
+
     public Process startProcessWithDiscardedOutput(File executable, List<String> parameters) throws IOException {
         File directory = executable.getParentFile();
         return getBaseProcessBuilder(executable, parameters, directory)
@@ -0,0 +1,14 @@
+package cz.forgottenempire.servermanager.common.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class InsufficientDiskSpaceException extends CustomUserErrorException {
+
+    public InsufficientDiskSpaceException() {
+        this("Not enough disk space");
+    }
+
+    public InsufficientDiskSpaceException(String message) {
+        super(message, HttpStatus.INSUFFICIENT_STORAGE);
+    }
+}
@@ -1,32 +1,71 @@
 package cz.forgottenempire.servermanager.installation;
 
-import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
 import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.PersistedSteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static cz.forgottenempire.servermanager.common.InstallationStatus.*;
 
+/**
+ * Resumes server installations which were queued or running when the manager was shut down, SteamCMD continues
+ * with the files it already downloaded. Installations left in progress without a job to resume are marked
+ * as interrupted.
+ */
 @Component
+@Slf4j
 class FailedInstallationDetector {
     private final ServerInstallationRepository repository;
+    private final ServerInstallerService installerService;
+    private final SteamCmdService steamCmdService;
 
     @Autowired
-    FailedInstallationDetector(ServerInstallationRepository repository) {
+    FailedInstallationDetector(
+            ServerInstallationRepository repository,
+            ServerInstallerService installerService,
+            SteamCmdService steamCmdService) {
         this.repository = repository;
+        this.installerService = installerService;
+        this.steamCmdService = steamCmdService;
     }
 
     @EventListener(ApplicationReadyEvent.class)
-    public void setErrorStatusOnInterruptedInstallations() {
-        List<ServerInstallation> interruptedInstallations = repository.findAllByInstallationStatus(INSTALLATION_IN_PROGRESS);
+    public void resumeInterruptedInstallations() {
+        Set<ServerType> resumableServers = steamCmdService.takeInterruptedServerJobs().stream()
+                .map(PersistedSteamCmdJob::getRelatedServer)
+                .collect(Collectors.toSet());
+        for (ServerType serverType : resumableServers) {
+            // the installation could have been marked as interrupted while shutting down
+            repository.findById(serverType).ifPresent(this::resumeInstallation);
+        }
+
+        List<ServerInstallation> interruptedInstallations = repository.findAllByInstallationStatus(INSTALLATION_IN_PROGRESS)
+                .stream()
+                .filter(installation -> !resumableServers.contains(installation.getType()))
+                .toList();
         for (ServerInstallation installation : interruptedInstallations) {
             installation.setInstallationStatus(ERROR);
             installation.setErrorStatus(ErrorStatus.INTERRUPTED);
         }
         repository.saveAll(interruptedInstallations);
     }
+
+    private void resumeInstallation(ServerInstallation installation) {
+        log.info("Resuming interrupted installation of server '{}'", installation.getType());
+        try {
+            installerService.installServer(installation);
+        } catch (InsufficientDiskSpaceException e) {
+            log.warn("Could not resume installation of server '{}': {}", installation.getType(), e.getMessage());
+        }
+    }
 }
@@ -23,6 +23,7 @@ public class ServerInstallation {
 
     private String version;
     private LocalDateTime lastUpdatedAt;
+    private Long fileSize;
 
     @Enumerated(EnumType.STRING)
     private InstallationStatus installationStatus;
@@ -34,6 +35,9 @@ public class ServerInstallation {
     @Enumerated(EnumType.STRING)
     private Branch branch;
 
+    @Enumerated(EnumType.STRING)
+    private Branch installedBranch;
+
     @Column(name = "branch")
     @Enumerated(EnumType.STRING)
     @ElementCollection(targetClass = Branch.class)
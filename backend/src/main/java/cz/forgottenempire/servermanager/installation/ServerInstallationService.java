@@ -3,6 +3,7 @@ package cz.forgottenempire.servermanager.installation;
 import cz.forgottenempire.servermanager.common.InstallationStatus;
 import cz.forgottenempire.servermanager.common.ServerType;
 import cz.forgottenempire.servermanager.common.exceptions.NotFoundException;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
 import cz.forgottenempire.servermanager.util.SystemUtils;
 import cz.forgottenempire.servermanager.util.SystemUtils.OSType;
 import java.util.List;
@@ -34,6 +35,16 @@ public class ServerInstallationService {
         return getServerInstallation(type).getInstallationStatus() == InstallationStatus.FINISHED;
     }
 
+    /**
+     * @return true if an update of the server was cancelled while SteamCMD was writing its files, the server can't be
+     * started until another update validates them
+     */
+    public boolean isUpdateRequired(ServerType type) {
+        return installationRepository.findById(type)
+                .map(installation -> installation.getErrorStatus() == ErrorStatus.CANCELLED)
+                .orElse(false);
+    }
+
     public void setServerBranch(ServerInstallation serverInstallation, ServerInstallation.Branch branch) {
         serverInstallation.setBranch(branch);
         installationRepository.save(serverInstallation);
@@ -1,6 +1,9 @@
 package cz.forgottenempire.servermanager.installation;
 
 import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.installation.ServerInstallation.Branch;
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
 import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
 import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
 import cz.forgottenempire.servermanager.steamcmd.SteamCmdService;
@@ -8,6 +11,7 @@ import cz.forgottenempire.servermanager.steamcmd.SteamCmdService;
 import java.time.LocalDateTime;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -18,15 +22,18 @@ class ServerInstallerService {
     private final ServerInstallationRepository installationRepository;
     private final SteamCmdService steamCmdService;
     private final TestRunService testRunService;
+    private final PathsFactory pathsFactory;
 
     @Autowired
     public ServerInstallerService(
             ServerInstallationRepository installationRepository,
             SteamCmdService steamCmdService,
-            TestRunService testRunService) {
+            TestRunService testRunService,
+            PathsFactory pathsFactory) {
         this.installationRepository = installationRepository;
         this.steamCmdService = steamCmdService;
         this.testRunService = testRunService;
+        this.pathsFactory = pathsFactory;
     }
 
     public void installServer(ServerInstallation server) {
@@ -34,12 +41,23 @@ class ServerInstallerService {
         server.setErrorStatus(null);
         installationRepository.save(server);
         log.info("Starting download of server '{}' (branch '{}')", server.getType(), server.getBranch().toString().toLowerCase());
-        steamCmdService.installOrUpdateServer(server)
-                .thenAcceptAsync(steamCmdJob -> handleInstallation(steamCmdJob, server));
+        // the branch might have been switched just before, a cancelled installation goes back to the installed one
+        Branch installedBranch = server.getInstalledBranch();
+        try {
+            steamCmdService.installOrUpdateServer(server)
+                    .thenAcceptAsync(steamCmdJob -> handleInstallation(steamCmdJob, server, installedBranch));
+        } catch (InsufficientDiskSpaceException e) {
+            server.setInstallationStatus(InstallationStatus.ERROR);
+            server.setErrorStatus(ErrorStatus.NO_SPACE);
+            installationRepository.save(server);
+            throw e;
+        }
     }
 
-    private void handleInstallation(SteamCmdJob steamCmdJob, ServerInstallation server) {
-        if (steamCmdJob.getErrorStatus() != null) {
+    private void handleInstallation(SteamCmdJob steamCmdJob, ServerInstallation server, Branch installedBranch) {
+        if (steamCmdJob.getErrorStatus() == ErrorStatus.CANCELLED) {
+            handleCancelledInstallation(steamCmdJob, server, installedBranch);
+        } else if (steamCmdJob.getErrorStatus() != null) {
             log.error("Download of server '{}' failed, reason: {}",
                     server.getType(), steamCmdJob.getErrorStatus());
             server.setInstallationStatus(InstallationStatus.ERROR);
@@ -50,6 +68,9 @@ class ServerInstallerService {
                 testRunService.performServerDryRun(server);
                 log.info("Server '{}' successfully installed", server.getType());
                 server.setLastUpdatedAt(LocalDateTime.now());
+                server.setInstalledBranch(server.getBranch());
+                // the disk space needed by the next update is estimated from it, off the request thread
+                server.setFileSize(FileUtils.sizeOfDirectory(pathsFactory.getServerPath(server.getType()).toFile()));
                 server.setInstallationStatus(InstallationStatus.FINISHED);
             } catch (Exception e) {
                 log.error("Server '{}' failed to start after installation", server.getType(), e);
@@ -59,6 +80,30 @@ class ServerInstallerService {
         }
         installationRepository.save(server);
     }
-}
 
+    private void handleCancelledInstallation(SteamCmdJob steamCmdJob, ServerInstallation server,
+            Branch installedBranch) {
+        if (installedBranch != null && installedBranch != server.getBranch()) {
+            log.info("Installation of server '{}' was cancelled, switching back to branch '{}'", server.getType(),
+                    installedBranch.toString().toLowerCase());
+            server.setBranch(installedBranch);
+        } else {
+            log.info("Installation of server '{}' was cancelled", server.getType());
+        }
 
+        if (server.getLastUpdatedAt() == null) {
+            server.setInstallationStatus(null);
+            server.setErrorStatus(null);
+        } else if (steamCmdJob.isStarted()) {
+            // SteamCMD was killed while writing the files, the server can be left with files of both versions;
+            // it can't be started until it's updated again, a server update always validates and repairs the files
+            log.warn("Server '{}' has to be updated before it can be started again", server.getType());
+            server.setInstallationStatus(InstallationStatus.ERROR);
+            server.setErrorStatus(ErrorStatus.CANCELLED);
+        } else {
+            // cancelled while waiting in the queue, the installed files were not touched
+            server.setInstallationStatus(InstallationStatus.FINISHED);
+            server.setErrorStatus(null);
+        }
+    }
+}
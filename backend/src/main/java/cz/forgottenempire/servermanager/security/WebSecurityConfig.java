@@ -1,5 +1,6 @@
 package cz.forgottenempire.servermanager.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -80,6 +81,9 @@ class WebSecurityConfig {
                                 antMatcher("/api/login"),
                                 not(antMatcher("/api/**"))
                         ).permitAll()
+                        // streamed responses (e.g. SteamCMD progress) are dispatched again once the stream ends,
+                        // the original request has already been authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .anyRequest().authenticated())
                 .sessionManagement(manager -> manager.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authenticationProvider(authenticationProvider())
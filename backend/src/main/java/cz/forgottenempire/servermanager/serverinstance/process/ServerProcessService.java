@@ -1,6 +1,8 @@
 package cz.forgottenempire.servermanager.serverinstance.process;
 
 import cz.forgottenempire.servermanager.common.exceptions.NotFoundException;
+import cz.forgottenempire.servermanager.common.exceptions.ServerNotInitializedException;
+import cz.forgottenempire.servermanager.installation.ServerInstallationService;
 import cz.forgottenempire.servermanager.serverinstance.ServerInstanceInfo;
 import cz.forgottenempire.servermanager.serverinstance.ServerRepository;
 import cz.forgottenempire.servermanager.serverinstance.entities.Server;
@@ -18,14 +20,17 @@ class ServerProcessService {
 
     private final ServerRepository serverRepository;
     private final ServerProcessRepository processRepository;
+    private final ServerInstallationService installationService;
 
     @Autowired
     public ServerProcessService(
             ServerRepository serverRepository,
-            ServerProcessRepository processRepository
+            ServerProcessRepository processRepository,
+            ServerInstallationService installationService
     ) {
         this.serverRepository = serverRepository;
         this.processRepository = processRepository;
+        this.installationService = installationService;
         addShutdownHook(processRepository);
     }
 
@@ -38,6 +43,7 @@ class ServerProcessService {
         }
 
         validatePortsNotTaken(server);
+        validateServerFilesComplete(server);
 
         serverProcess.start();
     }
@@ -112,6 +118,15 @@ class ServerProcessService {
                 });
     }
 
+    private void validateServerFilesComplete(Server server) {
+        if (installationService.isUpdateRequired(server.getType())) {
+            log.error("Server '{}' (ID {}) could not be started, update of its files was cancelled",
+                    server.getName(), server.getId());
+            throw new ServerNotInitializedException("Update of the server files was cancelled, "
+                    + "the server has to be updated before it can be started");
+        }
+    }
+
     private static void addShutdownHook(ServerProcessRepository processRepository) {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> processRepository.getAll()
                 .forEach(ServerProcess::stop)));
@@ -8,5 +8,7 @@ public enum ErrorStatus {
     NO_SUBSCRIPTION,
     RATE_LIMIT,
     GENERIC,
-    INTERRUPTED
+    INTERRUPTED,
+    NO_SPACE,
+    CANCELLED
 }
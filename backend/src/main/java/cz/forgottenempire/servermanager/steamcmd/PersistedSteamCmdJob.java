@@ -0,0 +1,73 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.ServerType;
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapKeyColumn;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A queued or running SteamCMD job, kept in the database until the job finishes. Jobs still present after
+ * a restart were interrupted and are resumed. Workshop jobs keep their items along with whether they were already
+ * downloaded, server jobs have no items.
+ */
+@Entity
+@Table(name = "steamcmd_job")
+@Getter
+@Setter
+@NoArgsConstructor
+public class PersistedSteamCmdJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private ServerType relatedServer;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SteamCmdJobPriority priority;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "steamcmd_job_item", joinColumns = @JoinColumn(name = "steamcmd_job_id"))
+    @MapKeyColumn(name = "item_id")
+    @Column(name = "finished", nullable = false)
+    private Map<Long, Boolean> items = new HashMap<>();
+
+    public boolean isWorkshopJob() {
+        return relatedServer == null;
+    }
+
+    public Set<Long> getItemIds() {
+        return Set.copyOf(items.keySet());
+    }
+
+    public Set<Long> getFinishedItemIds() {
+        return items.entrySet().stream()
+                .filter(Map.Entry::getValue)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
@@ -0,0 +1,20 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Repository
+interface PersistedSteamCmdJobRepository extends JpaRepository<PersistedSteamCmdJob, Long> {
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE steamcmd_job_item SET finished = 1 WHERE item_id = :itemId AND steamcmd_job_id IN (:jobIds)",
+            nativeQuery = true)
+    void markItemFinished(@Param("jobIds") Collection<Long> jobIds, @Param("itemId") long itemId);
+}
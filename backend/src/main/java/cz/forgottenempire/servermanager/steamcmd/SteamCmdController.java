@@ -2,35 +2,69 @@ package cz.forgottenempire.servermanager.steamcmd;
 
 import cz.forgottenempire.servermanager.common.exceptions.NotFoundException;
 import cz.forgottenempire.servermanager.serverinstance.LogFile;
-import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
-import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/steamcmd")
 class SteamCmdController {
 
     private static final String DEFAULT_LOG_LINES_COUNT = "100";
-    private final SteamCmdItemInfoRepository itemInfoRepository;
+    private final SteamCmdProgressStreamService progressStreamService;
     private final SteamCmdLogsService logsService;
+    private final SteamCmdExecutor steamCmdExecutor;
+    private final SteamCmdThroughputTracker throughputTracker;
 
     @Autowired
-    public SteamCmdController(SteamCmdItemInfoRepository itemInfoRepository, SteamCmdLogsService logsService) {
-        this.itemInfoRepository = itemInfoRepository;
+    public SteamCmdController(
+            SteamCmdProgressStreamService progressStreamService,
+            SteamCmdLogsService logsService,
+            SteamCmdExecutor steamCmdExecutor,
+            SteamCmdThroughputTracker throughputTracker
+    ) {
+        this.progressStreamService = progressStreamService;
         this.logsService = logsService;
+        this.steamCmdExecutor = steamCmdExecutor;
+        this.throughputTracker = throughputTracker;
     }
 
-    @GetMapping
-    public ResponseEntity<Map<Long, SteamCmdItemInfo>> getItemInfos() {
-        return ResponseEntity.ok(itemInfoRepository.getAll());
+    @GetMapping(path = "/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProgress() {
+        return progressStreamService.subscribe();
+    }
+
+    @GetMapping("/queue")
+    public ResponseEntity<List<SteamCmdQueueStatsDto>> getQueueStatistics() {
+        return ResponseEntity.ok(steamCmdExecutor.getQueueStatistics());
+    }
+
+    @GetMapping("/throughput")
+    public ResponseEntity<SteamCmdThroughputDto> getThroughput() {
+        return ResponseEntity.ok(throughputTracker.getThroughput());
+    }
+
+    @DeleteMapping("/items/{itemId}")
+    public ResponseEntity<?> cancelItem(@PathVariable long itemId) {
+        if (!steamCmdExecutor.cancelItem(itemId)) {
+            throw new NotFoundException("Item " + itemId + " is not queued or being downloaded");
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/items/{itemId}/job")
+    public ResponseEntity<?> cancelJobOfItem(@PathVariable long itemId) {
+        if (!steamCmdExecutor.cancelJobOfItem(itemId)) {
+            throw new NotFoundException("No queued or running job contains item " + itemId);
+        }
+        return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/log/download")
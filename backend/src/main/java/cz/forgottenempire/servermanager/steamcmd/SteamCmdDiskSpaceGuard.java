@@ -0,0 +1,113 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admits SteamCMD jobs only if the volume they download to has room for them. The free space is checked on the volume
+ * which actually holds the target directory, so servers and mods on separate drives are checked separately.
+ * <p>
+ * Space needed by queued and running jobs is reserved until they finish, so jobs queued one after another can't
+ * promise the same free space twice. The reservation is kept while the files are being written, which makes
+ * the estimate err on the safe side.
+ */
+@Component
+@Slf4j
+class SteamCmdDiskSpaceGuard {
+
+    private final long minFreeBytes;
+    private final Map<FileStore, Long> reservedBytes = new HashMap<>();
+
+    @Autowired
+    public SteamCmdDiskSpaceGuard(
+            @Value("${steamcmd.disk.min-free-mb:1024}") long minFreeMegabytes,
+            MeterRegistry meterRegistry
+    ) {
+        this.minFreeBytes = minFreeMegabytes * FileUtils.ONE_MB;
+        Gauge.builder("steamcmd.disk.reserved", this, SteamCmdDiskSpaceGuard::getReservedBytes)
+                .description("Disk space reserved for queued and running SteamCMD jobs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserves the space on the volume of the target directory, which doesn't need to exist yet.
+     *
+     * @throws InsufficientDiskSpaceException if the volume doesn't have enough space left
+     */
+    public Reservation reserve(Path target, long requiredBytes) {
+        FileStore fileStore;
+        long usableBytes;
+        try {
+            fileStore = Files.getFileStore(findExistingPath(target));
+            usableBytes = fileStore.getUsableSpace();
+        } catch (IOException e) {
+            // not being able to tell the free space is no reason to block installations
+            log.warn("Could not determine free disk space for {}, skipping the check", target, e);
+            return new Reservation(null, 0);
+        }
+
+        synchronized (reservedBytes) {
+            long alreadyReservedBytes = reservedBytes.getOrDefault(fileStore, 0L);
+            long availableBytes = usableBytes - alreadyReservedBytes - minFreeBytes;
+            if (requiredBytes > availableBytes) {
+                log.warn("Not enough disk space for {} (required {}, free {}, reserved by other jobs {})", target,
+                        FileUtils.byteCountToDisplaySize(requiredBytes), FileUtils.byteCountToDisplaySize(usableBytes),
+                        FileUtils.byteCountToDisplaySize(alreadyReservedBytes));
+                throw new InsufficientDiskSpaceException("Not enough disk space in " + target + ": "
+                        + FileUtils.byteCountToDisplaySize(requiredBytes) + " required, "
+                        + FileUtils.byteCountToDisplaySize(Math.max(0, availableBytes)) + " available");
+            }
+            reservedBytes.merge(fileStore, requiredBytes, Long::sum);
+        }
+        return new Reservation(fileStore, requiredBytes);
+    }
+
+    long getReservedBytes() {
+        synchronized (reservedBytes) {
+            return reservedBytes.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    private static Path findExistingPath(Path target) {
+        Path path = target.toAbsolutePath();
+        while (path != null && !Files.exists(path)) {
+            path = path.getParent();
+        }
+        return path != null ? path : target.toAbsolutePath().getRoot();
+    }
+
+    class Reservation {
+
+        private final FileStore fileStore;
+        private long bytes;
+
+        private Reservation(FileStore fileStore, long bytes) {
+            this.fileStore = fileStore;
+            this.bytes = bytes;
+        }
+
+        void release() {
+            synchronized (reservedBytes) {
+                if (fileStore == null || bytes == 0) {
+                    return;
+                }
+                reservedBytes.computeIfPresent(fileStore, (store, reserved) -> reserved > bytes ? reserved - bytes : null);
+                bytes = 0;
+            }
+        }
+    }
+}
@@ -2,28 +2,51 @@ package cz.forgottenempire.servermanager.steamcmd;
 
 import com.google.common.base.Strings;
 import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.common.PathsFactory;
 import cz.forgottenempire.servermanager.common.ProcessFactory;
 import cz.forgottenempire.servermanager.common.ServerType;
 import cz.forgottenempire.servermanager.steamauth.SteamAuth;
 import cz.forgottenempire.servermanager.steamauth.SteamAuthService;
 
 import java.io.*;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoChangedEvent;
 import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoRepository;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdOutputClassifier;
 import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdOutputProcessor;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdOutputProcessor.OutputSink;
+import cz.forgottenempire.servermanager.util.SystemUtils;
+import cz.forgottenempire.servermanager.util.SystemUtils.OSType;
 import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import static cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.*;
@@ -33,45 +56,394 @@ import static cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmd
 class SteamCmdExecutor {
 
     private static final String STEAM_CREDENTIALS_PLACEHOLDER = "<{STEAM_CREDENTIALS_PLACEHOLDER}>";
-    private static final List<String> ERROR_KEYWORDS = Arrays.asList("error", "failure", "failed");
     private static final int EXIT_CODE_TIMEOUT_LINUX = 134;
     private static final int EXIT_CODE_TIMEOUT_WINDOWS = 10;
     private static final int MAX_ATTEMPTS = 10;
+    private static final int MAX_ITEM_ATTEMPTS = 3;
+    private static final Duration RETRY_INITIAL_DELAY = Duration.ofSeconds(2);
+    private static final Duration RETRY_MAX_DELAY = Duration.ofMinutes(1);
 
     private final File steamCmdFile;
     private final SteamAuthService steamAuthService;
     private final ProcessFactory processFactory;
     private final SteamCmdOutputProcessor steamCmdOutputProcessor;
     private final SteamCmdItemInfoRepository itemInfoRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolExecutor executor;
+    private final int backgroundChunkSize;
+    private final boolean sessionsEnabled;
+    private final long sessionIdleTimeoutNanos;
+    private final Duration sessionLoginTimeout;
+    private final Duration sessionOutputTimeout;
+    private final Map<SteamCmdJobPriority, Timer> queueWaitTimers = new EnumMap<>(SteamCmdJobPriority.class);
+    private final Map<SteamCmdJobPriority, Timer> jobDurationTimers = new EnumMap<>(SteamCmdJobPriority.class);
+
+    private final Object queueLock = new Object();
+    private final List<SteamCmdJobBatch> pendingJobs = new ArrayList<>();
+    private final Set<SteamCmdInstallTarget> busyTargets = new HashSet<>();
+    private final Deque<SteamCmdWorker> idleWorkers = new ArrayDeque<>();
+    private final Map<SteamCmdWorker, RunningJob> runningJobs = new HashMap<>();
 
     @Autowired
     public SteamCmdExecutor(
             @Value("${steamcmd.path}") String steamCmdFilePath,
+            @Value("${steamcmd.workers:2}") int workerCount,
+            @Value("${steamcmd.background-chunk-size:10}") int backgroundChunkSize,
+            @Value("${steamcmd.session.enabled:false}") boolean sessionsEnabled,
+            @Value("${steamcmd.session.idle-timeout-seconds:600}") long sessionIdleTimeoutSeconds,
+            @Value("${steamcmd.session.login-timeout-seconds:120}") long sessionLoginTimeoutSeconds,
+            @Value("${steamcmd.session.output-timeout-seconds:1800}") long sessionOutputTimeoutSeconds,
+            PathsFactory pathsFactory,
             SteamAuthService steamAuthService,
             ProcessFactory processFactory,
             SteamCmdOutputProcessor steamCmdOutputProcessor,
-            SteamCmdItemInfoRepository itemInfoRepository
+            SteamCmdItemInfoRepository itemInfoRepository,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry
     ) {
+        this.backgroundChunkSize = backgroundChunkSize;
+        this.sessionIdleTimeoutNanos = TimeUnit.SECONDS.toNanos(sessionIdleTimeoutSeconds);
+        this.sessionLoginTimeout = Duration.ofSeconds(sessionLoginTimeoutSeconds);
+        this.sessionOutputTimeout = Duration.ofSeconds(sessionOutputTimeoutSeconds);
         this.steamAuthService = steamAuthService;
         this.processFactory = processFactory;
         this.steamCmdOutputProcessor = steamCmdOutputProcessor;
         this.itemInfoRepository = itemInfoRepository;
+        this.eventPublisher = eventPublisher;
         steamCmdFile = new File(steamCmdFilePath);
         if (!steamCmdFile.exists()) {
             throw new IllegalStateException("Invalid path to SteamCMD executable given");
         }
-    }
 
-    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
-            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        int effectiveWorkerCount = getEffectiveWorkerCount(workerCount);
+        for (int workerId = 0; workerId < effectiveWorkerCount; workerId++) {
+            File homeDirectory = workerId == 0 ? null : pathsFactory.getSteamCmdWorkerHomePath(workerId).toFile();
+            idleWorkers.add(new SteamCmdWorker(workerId, homeDirectory));
+        }
+        executor = new ThreadPoolExecutor(effectiveWorkerCount, effectiveWorkerCount,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        log.info("Using {} SteamCMD worker(s)", effectiveWorkerCount);
+
+        if (sessionsEnabled && !processFactory.isUnbufferAvailable()) {
+            log.warn("SteamCMD sessions require the 'unbuffer' command, starting SteamCMD for every job instead");
+            sessionsEnabled = false;
+        }
+        this.sessionsEnabled = sessionsEnabled;
+
+        for (SteamCmdJobPriority priority : SteamCmdJobPriority.values()) {
+            queueWaitTimers.put(priority, Timer.builder("steamcmd.queue.wait")
+                    .description("Time SteamCMD jobs spent waiting in the queue before a worker picked them up")
+                    .tag("priority", priority.name())
+                    .register(meterRegistry));
+            jobDurationTimers.put(priority, Timer.builder("steamcmd.job.duration")
+                    .description("Time SteamCMD jobs took to run on a worker, including retries")
+                    .tag("priority", priority.name())
+                    .register(meterRegistry));
+        }
+    }
 
     public void processJob(SteamCmdJob job, CompletableFuture<SteamCmdJob> future) {
         setItemInfoAsQueued(job);
 
-        executor.submit(() -> {
-            execute(job);
-            future.complete(job);
-        });
+        synchronized (queueLock) {
+            Optional<SteamCmdJobBatch> coalescableBatch = pendingJobs.stream()
+                    .filter(batch -> batch.canCoalesce(job))
+                    .findFirst();
+            if (coalescableBatch.isPresent()) {
+                coalescableBatch.get().coalesce(job, future);
+                log.debug("Coalesced SteamCMD job into a queued batch ({} callers)",
+                        coalescableBatch.get().getCallerCount());
+            } else {
+                enqueue(new SteamCmdJobBatch(job, future));
+            }
+            dispatchPendingJobs();
+        }
+    }
+
+    /**
+     * Cancels the given item, whether it's waiting in the queue or being downloaded. Other items of its job go on,
+     * a running SteamCMD process is restarted without the item.
+     *
+     * @return false if the item is neither queued nor running
+     */
+    public boolean cancelItem(long itemId) {
+        return cancelItems(Set.of(itemId));
+    }
+
+    /**
+     * Cancels every queued or running job which contains the given item, including all of their other items.
+     *
+     * @return false if there is no such job
+     */
+    public boolean cancelJobOfItem(long itemId) {
+        Set<Long> itemIds = new HashSet<>();
+        synchronized (queueLock) {
+            pendingJobs.forEach(batch -> itemIds.addAll(batch.getItemIdsOfJobsContaining(itemId)));
+            runningJobs.values().forEach(
+                    runningJob -> itemIds.addAll(runningJob.batch().getItemIdsOfJobsContaining(itemId)));
+        }
+        return !itemIds.isEmpty() && cancelItems(itemIds);
+    }
+
+    /**
+     * Stops a background job which gave way to a more urgent one as soon as it finished an item, so that it doesn't
+     * have to download that item again later.
+     */
+    @EventListener
+    public void onItemInfoChanged(SteamCmdItemInfoChangedEvent event) {
+        if (sessionsEnabled || event.itemInfo().status() != SteamCmdStatus.FINISHED) {
+            // a session doesn't need to be stopped, the job just doesn't run its next command
+            return;
+        }
+        long itemId = event.itemInfo().itemId();
+        synchronized (queueLock) {
+            runningJobs.forEach((worker, runningJob) -> {
+                if (worker.isPreemptionRequested() && runningJob.job().isItemFinished(itemId)) {
+                    log.info("Stopping background SteamCMD job on {} to let a more urgent job run", worker);
+                    worker.requestStop();
+                }
+            });
+        }
+    }
+
+    public List<SteamCmdQueueStatsDto> getQueueStatistics() {
+        Map<SteamCmdJobPriority, Long> queuedJobs = new EnumMap<>(SteamCmdJobPriority.class);
+        synchronized (queueLock) {
+            pendingJobs.forEach(batch -> queuedJobs.merge(batch.getPriority(), 1L, Long::sum));
+        }
+
+        List<SteamCmdQueueStatsDto> statistics = new ArrayList<>();
+        queueWaitTimers.forEach((priority, timer) -> statistics.add(new SteamCmdQueueStatsDto(
+                priority,
+                queuedJobs.getOrDefault(priority, 0L),
+                timer.count(),
+                timer.mean(TimeUnit.SECONDS),
+                timer.max(TimeUnit.SECONDS)
+        )));
+        return statistics;
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void closeIdleSessions() {
+        List<SteamCmdSession> idleSessions = new ArrayList<>();
+        synchronized (queueLock) {
+            // only workers which are not running a job can be touched here
+            for (SteamCmdWorker worker : idleWorkers) {
+                SteamCmdSession session = worker.getSession();
+                if (session != null && session.getIdleTimeNanos() > sessionIdleTimeoutNanos) {
+                    worker.setSession(null);
+                    idleSessions.add(session);
+                }
+            }
+        }
+        idleSessions.forEach(SteamCmdSession::close);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        List<SteamCmdSession> sessions = new ArrayList<>();
+        synchronized (queueLock) {
+            for (SteamCmdWorker worker : idleWorkers) {
+                if (worker.getSession() != null) {
+                    sessions.add(worker.getSession());
+                    worker.setSession(null);
+                }
+            }
+        }
+        sessions.forEach(SteamCmdSession::close);
+    }
+
+    private static int getEffectiveWorkerCount(int workerCount) {
+        if (workerCount > 1 && SystemUtils.getOsType() == OSType.WINDOWS) {
+            // SteamCMD on Windows keeps its config next to the executable, parallel instances would clash
+            log.warn("Parallel SteamCMD workers are not supported on Windows, using a single worker");
+            return 1;
+        }
+        return Math.max(1, workerCount);
+    }
+
+    // must be called while holding the queue lock
+    private void enqueue(SteamCmdJobBatch batch) {
+        // keep the queue sorted by priority, jobs of the same priority in FIFO order
+        int index = 0;
+        while (index < pendingJobs.size() && pendingJobs.get(index).getPriority().compareTo(batch.getPriority()) <= 0) {
+            index++;
+        }
+        pendingJobs.add(index, batch);
+    }
+
+    // must be called while holding the queue lock
+    private void dispatchPendingJobs() {
+        Set<SteamCmdInstallTarget> blockedTargets = new HashSet<>(busyTargets);
+        Iterator<SteamCmdJobBatch> iterator = pendingJobs.iterator();
+        while (iterator.hasNext() && !idleWorkers.isEmpty()) {
+            SteamCmdJobBatch batch = iterator.next();
+            Set<SteamCmdInstallTarget> targets = batch.getInstallTargets();
+            if (!Collections.disjoint(blockedTargets, targets)) {
+                // jobs writing into the same target must keep the order in which they were queued
+                blockedTargets.addAll(targets);
+                continue;
+            }
+
+            queueWaitTimers.get(batch.getPriority())
+                    .record(System.nanoTime() - batch.getWaitingSinceNanos(), TimeUnit.NANOSECONDS);
+            // background batches are split into chunks, so more urgent jobs can get in between them
+            int maxItems = batch.getPriority() == SteamCmdJobPriority.BACKGROUND ? backgroundChunkSize : 0;
+            SteamCmdJob job = batch.takeNextJob(maxItems);
+            if (!batch.hasRemainingWork()) {
+                iterator.remove();
+            }
+
+            busyTargets.addAll(job.getInstallTargets());
+            blockedTargets.addAll(targets);
+            SteamCmdWorker worker = idleWorkers.poll();
+            worker.clearStopRequest();
+            worker.clearPreemptionRequest();
+            runningJobs.put(worker, new RunningJob(batch, job));
+            executor.submit(() -> runJob(batch, job, worker));
+        }
+        preemptBackgroundJobs();
+    }
+
+    // must be called while holding the queue lock
+    private void preemptBackgroundJobs() {
+        List<SteamCmdWorker> preemptableWorkers = new ArrayList<>();
+        int preemptedWorkers = 0;
+        for (Map.Entry<SteamCmdWorker, RunningJob> entry : runningJobs.entrySet()) {
+            if (entry.getKey().isPreemptionRequested()) {
+                preemptedWorkers++;
+            } else if (entry.getValue().job().getPriority() == SteamCmdJobPriority.BACKGROUND) {
+                preemptableWorkers.add(entry.getKey());
+            }
+        }
+
+        for (SteamCmdJobBatch batch : pendingJobs) {
+            if (batch.getPriority() == SteamCmdJobPriority.BACKGROUND) {
+                // the queue is sorted by priority, no more urgent jobs follow
+                return;
+            }
+            if (preemptedWorkers > 0) {
+                // a worker is already on its way to be freed for this job
+                preemptedWorkers--;
+                continue;
+            }
+            findWorkerToPreempt(batch, preemptableWorkers).ifPresent(worker -> {
+                log.info("{} SteamCMD job is waiting, background job on {} will give way to it",
+                        batch.getPriority(), worker);
+                worker.requestPreemption();
+                preemptableWorkers.remove(worker);
+            });
+        }
+    }
+
+    // must be called while holding the queue lock
+    private Optional<SteamCmdWorker> findWorkerToPreempt(SteamCmdJobBatch batch, List<SteamCmdWorker> workers) {
+        boolean blockedByOtherJobs = runningJobs.entrySet().stream()
+                .filter(entry -> !workers.contains(entry.getKey()))
+                .anyMatch(entry -> isBlocking(entry.getValue().job(), batch));
+        if (blockedByOtherJobs) {
+            // preempting a background job would not let the batch run any sooner
+            return Optional.empty();
+        }
+
+        // a background job writing into the same target blocks the batch even if there are idle workers
+        Optional<SteamCmdWorker> blockingWorker = workers.stream()
+                .filter(worker -> isBlocking(runningJobs.get(worker).job(), batch))
+                .findFirst();
+        if (blockingWorker.isPresent() || !idleWorkers.isEmpty()) {
+            return blockingWorker;
+        }
+        return workers.stream().findFirst();
+    }
+
+    private static boolean isBlocking(SteamCmdJob runningJob, SteamCmdJobBatch batch) {
+        return !Collections.disjoint(runningJob.getInstallTargets(), batch.getInstallTargets());
+    }
+
+    private boolean cancelItems(Set<Long> itemIds) {
+        Set<Long> cancelledItemIds = new HashSet<>();
+        List<SteamCmdJobBatch> completedBatches = new ArrayList<>();
+        synchronized (queueLock) {
+            Iterator<SteamCmdJobBatch> iterator = pendingJobs.iterator();
+            while (iterator.hasNext()) {
+                SteamCmdJobBatch batch = iterator.next();
+                Set<Long> cancelledWaitingItemIds = batch.cancelWaitingItems(itemIds);
+                cancelledItemIds.addAll(cancelledWaitingItemIds);
+                if (!cancelledWaitingItemIds.isEmpty() && !batch.hasRemainingWork()) {
+                    iterator.remove();
+                    if (batch.isDone()) {
+                        completedBatches.add(batch);
+                    }
+                }
+            }
+
+            runningJobs.forEach((worker, runningJob) -> {
+                Set<Long> cancelledRunningItemIds = cancelRunningItems(runningJob.job(), itemIds);
+                if (!cancelledRunningItemIds.isEmpty()) {
+                    log.info("Stopping SteamCMD job on {} due to cancelled items {}", worker, cancelledRunningItemIds);
+                    cancelledItemIds.addAll(cancelledRunningItemIds);
+                    worker.requestStop();
+                }
+            });
+            dispatchPendingJobs();
+        }
+
+        cancelledItemIds.forEach(itemId -> itemInfoRepository.store(itemId,
+                new SteamCmdItemInfo(itemId, SteamCmdStatus.CANCELLED, 0, 0, 0)));
+        completedBatches.forEach(SteamCmdJobBatch::complete);
+        return !cancelledItemIds.isEmpty();
+    }
+
+    private static Set<Long> cancelRunningItems(SteamCmdJob job, Set<Long> itemIds) {
+        if (!job.isWorkshopJob()) {
+            if (job.getErrorStatus() != null || Collections.disjoint(job.getItemIds(), itemIds)) {
+                return Set.of();
+            }
+            job.setErrorStatus(ErrorStatus.CANCELLED);
+            return job.getItemIds();
+        }
+
+        Set<Long> cancelledItemIds = new HashSet<>();
+        for (Long itemId : job.getItemIds()) {
+            if (itemIds.contains(itemId) && !job.isItemSettled(itemId)) {
+                job.setItemErrorStatus(itemId, ErrorStatus.CANCELLED);
+                cancelledItemIds.add(itemId);
+            }
+        }
+        return cancelledItemIds;
+    }
+
+    private void runJob(SteamCmdJobBatch batch, SteamCmdJob job, SteamCmdWorker worker) {
+        boolean batchDone;
+        boolean preempted = false;
+        long startedAt = System.nanoTime();
+        try {
+            log.debug("Running {} SteamCMD job on {} (targets {})", job.getPriority(), worker, job.getInstallTargets());
+            job.setStarted(true);
+            preempted = execute(job, worker);
+        } finally {
+            jobDurationTimers.get(job.getPriority()).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            synchronized (queueLock) {
+                runningJobs.remove(worker);
+                busyTargets.removeAll(job.getInstallTargets());
+                idleWorkers.push(worker);
+                if (preempted) {
+                    batch.onJobPreempted(job);
+                    if (batch.hasRemainingWork() && !pendingJobs.contains(batch)) {
+                        enqueue(batch);
+                    }
+                } else {
+                    batch.onJobFinished(job);
+                }
+                batchDone = batch.isDone();
+                dispatchPendingJobs();
+            }
+            eventPublisher.publishEvent(new SteamCmdJobFinishedEvent(job.getItemIds()));
+        }
+        if (batchDone) {
+            batch.complete();
+        }
     }
 
     private void setItemInfoAsQueued(SteamCmdJob job) {
@@ -89,30 +461,175 @@ class SteamCmdExecutor {
         }
     }
 
-    private void execute(SteamCmdJob job) {
+    /**
+     * @return true if the job gave way to a more urgent job before all of its items were finished
+     */
+    private boolean execute(SteamCmdJob job, SteamCmdWorker worker) {
         try {
+            eventPublisher.publishEvent(new SteamCmdJobStartingEvent(job));
             int attempts = 0;
-            int exitCode;
-            String output;
-
+            boolean retry;
             do {
+                if (attempts > 0) {
+                    worker.awaitRetry(getRetryDelay(attempts));
+                }
+                worker.clearStopRequest();
+                if (!hasWorkLeft(job)) {
+                    // the rest of the job was cancelled meanwhile
+                    return false;
+                }
+                if (worker.isPreemptionRequested()) {
+                    log.info("Background SteamCMD job on {} gives way to a more urgent job", worker);
+                    return true;
+                }
                 attempts++;
-                Process process = processFactory.startProcessWithUnbufferedOutput(steamCmdFile, getCommands(job.getSteamCmdParameters()));
-                output = steamCmdOutputProcessor.processSteamCmdOutput(process.getInputStream(), job);
-                exitCode = process.waitFor();
-            } while (attempts < MAX_ATTEMPTS && exitedDueToTimeout(exitCode));
+                // items downloaded (or failed for good) in previous attempts are not downloaded again
+                SteamCmdParameters parameters = getParametersForUnsettledItems(job);
+                retry = sessionsEnabled
+                        ? executeInSession(job, parameters, worker)
+                        : executeInNewProcess(job, parameters, worker);
+                if ((worker.isStopRequested() || worker.isPreemptionRequested()) && job.getErrorStatus() == null) {
+                    // SteamCMD was stopped on purpose rather than failed, the job goes on right away with what's left
+                    attempts--;
+                    retry = true;
+                }
+            } while (retry && attempts < MAX_ATTEMPTS);
 
-            handleProcessResult(output, job);
+            if (retry) {
+                log.error("SteamCMD job did not finish in {} attempts", MAX_ATTEMPTS);
+                job.setErrorStatus(ErrorStatus.TIMEOUT);
+            }
         } catch (SteamAuthNotSetException e) {
             log.error("SteamAuth is not set up");
             job.setErrorStatus(ErrorStatus.WRONG_AUTH);
         } catch (IOException e) {
             log.error("SteamCMD job failed due to an IO error", e);
             job.setErrorStatus(ErrorStatus.IO);
+        } catch (InterruptedException e) {
+            log.warn("SteamCMD job was interrupted");
+            job.setErrorStatus(ErrorStatus.INTERRUPTED);
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             log.error("SteamCMD job failed", e);
             job.setErrorStatus(ErrorStatus.GENERIC);
         }
+        return false;
+    }
+
+    private static boolean hasWorkLeft(SteamCmdJob job) {
+        if (job.getErrorStatus() == ErrorStatus.CANCELLED) {
+            return false;
+        }
+        return !job.isWorkshopJob() || job.hasUnsettledItems();
+    }
+
+    private static Duration getRetryDelay(int attempts) {
+        long delayMillis = RETRY_INITIAL_DELAY.toMillis() << Math.min(attempts - 1, 16);
+        return Duration.ofMillis(Math.min(delayMillis, RETRY_MAX_DELAY.toMillis()));
+    }
+
+    private SteamCmdParameters getParametersForUnsettledItems(SteamCmdJob job) {
+        if (!job.isWorkshopJob()) {
+            return job.getSteamCmdParameters();
+        }
+        Set<Long> settledItemIds = job.getRelatedWorkshopMods().stream()
+                .map(WorkshopMod::getId)
+                .filter(job::isItemSettled)
+                .collect(Collectors.toSet());
+        return job.getSteamCmdParameters().withoutWorkshopItems(settledItemIds);
+    }
+
+    /**
+     * @return true if the job should be tried again
+     */
+    private boolean executeInNewProcess(SteamCmdJob job, SteamCmdParameters parameters, SteamCmdWorker worker)
+            throws IOException, InterruptedException {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+        Process process = processFactory.startProcessWithUnbufferedOutput(steamCmdFile,
+                getCommands(parameters), worker.getEnvironment());
+        int exitCode;
+        worker.attachProcess(process);
+        try {
+            steamCmdOutputProcessor.processSteamCmdOutput(process.getInputStream(), job, classifier);
+            if (classifier.hasFailed()) {
+                // no point in waiting for SteamCMD to finish on its own, the result is already known
+                SystemUtils.destroyProcessTree(process);
+            }
+            exitCode = process.waitFor();
+        } finally {
+            worker.detachProcess();
+        }
+        if (!classifier.hasFailed() && exitedDueToTimeout(exitCode)) {
+            log.warn("SteamCMD timed out, retrying unfinished items");
+            return true;
+        }
+
+        return handleProcessResult(classifier, job);
+    }
+
+    /**
+     * Runs the job as commands in the worker's SteamCMD session, starting a new session if there is none yet.
+     *
+     * @return true if the job should be tried again
+     */
+    private boolean executeInSession(SteamCmdJob job, SteamCmdParameters parameters, SteamCmdWorker worker)
+            throws IOException, InterruptedException {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+        String authString = getAuthString();
+        boolean sessionEnded = false;
+
+        try (OutputSink outputSink = steamCmdOutputProcessor.openOutputSink(job, classifier)) {
+            SteamCmdSession session = getOrStartSession(worker, authString, outputSink);
+            worker.attachProcess(session.getProcess());
+            try {
+                for (String command : parameters.getSessionCommands()) {
+                    // a preempted job stops between two commands, the session is kept for the next job
+                    if (classifier.hasFailed() || worker.isPreemptionRequested()) {
+                        break;
+                    }
+                    if (!session.runCommand(command, outputSink)) {
+                        sessionEnded = true;
+                        break;
+                    }
+                }
+            } finally {
+                worker.detachProcess();
+            }
+        }
+
+        if (sessionEnded || classifier.getErrorStatus() == ErrorStatus.WRONG_AUTH) {
+            // a session with a rejected login is of no use for further jobs
+            closeSession(worker);
+        }
+        if (sessionEnded && !classifier.hasFailed()) {
+            log.warn("SteamCMD session on {} ended unexpectedly, retrying unfinished items", worker);
+            return true;
+        }
+
+        return handleProcessResult(classifier, job);
+    }
+
+    private SteamCmdSession getOrStartSession(SteamCmdWorker worker, String authString, OutputSink outputSink)
+            throws IOException, InterruptedException {
+        SteamCmdSession session = worker.getSession();
+        if (session != null && session.isAlive() && session.isLoggedInAs(authString)) {
+            return session;
+        }
+
+        // the credentials might have been changed since the session was started
+        closeSession(worker);
+        session = SteamCmdSession.start(processFactory, steamCmdFile, worker, authString, outputSink,
+                sessionLoginTimeout, sessionOutputTimeout);
+        worker.setSession(session);
+        return session;
+    }
+
+    private void closeSession(SteamCmdWorker worker) {
+        SteamCmdSession session = worker.getSession();
+        if (session != null) {
+            worker.setSession(null);
+            session.close();
+        }
     }
 
     private boolean exitedDueToTimeout(int exitCode) {
@@ -131,48 +648,37 @@ class SteamCmdExecutor {
         return commands;
     }
 
-    private void handleProcessResult(String result, SteamCmdJob job) {
-        // SteamCMD doesn't provide the user with any proper exit values or standard format for error messages.
-        String errorLine = result.lines()
-                .map(String::toLowerCase)
-                .map(this::removeParametersFromOutputLine)
-                // Issue #69 missing steamservice.so and libSDL3.so.0 caused the job to be marked as failed
-                // TODO find better solution to determine the job result
-                .filter(line -> !line.contains("cannot open shared object file"))
-                .filter(this::containsErrorKeyword)
-                .findFirst()
-                .orElse(null);
-
-        if (errorLine == null) {
-            return;
+    /**
+     * @return true if the failure was caused by a single workshop item and the rest of the items (including the failed
+     * one, unless it failed for good) should be retried
+     */
+    private boolean handleProcessResult(SteamCmdOutputClassifier classifier, SteamCmdJob job) {
+        if (!classifier.hasFailed()) {
+            return false;
         }
 
-        log.error("SteamCmd failed due to: '{}'", errorLine);
-        job.setErrorStatus(ErrorStatus.GENERIC);
+        log.error("SteamCmd failed due to: '{}'", classifier.getErrorLine());
+        dumpErrorOutputToLog(classifier.getTail());
 
-        dumpErrorOutputToLog(result);
-
-        String[] loginRelatedErrors = new String[]{"login", "expired", "account logon denied", "two-factor code mismatch", "invalid password"};
-        if (Arrays.stream(loginRelatedErrors).anyMatch(errorLine::contains)) {
-            job.setErrorStatus(ErrorStatus.WRONG_AUTH);
-        }
-        if (errorLine.contains("no subscription")) {
-            job.setErrorStatus(ErrorStatus.NO_SUBSCRIPTION);
-        }
-        if (errorLine.contains("no match")) {
-            job.setErrorStatus(ErrorStatus.NO_MATCH);
-        }
-        if (errorLine.contains("i/o operation") || errorLine.contains("failed to write file")) {
-            job.setErrorStatus(ErrorStatus.IO);
-        }
-        if (errorLine.contains("rate limit exceeded")) {
-            job.setErrorStatus(ErrorStatus.RATE_LIMIT);
+        Long failedItemId = classifier.getFailedItemId();
+        if (failedItemId != null && isRelatedItem(job, failedItemId)) {
+            // SteamCMD stops at the first failed item, the items after it have not been tried yet
+            if (!job.recordItemFailure(failedItemId, classifier.getErrorStatus(), MAX_ITEM_ATTEMPTS)) {
+                log.warn("Download of item {} failed, it will be retried", failedItemId);
+            }
+            return job.hasUnsettledItems();
         }
+        job.setErrorStatus(classifier.getErrorStatus());
+        return false;
     }
 
-    private void dumpErrorOutputToLog(String result) {
+    private static boolean isRelatedItem(SteamCmdJob job, long itemId) {
+        return job.isWorkshopJob() && job.getRelatedWorkshopMods().stream().anyMatch(mod -> mod.getId() == itemId);
+    }
+
+    private void dumpErrorOutputToLog(String outputTail) {
         log.error("======== SteamCMD ERROR OUTPUT START ======== ");
-        log.error(result);
+        log.error(outputTail);
         log.error("======== SteamCMD ERROR OUTPUT END ======== ");
     }
 
@@ -189,14 +695,6 @@ class SteamCmdExecutor {
         return authString;
     }
 
-    private String removeParametersFromOutputLine(String line) {
-        return line.replace("\"@shutdownonfailedcommand\" = \"1\"", "")
-                .replace("\"@nopromptforpassword\" = \"1\"", "");
-    }
-
-    private boolean containsErrorKeyword(String targetString) {
-        return SteamCmdExecutor.ERROR_KEYWORDS.stream()
-                .map(String::toLowerCase)
-                .anyMatch(keyword -> targetString.contains(keyword) && !targetString.contains("warning"));
+    private record RunningJob(SteamCmdJobBatch batch, SteamCmdJob job) {
     }
 }
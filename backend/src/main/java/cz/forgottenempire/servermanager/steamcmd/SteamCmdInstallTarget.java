@@ -0,0 +1,21 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+
+import java.nio.file.Path;
+
+/**
+ * Identifies the part of the file system a SteamCMD job writes into. Jobs with different targets can run
+ * concurrently, jobs sharing a target must be serialized.
+ */
+record SteamCmdInstallTarget(Path installDir, long appId) {
+
+    SteamCmdInstallTarget {
+        installDir = installDir.toAbsolutePath().normalize();
+    }
+
+    static long appIdOf(WorkshopMod mod) {
+        return Constants.GAME_IDS.get(mod.getServerType());
+    }
+}
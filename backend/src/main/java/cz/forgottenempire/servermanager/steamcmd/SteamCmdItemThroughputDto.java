@@ -0,0 +1,15 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+
+record SteamCmdItemThroughputDto(
+        long itemId,
+        SteamCmdStatus status,
+        long bytesFinished,
+        long bytesTotal,
+        double bytesPerSecond,
+        Long etaSeconds,
+        long secondsSinceProgress,
+        boolean stalled
+) {
+}
@@ -1,28 +1,118 @@
 package cz.forgottenempire.servermanager.steamcmd;
 
+import cz.forgottenempire.servermanager.common.Constants;
 import cz.forgottenempire.servermanager.common.ServerType;
 import cz.forgottenempire.servermanager.workshop.WorkshopMod;
 import lombok.Data;
 
 import jakarta.validation.constraints.NotNull;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Data
 public class SteamCmdJob {
 
+    // failures which won't go away by downloading the item again
+    private static final Set<ErrorStatus> PERMANENT_ITEM_ERRORS =
+            EnumSet.of(ErrorStatus.NO_MATCH, ErrorStatus.NO_SUBSCRIPTION);
+
     private Collection<WorkshopMod> relatedWorkshopMods;
     private ServerType relatedServer;
     private ErrorStatus errorStatus;
     @NotNull
     private SteamCmdParameters steamCmdParameters;
+    @NotNull
+    private Set<SteamCmdInstallTarget> installTargets;
+    private SteamCmdJobPriority priority = SteamCmdJobPriority.INTERACTIVE;
+    // set once a worker picks the job up, a job cancelled before that didn't touch any files
+    private volatile boolean started;
+    // IDs under which the jobs this one works for are kept in the job store, a chunk works for all callers of its batch
+    private Set<Long> storedJobIds = Set.of();
+    private final Set<Long> finishedItemIds = ConcurrentHashMap.newKeySet();
+    private final Map<Long, ErrorStatus> itemErrorStatuses = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> itemFailureCounts = new ConcurrentHashMap<>();
 
-    public SteamCmdJob(ServerType relatedServer, SteamCmdParameters steamCmdParameters) {
+    public SteamCmdJob(ServerType relatedServer, SteamCmdParameters steamCmdParameters,
+            Set<SteamCmdInstallTarget> installTargets) {
         this.relatedServer = relatedServer;
         this.steamCmdParameters = steamCmdParameters;
+        this.installTargets = installTargets;
     }
 
-    public SteamCmdJob(Collection<WorkshopMod> relatedWorkshopMods, SteamCmdParameters steamCmdParameters) {
+    public SteamCmdJob(Collection<WorkshopMod> relatedWorkshopMods, SteamCmdParameters steamCmdParameters,
+            Set<SteamCmdInstallTarget> installTargets) {
         this.relatedWorkshopMods = relatedWorkshopMods;
         this.steamCmdParameters = steamCmdParameters;
+        this.installTargets = installTargets;
+    }
+
+    public boolean isWorkshopJob() {
+        return relatedWorkshopMods != null;
+    }
+
+    /**
+     * Gets the IDs under which the items of the job are shown in SteamCMD progress, i.e. IDs of the workshop items
+     * or the app ID of the server.
+     */
+    public Set<Long> getItemIds() {
+        if (!isWorkshopJob()) {
+            return Set.of(Constants.SERVER_IDS.get(relatedServer));
+        }
+        return relatedWorkshopMods.stream()
+                .map(WorkshopMod::getId)
+                .collect(Collectors.toSet());
+    }
+
+    public void markItemFinished(long itemId) {
+        finishedItemIds.add(itemId);
+    }
+
+    public boolean isItemFinished(long itemId) {
+        return finishedItemIds.contains(itemId);
+    }
+
+    public void setItemErrorStatus(long itemId, ErrorStatus errorStatus) {
+        itemErrorStatuses.put(itemId, errorStatus);
+    }
+
+    /**
+     * Records a failed download of the item. A permanent failure settles the item right away, a transient one
+     * (e.g. a timeout or a rate limit) leaves it to be downloaded again until it failed the given number of times.
+     *
+     * @return true if the item is settled by the failure
+     */
+    public boolean recordItemFailure(long itemId, ErrorStatus errorStatus, int maxAttempts) {
+        int failureCount = itemFailureCounts.merge(itemId, 1, Integer::sum);
+        if (PERMANENT_ITEM_ERRORS.contains(errorStatus) || failureCount >= maxAttempts) {
+            setItemErrorStatus(itemId, errorStatus);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Items are settled once they are either downloaded or failed on their own, such items are not retried.
+     */
+    public boolean isItemSettled(long itemId) {
+        return finishedItemIds.contains(itemId) || itemErrorStatuses.containsKey(itemId);
+    }
+
+    public boolean hasUnsettledItems() {
+        return isWorkshopJob() && relatedWorkshopMods.stream().anyMatch(mod -> !isItemSettled(mod.getId()));
+    }
+
+    /**
+     * Gets the final status of the given workshop item. Items which failed on their own keep their error,
+     * other unfinished items share the error of the whole job.
+     */
+    public ErrorStatus getErrorStatusOf(long itemId) {
+        if (finishedItemIds.contains(itemId)) {
+            return null;
+        }
+        return itemErrorStatuses.getOrDefault(itemId, errorStatus);
     }
 }
@@ -0,0 +1,237 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * An entry in the SteamCMD executor queue. Workshop jobs of the same priority waiting for the same install dir are
+ * coalesced into a single batch, so SteamCMD is started and logged in only once for all of them. A workshop batch can
+ * be processed in chunks, the batch stays queued until all of its chunks are finished. After that, the result is
+ * split back to every caller based on the items their job contained.
+ * <p>
+ * Items can be cancelled while they're waiting in the batch. A chunk preempted by a more urgent job puts its
+ * unfinished items back to the front of the batch.
+ */
+class SteamCmdJobBatch {
+
+    private final List<Caller> callers = new ArrayList<>();
+    private final SteamCmdJobPriority priority;
+    private final SteamCmdJob serverJob;
+    private final Map<Long, WorkshopMod> remainingMods = new LinkedHashMap<>();
+    private final Set<SteamCmdInstallTarget> installTargets = new HashSet<>();
+    private final Set<Long> finishedItemIds = new HashSet<>();
+    private final Map<Long, ErrorStatus> itemErrorStatuses = new HashMap<>();
+    private ErrorStatus errorStatus;
+    private boolean serverJobTaken;
+    private int runningJobs;
+    private long waitingSinceNanos = System.nanoTime();
+
+    SteamCmdJobBatch(SteamCmdJob job, CompletableFuture<SteamCmdJob> future) {
+        priority = job.getPriority();
+        serverJob = job.isWorkshopJob() ? null : job;
+        callers.add(new Caller(job, future));
+        addJob(job);
+    }
+
+    SteamCmdJobPriority getPriority() {
+        return priority;
+    }
+
+    Set<SteamCmdInstallTarget> getInstallTargets() {
+        return installTargets;
+    }
+
+    long getWaitingSinceNanos() {
+        return waitingSinceNanos;
+    }
+
+    boolean canCoalesce(SteamCmdJob otherJob) {
+        return serverJob == null && otherJob.isWorkshopJob() && priority == otherJob.getPriority()
+                && getInstallDirs(installTargets).equals(getInstallDirs(otherJob.getInstallTargets()));
+    }
+
+    /**
+     * Merges the given job into this batch. Items which are still waiting in the batch are not downloaded twice,
+     * the caller is just notified once the batch finishes.
+     */
+    void coalesce(SteamCmdJob otherJob, CompletableFuture<SteamCmdJob> future) {
+        if (!canCoalesce(otherJob)) {
+            throw new IllegalArgumentException("Only workshop jobs with the same priority and install dir can be coalesced");
+        }
+        callers.add(new Caller(otherJob, future));
+        addJob(otherJob);
+    }
+
+    int getCallerCount() {
+        return callers.size();
+    }
+
+    /**
+     * Gets the items of all the callers' jobs which contain the given item.
+     */
+    Set<Long> getItemIdsOfJobsContaining(long itemId) {
+        Set<Long> itemIds = new HashSet<>();
+        for (Caller caller : callers) {
+            Set<Long> callerItemIds = caller.job().getItemIds();
+            if (callerItemIds.contains(itemId)) {
+                itemIds.addAll(callerItemIds);
+            }
+        }
+        return itemIds;
+    }
+
+    /**
+     * Cancels the given items which are still waiting in the batch, items already taken by a running job are left
+     * to the executor.
+     *
+     * @return IDs of the cancelled items
+     */
+    Set<Long> cancelWaitingItems(Set<Long> itemIds) {
+        if (serverJob != null) {
+            if (serverJobTaken || Collections.disjoint(serverJob.getItemIds(), itemIds)) {
+                return Set.of();
+            }
+            serverJobTaken = true;
+            serverJob.setErrorStatus(ErrorStatus.CANCELLED);
+            return serverJob.getItemIds();
+        }
+
+        Set<Long> cancelledItemIds = new HashSet<>();
+        for (Long itemId : itemIds) {
+            if (remainingMods.remove(itemId) != null) {
+                itemErrorStatuses.put(itemId, ErrorStatus.CANCELLED);
+                cancelledItemIds.add(itemId);
+            }
+        }
+        return cancelledItemIds;
+    }
+
+    boolean hasRemainingWork() {
+        return serverJob != null ? !serverJobTaken : !remainingMods.isEmpty();
+    }
+
+    /**
+     * Takes the next job to run from this batch.
+     *
+     * @param maxItems maximum number of workshop items in the job, non-positive value means no limit
+     */
+    SteamCmdJob takeNextJob(int maxItems) {
+        runningJobs++;
+        if (serverJob != null) {
+            serverJobTaken = true;
+            return serverJob;
+        }
+
+        List<WorkshopMod> chunk = new ArrayList<>();
+        Iterator<WorkshopMod> iterator = remainingMods.values().iterator();
+        while (iterator.hasNext() && (maxItems <= 0 || chunk.size() < maxItems)) {
+            chunk.add(iterator.next());
+            iterator.remove();
+        }
+
+        Path installDir = getInstallDirs(installTargets).iterator().next();
+        Set<Long> chunkAppIds = chunk.stream()
+                .map(SteamCmdInstallTarget::appIdOf)
+                .collect(toSet());
+        Set<SteamCmdInstallTarget> chunkTargets = installTargets.stream()
+                .filter(target -> chunkAppIds.contains(target.appId()))
+                .collect(toSet());
+        SteamCmdParameters parameters = new SteamCmdParameters.Builder()
+                .withInstallDir(installDir.toString())
+                .withLogin()
+                .withWorkshopItemsInstall(chunk, true)
+                .build();
+
+        SteamCmdJob job = new SteamCmdJob(chunk, parameters, chunkTargets);
+        job.setPriority(priority);
+        job.setStoredJobIds(callers.stream()
+                .flatMap(caller -> caller.job().getStoredJobIds().stream())
+                .collect(toSet()));
+        return job;
+    }
+
+    void onJobFinished(SteamCmdJob job) {
+        runningJobs--;
+        waitingSinceNanos = System.nanoTime();
+        finishedItemIds.addAll(job.getFinishedItemIds());
+        itemErrorStatuses.putAll(job.getItemErrorStatuses());
+        if (errorStatus == null) {
+            errorStatus = job.getErrorStatus();
+        }
+    }
+
+    /**
+     * Takes back a job which gave way to a more urgent one, its items which are not finished yet are taken first
+     * the next time.
+     */
+    void onJobPreempted(SteamCmdJob job) {
+        onJobFinished(job);
+        Map<Long, WorkshopMod> requeuedMods = new LinkedHashMap<>();
+        job.getRelatedWorkshopMods().stream()
+                .filter(mod -> !job.isItemSettled(mod.getId()))
+                .forEach(mod -> requeuedMods.put(mod.getId(), mod));
+        requeuedMods.putAll(remainingMods);
+        remainingMods.clear();
+        remainingMods.putAll(requeuedMods);
+    }
+
+    boolean isDone() {
+        return !hasRemainingWork() && runningJobs == 0;
+    }
+
+    void complete() {
+        for (Caller caller : callers) {
+            SteamCmdJob callerJob = caller.job();
+            if (callerJob != serverJob) {
+                copyResult(callerJob);
+            }
+            caller.future().complete(callerJob);
+        }
+    }
+
+    private void addJob(SteamCmdJob job) {
+        installTargets.addAll(job.getInstallTargets());
+        if (job.isWorkshopJob()) {
+            job.getRelatedWorkshopMods().forEach(mod -> remainingMods.putIfAbsent(mod.getId(), mod));
+        }
+    }
+
+    private void copyResult(SteamCmdJob callerJob) {
+        boolean allItemsFinished = true;
+        for (WorkshopMod mod : callerJob.getRelatedWorkshopMods()) {
+            if (finishedItemIds.contains(mod.getId())) {
+                callerJob.markItemFinished(mod.getId());
+                continue;
+            }
+            allItemsFinished = false;
+            ErrorStatus itemErrorStatus = itemErrorStatuses.get(mod.getId());
+            if (itemErrorStatus != null) {
+                callerJob.setItemErrorStatus(mod.getId(), itemErrorStatus);
+            }
+        }
+        // the batch might have failed on an item which is not related to this caller
+        callerJob.setErrorStatus(allItemsFinished ? null : errorStatus);
+    }
+
+    private static Set<Path> getInstallDirs(Set<SteamCmdInstallTarget> installTargets) {
+        return installTargets.stream()
+                .map(SteamCmdInstallTarget::installDir)
+                .collect(toSet());
+    }
+
+    private record Caller(SteamCmdJob job, CompletableFuture<SteamCmdJob> future) {
+    }
+}
@@ -0,0 +1,9 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import java.util.Set;
+
+/**
+ * Published when a SteamCMD job stops running on a worker, whether it finished, failed or gave way to another job.
+ */
+public record SteamCmdJobFinishedEvent(Set<Long> itemIds) {
+}
@@ -0,0 +1,11 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+/**
+ * Scheduling class of a SteamCMD job. Jobs are dispatched in the order of declaration, jobs of the same priority
+ * in the order they were queued.
+ */
+public enum SteamCmdJobPriority {
+    INTERACTIVE,
+    SERVER_UPDATE,
+    BACKGROUND
+}
@@ -0,0 +1,8 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+/**
+ * Published on the worker right before SteamCMD runs the job, so the files it's about to write to can be prepared.
+ * A workshop item which can't be prepared is given an error status by the listener and left out of the job.
+ */
+public record SteamCmdJobStartingEvent(SteamCmdJob job) {
+}
@@ -0,0 +1,94 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoChangedEvent;
+import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps queued and running SteamCMD jobs in the database, so they can be resumed after the manager is restarted.
+ * A job is stored when it's queued and deleted once it's done. Downloaded workshop items are marked as they finish
+ * in the stored jobs being run, so a resumed job doesn't download them again.
+ */
+@Service
+class SteamCmdJobStore {
+
+    private final PersistedSteamCmdJobRepository repository;
+    // jobs stored by this run of the manager, any other stored job was interrupted by a restart
+    private final Set<Long> ownJobIds = ConcurrentHashMap.newKeySet();
+    // stored jobs which are being worked on, by the workshop items the running SteamCMD jobs download
+    private final Map<Long, Set<Long>> runningJobIdsByItem = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SteamCmdJobStore(PersistedSteamCmdJobRepository repository) {
+        this.repository = repository;
+    }
+
+    public long save(SteamCmdJob job) {
+        PersistedSteamCmdJob persistedJob = new PersistedSteamCmdJob();
+        persistedJob.setRelatedServer(job.getRelatedServer());
+        persistedJob.setPriority(job.getPriority());
+        persistedJob.setCreatedAt(LocalDateTime.now());
+        if (job.isWorkshopJob()) {
+            for (WorkshopMod mod : job.getRelatedWorkshopMods()) {
+                persistedJob.getItems().put(mod.getId(), job.isItemFinished(mod.getId()));
+            }
+        }
+
+        long id = repository.save(persistedJob).getId();
+        ownJobIds.add(id);
+        return id;
+    }
+
+    public void delete(long id) {
+        repository.deleteById(id);
+        ownJobIds.remove(id);
+    }
+
+    /**
+     * Removes the jobs interrupted by the last shutdown of the manager from the store and returns them. Resuming
+     * such a job queues a new one, which is stored again.
+     */
+    public synchronized List<PersistedSteamCmdJob> takeInterruptedJobs(boolean workshopJobs) {
+        List<PersistedSteamCmdJob> interruptedJobs = repository.findAll().stream()
+                .filter(job -> !ownJobIds.contains(job.getId()))
+                .filter(job -> job.isWorkshopJob() == workshopJobs)
+                .toList();
+        repository.deleteAll(interruptedJobs);
+        return interruptedJobs;
+    }
+
+    @EventListener
+    public void onJobStarting(SteamCmdJobStartingEvent event) {
+        SteamCmdJob job = event.job();
+        // only workshop items are stored, a server job has nothing to mark
+        if (job.isWorkshopJob() && !job.getStoredJobIds().isEmpty()) {
+            job.getItemIds().forEach(itemId -> runningJobIdsByItem.put(itemId, job.getStoredJobIds()));
+        }
+    }
+
+    @EventListener
+    public void onJobFinished(SteamCmdJobFinishedEvent event) {
+        event.itemIds().forEach(runningJobIdsByItem::remove);
+    }
+
+    @EventListener
+    public void onItemInfoChanged(SteamCmdItemInfoChangedEvent event) {
+        if (event.itemInfo().status() != SteamCmdStatus.FINISHED) {
+            return;
+        }
+        // a queued job with the same item may be waiting for a newer version, it must still download it
+        Set<Long> runningJobIds = runningJobIdsByItem.get(event.itemInfo().itemId());
+        if (runningJobIds != null) {
+            repository.markItemFinished(runningJobIds, event.itemInfo().itemId());
+        }
+    }
+}
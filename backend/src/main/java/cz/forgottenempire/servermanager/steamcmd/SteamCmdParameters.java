@@ -1,12 +1,17 @@
 package cz.forgottenempire.servermanager.steamcmd;
 
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.workshop.WorkshopMod;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import jakarta.validation.constraints.NotNull;
 
 class SteamCmdParameters {
 
     private static final String STEAM_CREDENTIALS_PLACEHOLDER = "<{STEAM_CREDENTIALS_PLACEHOLDER}>";
+    private static final String WORKSHOP_DOWNLOAD_ITEM = "+workshop_download_item";
 
     private final List<String> parameters;
 
@@ -18,6 +23,52 @@ class SteamCmdParameters {
         return new ArrayList<>(parameters);
     }
 
+    /**
+     * Converts the parameters to commands for an interactive SteamCMD session. Login, session options and
+     * the final quit are left out, as these are handled by the session itself.
+     */
+    List<String> getSessionCommands() {
+        List<String> commands = new ArrayList<>();
+        for (String parameter : parameters) {
+            if (parameter.startsWith("+")) {
+                commands.add(parameter.substring(1));
+            } else if (!commands.isEmpty()) {
+                // arguments given as separate parameters, e.g. the path for force_install_dir
+                int lastIndex = commands.size() - 1;
+                commands.set(lastIndex, commands.get(lastIndex) + " " + quote(parameter));
+            }
+        }
+        commands.removeIf(command -> command.startsWith("login ") || command.startsWith("@") || command.equals("quit"));
+        return commands;
+    }
+
+    /**
+     * Creates a copy of the parameters without the downloads of the given workshop items, e.g. when retrying
+     * a job in which some of the items were already downloaded.
+     */
+    SteamCmdParameters withoutWorkshopItems(Set<Long> itemIds) {
+        SteamCmdParameters remainingParameters = new SteamCmdParameters();
+        for (String parameter : parameters) {
+            if (!isWorkshopItemInstall(parameter, itemIds)) {
+                remainingParameters.add(parameter);
+            }
+        }
+        return remainingParameters;
+    }
+
+    private static boolean isWorkshopItemInstall(String parameter, Set<Long> itemIds) {
+        if (!parameter.startsWith(WORKSHOP_DOWNLOAD_ITEM)) {
+            return false;
+        }
+        // +workshop_download_item <appId> <itemId> [validate]
+        String[] arguments = parameter.split(" ");
+        return arguments.length > 2 && itemIds.contains(Long.valueOf(arguments[2]));
+    }
+
+    private static String quote(String argument) {
+        return argument.contains(" ") ? "\"" + argument + "\"" : argument;
+    }
+
     private void add(String parameter) {
         parameters.add(parameter);
     }
@@ -69,7 +120,7 @@ class SteamCmdParameters {
 
         public Builder withWorkshopItemInstall(@NotNull Long appId, @NotNull Long itemId,
                 boolean validate) {
-            String installParameter = "+workshop_download_item " + appId + " " + itemId;
+            String installParameter = WORKSHOP_DOWNLOAD_ITEM + " " + appId + " " + itemId;
             if (validate) {
                 installParameter += " validate";
             }
@@ -77,6 +128,12 @@ class SteamCmdParameters {
             return this;
         }
 
+        public Builder withWorkshopItemsInstall(@NotNull Collection<WorkshopMod> workshopMods, boolean validate) {
+            workshopMods.forEach(mod -> withWorkshopItemInstall(
+                    Constants.GAME_IDS.get(mod.getServerType()), mod.getId(), validate));
+            return this;
+        }
+
         public SteamCmdParameters build() {
             parameters.add("+quit");
             return parameters;
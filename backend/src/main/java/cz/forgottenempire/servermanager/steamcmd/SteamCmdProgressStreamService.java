@@ -0,0 +1,164 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoChangedEvent;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams SteamCMD progress to the connected clients as server-sent events. A newly connected client receives
+ * a snapshot of all items first, then only the changes. A change of the item status is sent right away, progress
+ * updates within the same status are sent at most once per the configured interval for every item.
+ * <p>
+ * All the sending and throttling is done on a single thread, so clients always receive the snapshot before
+ * the following changes, and a slow client can't hold up the SteamCMD jobs publishing the changes. The throttling
+ * state is only ever touched from that thread. An item is forgotten once its settled state is sent.
+ */
+@Service
+@Slf4j
+class SteamCmdProgressStreamService {
+
+    static final String SNAPSHOT_EVENT = "snapshot";
+    static final String PROGRESS_EVENT = "progress";
+    private static final long HEARTBEAT_INTERVAL_SECONDS = 30;
+
+    private final SteamCmdItemInfoRepository itemInfoRepository;
+    private final long minUpdateIntervalNanos;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    // confined to the sender thread
+    private final Map<Long, SentUpdate> lastSentUpdates = new HashMap<>();
+    private final Map<Long, SteamCmdItemInfo> throttledUpdates = new LinkedHashMap<>();
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "steamcmd-progress-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public SteamCmdProgressStreamService(
+            SteamCmdItemInfoRepository itemInfoRepository,
+            @Value("${steamcmd.progress-stream.min-update-interval-ms:1000}") long minUpdateIntervalMillis
+    ) {
+        this.itemInfoRepository = itemInfoRepository;
+        this.minUpdateIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minUpdateIntervalMillis);
+
+        long flushIntervalMillis = Math.max(100, minUpdateIntervalMillis / 2);
+        sender.scheduleWithFixedDelay(this::sendThrottledUpdates,
+                flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        sender.scheduleWithFixedDelay(this::sendHeartbeat,
+                HEARTBEAT_INTERVAL_SECONDS, HEARTBEAT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public SseEmitter subscribe() {
+        // no timeout, the stream stays open until the client disconnects
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+
+        sender.execute(() -> {
+            SseEventBuilder snapshot = SseEmitter.event()
+                    .name(SNAPSHOT_EVENT)
+                    .data(itemInfoRepository.getAll(), MediaType.APPLICATION_JSON);
+            if (send(emitter, snapshot)) {
+                emitters.add(emitter);
+            }
+        });
+        return emitter;
+    }
+
+    @EventListener
+    public void onItemInfoChanged(SteamCmdItemInfoChangedEvent event) {
+        sender.execute(() -> handleChange(event.itemInfo()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        emitters.forEach(SseEmitter::complete);
+        emitters.clear();
+    }
+
+    private void handleChange(SteamCmdItemInfo itemInfo) {
+        long now = System.nanoTime();
+        SentUpdate lastSentUpdate = lastSentUpdates.get(itemInfo.itemId());
+        if (lastSentUpdate == null || lastSentUpdate.status() != itemInfo.status()
+                || now - lastSentUpdate.sentAtNanos() >= minUpdateIntervalNanos) {
+            throttledUpdates.remove(itemInfo.itemId());
+            broadcast(itemInfo, now);
+        } else {
+            // only the latest progress of the item is kept until it can be sent
+            throttledUpdates.put(itemInfo.itemId(), itemInfo);
+        }
+    }
+
+    private void sendThrottledUpdates() {
+        long now = System.nanoTime();
+        Iterator<SteamCmdItemInfo> iterator = throttledUpdates.values().iterator();
+        while (iterator.hasNext()) {
+            SteamCmdItemInfo itemInfo = iterator.next();
+            SentUpdate lastSentUpdate = lastSentUpdates.get(itemInfo.itemId());
+            if (lastSentUpdate == null || now - lastSentUpdate.sentAtNanos() >= minUpdateIntervalNanos) {
+                iterator.remove();
+                broadcast(itemInfo, now);
+            }
+        }
+    }
+
+    private void sendHeartbeat() {
+        // keeps proxies from closing idle streams and detects clients which disconnected without notice
+        emitters.forEach(emitter -> send(emitter, SseEmitter.event().comment("heartbeat")));
+    }
+
+    private void broadcast(SteamCmdItemInfo itemInfo, long now) {
+        if (itemInfo.status().isSettled()) {
+            // a settled status is never throttled, a later change of the item is a new download
+            lastSentUpdates.remove(itemInfo.itemId());
+        } else {
+            lastSentUpdates.put(itemInfo.itemId(), new SentUpdate(itemInfo.status(), now));
+        }
+        for (SseEmitter emitter : emitters) {
+            send(emitter, SseEmitter.event()
+                    .name(PROGRESS_EVENT)
+                    .data(itemInfo, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    private boolean send(SseEmitter emitter, SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException e) {
+            log.debug("Could not send SteamCMD progress, client disconnected", e);
+            emitters.remove(emitter);
+            emitter.completeWithError(e);
+            return false;
+        } catch (IllegalStateException e) {
+            // the emitter has already been completed
+            emitters.remove(emitter);
+            return false;
+        }
+    }
+
+    private record SentUpdate(SteamCmdItemInfo.SteamCmdStatus status, long sentAtNanos) {
+    }
+}
@@ -0,0 +1,10 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+record SteamCmdQueueStatsDto(
+        SteamCmdJobPriority priority,
+        long queuedJobs,
+        long dispatchedJobs,
+        double meanWaitSeconds,
+        double maxWaitSeconds
+) {
+}
@@ -3,56 +3,190 @@ package cz.forgottenempire.servermanager.steamcmd;
 import cz.forgottenempire.servermanager.common.Constants;
 import cz.forgottenempire.servermanager.common.PathsFactory;
 import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
 import cz.forgottenempire.servermanager.installation.ServerInstallation;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdDiskSpaceGuard.Reservation;
 import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
+import static java.util.stream.Collectors.toSet;
+
 @Service
 public class SteamCmdService {
 
     private final SteamCmdExecutor steamCmdExecutor;
+    private final SteamCmdDiskSpaceGuard diskSpaceGuard;
+    private final SteamCmdJobStore jobStore;
     private final PathsFactory pathsFactory;
+    private final long defaultServerSizeBytes;
+    private final long serverUpdateSizeBytes;
+    private final long defaultModSizeBytes;
 
     @Autowired
-    public SteamCmdService(SteamCmdExecutor steamCmdExecutor, PathsFactory pathsFactory) {
+    public SteamCmdService(
+            SteamCmdExecutor steamCmdExecutor,
+            SteamCmdDiskSpaceGuard diskSpaceGuard,
+            SteamCmdJobStore jobStore,
+            PathsFactory pathsFactory,
+            @Value("${steamcmd.disk.default-server-size-mb:10240}") long defaultServerSizeMegabytes,
+            @Value("${steamcmd.disk.server-update-size-mb:2048}") long serverUpdateSizeMegabytes,
+            @Value("${steamcmd.disk.default-mod-size-mb:500}") long defaultModSizeMegabytes
+    ) {
         this.steamCmdExecutor = steamCmdExecutor;
+        this.diskSpaceGuard = diskSpaceGuard;
+        this.jobStore = jobStore;
         this.pathsFactory = pathsFactory;
+        this.defaultServerSizeBytes = defaultServerSizeMegabytes * FileUtils.ONE_MB;
+        this.serverUpdateSizeBytes = serverUpdateSizeMegabytes * FileUtils.ONE_MB;
+        this.defaultModSizeBytes = defaultModSizeMegabytes * FileUtils.ONE_MB;
     }
 
+    /**
+     * @throws InsufficientDiskSpaceException if the server volume doesn't have room for the server
+     */
     public CompletableFuture<SteamCmdJob> installOrUpdateServer(ServerInstallation server) {
         ServerType serverType = server.getType();
         String betaBranchParameter = "-beta " + server.getBranch().toString().toLowerCase();
+        Path installDir = pathsFactory.getServerPath(serverType);
+        Long serverAppId = Constants.SERVER_IDS.get(serverType);
 
         SteamCmdParameters parameters = new SteamCmdParameters.Builder()
-                .withInstallDir(pathsFactory.getServerPath(serverType).toAbsolutePath().toString())
+                .withInstallDir(installDir.toAbsolutePath().toString())
                 .withLogin()
-                .withAppInstall(Constants.SERVER_IDS.get(serverType), true, betaBranchParameter)
+                .withAppInstall(serverAppId, true, betaBranchParameter)
                 .build();
-        return enqueueJob(new SteamCmdJob(serverType, parameters));
+        Set<SteamCmdInstallTarget> installTargets = Set.of(new SteamCmdInstallTarget(installDir, serverAppId));
+        SteamCmdJob job = new SteamCmdJob(serverType, parameters, installTargets);
+        job.setPriority(SteamCmdJobPriority.SERVER_UPDATE);
+        return enqueueJob(job, installDir, estimateServerSize(server));
     }
 
     public CompletableFuture<SteamCmdJob> installOrUpdateWorkshopMods(Collection<WorkshopMod> workshopMods) {
-        SteamCmdParameters.Builder parameters = new SteamCmdParameters.Builder()
-                .withInstallDir(pathsFactory.getModsBasePath().toAbsolutePath().toString())
-                .withLogin();
+        return installOrUpdateWorkshopMods(workshopMods, SteamCmdJobPriority.INTERACTIVE);
+    }
 
-        workshopMods.forEach(mod ->
-                parameters.withWorkshopItemInstall(
-                        Constants.GAME_IDS.get(mod.getServerType()),
-                        mod.getId(), true
-                )
-        );
+    /**
+     * @throws InsufficientDiskSpaceException if the mods volume doesn't have room for the mods
+     */
+    public CompletableFuture<SteamCmdJob> installOrUpdateWorkshopMods(Collection<WorkshopMod> workshopMods,
+            SteamCmdJobPriority priority) {
+        return installOrUpdateWorkshopMods(workshopMods, priority, Set.of());
+    }
+
+    /**
+     * Installs the mods, skipping the download of the given items, e.g. when resuming a job interrupted by a restart
+     * in which some of the items were already downloaded.
+     *
+     * @throws InsufficientDiskSpaceException if the mods volume doesn't have room for the mods
+     */
+    public CompletableFuture<SteamCmdJob> installOrUpdateWorkshopMods(Collection<WorkshopMod> workshopMods,
+            SteamCmdJobPriority priority, Set<Long> downloadedItemIds) {
+        return installOrUpdateWorkshopMods(workshopMods, priority, downloadedItemIds, 0);
+    }
+
+    /**
+     * Installs the mods like {@link #installOrUpdateWorkshopMods(Collection, SteamCmdJobPriority, Set)}, reserving
+     * additional space on the mods volume for the files written when preparing the job to run.
+     *
+     * @param preparationBytes space taken by the preparation, e.g. private copies of files shared between mods
+     * @throws InsufficientDiskSpaceException if the mods volume doesn't have room for the mods
+     */
+    public CompletableFuture<SteamCmdJob> installOrUpdateWorkshopMods(Collection<WorkshopMod> workshopMods,
+            SteamCmdJobPriority priority, Set<Long> downloadedItemIds, long preparationBytes) {
+        List<WorkshopMod> modsToDownload = workshopMods.stream()
+                .filter(mod -> !downloadedItemIds.contains(mod.getId()))
+                .toList();
+        Path installDir = pathsFactory.getModsBasePath();
+        SteamCmdParameters parameters = new SteamCmdParameters.Builder()
+                .withInstallDir(installDir.toAbsolutePath().toString())
+                .withLogin()
+                .withWorkshopItemsInstall(modsToDownload, true)
+                .build();
 
-        return enqueueJob(new SteamCmdJob(workshopMods, parameters.build()));
+        // all workshop items share the same install dir, but each game has its own content directory and manifest
+        Set<SteamCmdInstallTarget> installTargets = workshopMods.stream()
+                .map(mod -> new SteamCmdInstallTarget(installDir, SteamCmdInstallTarget.appIdOf(mod)))
+                .collect(toSet());
+        SteamCmdJob job = new SteamCmdJob(workshopMods, parameters, installTargets);
+        job.setPriority(priority);
+        workshopMods.stream()
+                .map(WorkshopMod::getId)
+                .filter(downloadedItemIds::contains)
+                .forEach(job::markItemFinished);
+        if (modsToDownload.isEmpty()) {
+            return CompletableFuture.completedFuture(job);
+        }
+        return enqueueJob(job, installDir, estimateModsSize(modsToDownload) + preparationBytes);
     }
 
-    private CompletableFuture<SteamCmdJob> enqueueJob(SteamCmdJob job) {
+    /**
+     * Takes the server jobs which were queued or running when the manager was shut down. The caller is expected to
+     * resume them.
+     */
+    public List<PersistedSteamCmdJob> takeInterruptedServerJobs() {
+        return jobStore.takeInterruptedJobs(false);
+    }
+
+    /**
+     * Takes the workshop jobs which were queued or running when the manager was shut down. The caller is expected to
+     * resume them, the items marked as finished are already downloaded.
+     */
+    public List<PersistedSteamCmdJob> takeInterruptedWorkshopJobs() {
+        return jobStore.takeInterruptedJobs(true);
+    }
+
+    private CompletableFuture<SteamCmdJob> enqueueJob(SteamCmdJob job, Path installDir, long requiredBytes) {
+        Reservation reservation = diskSpaceGuard.reserve(installDir, requiredBytes);
+        long storedJobId = jobStore.save(job);
+        job.setStoredJobIds(Set.of(storedJobId));
         CompletableFuture<SteamCmdJob> future = new CompletableFuture<>();
+        future.whenComplete((finishedJob, throwable) -> {
+            // once the job is done, its files are on the disk and accounted for in the free space
+            reservation.release();
+            // a job interrupted by shutdown stays stored to be resumed on the next start
+            if (finishedJob == null || finishedJob.getErrorStatus() != ErrorStatus.INTERRUPTED) {
+                jobStore.delete(storedJobId);
+            }
+        });
         steamCmdExecutor.processJob(job, future);
         return future;
     }
+
+    /**
+     * A new installation or a switch to another branch downloads the whole server, taking the size recorded by the
+     * last installation (walking the server files here would block the caller). An update stages only the changed
+     * depots, so it needs room for a bounded part of the server.
+     */
+    private long estimateServerSize(ServerInstallation server) {
+        long serverBytes = server.getFileSize() != null ? server.getFileSize() : defaultServerSizeBytes;
+        boolean fullDownload = server.getLastUpdatedAt() == null || server.getBranch() != server.getInstalledBranch();
+        return fullDownload ? serverBytes : Math.min(serverBytes, serverUpdateSizeBytes);
+    }
+
+    /**
+     * New mods take their full size. SteamCMD stages and commits the items one at a time, so the updates of installed
+     * mods need room only for the largest of them.
+     */
+    private long estimateModsSize(Collection<WorkshopMod> workshopMods) {
+        long newModsBytes = 0;
+        long largestUpdateBytes = 0;
+        for (WorkshopMod mod : workshopMods) {
+            long modBytes = mod.getFileSize() != null ? mod.getFileSize() : defaultModSizeBytes;
+            if (mod.getLastUpdated() == null) {
+                newModsBytes += modBytes;
+            } else {
+                largestUpdateBytes = Math.max(largestUpdateBytes, modBytes);
+            }
+        }
+        return newModsBytes + largestUpdateBytes;
+    }
 }
@@ -0,0 +1,221 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.ProcessFactory;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdOutputProcessor.OutputSink;
+import cz.forgottenempire.servermanager.util.SystemUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived, logged in SteamCMD process which receives commands on its standard input. SteamCMD shows
+ * the 'Steam>' prompt whenever it's ready for the next command, which is used to detect when a command is done.
+ * This saves the bootstrap, self-update check and login which would otherwise be done for every job.
+ * <p>
+ * A session which doesn't print anything for too long, e.g. a login waiting for a Steam Guard code, is killed.
+ */
+@Slf4j
+class SteamCmdSession implements Closeable {
+
+    static final String PROMPT = "Steam>";
+    private static final long QUIT_TIMEOUT_SECONDS = 10;
+
+    private final Process process;
+    private final Writer commandWriter;
+    private final String authString;
+    private final long outputTimeoutNanos;
+    private final BlockingQueue<OutputEvent> output = new LinkedBlockingQueue<>();
+    private volatile boolean alive = true;
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    private SteamCmdSession(Process process, String authString, Duration outputTimeout, String name) {
+        this.process = process;
+        this.authString = authString;
+        outputTimeoutNanos = outputTimeout.toNanos();
+        commandWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+
+        Thread readerThread = new Thread(
+                () -> readOutput(new BufferedReader(new InputStreamReader(process.getInputStream()))), name);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Starts a new session and waits until SteamCMD is logged in and ready for commands. Output of the startup
+     * (including the login result) is passed to the given sink. The startup can be stopped through the worker.
+     *
+     * @param loginTimeout  time the startup and login may go without printing anything
+     * @param outputTimeout time a command may run without printing anything
+     */
+    static SteamCmdSession start(ProcessFactory processFactory, File steamCmdFile, SteamCmdWorker worker,
+            String authString, OutputSink outputSink, Duration loginTimeout, Duration outputTimeout)
+            throws IOException, InterruptedException {
+        List<String> parameters = List.of(
+                "+@NoPromptForPassword 1",
+                // a failed command must not end the whole session
+                "+@ShutdownOnFailedCommand 0",
+                "+login " + authString
+        );
+        Process process = processFactory.startInteractiveProcess(steamCmdFile, parameters, worker.getEnvironment());
+        log.info("Started SteamCMD session for {}", worker);
+
+        SteamCmdSession session = new SteamCmdSession(process, authString, outputTimeout,
+                "steamcmd-session-" + worker.getId());
+        worker.attachProcess(process);
+        try {
+            // a session which didn't get ready is not alive, the job is retried in a new one
+            session.awaitPrompt(outputSink, loginTimeout.toNanos());
+        } finally {
+            worker.detachProcess();
+        }
+        return session;
+    }
+
+    /**
+     * Sends a command to the session and passes its output to the sink until SteamCMD is ready for the next command.
+     *
+     * @return false if the session ended before the command was finished
+     */
+    boolean runCommand(String command, OutputSink outputSink) throws IOException, InterruptedException {
+        if (!alive) {
+            return false;
+        }
+
+        lastUsedNanos = System.nanoTime();
+        commandWriter.write(command);
+        commandWriter.write(System.lineSeparator());
+        commandWriter.flush();
+        boolean finished = awaitPrompt(outputSink, outputTimeoutNanos);
+        lastUsedNanos = System.nanoTime();
+        return finished;
+    }
+
+    Process getProcess() {
+        return process;
+    }
+
+    boolean isAlive() {
+        return alive && process.isAlive();
+    }
+
+    boolean isLoggedInAs(String authString) {
+        return Objects.equals(this.authString, authString);
+    }
+
+    long getIdleTimeNanos() {
+        return System.nanoTime() - lastUsedNanos;
+    }
+
+    @Override
+    public void close() {
+        if (process.isAlive()) {
+            try {
+                commandWriter.write("quit");
+                commandWriter.write(System.lineSeparator());
+                commandWriter.flush();
+                if (!process.waitFor(QUIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    SystemUtils.destroyProcessTree(process);
+                }
+            } catch (IOException e) {
+                SystemUtils.destroyProcessTree(process);
+            } catch (InterruptedException e) {
+                SystemUtils.destroyProcessTree(process);
+                Thread.currentThread().interrupt();
+            }
+        }
+        alive = false;
+        log.info("SteamCMD session closed");
+    }
+
+    /**
+     * @param timeoutNanos time to wait for each line of the output, the session is killed once it runs out
+     */
+    private boolean awaitPrompt(OutputSink outputSink, long timeoutNanos) throws InterruptedException {
+        while (true) {
+            OutputEvent event = output.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+            if (event == null) {
+                log.warn("SteamCMD session printed nothing for {} seconds, killing it",
+                        TimeUnit.NANOSECONDS.toSeconds(timeoutNanos));
+                alive = false;
+                SystemUtils.destroyProcessTree(process);
+                return false;
+            }
+            switch (event.type()) {
+                case LINE -> outputSink.accept(event.line());
+                case PROMPT -> {
+                    return true;
+                }
+                case END_OF_OUTPUT -> {
+                    // keep the marker for any following reads
+                    output.add(event);
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void readOutput(Reader reader) {
+        StringBuilder buffer = new StringBuilder();
+        try (reader) {
+            int character;
+            while ((character = reader.read()) != -1) {
+                if (character == '\n' || character == '\r') {
+                    emitLine(buffer);
+                    continue;
+                }
+
+                buffer.append((char) character);
+                // the prompt is not followed by a line break, SteamCMD waits for input right after it
+                if (buffer.length() == PROMPT.length() && PROMPT.contentEquals(buffer) && !reader.ready()) {
+                    output.add(OutputEvent.PROMPT_EVENT);
+                    buffer.setLength(0);
+                }
+            }
+            emitLine(buffer);
+        } catch (IOException e) {
+            log.debug("Reading SteamCMD session output failed", e);
+        } finally {
+            alive = false;
+            output.add(OutputEvent.END_OF_OUTPUT_EVENT);
+        }
+    }
+
+    private void emitLine(StringBuilder buffer) {
+        String line = buffer.toString();
+        buffer.setLength(0);
+        if (line.startsWith(PROMPT)) {
+            // prompt followed by the echo of the entered command
+            output.add(OutputEvent.PROMPT_EVENT);
+            line = line.substring(PROMPT.length());
+        }
+        if (!line.isBlank()) {
+            output.add(new OutputEvent(OutputEvent.Type.LINE, line));
+        }
+    }
+
+    private record OutputEvent(Type type, String line) {
+
+        static final OutputEvent PROMPT_EVENT = new OutputEvent(Type.PROMPT, null);
+        static final OutputEvent END_OF_OUTPUT_EVENT = new OutputEvent(Type.END_OF_OUTPUT, null);
+
+        enum Type {
+            LINE,
+            PROMPT,
+            END_OF_OUTPUT
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import java.util.List;
+
+record SteamCmdThroughputDto(
+        double bytesPerSecond,
+        int stalledItems,
+        List<SteamCmdItemThroughputDto> items
+) {
+}
@@ -0,0 +1,186 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Computes download throughput, ETA and stalls of running SteamCMD items from their progress updates.
+ * The throughput is smoothed by an exponentially weighted moving average with a time-based weight, so irregular
+ * intervals between the progress lines don't skew it. When the bytes stop moving, the throughput decays towards zero
+ * and the item is reported as stalled once no progress was made for the configured time.
+ * <p>
+ * Only progress lines carrying byte counts (i.e. server updates) give a throughput, workshop items report
+ * their size only once downloaded. Items without byte counts have no ETA and are never reported as stalled, there is
+ * no progress to tell a stall from a long download.
+ */
+@Component
+@Slf4j
+class SteamCmdThroughputTracker {
+
+    private static final double SMOOTHING_WINDOW_SECONDS = 10;
+
+    private final LongSupplier nanoTime;
+    private final long stallThresholdNanos;
+    private final Map<Long, ItemThroughput> items = new LinkedHashMap<>();
+    private final Counter stallCounter;
+
+    @Autowired
+    public SteamCmdThroughputTracker(
+            @Value("${steamcmd.stall-threshold-seconds:120}") long stallThresholdSeconds,
+            MeterRegistry meterRegistry
+    ) {
+        this(stallThresholdSeconds, meterRegistry, System::nanoTime);
+    }
+
+    SteamCmdThroughputTracker(long stallThresholdSeconds, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.stallThresholdNanos = TimeUnit.SECONDS.toNanos(stallThresholdSeconds);
+
+        Gauge.builder("steamcmd.download.throughput", this, tracker -> tracker.getThroughput().bytesPerSecond())
+                .description("Smoothed throughput of all running SteamCMD downloads")
+                .baseUnit("bytes/s")
+                .register(meterRegistry);
+        Gauge.builder("steamcmd.download.stalled", this, tracker -> tracker.getThroughput().stalledItems())
+                .description("Running SteamCMD items without any progress for longer than the stall threshold")
+                .register(meterRegistry);
+        stallCounter = Counter.builder("steamcmd.download.stalls")
+                .description("Number of times a SteamCMD item stopped making progress")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public synchronized void onItemInfoChanged(SteamCmdItemInfoChangedEvent event) {
+        SteamCmdItemInfo itemInfo = event.itemInfo();
+        if (!isRunning(itemInfo.status())) {
+            items.remove(itemInfo.itemId());
+            return;
+        }
+
+        long now = nanoTime.getAsLong();
+        ItemThroughput item = items.get(itemInfo.itemId());
+        if (item == null || item.status != itemInfo.status() || itemInfo.bytesFinished() < item.bytesFinished) {
+            // every phase (preallocating, downloading, verifying...) counts its bytes from the start
+            items.put(itemInfo.itemId(), new ItemThroughput(itemInfo, now));
+            return;
+        }
+        item.update(itemInfo, now);
+    }
+
+    /**
+     * Items of a job which failed or was interrupted never get a final status, they are dropped once the job is done.
+     */
+    @EventListener
+    public synchronized void onJobFinished(SteamCmdJobFinishedEvent event) {
+        items.keySet().removeAll(event.itemIds());
+    }
+
+    public synchronized SteamCmdThroughputDto getThroughput() {
+        long now = nanoTime.getAsLong();
+        double totalBytesPerSecond = 0;
+        int stalledItems = 0;
+        List<SteamCmdItemThroughputDto> itemDtos = new ArrayList<>(items.size());
+        for (Map.Entry<Long, ItemThroughput> entry : items.entrySet()) {
+            SteamCmdItemThroughputDto itemDto = entry.getValue().toDto(entry.getKey(), now);
+            totalBytesPerSecond += itemDto.bytesPerSecond();
+            if (itemDto.stalled()) {
+                stalledItems++;
+            }
+            itemDtos.add(itemDto);
+        }
+        return new SteamCmdThroughputDto(totalBytesPerSecond, stalledItems, itemDtos);
+    }
+
+    @Scheduled(fixedDelay = 10000)
+    public synchronized void detectStalls() {
+        long now = nanoTime.getAsLong();
+        items.forEach((itemId, item) -> {
+            if (!item.stallReported && item.isStalled(now)) {
+                item.stallReported = true;
+                stallCounter.increment();
+                log.warn("SteamCMD item {} has made no progress for {} s ({}, {} / {} bytes)", itemId,
+                        TimeUnit.NANOSECONDS.toSeconds(now - item.lastProgressNanos), item.status,
+                        item.bytesFinished, item.bytesTotal);
+            }
+        });
+    }
+
+    private static boolean isRunning(SteamCmdStatus status) {
+        return status != SteamCmdStatus.IN_QUEUE && status != SteamCmdStatus.FINISHED
+                && status != SteamCmdStatus.CANCELLED;
+    }
+
+    private class ItemThroughput {
+
+        private final SteamCmdStatus status;
+        private long bytesFinished;
+        private long bytesTotal;
+        private double bytesPerSecond;
+        private long lastUpdateNanos;
+        private long lastProgressNanos;
+        private boolean stallReported;
+
+        private ItemThroughput(SteamCmdItemInfo itemInfo, long now) {
+            status = itemInfo.status();
+            bytesFinished = itemInfo.bytesFinished();
+            bytesTotal = itemInfo.bytesTotal();
+            lastUpdateNanos = now;
+            lastProgressNanos = now;
+        }
+
+        private void update(SteamCmdItemInfo itemInfo, long now) {
+            bytesTotal = itemInfo.bytesTotal();
+            long bytesDelta = itemInfo.bytesFinished() - bytesFinished;
+            if (bytesDelta == 0) {
+                return;
+            }
+
+            double elapsedSeconds = Math.max((now - lastUpdateNanos) / 1e9, 1e-3);
+            double weight = 1 - Math.exp(-elapsedSeconds / SMOOTHING_WINDOW_SECONDS);
+            bytesPerSecond += weight * (bytesDelta / elapsedSeconds - bytesPerSecond);
+            bytesFinished = itemInfo.bytesFinished();
+            lastUpdateNanos = now;
+            lastProgressNanos = now;
+            if (stallReported) {
+                stallReported = false;
+                log.info("SteamCMD item download resumed ({}, {} / {} bytes)", status, bytesFinished, bytesTotal);
+            }
+        }
+
+        private double getCurrentBytesPerSecond(long now) {
+            // without any progress since the last update, the rate decays as if zero bytes were reported
+            double secondsSinceUpdate = (now - lastUpdateNanos) / 1e9;
+            return bytesPerSecond * Math.exp(-secondsSinceUpdate / SMOOTHING_WINDOW_SECONDS);
+        }
+
+        private boolean isStalled(long now) {
+            return bytesTotal > 0 && now - lastProgressNanos >= stallThresholdNanos;
+        }
+
+        private SteamCmdItemThroughputDto toDto(long itemId, long now) {
+            double currentBytesPerSecond = getCurrentBytesPerSecond(now);
+            Long etaSeconds = null;
+            if (currentBytesPerSecond >= 1 && bytesTotal > bytesFinished) {
+                etaSeconds = Math.round((bytesTotal - bytesFinished) / currentBytesPerSecond);
+            }
+            return new SteamCmdItemThroughputDto(itemId, status, bytesFinished, bytesTotal, currentBytesPerSecond,
+                    etaSeconds, TimeUnit.NANOSECONDS.toSeconds(now - lastProgressNanos), isStalled(now));
+        }
+    }
+}
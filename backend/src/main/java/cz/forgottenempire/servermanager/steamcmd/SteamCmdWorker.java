@@ -0,0 +1,120 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.util.SystemUtils;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A single SteamCMD worker slot. Every worker (except the primary one) uses its own home directory so SteamCMD
+ * instances running at the same time don't overwrite each other's config and login state.
+ * <p>
+ * The SteamCMD process running the worker's job can be stopped from other threads, e.g. when the job is cancelled.
+ * A stop requested before the process is attached stops it right as it's attached.
+ */
+class SteamCmdWorker {
+
+    private final int id;
+    @Nullable
+    private final File homeDirectory;
+    @Nullable
+    private SteamCmdSession session;
+    @Nullable
+    private Process activeProcess;
+    private boolean stopRequested;
+    private volatile boolean preemptionRequested;
+
+    SteamCmdWorker(int id, @Nullable File homeDirectory) {
+        this.id = id;
+        this.homeDirectory = homeDirectory;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    @Nullable
+    SteamCmdSession getSession() {
+        return session;
+    }
+
+    void setSession(@Nullable SteamCmdSession session) {
+        this.session = session;
+    }
+
+    synchronized void attachProcess(Process process) {
+        activeProcess = process;
+        if (stopRequested) {
+            SystemUtils.destroyProcessTree(process);
+        }
+    }
+
+    synchronized void detachProcess() {
+        activeProcess = null;
+    }
+
+    /**
+     * Stops the process of the current job and wakes up the worker if it's waiting for the next attempt.
+     */
+    synchronized void requestStop() {
+        stopRequested = true;
+        if (activeProcess != null) {
+            SystemUtils.destroyProcessTree(activeProcess);
+        }
+        notifyAll();
+    }
+
+    synchronized boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    synchronized void clearStopRequest() {
+        stopRequested = false;
+    }
+
+    /**
+     * Waits before the next attempt of the job. The wait is cut short if the job is stopped or preempted meanwhile.
+     */
+    synchronized void awaitRetry(Duration delay) throws InterruptedException {
+        long deadline = System.nanoTime() + delay.toNanos();
+        long remainingNanos = delay.toNanos();
+        while (!stopRequested && !preemptionRequested && remainingNanos > 0) {
+            wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+            remainingNanos = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * The job of the worker gives way to more urgent jobs at its next safe point, i.e. once the item being
+     * downloaded is finished.
+     */
+    synchronized void requestPreemption() {
+        preemptionRequested = true;
+        notifyAll();
+    }
+
+    boolean isPreemptionRequested() {
+        return preemptionRequested;
+    }
+
+    void clearPreemptionRequest() {
+        preemptionRequested = false;
+    }
+
+    Map<String, String> getEnvironment() {
+        if (homeDirectory == null) {
+            // the primary worker uses the default home directory, reusing the existing SteamCMD login
+            return Map.of();
+        }
+        homeDirectory.mkdirs();
+        return Map.of("HOME", homeDirectory.getAbsolutePath());
+    }
+
+    @Override
+    public String toString() {
+        return "SteamCmdWorker#" + id;
+    }
+}
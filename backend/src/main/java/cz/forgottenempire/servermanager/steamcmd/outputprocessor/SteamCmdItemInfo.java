@@ -13,6 +13,14 @@ public record SteamCmdItemInfo(
         VERIFYING,
         DOWNLOADING,
         PREALLOCATING,
-        COMMITTING
+        COMMITTING,
+        CANCELLED;
+
+        /**
+         * @return true if nothing more happens with the item, it was either downloaded or cancelled
+         */
+        public boolean isSettled() {
+            return this == FINISHED || this == CANCELLED;
+        }
     }
 }
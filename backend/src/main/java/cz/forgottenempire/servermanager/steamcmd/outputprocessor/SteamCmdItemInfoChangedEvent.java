@@ -0,0 +1,7 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+/**
+ * Published whenever the progress information about a SteamCMD item changes.
+ */
+public record SteamCmdItemInfoChangedEvent(SteamCmdItemInfo itemInfo) {
+}
@@ -1,17 +1,36 @@
 package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Keeps the current progress of the items SteamCMD is working on. Settled items are dropped once their final state
+ * is published, so the repository only holds the items which are still queued or downloading.
+ */
 @Repository
 public class SteamCmdItemInfoRepository {
     private final Map<Long, SteamCmdItemInfo> itemInfos = new ConcurrentHashMap<>();
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public SteamCmdItemInfoRepository(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
 
     public void store(long id, SteamCmdItemInfo itemInfo) {
-        itemInfos.put(id, itemInfo);
+        SteamCmdItemInfo previousItemInfo = itemInfos.put(id, itemInfo);
+        if (!itemInfo.equals(previousItemInfo)) {
+            eventPublisher.publishEvent(new SteamCmdItemInfoChangedEvent(itemInfo));
+        }
+        if (itemInfo.status().isSettled()) {
+            // unless the item was queued again meanwhile
+            itemInfos.remove(id, itemInfo);
+        }
     }
 
     public Map<Long, SteamCmdItemInfo> getAll() {
@@ -0,0 +1,223 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes SteamCMD output into the SteamCMD log file on a dedicated thread. Lines are queued by the jobs and written
+ * in groups, the file is flushed once enough lines have been written or once the oldest unflushed line gets too old.
+ * When the disk can't keep up and the queue is full, jobs wait for a short time and then the line is dropped,
+ * so a slow log never slows down the SteamCMD output processing.
+ */
+@Component
+@Slf4j
+public class SteamCmdLogWriter {
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("[HH:mm:ss]").withZone(ZoneId.systemDefault());
+    private static final String SEPARATOR = System.lineSeparator();
+
+    private final PathsFactory pathsFactory;
+    private final BlockingQueue<String> queue;
+    private final int flushLines;
+    private final long flushIntervalNanos;
+    private final long offerTimeoutMillis;
+    private final Counter droppedLines;
+    private final Timer flushTimer;
+    private final Thread writerThread;
+
+    private volatile CachedTimestamp cachedTimestamp = new CachedTimestamp(-1, "");
+    private volatile boolean running = true;
+    private Writer fileWriter;
+
+    @Autowired
+    public SteamCmdLogWriter(
+            PathsFactory pathsFactory,
+            MeterRegistry meterRegistry,
+            @Value("${steamcmd.log.queue-capacity:10000}") int queueCapacity,
+            @Value("${steamcmd.log.flush-lines:500}") int flushLines,
+            @Value("${steamcmd.log.flush-interval-ms:1000}") long flushIntervalMillis,
+            @Value("${steamcmd.log.offer-timeout-ms:50}") long offerTimeoutMillis
+    ) {
+        this.pathsFactory = pathsFactory;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushLines = flushLines;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+
+        droppedLines = Counter.builder("steamcmd.log.lines.dropped")
+                .description("SteamCMD output lines not written into the log because the log writer fell behind")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("steamcmd.log.flush")
+                .description("Time spent flushing a group of lines into the SteamCMD log")
+                .register(meterRegistry);
+        Gauge.builder("steamcmd.log.queue.size", queue, BlockingQueue::size)
+                .description("SteamCMD output lines waiting to be written into the log")
+                .register(meterRegistry);
+
+        writerThread = new Thread(this::writeLines, "steamcmd-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the line to be written into the log with the current time. Waits for a short time when the queue is full
+     * and drops the line if there is still no space.
+     */
+    public void write(String line) {
+        enqueue(getTimestamp() + " " + line + SEPARATOR);
+    }
+
+    /**
+     * Queues an empty space between outputs of different jobs.
+     */
+    public void writeSeparator() {
+        enqueue(SEPARATOR + SEPARATOR);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void enqueue(String entry) {
+        try {
+            if (!queue.offer(entry, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                droppedLines.increment();
+            }
+        } catch (InterruptedException e) {
+            droppedLines.increment();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String getTimestamp() {
+        // the lines come in bursts, the time is formatted only once per second
+        long epochSecond = System.currentTimeMillis() / 1000;
+        CachedTimestamp timestamp = cachedTimestamp;
+        if (timestamp.epochSecond() != epochSecond) {
+            timestamp = new CachedTimestamp(epochSecond, TIME_FORMAT.format(Instant.ofEpochSecond(epochSecond)));
+            cachedTimestamp = timestamp;
+        }
+        return timestamp.formatted();
+    }
+
+    private void writeLines() {
+        List<String> entries = new ArrayList<>(flushLines);
+        int unflushedLines = 0;
+        long oldestUnflushedNanos = 0;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                String entry = unflushedLines == 0
+                        ? queue.take()
+                        : queue.poll(flushIntervalNanos - (System.nanoTime() - oldestUnflushedNanos), TimeUnit.NANOSECONDS);
+                if (entry != null) {
+                    if (unflushedLines == 0) {
+                        oldestUnflushedNanos = System.nanoTime();
+                    }
+                    entries.add(entry);
+                    queue.drainTo(entries, flushLines - entries.size());
+                    writeEntries(entries);
+                    unflushedLines += entries.size();
+                    entries.clear();
+                }
+            } catch (InterruptedException e) {
+                // shutting down, write whatever is left in the queue
+                queue.drainTo(entries);
+                writeEntries(entries);
+                unflushedLines += entries.size();
+                entries.clear();
+            }
+
+            if (unflushedLines > 0 && (unflushedLines >= flushLines || !running
+                    || System.nanoTime() - oldestUnflushedNanos >= flushIntervalNanos)) {
+                flush();
+                unflushedLines = 0;
+            }
+        }
+        closeFileWriter();
+    }
+
+    private void writeEntries(List<String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            Writer writer = getFileWriter();
+            for (String entry : entries) {
+                writer.write(entry);
+            }
+        } catch (IOException e) {
+            log.warn("Could not write into SteamCMD log", e);
+            droppedLines.increment(entries.size());
+            closeFileWriter();
+        }
+    }
+
+    private void flush() {
+        if (fileWriter == null) {
+            return;
+        }
+        flushTimer.record(() -> {
+            try {
+                fileWriter.flush();
+            } catch (IOException e) {
+                log.warn("Could not flush SteamCMD log", e);
+                closeFileWriter();
+            }
+        });
+    }
+
+    private Writer getFileWriter() throws IOException {
+        File logFile = pathsFactory.getSteamCmdLogFile();
+        if (fileWriter != null && !logFile.exists()) {
+            // the log has been deleted or rotated in the meantime
+            closeFileWriter();
+        }
+        if (fileWriter == null) {
+            logFile.getParentFile().mkdirs();
+            fileWriter = new BufferedWriter(new FileWriter(logFile, true));
+        }
+        return fileWriter;
+    }
+
+    private void closeFileWriter() {
+        if (fileWriter == null) {
+            return;
+        }
+        try {
+            fileWriter.close();
+        } catch (IOException e) {
+            log.debug("Could not close SteamCMD log", e);
+        }
+        fileWriter = null;
+    }
+
+    private record CachedTimestamp(long epochSecond, String formatted) {
+    }
+}
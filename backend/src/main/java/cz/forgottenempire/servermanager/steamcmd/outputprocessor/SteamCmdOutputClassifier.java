@@ -0,0 +1,137 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Detects SteamCMD failures while the output is being streamed. SteamCMD doesn't provide the user with any proper
+ * exit values or standard format for error messages, so the lines are checked for the known forms of SteamCMD
+ * failures. Other lines mentioning errors are not failures, e.g. SteamCMD prints 'KeyValues Error' lines in the middle
+ * of successful downloads. The first error line determines the result, so the job can be aborted as soon as it
+ * appears. Only a bounded tail of the output is kept for logging the context of the error.
+ */
+public class SteamCmdOutputClassifier {
+
+    public static final int DEFAULT_TAIL_SIZE = 200;
+
+    private static final List<String> FAILURE_MARKERS = List.of(
+            // e.g. 'ERROR! Download item 450814997 failed (Timeout).' or 'ERROR! Not logged on.'
+            "error!",
+            // e.g. 'Logging in user 'user' to Steam Public...FAILED (Invalid Password)'
+            "failed (",
+            "login failure",
+            "failed login"
+    );
+    private static final List<String> IGNORED_LINES = List.of(
+            // Issue #69 missing steamservice.so and libSDL3.so.0 caused the job to be marked as failed
+            "cannot open shared object file",
+            "warning"
+    );
+    // e.g. 'ERROR! Download item 450814997 failed (Timeout).'
+    private static final Pattern FAILED_ITEM_PATTERN = Pattern.compile("download item (\\d+) failed");
+    private static final List<String> LOGIN_RELATED_ERRORS = List.of(
+            "login", "expired", "account logon denied", "two-factor code mismatch", "invalid password");
+
+    private final int tailSize;
+    private final Deque<String> tail;
+    private String errorLine;
+    private ErrorStatus errorStatus;
+    private Long failedItemId;
+
+    public SteamCmdOutputClassifier() {
+        this(DEFAULT_TAIL_SIZE);
+    }
+
+    public SteamCmdOutputClassifier(int tailSize) {
+        this.tailSize = tailSize;
+        tail = new ArrayDeque<>(tailSize);
+    }
+
+    public void accept(String line) {
+        appendToTail(line);
+        if (hasFailed()) {
+            return;
+        }
+
+        String normalizedLine = removeParametersFromOutputLine(line.toLowerCase());
+        if (isErrorLine(normalizedLine)) {
+            errorLine = normalizedLine;
+            errorStatus = classify(normalizedLine);
+            failedItemId = parseFailedItemId(normalizedLine);
+        }
+    }
+
+    public boolean hasFailed() {
+        return errorStatus != null;
+    }
+
+    public ErrorStatus getErrorStatus() {
+        return errorStatus;
+    }
+
+    public String getErrorLine() {
+        return errorLine;
+    }
+
+    /**
+     * @return ID of the workshop item the error is related to, or null if the error affects the whole job
+     */
+    public Long getFailedItemId() {
+        return failedItemId;
+    }
+
+    public String getTail() {
+        return String.join(System.lineSeparator(), tail);
+    }
+
+    private void appendToTail(String line) {
+        if (tail.size() == tailSize) {
+            tail.removeFirst();
+        }
+        tail.addLast(line);
+    }
+
+    private static boolean isErrorLine(String line) {
+        return FAILURE_MARKERS.stream().anyMatch(line::contains)
+                && IGNORED_LINES.stream().noneMatch(line::contains);
+    }
+
+    private static ErrorStatus classify(String errorLine) {
+        if (errorLine.contains("rate limit exceeded")) {
+            return ErrorStatus.RATE_LIMIT;
+        }
+        if (errorLine.contains("i/o operation") || errorLine.contains("failed to write file")) {
+            return ErrorStatus.IO;
+        }
+        if (errorLine.contains("no match")) {
+            return ErrorStatus.NO_MATCH;
+        }
+        if (errorLine.contains("no subscription")) {
+            return ErrorStatus.NO_SUBSCRIPTION;
+        }
+        if (LOGIN_RELATED_ERRORS.stream().anyMatch(errorLine::contains)) {
+            return ErrorStatus.WRONG_AUTH;
+        }
+        if (errorLine.contains("timeout")) {
+            return ErrorStatus.TIMEOUT;
+        }
+        return ErrorStatus.GENERIC;
+    }
+
+    private static Long parseFailedItemId(String errorLine) {
+        Matcher matcher = FAILED_ITEM_PATTERN.matcher(errorLine);
+        return matcher.find() ? Long.valueOf(matcher.group(1)) : null;
+    }
+
+    private static String removeParametersFromOutputLine(String line) {
+        // sessions run with the option disabled, so a failed command doesn't end the session
+        return line.replace("\"@shutdownonfailedcommand\" = \"1\"", "")
+                .replace("\"@shutdownonfailedcommand\" = \"0\"", "")
+                .replace("\"@nopromptforpassword\" = \"1\"", "");
+    }
+}
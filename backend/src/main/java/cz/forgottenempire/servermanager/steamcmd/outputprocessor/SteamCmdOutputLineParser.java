@@ -0,0 +1,223 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/**
+ * Parses progress information from SteamCMD output lines. The lines are matched in a single pass directly on the
+ * original line, without lower-casing, splitting or regular expressions, so lines which don't carry any progress
+ * information (the vast majority of the output) are skipped without allocating anything.
+ */
+@Component
+@Slf4j
+public class SteamCmdOutputLineParser {
+
+    private static final String DOWNLOADING_ITEM = "downloading item";
+    private static final String DOWNLOADED_ITEM = "success. downloaded item";
+    private static final String APP_FULLY_INSTALLED = "success! app";
+    private static final String UPDATE_STATE = "update state (0x";
+    private static final String BYTES_SUFFIX = " bytes)";
+
+    /**
+     * Parses the line and passes any progress information found to the consumer. SteamCMD sometimes prints the start
+     * of an item download without a line break after the previous line, such line can produce two results.
+     */
+    public void parse(String line, SteamCmdJob job, Consumer<SteamCmdItemInfo> consumer) {
+        int start = skipWhitespace(line, 0);
+        int end = line.length();
+        if (!startsWithIgnoreCase(line, start, end, DOWNLOADING_ITEM)) {
+            int embeddedDownloadStart = indexOfIgnoreCase(line, DOWNLOADING_ITEM, start, end);
+            if (embeddedDownloadStart >= 0) {
+                parseSegment(line, start, embeddedDownloadStart, job, consumer);
+                parseSegment(line, embeddedDownloadStart, end, job, consumer);
+                return;
+            }
+        }
+        parseSegment(line, start, end, job, consumer);
+    }
+
+    private void parseSegment(String line, int from, int to, SteamCmdJob job, Consumer<SteamCmdItemInfo> consumer) {
+        SteamCmdItemInfo itemInfo = null;
+        if (startsWithIgnoreCase(line, from, to, DOWNLOADING_ITEM)) {
+            itemInfo = parseWorkshopItemDownloading(line, from + DOWNLOADING_ITEM.length(), to);
+        } else if (startsWithIgnoreCase(line, from, to, DOWNLOADED_ITEM)) {
+            itemInfo = parseWorkshopItemDownloaded(line, from + DOWNLOADED_ITEM.length(), to);
+        } else if (startsWithIgnoreCase(line, from, to, APP_FULLY_INSTALLED)) {
+            itemInfo = parseAppFullyInstalled(line, from + APP_FULLY_INSTALLED.length(), to);
+        } else if (job.getRelatedServer() != null) {
+            // update states are reported only for apps, i.e. server installations
+            itemInfo = parseUpdateState(line, from, to, Constants.SERVER_IDS.get(job.getRelatedServer()));
+        }
+
+        if (itemInfo != null) {
+            consumer.accept(itemInfo);
+        }
+    }
+
+    // e.g. 'Downloading item 450814997 ...'
+    private static SteamCmdItemInfo parseWorkshopItemDownloading(String line, int from, int to) {
+        int idStart = skipToDigit(line, from, to);
+        if (idStart == to) {
+            log.error("Failed to parse item ID from line '{}'", line);
+            return null;
+        }
+        long itemId = parseNumber(line, idStart, digitsEnd(line, idStart, to));
+        return new SteamCmdItemInfo(itemId, SteamCmdStatus.DOWNLOADING, 0, 0, 0);
+    }
+
+    // e.g. 'Success. Downloaded item 450814997 to "/path/to/450814997" (1234 bytes)'
+    private static SteamCmdItemInfo parseWorkshopItemDownloaded(String line, int from, int to) {
+        int idStart = skipWhitespace(line, from);
+        int idEnd = digitsEnd(line, idStart, to);
+        if (idStart == idEnd) {
+            log.error("Failed to parse item ID from line '{}'", line);
+            return null;
+        }
+        long itemId = parseNumber(line, idStart, idEnd);
+
+        long bytes = 0;
+        int bytesEnd = indexOfIgnoreCase(line, BYTES_SUFFIX, idEnd, to);
+        if (bytesEnd >= 0) {
+            int bytesStart = bytesEnd;
+            while (bytesStart > idEnd && isDigit(line.charAt(bytesStart - 1))) {
+                bytesStart--;
+            }
+            if (bytesStart < bytesEnd && line.charAt(bytesStart - 1) == '(') {
+                bytes = parseNumber(line, bytesStart, bytesEnd);
+            }
+        }
+        return new SteamCmdItemInfo(itemId, SteamCmdStatus.FINISHED, 100, bytes, bytes);
+    }
+
+    // e.g. "Success! App '233780' fully installed."
+    private static SteamCmdItemInfo parseAppFullyInstalled(String line, int from, int to) {
+        int quote = line.indexOf('\'', from);
+        int idEnd = quote >= 0 && quote < to ? digitsEnd(line, quote + 1, to) : -1;
+        if (idEnd <= quote + 1) {
+            log.error("Failed to parse item ID from line '{}'", line);
+            return null;
+        }
+        long appId = parseNumber(line, quote + 1, idEnd);
+        return new SteamCmdItemInfo(appId, SteamCmdStatus.FINISHED, 100, 0, 0);
+    }
+
+    // e.g. 'Update state (0x61) downloading, progress: 45.23 (1234 / 5678)'
+    private static SteamCmdItemInfo parseUpdateState(String line, int from, int to, long appId) {
+        int stateStart = indexOfIgnoreCase(line, UPDATE_STATE, from, to);
+        if (stateStart < 0) {
+            return null;
+        }
+
+        int position = stateStart + UPDATE_STATE.length();
+        int stateCodeEnd = position;
+        while (stateCodeEnd < to && Character.digit(line.charAt(stateCodeEnd), 16) >= 0) {
+            stateCodeEnd++;
+        }
+        if (stateCodeEnd == position || !startsWithIgnoreCase(line, stateCodeEnd, to, ") ")) {
+            return null;
+        }
+
+        position = stateCodeEnd + 2;
+        SteamCmdStatus status = parseUpdateStatus(line, position, to);
+        if (status == null) {
+            return null;
+        }
+
+        // progress in bytes, e.g. '(1234 / 5678)'
+        for (int bracket = line.indexOf('(', position); bracket >= 0 && bracket < to; bracket = line.indexOf('(', bracket + 1)) {
+            int finishedStart = bracket + 1;
+            int finishedEnd = digitsEnd(line, finishedStart, to);
+            int totalStart = finishedEnd + 3;
+            if (finishedEnd == finishedStart || totalStart >= to
+                    || !Character.isWhitespace(line.charAt(finishedEnd))
+                    || line.charAt(finishedEnd + 1) != '/'
+                    || !Character.isWhitespace(line.charAt(finishedEnd + 2))) {
+                continue;
+            }
+            int totalEnd = digitsEnd(line, totalStart, to);
+            if (totalEnd == totalStart || totalEnd == to || line.charAt(totalEnd) != ')') {
+                continue;
+            }
+
+            long bytesFinished = parseNumber(line, finishedStart, finishedEnd);
+            long bytesTotal = parseNumber(line, totalStart, totalEnd);
+            return new SteamCmdItemInfo(appId, status, (double) bytesFinished / bytesTotal, bytesFinished, bytesTotal);
+        }
+
+        log.error("Failed to parse line");
+        return null;
+    }
+
+    private static SteamCmdStatus parseUpdateStatus(String line, int from, int to) {
+        if (startsWithIgnoreCase(line, from, to, "downloading")) {
+            return SteamCmdStatus.DOWNLOADING;
+        }
+        if (startsWithIgnoreCase(line, from, to, "verifying")) {
+            return SteamCmdStatus.VERIFYING;
+        }
+        if (startsWithIgnoreCase(line, from, to, "preallocating")) {
+            return SteamCmdStatus.PREALLOCATING;
+        }
+        if (startsWithIgnoreCase(line, from, to, "committing")) {
+            return SteamCmdStatus.COMMITTING;
+        }
+        return null;
+    }
+
+    private static boolean startsWithIgnoreCase(String line, int from, int to, String prefix) {
+        return to - from >= prefix.length() && line.regionMatches(true, from, prefix, 0, prefix.length());
+    }
+
+    private static int indexOfIgnoreCase(String line, String lowerCaseNeedle, int from, int to) {
+        char first = lowerCaseNeedle.charAt(0);
+        int last = to - lowerCaseNeedle.length();
+        for (int i = from; i <= last; i++) {
+            if (Character.toLowerCase(line.charAt(i)) == first
+                    && line.regionMatches(true, i, lowerCaseNeedle, 0, lowerCaseNeedle.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String line, int from) {
+        int position = from;
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipToDigit(String line, int from, int to) {
+        int position = from;
+        while (position < to && !isDigit(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int digitsEnd(String line, int from, int to) {
+        int position = from;
+        while (position < to && isDigit(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static long parseNumber(String line, int from, int to) {
+        long number = 0;
+        for (int i = from; i < to; i++) {
+            number = number * 10 + (line.charAt(i) - '0');
+        }
+        return number;
+    }
+
+    private static boolean isDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+}
@@ -1,102 +1,87 @@
 package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
 
-import cz.forgottenempire.servermanager.common.PathsFactory;
 import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
-import cz.forgottenempire.servermanager.steamcmd.outputprocessor.lines.SteamCmdOutputLine;
-import cz.forgottenempire.servermanager.steamcmd.outputprocessor.lines.SteamCmdOutputLineFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.function.Consumer;
 
 @Component
 @Slf4j
 public class SteamCmdOutputProcessor {
 
-    private final PathsFactory pathsFactory;
-    private final SteamCmdOutputLineFactory steamCmdOutputLineFactory;
+    private final SteamCmdOutputLineParser lineParser;
     private final SteamCmdItemInfoRepository itemInfoRepository;
+    private final SteamCmdLogWriter logWriter;
 
     @Autowired
     SteamCmdOutputProcessor(
-            PathsFactory pathsFactory,
-            SteamCmdOutputLineFactory steamCmdOutputLineFactory,
-            SteamCmdItemInfoRepository itemInfoRepository
+            SteamCmdOutputLineParser lineParser,
+            SteamCmdItemInfoRepository itemInfoRepository,
+            SteamCmdLogWriter logWriter
     ) {
-        this.pathsFactory = pathsFactory;
-        this.steamCmdOutputLineFactory = steamCmdOutputLineFactory;
+        this.lineParser = lineParser;
         this.itemInfoRepository = itemInfoRepository;
+        this.logWriter = logWriter;
     }
 
-    public String processSteamCmdOutput(InputStream processOutput, SteamCmdJob job) throws IOException {
-        StringBuilder result = new StringBuilder();
-
-        File logFile = prepareLogFile();
-
+    /**
+     * Processes the output of a running SteamCMD process line by line. Stops reading as soon as the classifier
+     * detects a failure, so the caller can terminate the process without waiting for it to finish.
+     */
+    public void processSteamCmdOutput(InputStream processOutput, SteamCmdJob job, SteamCmdOutputClassifier classifier)
+            throws IOException {
         try (BufferedReader steamCmdOuput = new BufferedReader(new InputStreamReader(processOutput));
-             BufferedWriter fileLogger = new BufferedWriter(new FileWriter(logFile, true))) {
+             OutputSink outputSink = openOutputSink(job, classifier)) {
             String line;
             while ((line = steamCmdOuput.readLine()) != null) {
-                processLine(line, job);
-                result.append(line);
-                log.debug(line);
-                writeLineIntoLogFile(fileLogger, line);
+                outputSink.accept(line);
+                if (classifier.hasFailed()) {
+                    break;
+                }
             }
-
-            writeSeparatorIntoLogFile(fileLogger);
         }
+    }
 
-        return result.toString();
+    /**
+     * Opens a sink for output lines which are not read from a process output stream directly, e.g. output of commands
+     * sent to a persistent SteamCMD session.
+     */
+    public OutputSink openOutputSink(SteamCmdJob job, SteamCmdOutputClassifier classifier) {
+        return new OutputSink(job, classifier);
     }
 
-    private void processLine(String line, SteamCmdJob job) {
-        for (String normalizedLine : normalizeLine(line)) {
-            SteamCmdOutputLine lineObject = steamCmdOutputLineFactory.createSteamCmdOutputLine(normalizedLine, job);
+    public class OutputSink implements Closeable {
 
-            if (lineObject != null) {
-                SteamCmdItemInfo itemInfo = lineObject.parseInfo();
-                itemInfoRepository.store(itemInfo.itemId(), itemInfo);
-            }
-        }
-    }
+        private final SteamCmdJob job;
+        private final SteamCmdOutputClassifier classifier;
+        private final Consumer<SteamCmdItemInfo> itemInfoConsumer = this::storeItemInfo;
 
-    private static String[] normalizeLine(String line) {
-        String normalizedLine = line.toLowerCase().trim();
-        String[] lines;
-        boolean isTwoLinesWithoutLineBreak = !normalizedLine.startsWith("downloading item") && normalizedLine.contains("downloading item");
-        if (isTwoLinesWithoutLineBreak) {
-            lines = normalizedLine.split("downloading item");
-            lines[1] = "downloading item" + lines[1];
-        } else {
-            lines = new String[]{normalizedLine};
+        private OutputSink(SteamCmdJob job, SteamCmdOutputClassifier classifier) {
+            this.job = job;
+            this.classifier = classifier;
         }
-        return lines;
-    }
 
-    private File prepareLogFile() throws IOException {
-        File logFile = pathsFactory.getSteamCmdLogFile();
-        logFile.getParentFile().mkdirs();
-        logFile.createNewFile();
-        return logFile;
-    }
-
-    private static void writeLineIntoLogFile(BufferedWriter fileLogger, String line) throws IOException {
-        fileLogger.write(getCurrentTime() + " " + line);
-        fileLogger.newLine();
-        fileLogger.flush();
-    }
+        public void accept(String line) {
+            lineParser.parse(line, job, itemInfoConsumer);
+            classifier.accept(line);
+            log.debug(line);
+            logWriter.write(line);
+        }
 
-    private static void writeSeparatorIntoLogFile(BufferedWriter fileLogger) throws IOException {
-        fileLogger.newLine();
-        fileLogger.newLine();
-        fileLogger.flush();
-    }
+        @Override
+        public void close() {
+            logWriter.writeSeparator();
+        }
 
-    public static String getCurrentTime() {
-        SimpleDateFormat timeFormat = new SimpleDateFormat("[HH:mm:ss]");
-        return timeFormat.format(new Date());
+        private void storeItemInfo(SteamCmdItemInfo itemInfo) {
+            // the job is updated first, listeners of the change may stop the job once the item is finished
+            if (itemInfo.status() == SteamCmdItemInfo.SteamCmdStatus.FINISHED) {
+                job.markItemFinished(itemInfo.itemId());
+            }
+            itemInfoRepository.store(itemInfo.itemId(), itemInfo);
+        }
     }
 }
@@ -2,31 +2,207 @@ package cz.forgottenempire.servermanager.util;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
-import org.apache.commons.io.FileExistsException;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.TrueFileFilter;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
 
 public class FileSystemUtils {
 
     private FileSystemUtils() {
     }
 
-    public static void directoryToLowercase(File directory) throws IOException {
-        Collection<File> files = FileUtils.listFilesAndDirs(directory, TrueFileFilter.TRUE, TrueFileFilter.TRUE);
-        files.remove(directory); // current directory is in the list by default, need to remove it
-        for (File file : files) {
-            File newFile = new File(file.getParent(), file.getName().toLowerCase());
+    public static LowercaseResult directoryToLowercase(File directory) throws IOException {
+        return directoryToLowercase(directory.toPath(), Runnable::run);
+    }
+
+    /**
+     * Renames all files and directories inside the directory to lowercase in a single bottom-up pass, the contents
+     * of a directory are renamed before the directory itself. Entries which are lowercase already are not touched.
+     * A directory whose lowercase name is taken by another directory (on case-sensitive file systems) is merged into
+     * it and deleted once it's empty. Other entries whose lowercase name is taken are left as they are and reported
+     * as collisions.
+     *
+     * @param executor runs the subdirectories of the directory, each of them is walked as a whole, so sibling
+     *                 subtrees can be processed in parallel
+     */
+    public static LowercaseResult directoryToLowercase(Path directory, Executor executor) throws IOException {
+        return directoryToLowercase(directory, executor, (source, target) -> false);
+    }
+
+    /**
+     * Same as {@link #directoryToLowercase(Path, Executor)}, but a colliding entry replaces the existing lowercase
+     * one if the given predicate allows it, e.g. when the existing one is an outdated copy. The predicate is applied
+     * to the files of merged directories too.
+     *
+     * @param canReplace tells whether the entry (first argument) can replace the existing lowercase entry
+     *                   (second argument), called from the executor threads
+     */
+    public static LowercaseResult directoryToLowercase(Path directory, Executor executor,
+            BiPredicate<Path, Path> canReplace) throws IOException {
+        List<Path> subdirectories = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    subdirectories.add(entry);
+                } else {
+                    files.add(entry);
+                }
+            }
+        }
+
+        List<CompletableFuture<LowercaseResult>> subtreeResults = subdirectories.stream()
+                .map(subdirectory -> CompletableFuture.supplyAsync(
+                        () -> subtreeToLowercase(subdirectory, canReplace), executor))
+                .toList();
+        LowercaseVisitor visitor = new LowercaseVisitor(canReplace, null);
+        for (Path file : files) {
+            visitor.renameToLowercase(file);
+        }
+
+        LowercaseResult result = new LowercaseResult(0, List.of());
+        for (CompletableFuture<LowercaseResult> subtreeResult : subtreeResults) {
             try {
-                if (file.isDirectory()) {
-                    directoryToLowercase(file);
-                    FileUtils.moveDirectory(file, newFile);
-                } else if (file.isFile()) {
-                    FileUtils.moveFile(file, newFile);
+                result = result.merge(subtreeResult.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException ioException) {
+                    throw ioException.getCause();
                 }
-            } catch (FileExistsException ignored) {
-                // can be ignored
+                throw e;
             }
         }
+        // the subdirectories are renamed only once all subtrees are done, a subdirectory might be merged into
+        // a sibling which was still being walked
+        for (Path subdirectory : subdirectories) {
+            visitor.renameToLowercase(subdirectory);
+        }
+        return result.merge(visitor.toResult());
+    }
+
+    private static LowercaseResult subtreeToLowercase(Path directory, BiPredicate<Path, Path> canReplace) {
+        try {
+            LowercaseVisitor visitor = new LowercaseVisitor(canReplace, directory);
+            Files.walkFileTree(directory, visitor);
+            return visitor.toResult();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param renamedEntries number of files and directories which were renamed
+     * @param collisions     entries which couldn't be renamed as another entry has their lowercase name already
+     */
+    public record LowercaseResult(int renamedEntries, List<Path> collisions) {
+
+        LowercaseResult merge(LowercaseResult other) {
+            List<Path> allCollisions = new ArrayList<>(collisions);
+            allCollisions.addAll(other.collisions);
+            return new LowercaseResult(renamedEntries + other.renamedEntries, List.copyOf(allCollisions));
+        }
+    }
+
+    private static class LowercaseVisitor extends SimpleFileVisitor<Path> {
+
+        private final BiPredicate<Path, Path> canReplace;
+        private final Path startDirectory;
+        private final List<Path> collisions = new ArrayList<>();
+        private int renamedEntries;
+
+        /**
+         * @param startDirectory directory the walk starts in, it's left for the caller to rename
+         */
+        LowercaseVisitor(BiPredicate<Path, Path> canReplace, Path startDirectory) {
+            this.canReplace = canReplace;
+            this.startDirectory = startDirectory;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+            renameToLowercase(file);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path directory, IOException exception) throws IOException {
+            if (exception != null) {
+                throw exception;
+            }
+            // all entries of the directory are renamed already, so renaming it doesn't change paths still needed
+            if (!directory.equals(startDirectory)) {
+                renameToLowercase(directory);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        void renameToLowercase(Path path) throws IOException {
+            String name = path.getFileName().toString();
+            String lowercaseName = name.toLowerCase(Locale.ROOT);
+            if (name.equals(lowercaseName)) {
+                return;
+            }
+
+            Path target = path.resolveSibling(lowercaseName);
+            // on case-insensitive file systems the target is the entry itself, which is fine to rename
+            if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) && Files.isSameFile(path, target)) {
+                Files.move(path, target);
+                renamedEntries++;
+                return;
+            }
+            moveTo(path, target);
+        }
+
+        private void moveTo(Path path, Path target) throws IOException {
+            if (!Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                Files.move(path, target);
+                renamedEntries++;
+            } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)
+                    && Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+                mergeDirectory(path, target);
+            } else if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS) && canReplace.test(path, target)) {
+                Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+                renamedEntries++;
+            } else {
+                collisions.add(path);
+            }
+        }
+
+        /**
+         * Moves the entries of the directory into the target directory, the entries are lowercase already. Entries
+         * which collide with the target's ones are kept in the directory.
+         */
+        private void mergeDirectory(Path directory, Path target) throws IOException {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> directoryEntries = Files.newDirectoryStream(directory)) {
+                directoryEntries.forEach(entries::add);
+            }
+            for (Path entry : entries) {
+                moveTo(entry, target.resolve(entry.getFileName().toString()));
+            }
+            boolean empty;
+            try (DirectoryStream<Path> remainingEntries = Files.newDirectoryStream(directory)) {
+                empty = !remainingEntries.iterator().hasNext();
+            }
+            if (empty) {
+                Files.delete(directory);
+            }
+        }
+
+        LowercaseResult toResult() {
+            return new LowercaseResult(renamedEntries, List.copyOf(collisions));
+        }
     }
 }
@@ -16,6 +16,12 @@ public class SystemUtils {
         }
     }
 
+    public static void destroyProcessTree(Process process) {
+        // processes are often started through wrappers (e.g. 'unbuffer' or shell scripts), stop the whole tree
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+    }
+
     public static OSType getOsType() {
         String osName = System.getProperty("os.name");
         if (osName == null) {
@@ -0,0 +1,16 @@
+package cz.forgottenempire.servermanager.workshop;
+
+/**
+ * @param addedKeys    keys which were missing on a server
+ * @param replacedKeys keys whose content differed from the one in the mod
+ * @param removedKeys  keys which no installed mod ships anymore
+ */
+record BiKeyReconciliationReportDto(int addedKeys, int replacedKeys, int removedKeys) {
+
+    static final BiKeyReconciliationReportDto EMPTY = new BiKeyReconciliationReportDto(0, 0, 0);
+
+    BiKeyReconciliationReportDto plus(BiKeyReconciliationReportDto other) {
+        return new BiKeyReconciliationReportDto(addedKeys + other.addedKeys, replacedKeys + other.replacedKeys,
+                removedKeys + other.removedKeys);
+    }
+}
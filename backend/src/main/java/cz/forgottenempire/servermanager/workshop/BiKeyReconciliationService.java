@@ -0,0 +1,302 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the keys directories of the servers in line with the installed mods. The desired keys of a server are
+ * the keys of all mods installed for it; only the differences are applied: missing or changed keys are linked
+ * (or copied if the mods are on another file system) and keys which no installed mod ships anymore are removed.
+ * A key is removed only if it was installed from a mod, keys added to the server by hand are left alone.
+ * <p>
+ * The locations of keys inside every mod are taken from the mod's file manifest, so mod directories don't need to
+ * be walked to find them.
+ */
+@Service
+@Slf4j
+class BiKeyReconciliationService {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Set<String>> KEYS_TYPE = new TypeReference<>() {
+    };
+    private static final String KEY_EXTENSION = ".bikey";
+    private static final List<ServerType> SERVER_TYPES =
+            List.of(ServerType.ARMA3, ServerType.DAYZ, ServerType.DAYZ_EXP);
+
+    private final PathsFactory pathsFactory;
+    private final WorkshopModsService modsService;
+    private final ServerInstallationService installationService;
+    private final ModFileManifestStore fileManifestStore;
+    // key name -> path relative to the mod directory, by mod ID
+    private final Map<Long, Map<String, String>> keyLocations = new ConcurrentHashMap<>();
+
+    @Autowired
+    BiKeyReconciliationService(
+            PathsFactory pathsFactory,
+            WorkshopModsService modsService,
+            ServerInstallationService installationService,
+            ModFileManifestStore fileManifestStore) {
+        this.pathsFactory = pathsFactory;
+        this.modsService = modsService;
+        this.installationService = installationService;
+        this.fileManifestStore = fileManifestStore;
+    }
+
+    // runs after the mods were reconciled with the SteamCMD manifests, which may mark missing mods as failed
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(2)
+    public void reconcileOnStartup() {
+        BiKeyReconciliationReportDto report = reconcile();
+        log.info("Reconciled server keys with installed mods: {}", report);
+    }
+
+    /**
+     * Compares the keys of every installed server with all installed mods, including the content of the keys.
+     */
+    synchronized BiKeyReconciliationReportDto reconcile() {
+        List<WorkshopMod> installedMods = getInstalledModsExcept(null);
+        return reconcile(installedMods, installedMods, null, Set.of());
+    }
+
+    /**
+     * Records the keys of the installed mod and applies them to the servers. Keys which the mod shipped before but
+     * doesn't anymore are removed, unless another mod ships them too.
+     */
+    synchronized void onModInstalled(WorkshopMod mod, ModFileManifest manifest) {
+        Map<String, String> modKeys = findKeys(manifest);
+        Set<String> releasedKeys = new HashSet<>(mod.getBiKeys());
+        Map<String, String> previousKeys = keyLocations.put(mod.getId(), modKeys);
+        if (previousKeys != null) {
+            releasedKeys.addAll(previousKeys.keySet());
+        }
+        releasedKeys.removeAll(modKeys.keySet());
+        mod.getBiKeys().retainAll(modKeys.keySet());
+        mod.getBiKeys().addAll(modKeys.keySet());
+
+        List<WorkshopMod> installedMods = getInstalledModsExcept(mod);
+        installedMods.add(mod);
+        reconcile(installedMods, List.of(mod), mod.getServerType(), releasedKeys);
+    }
+
+    /**
+     * Removes the keys of the mod from the servers, unless another mod ships them too.
+     */
+    synchronized void onModUninstalled(WorkshopMod mod) {
+        if (mod.getServerType() == null) {
+            return;
+        }
+        Set<String> releasedKeys = new HashSet<>(getKeyLocations(mod).keySet());
+        keyLocations.remove(mod.getId());
+        reconcile(getInstalledModsExcept(mod), List.of(), mod.getServerType(), releasedKeys);
+    }
+
+    /**
+     * @param installedMods   mods whose keys the servers should have
+     * @param changedMods     mods whose keys are compared by content, keys of the other mods are only checked
+     *                        to exist
+     * @param releasedModType server type of the mod which released the keys, null if no keys were released
+     * @param releasedKeys    keys which the mod installed before, but doesn't ship anymore
+     */
+    private BiKeyReconciliationReportDto reconcile(Collection<WorkshopMod> installedMods,
+            Collection<WorkshopMod> changedMods, @Nullable ServerType releasedModType, Set<String> releasedKeys) {
+        Set<Long> changedModIds = new HashSet<>();
+        changedMods.forEach(mod -> changedModIds.add(mod.getId()));
+        BiKeyReconciliationReportDto report = BiKeyReconciliationReportDto.EMPTY;
+
+        for (ServerType serverType : SERVER_TYPES) {
+            if (!installationService.isServerInstalled(serverType)) {
+                continue;
+            }
+            ServerType modServerType = serverType == ServerType.DAYZ_EXP ? ServerType.DAYZ : serverType;
+            List<WorkshopMod> serverMods = installedMods.stream()
+                    .filter(mod -> mod.getServerType() == modServerType)
+                    .sorted(Comparator.comparing(WorkshopMod::getId))
+                    .toList();
+            report = report.plus(reconcileServer(serverType, serverMods, changedModIds,
+                    modServerType == releasedModType ? releasedKeys : Set.of()));
+        }
+        return report;
+    }
+
+    private BiKeyReconciliationReportDto reconcileServer(ServerType serverType, List<WorkshopMod> mods,
+            Set<Long> changedModIds, Set<String> releasedKeys) {
+        Map<String, DesiredKey> desiredKeys = new LinkedHashMap<>();
+        for (WorkshopMod mod : mods) {
+            Path modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+            getKeyLocations(mod).forEach((keyName, relativePath) -> {
+                DesiredKey desiredKey = new DesiredKey(modDirectory.resolve(relativePath),
+                        changedModIds.contains(mod.getId()));
+                // if more mods ship a key with the same name, the first one wins
+                desiredKeys.merge(keyName, desiredKey, (first, other) ->
+                        new DesiredKey(first.source(), first.compareContent() || other.compareContent()));
+            });
+        }
+
+        Set<String> managedKeys = loadManagedKeys(serverType, desiredKeys.keySet());
+        // the released keys were installed from a mod, even if the list of installed keys was lost
+        managedKeys.addAll(releasedKeys);
+        int addedKeys = 0;
+        int replacedKeys = 0;
+        int removedKeys = 0;
+
+        for (String keyName : List.copyOf(managedKeys)) {
+            if (desiredKeys.containsKey(keyName)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(pathsFactory.getServerKeyPath(keyName, serverType));
+                managedKeys.remove(keyName);
+                removedKeys++;
+                log.debug("Removed BiKey {} from server {}", keyName, serverType);
+            } catch (IOException e) {
+                log.warn("Could not remove BiKey {} from server {}", keyName, serverType, e);
+            }
+        }
+
+        for (Map.Entry<String, DesiredKey> desiredKey : desiredKeys.entrySet()) {
+            String keyName = desiredKey.getKey();
+            Path source = desiredKey.getValue().source();
+            Path target = pathsFactory.getServerKeyPath(keyName, serverType);
+            try {
+                boolean exists = Files.exists(target);
+                if (exists && (!desiredKey.getValue().compareContent() || isSameContent(source, target))) {
+                    managedKeys.add(keyName);
+                    continue;
+                }
+                installKey(source, target);
+                managedKeys.add(keyName);
+                if (exists) {
+                    replacedKeys++;
+                } else {
+                    addedKeys++;
+                }
+                log.debug("Installed BiKey {} to server {}", keyName, serverType);
+            } catch (IOException e) {
+                log.warn("Could not install BiKey {} to server {}", keyName, serverType, e);
+            }
+        }
+
+        saveManagedKeys(serverType, managedKeys);
+        return new BiKeyReconciliationReportDto(addedKeys, replacedKeys, removedKeys);
+    }
+
+    /**
+     * Mods whose files are on the disk, whatever their status. Mods being updated or whose update failed keep their
+     * previous files linked into the servers, so they still need their keys.
+     */
+    private List<WorkshopMod> getInstalledModsExcept(@Nullable WorkshopMod excludedMod) {
+        return modsService.getAllMods().stream()
+                .filter(this::hasFilesInstalled)
+                .filter(mod -> excludedMod == null || !mod.getId().equals(excludedMod.getId()))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private boolean hasFilesInstalled(WorkshopMod mod) {
+        if (mod.getServerType() == null) {
+            return false;
+        }
+        return mod.getLastUpdated() != null
+                || Files.isDirectory(pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType()));
+    }
+
+    private Map<String, String> getKeyLocations(WorkshopMod mod) {
+        return keyLocations.computeIfAbsent(mod.getId(), modId -> {
+            Path modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+            try {
+                // mods installed before file manifests were kept have their directory walked once
+                ModFileManifest manifest = fileManifestStore.load(modId)
+                        .orElse(Files.isDirectory(modDirectory) ? ModFileManifest.scan(modDirectory) : null);
+                return manifest == null ? Map.of() : findKeys(manifest);
+            } catch (IOException e) {
+                log.warn("Could not find BiKeys of mod '{}' (ID {})", mod.getName(), modId, e);
+                return Map.of();
+            }
+        });
+    }
+
+    private static Map<String, String> findKeys(ModFileManifest manifest) {
+        // sorted, so a mod shipping the same key twice always provides the same one
+        Map<String, String> keys = new TreeMap<>();
+        new TreeSet<>(manifest.files().keySet()).stream()
+                .filter(path -> path.endsWith(KEY_EXTENSION))
+                .forEach(path -> keys.putIfAbsent(Path.of(path).getFileName().toString(), path));
+        return keys;
+    }
+
+    private static void installKey(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temporaryKey = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(temporaryKey);
+        try {
+            Files.createLink(temporaryKey, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            // the servers and mods are on different file systems
+            Files.copy(source, temporaryKey, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(temporaryKey, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean isSameContent(Path source, Path target) throws IOException {
+        return Files.isSameFile(source, target) || Files.mismatch(source, target) == -1;
+    }
+
+    /**
+     * @param initialKeys keys considered installed from mods when there's no list yet, i.e. on the first run
+     */
+    private Set<String> loadManagedKeys(ServerType serverType, Set<String> initialKeys) {
+        Path path = pathsFactory.getModKeysManifestPath(serverType);
+        if (Files.isRegularFile(path)) {
+            try {
+                return new HashSet<>(OBJECT_MAPPER.readValue(path.toFile(), KEYS_TYPE));
+            } catch (IOException e) {
+                log.warn("Could not read list of installed BiKeys from {}, no key will be removed", path, e);
+            }
+        }
+        return new HashSet<>(initialKeys);
+    }
+
+    private void saveManagedKeys(ServerType serverType, Set<String> managedKeys) {
+        Path path = pathsFactory.getModKeysManifestPath(serverType);
+        try {
+            Files.createDirectories(path.getParent());
+            Path temporaryFile = Files.createTempFile(path.getParent(), "keys", ".tmp");
+            OBJECT_MAPPER.writeValue(temporaryFile.toFile(), new TreeSet<>(managedKeys));
+            Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Could not save list of installed BiKeys into {}", path, e);
+        }
+    }
+
+    /**
+     * @param compareContent if true, an existing key is replaced if its content differs
+     */
+    private record DesiredKey(Path source, boolean compareContent) {
+    }
+}
@@ -0,0 +1,82 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.PersistedSteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Resumes mod installations which were queued or running when the manager was shut down. Mods already downloaded
+ * before the shutdown are only installed, the rest is downloaded again, reusing what SteamCMD managed to download
+ * so far. Mods left in progress without a job to resume are marked as interrupted.
+ */
+@Component
+@Slf4j
+class InterruptedModInstallationResumer {
+
+    private final WorkshopModsService modsService;
+    private final WorkshopInstallerService installerService;
+    private final SteamCmdService steamCmdService;
+
+    @Autowired
+    InterruptedModInstallationResumer(
+            WorkshopModsService modsService,
+            WorkshopInstallerService installerService,
+            SteamCmdService steamCmdService) {
+        this.modsService = modsService;
+        this.installerService = installerService;
+        this.steamCmdService = steamCmdService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void resumeInterruptedInstallations() {
+        Set<Long> resumedModIds = new HashSet<>();
+        for (PersistedSteamCmdJob job : steamCmdService.takeInterruptedWorkshopJobs()) {
+            // mods deleted in the meantime are not installed again
+            List<WorkshopMod> mods = job.getItemIds().stream()
+                    .map(modsService::getMod)
+                    .flatMap(Optional::stream)
+                    .toList();
+            if (mods.isEmpty()) {
+                continue;
+            }
+
+            log.info("Resuming installation of {} mod(s), {} already downloaded",
+                    mods.size(), job.getFinishedItemIds().size());
+            mods.forEach(mod -> {
+                mod.setInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS);
+                mod.setErrorStatus(null);
+                resumedModIds.add(mod.getId());
+            });
+            modsService.saveAllModsForInstallation(mods);
+            try {
+                installerService.installOrUpdateMods(mods, job.getPriority(), job.getFinishedItemIds());
+            } catch (InsufficientDiskSpaceException e) {
+                log.warn("Could not resume installation of {} mod(s): {}", mods.size(), e.getMessage());
+            }
+        }
+
+        List<WorkshopMod> interruptedMods = modsService.getAllMods().stream()
+                .filter(mod -> mod.getInstallationStatus() == InstallationStatus.INSTALLATION_IN_PROGRESS)
+                .filter(mod -> !resumedModIds.contains(mod.getId()))
+                .toList();
+        interruptedMods.forEach(mod -> {
+            mod.setInstallationStatus(InstallationStatus.ERROR);
+            mod.setErrorStatus(ErrorStatus.INTERRUPTED);
+        });
+        modsService.saveAllMods(interruptedMods);
+    }
+}
@@ -0,0 +1,17 @@
+package cz.forgottenempire.servermanager.workshop;
+
+/**
+ * @param scannedFiles   files of installed mods which were looked at
+ * @param hashedFiles    files which had to be read, as another file had the same size and their hash wasn't known
+ * @param linkedFiles    duplicate files which were replaced with a hard link
+ * @param reclaimedBytes size of the replaced duplicates
+ * @param durationMillis duration of the pass
+ */
+record ModDeduplicationReportDto(
+        int scannedFiles,
+        int hashedFiles,
+        int linkedFiles,
+        long reclaimedBytes,
+        long durationMillis
+) {
+}
@@ -0,0 +1,455 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobStartingEvent;
+import cz.forgottenempire.servermanager.workshop.ModFileManifest.FileEntry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaces identical files of installed mods with hard links to a single copy, as many mods ship the same files.
+ * Only files of the same size are compared, by the content hashes from their file manifests; a file whose hash isn't
+ * known is read at a limited rate, so the pass doesn't starve running servers of disk I/O.
+ * <p>
+ * A linked file is shared by all the mods, so right before SteamCMD updates a mod, its linked files are replaced with
+ * private copies on the SteamCMD worker. A mod whose files can't be copied is left out of the SteamCMD job. Mods which
+ * are being updated are left out of the pass.
+ */
+@Service
+@Slf4j
+class ModDeduplicationService {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String TEMPORARY_SUFFIX = ".dedup";
+
+    private final PathsFactory pathsFactory;
+    private final WorkshopModsService modsService;
+    private final ModFileManifestStore fileManifestStore;
+    private final long minFileSize;
+    private final long maxReadBytesPerSecond;
+    private final Counter reclaimedBytesCounter;
+    private final ExecutorService deduplicationExecutor;
+    // size of the linked files of a mod, counted when first needed and then kept up to date by linking and copying
+    private final Map<Long, Long> linkedBytesByModId = new ConcurrentHashMap<>();
+    private final Object linkLock = new Object();
+    private CompletableFuture<ModDeduplicationReportDto> runningPass;
+    private volatile ModDeduplicationReportDto lastReport;
+
+    @Autowired
+    ModDeduplicationService(
+            PathsFactory pathsFactory,
+            WorkshopModsService modsService,
+            ModFileManifestStore fileManifestStore,
+            @Value("${workshop.deduplication.min-file-size-bytes:65536}") long minFileSize,
+            @Value("${workshop.deduplication.max-read-bytes-per-second:52428800}") long maxReadBytesPerSecond,
+            MeterRegistry meterRegistry) {
+        this.pathsFactory = pathsFactory;
+        this.modsService = modsService;
+        this.fileManifestStore = fileManifestStore;
+        this.minFileSize = minFileSize;
+        this.maxReadBytesPerSecond = maxReadBytesPerSecond;
+        reclaimedBytesCounter = Counter.builder("workshop.deduplication.reclaimed")
+                .description("Size of duplicate mod files replaced with hard links")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        deduplicationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mod-deduplication");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deduplicationExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts a pass in the background, or returns the running one.
+     */
+    synchronized CompletableFuture<ModDeduplicationReportDto> deduplicateInBackground() {
+        if (runningPass == null || runningPass.isDone()) {
+            runningPass = CompletableFuture.supplyAsync(this::deduplicate, deduplicationExecutor);
+        }
+        return runningPass;
+    }
+
+    Optional<ModDeduplicationReportDto> getLastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    ModDeduplicationReportDto deduplicate() {
+        long startedAt = System.nanoTime();
+        if (!supportsLinkCount(pathsFactory.getModsBasePath())) {
+            log.warn("File system of {} doesn't report hard link counts, mod files are not deduplicated",
+                    pathsFactory.getModsBasePath());
+            return new ModDeduplicationReportDto(0, 0, 0, 0, 0);
+        }
+
+        Map<Long, List<Candidate>> candidatesBySize = new HashMap<>();
+        int scannedFiles = 0;
+        for (WorkshopMod mod : modsService.getAllMods()) {
+            if (mod.getInstallationStatus() != InstallationStatus.FINISHED || mod.getServerType() == null
+                    || fileManifestStore.isUpdating(mod.getId())) {
+                continue;
+            }
+            try {
+                for (Candidate candidate : findCandidates(mod)) {
+                    scannedFiles++;
+                    if (candidate.entry().size() >= minFileSize) {
+                        candidatesBySize.computeIfAbsent(candidate.entry().size(), size -> new ArrayList<>())
+                                .add(candidate);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Could not scan files of mod '{}' (ID {}), skipping it", mod.getName(), mod.getId(), e);
+            }
+        }
+
+        ReadThrottle readThrottle = new ReadThrottle(maxReadBytesPerSecond);
+        Map<Long, Map<String, FileEntry>> linkedEntries = new HashMap<>();
+        int hashedFiles = 0;
+        int linkedFiles = 0;
+        long reclaimedBytes = 0;
+        try {
+            for (List<Candidate> sameSize : candidatesBySize.values()) {
+                if (sameSize.size() < 2) {
+                    continue;
+                }
+                Map<String, List<Candidate>> sameContent = new HashMap<>();
+                for (Candidate candidate : sameSize) {
+                    String hash = candidate.entry().hash();
+                    if (hash == null) {
+                        hash = hashFile(candidate.file(), readThrottle);
+                        if (hash == null) {
+                            continue;
+                        }
+                        hashedFiles++;
+                    }
+                    sameContent.computeIfAbsent(hash, h -> new ArrayList<>())
+                            .add(candidate.withEntry(candidate.entry().withHash(hash)));
+                }
+
+                for (List<Candidate> duplicates : sameContent.values()) {
+                    duplicates.sort(Comparator.comparing(Candidate::modId).thenComparing(Candidate::relativePath));
+                    Candidate original = duplicates.get(0);
+                    for (Candidate duplicate : duplicates.subList(1, duplicates.size())) {
+                        if (link(original, duplicate)) {
+                            linkedFiles++;
+                            reclaimedBytes += duplicate.entry().size();
+                            linkedEntries.computeIfAbsent(duplicate.modId(), modId -> new HashMap<>())
+                                    .put(duplicate.relativePath(), original.entry());
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            log.info("Mod deduplication was interrupted");
+        }
+
+        linkedEntries.forEach(this::updateManifest);
+        reclaimedBytesCounter.increment(reclaimedBytes);
+        ModDeduplicationReportDto report = new ModDeduplicationReportDto(scannedFiles, hashedFiles, linkedFiles,
+                reclaimedBytes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        log.info("Deduplicated mod files: {}", report);
+        lastReport = report;
+        return report;
+    }
+
+    /**
+     * @return space the private copies of the linked files of the mods take, once SteamCMD is about to update them
+     */
+    long estimateCopyBytes(Collection<WorkshopMod> mods) {
+        long copyBytes = 0;
+        for (WorkshopMod mod : mods) {
+            if (mod.getServerType() == null) {
+                continue;
+            }
+            Path modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+            try {
+                copyBytes += linkedBytesByModId.computeIfAbsent(mod.getId(), modId -> countLinkedBytes(modDirectory));
+            } catch (UncheckedIOException e) {
+                log.warn("Could not determine size of linked files of mod '{}' (ID {})",
+                        mod.getName(), mod.getId(), e);
+            }
+        }
+        return copyBytes;
+    }
+
+    @EventListener
+    public void onSteamCmdJobStarting(SteamCmdJobStartingEvent event) {
+        SteamCmdJob job = event.job();
+        if (!job.isWorkshopJob()) {
+            return;
+        }
+        List<WorkshopMod> mods = job.getRelatedWorkshopMods().stream()
+                .filter(mod -> !job.isItemSettled(mod.getId()))
+                .toList();
+        // SteamCMD would write into the files shared with other mods, the mod is not updated at all
+        prepareForUpdate(mods).forEach(modId -> job.setItemErrorStatus(modId, ErrorStatus.IO));
+    }
+
+    /**
+     * Replaces the linked files of the mods with private copies and leaves the mods out of deduplication until
+     * {@link #finishUpdate(long)} is called, so SteamCMD can write to their files.
+     *
+     * @return IDs of the mods whose linked files could not be replaced, SteamCMD must not write to them
+     */
+    Set<Long> prepareForUpdate(Collection<WorkshopMod> mods) {
+        synchronized (linkLock) {
+            // SteamCMD may be writing to the files of updating mods, they are neither linked nor link targets
+            mods.forEach(mod -> fileManifestStore.beginUpdate(mod.getId()));
+        }
+        Set<Long> failedModIds = new HashSet<>();
+        for (WorkshopMod mod : mods) {
+            if (mod.getServerType() == null) {
+                continue;
+            }
+            Path modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+            try {
+                breakLinks(modDirectory);
+                linkedBytesByModId.put(mod.getId(), 0L);
+            } catch (IOException e) {
+                log.error("Could not replace linked files of mod '{}' (ID {}) with copies, the mod is not updated",
+                        mod.getName(), mod.getId(), e);
+                linkedBytesByModId.remove(mod.getId());
+                failedModIds.add(mod.getId());
+            }
+        }
+        return failedModIds;
+    }
+
+    void finishUpdate(long modId) {
+        fileManifestStore.finishUpdate(modId);
+    }
+
+    private List<Candidate> findCandidates(WorkshopMod mod) throws IOException {
+        Path modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+        if (!Files.isDirectory(modDirectory)) {
+            return List.of();
+        }
+        Map<String, FileEntry> installedFiles = fileManifestStore.load(mod.getId())
+                .map(ModFileManifest::files)
+                .orElse(Map.of());
+
+        List<Candidate> candidates = new ArrayList<>();
+        ModFileManifest.scan(modDirectory).files().forEach((path, entry) -> {
+            FileEntry installedFile = installedFiles.get(path);
+            // the hash is known only if the file didn't change since it was hashed
+            FileEntry candidateEntry = installedFile != null && installedFile.hash() != null
+                    && entry.hasSameAttributes(installedFile) ? installedFile : entry;
+            candidates.add(new Candidate(mod.getId(), path, modDirectory.resolve(path), candidateEntry));
+        });
+        return candidates;
+    }
+
+    private boolean link(Candidate original, Candidate duplicate) {
+        synchronized (linkLock) {
+            if (fileManifestStore.isUpdating(original.modId()) || fileManifestStore.isUpdating(duplicate.modId())) {
+                return false;
+            }
+            try {
+                if (Files.isSameFile(original.file(), duplicate.file())) {
+                    return false;
+                }
+                // either of the files could have been changed since it was hashed
+                if (!hasAttributes(original) || !hasAttributes(duplicate)) {
+                    return false;
+                }
+                Path temporaryLink = duplicate.file().resolveSibling(duplicate.file().getFileName() + TEMPORARY_SUFFIX);
+                Files.deleteIfExists(temporaryLink);
+                Files.createLink(temporaryLink, original.file());
+                try {
+                    // a server reading the duplicate keeps reading its own copy until it closes it
+                    Files.move(temporaryLink, duplicate.file(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    Files.deleteIfExists(temporaryLink);
+                    throw e;
+                }
+                log.debug("Linked {} to {}", duplicate.file(), original.file());
+                linkedBytesByModId.remove(original.modId());
+                linkedBytesByModId.remove(duplicate.modId());
+                return true;
+            } catch (IOException e) {
+                // e.g. the mods of the two games are on different file systems
+                log.debug("Could not link {} to {}", duplicate.file(), original.file(), e);
+                return false;
+            }
+        }
+    }
+
+    private long countLinkedBytes(Path modDirectory) {
+        if (!Files.isDirectory(modDirectory) || !supportsLinkCount(modDirectory)) {
+            return 0;
+        }
+        long[] linkedBytes = {0};
+        try {
+            Files.walkFileTree(modDirectory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (attributes.isRegularFile() && isLinked(file)) {
+                        linkedBytes[0] += attributes.size();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return linkedBytes[0];
+    }
+
+    private void breakLinks(Path modDirectory) throws IOException {
+        if (!Files.isDirectory(modDirectory) || !supportsLinkCount(modDirectory)) {
+            return;
+        }
+        Files.walkFileTree(modDirectory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile() && isLinked(file)) {
+                    Path copy = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+                    // the modification time is kept, so the file manifest still matches the copy
+                    Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isLinked(Path file) throws IOException {
+        return (int) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS) > 1;
+    }
+
+    private void updateManifest(long modId, Map<String, FileEntry> linkedFiles) {
+        Optional<ModFileManifest> manifest = fileManifestStore.load(modId);
+        if (manifest.isEmpty()) {
+            return;
+        }
+        // a linked file takes the modification time of the original, the installed content is the same
+        Map<String, FileEntry> files = new HashMap<>(manifest.get().files());
+        linkedFiles.forEach((path, entry) -> {
+            FileEntry installedFile = files.get(path);
+            if (installedFile != null && entry.hash().equals(installedFile.hash())) {
+                files.put(path, entry);
+            }
+        });
+        try {
+            // a mod updated since it was linked has a manifest of its new files already
+            fileManifestStore.saveIfUnchanged(modId, manifest.get(), new ModFileManifest(files));
+        } catch (IOException e) {
+            log.warn("Could not update file manifest of mod ID {}", modId, e);
+        }
+    }
+
+    /**
+     * @return hash of the file, null if it couldn't be read
+     */
+    private static String hashFile(Path file, ReadThrottle readThrottle) throws InterruptedIOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                hasher.putBytes(buffer, 0, read);
+                readThrottle.onRead(read);
+            }
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            log.debug("Could not read {}, skipping it", file, e);
+            return null;
+        }
+        return hasher.hash().toString();
+    }
+
+    private static boolean hasAttributes(Candidate candidate) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(candidate.file(), BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+        return candidate.entry().hasSameAttributes(
+                new FileEntry(attributes.size(), attributes.lastModifiedTime().toMillis()));
+    }
+
+    private static boolean supportsLinkCount(Path path) {
+        try {
+            return Files.getFileStore(path).supportsFileAttributeView("unix");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private record Candidate(long modId, String relativePath, Path file, FileEntry entry) {
+
+        Candidate withEntry(FileEntry entry) {
+            return new Candidate(modId, relativePath, file, entry);
+        }
+    }
+
+    /**
+     * Paces reads to the given rate over the whole pass.
+     */
+    private static class ReadThrottle {
+
+        private final long bytesPerSecond;
+        private final long startedAtNanos = System.nanoTime();
+        private long readBytes;
+
+        ReadThrottle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void onRead(long bytes) throws InterruptedIOException {
+            readBytes += bytes;
+            long dueAtNanos = startedAtNanos + (long) (readBytes * 1e9 / bytesPerSecond);
+            long delayNanos = dueAtNanos - System.nanoTime();
+            if (delayNanos <= 0) {
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting to read");
+            }
+        }
+    }
+}
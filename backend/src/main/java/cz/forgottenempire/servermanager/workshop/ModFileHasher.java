@@ -0,0 +1,105 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import cz.forgottenempire.servermanager.workshop.ModFileManifest.FileEntry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Computes content hashes of mod files. Files are hashed in parallel, but on a bounded number of threads, so
+ * hashing a large mod doesn't saturate the disk for the game servers.
+ */
+@Component
+class ModFileHasher {
+
+    private final ExecutorService hashingExecutor;
+
+    @Autowired
+    ModFileHasher(@Value("${workshop.integrity.hash-threads:2}") int hashThreads) {
+        hashingExecutor = Executors.newFixedThreadPool(hashThreads, runnable -> {
+            Thread thread = new Thread(runnable, "mod-hashing");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingExecutor.shutdownNow();
+    }
+
+    /**
+     * Fills in the hashes of the files in the manifest. A file with the same size and modification time as in
+     * the previous manifest keeps its previous hash, only the other files are read.
+     *
+     * @param previous manifest of the last installation, null if all files have to be hashed
+     */
+    ModFileManifest hashFiles(Path modDirectory, ModFileManifest manifest, @Nullable ModFileManifest previous)
+            throws IOException {
+        Map<String, FileEntry> files = new HashMap<>();
+        Map<String, FileEntry> filesToHash = new HashMap<>();
+        manifest.files().forEach((path, entry) -> {
+            FileEntry previousEntry = previous == null ? null : previous.files().get(path);
+            if (previousEntry != null && previousEntry.hash() != null && entry.hasSameAttributes(previousEntry)) {
+                files.put(path, entry.withHash(previousEntry.hash()));
+            } else if (entry.hash() != null) {
+                files.put(path, entry);
+            } else {
+                filesToHash.put(path, entry);
+            }
+        });
+
+        Map<String, String> hashes = hash(modDirectory, filesToHash.keySet());
+        filesToHash.forEach((path, entry) -> files.put(path, entry.withHash(hashes.get(path))));
+        return new ModFileManifest(files);
+    }
+
+    /**
+     * @param relativePaths paths relative to the mod directory, as in {@link ModFileManifest}
+     * @return hashes of the files by their relative path
+     */
+    Map<String, String> hash(Path modDirectory, Collection<String> relativePaths) throws IOException {
+        Map<String, CompletableFuture<String>> hashes = new HashMap<>();
+        for (String relativePath : relativePaths) {
+            hashes.put(relativePath, CompletableFuture.supplyAsync(
+                    () -> hashFile(modDirectory.resolve(relativePath)), hashingExecutor));
+        }
+
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<String>> hash : hashes.entrySet()) {
+            try {
+                result.put(hash.getKey(), hash.getValue().join());
+            } catch (CompletionException e) {
+                hashes.values().forEach(future -> future.cancel(false));
+                if (e.getCause() instanceof UncheckedIOException ioException) {
+                    throw ioException.getCause();
+                }
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    private static String hashFile(Path file) {
+        try {
+            return MoreFiles.asByteSource(file).hash(Hashing.sha256()).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Files of an installed mod with their size and modification time, recorded after every installation. Comparing it
+ * with the files after the next download tells which files SteamCMD added, changed or removed, so the installation
+ * needs to process only those. The content hash of every file is kept as well, so the integrity of the mod can be
+ * verified without SteamCMD.
+ *
+ * @param files file entries by their path relative to the mod directory, with '/' as separator
+ */
+record ModFileManifest(Map<String, FileEntry> files) {
+
+    static ModFileManifest scan(Path modDirectory) throws IOException {
+        Map<String, FileEntry> files = new HashMap<>();
+        Files.walkFileTree(modDirectory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    files.put(toRelativePath(modDirectory, file),
+                            new FileEntry(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new ModFileManifest(files);
+    }
+
+    static String toRelativePath(Path modDirectory, Path file) {
+        return modDirectory.relativize(file).toString().replace('\\', '/');
+    }
+
+    boolean contains(String relativePath) {
+        return files.containsKey(relativePath);
+    }
+
+    long totalSize() {
+        return files.values().stream().mapToLong(FileEntry::size).sum();
+    }
+
+    /**
+     * @param previous manifest of the last installation, null if there is none and all files are new
+     */
+    Diff diff(ModFileManifest previous) {
+        if (previous == null) {
+            return new Diff(files.keySet(), Set.of());
+        }
+        Set<String> addedOrChanged = new HashSet<>();
+        files.forEach((path, entry) -> {
+            if (!entry.hasSameAttributes(previous.files().get(path))) {
+                addedOrChanged.add(path);
+            }
+        });
+        Set<String> removed = new HashSet<>(previous.files().keySet());
+        removed.removeAll(files.keySet());
+        return new Diff(addedOrChanged, removed);
+    }
+
+    /**
+     * @return true if the content hash of every file is known
+     */
+    @JsonIgnore
+    boolean isHashed() {
+        return files.values().stream().allMatch(entry -> entry.hash() != null);
+    }
+
+    /**
+     * @param hash SHA-256 of the file content, null if the file wasn't hashed yet
+     */
+    record FileEntry(long size, long lastModifiedMillis, @Nullable String hash) {
+
+        FileEntry(long size, long lastModifiedMillis) {
+            this(size, lastModifiedMillis, null);
+        }
+
+        FileEntry withHash(String hash) {
+            return new FileEntry(size, lastModifiedMillis, hash);
+        }
+
+        /**
+         * @return true if the file has the same size and modification time, in which case it's considered unchanged
+         */
+        boolean hasSameAttributes(@Nullable FileEntry other) {
+            return other != null && size == other.size && lastModifiedMillis == other.lastModifiedMillis;
+        }
+    }
+
+    record Diff(Set<String> addedOrChanged, Set<String> removed) {
+
+        boolean isEmpty() {
+            return addedOrChanged.isEmpty() && removed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the file manifests of installed mods in files outside of the mod directories, so neither SteamCMD nor
+ * the game server sees them.
+ * <p>
+ * The installation of a mod replaces its manifest. Background passes, which take long between loading a manifest and
+ * saving a changed copy of it, save it only if it wasn't replaced meanwhile and the mod isn't being updated.
+ */
+@Component
+@Slf4j
+class ModFileManifestStore {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final PathsFactory pathsFactory;
+    private final Map<Long, Object> manifestLocks = new ConcurrentHashMap<>();
+    private final Set<Long> updatingModIds = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    ModFileManifestStore(PathsFactory pathsFactory) {
+        this.pathsFactory = pathsFactory;
+    }
+
+    /**
+     * @return the manifest of the last installation of the mod, empty if the mod was installed before manifests
+     * were kept or the manifest can't be read, in which case the whole mod has to be processed
+     */
+    Optional<ModFileManifest> load(long modId) {
+        Path manifestPath = pathsFactory.getModFileManifestPath(modId);
+        if (!Files.isRegularFile(manifestPath)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(OBJECT_MAPPER.readValue(manifestPath.toFile(), ModFileManifest.class));
+        } catch (IOException e) {
+            log.warn("Could not read file manifest of mod ID {}, processing all its files", modId, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Marks the mod as being updated until {@link #finishUpdate(long)} is called. SteamCMD writes into its files
+     * meanwhile, so they are not in a known state and only the installation saves the manifest.
+     */
+    void beginUpdate(long modId) {
+        updatingModIds.add(modId);
+    }
+
+    void finishUpdate(long modId) {
+        updatingModIds.remove(modId);
+    }
+
+    boolean isUpdating(long modId) {
+        return updatingModIds.contains(modId);
+    }
+
+    void save(long modId, ModFileManifest manifest) throws IOException {
+        synchronized (getLock(modId)) {
+            write(modId, manifest);
+        }
+    }
+
+    /**
+     * Saves the manifest derived from the given loaded one, unless the stored manifest was replaced since it was
+     * loaded or the mod is being updated.
+     *
+     * @param loadedManifest manifest the new one is derived from, null if the mod had none
+     * @return false if the manifest was not saved
+     */
+    boolean saveIfUnchanged(long modId, @Nullable ModFileManifest loadedManifest, ModFileManifest manifest)
+            throws IOException {
+        synchronized (getLock(modId)) {
+            if (!isUnchanged(modId, loadedManifest)) {
+                return false;
+            }
+            write(modId, manifest);
+            return true;
+        }
+    }
+
+    /**
+     * @param loadedManifest manifest loaded before, null if the mod had none
+     * @return true if the stored manifest is still the loaded one and the mod is not being updated
+     */
+    boolean isUnchanged(long modId, @Nullable ModFileManifest loadedManifest) {
+        return !isUpdating(modId) && Objects.equals(load(modId).orElse(null), loadedManifest);
+    }
+
+    private Object getLock(long modId) {
+        return manifestLocks.computeIfAbsent(modId, id -> new Object());
+    }
+
+    private void write(long modId, ModFileManifest manifest) throws IOException {
+        Path manifestPath = pathsFactory.getModFileManifestPath(modId);
+        Files.createDirectories(manifestPath.getParent());
+        // written next to the target first, so a crash while saving doesn't leave a truncated manifest behind
+        Path temporaryFile = Files.createTempFile(manifestPath.getParent(), String.valueOf(modId), ".tmp");
+        OBJECT_MAPPER.writeValue(temporaryFile.toFile(), manifest);
+        Files.move(temporaryFile, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    void delete(long modId) {
+        synchronized (getLock(modId)) {
+            try {
+                Files.deleteIfExists(pathsFactory.getModFileManifestPath(modId));
+            } catch (IOException e) {
+                log.warn("Could not delete file manifest of mod ID {}", modId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import java.util.List;
+
+/**
+ * @param modId           ID of the verified mod
+ * @param indexed         false if nothing could be verified, either the mod had no content hashes yet (they were
+ *                        computed from its current files) or it was updated while being verified
+ * @param missingFiles    files which were installed but are gone
+ * @param modifiedFiles   files whose content differs from the installed one
+ * @param unexpectedFiles files which were not installed with the mod
+ */
+record ModIntegrityReportDto(
+        long modId,
+        boolean indexed,
+        List<String> missingFiles,
+        List<String> modifiedFiles,
+        List<String> unexpectedFiles
+) {
+
+    static ModIntegrityReportDto notIndexed(long modId) {
+        return new ModIntegrityReportDto(modId, false, List.of(), List.of(), List.of());
+    }
+
+    boolean isDivergent() {
+        return !missingFiles.isEmpty() || !modifiedFiles.isEmpty() || !unexpectedFiles.isEmpty();
+    }
+}
@@ -0,0 +1,184 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.workshop.ModFileManifest.FileEntry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Verifies the files of installed mods against the content hashes recorded on their installation, without
+ * SteamCMD. Only files whose size or modification time changed since they were hashed are read again, a file with
+ * a changed size is known to differ without reading it at all.
+ * <p>
+ * Verification of all mods runs in the background, the first one after upgrading hashes every installed file.
+ */
+@Service
+@Slf4j
+class ModIntegrityService {
+
+    private final PathsFactory pathsFactory;
+    private final ModFileManifestStore fileManifestStore;
+    private final ModFileHasher fileHasher;
+    private final WorkshopModsService modsService;
+    private final ExecutorService verificationExecutor;
+    private CompletableFuture<List<ModIntegrityReportDto>> runningPass;
+    private volatile List<ModIntegrityReportDto> lastReports;
+
+    @Autowired
+    ModIntegrityService(
+            PathsFactory pathsFactory,
+            ModFileManifestStore fileManifestStore,
+            ModFileHasher fileHasher,
+            WorkshopModsService modsService) {
+        this.pathsFactory = pathsFactory;
+        this.fileManifestStore = fileManifestStore;
+        this.fileHasher = fileHasher;
+        this.modsService = modsService;
+        verificationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mod-verification");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        verificationExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts verifying all installed mods in the background, or returns the running verification.
+     */
+    synchronized CompletableFuture<List<ModIntegrityReportDto>> verifyInBackground() {
+        if (runningPass == null || runningPass.isDone()) {
+            runningPass = CompletableFuture.supplyAsync(this::verifyAll, verificationExecutor);
+        }
+        return runningPass;
+    }
+
+    Optional<List<ModIntegrityReportDto>> getLastReports() {
+        return Optional.ofNullable(lastReports);
+    }
+
+    private List<ModIntegrityReportDto> verifyAll() {
+        List<ModIntegrityReportDto> reports = verify(modsService.getAllMods());
+        log.info("{} of {} verified mods diverge",
+                reports.stream().filter(ModIntegrityReportDto::isDivergent).count(), reports.size());
+        lastReports = reports;
+        return reports;
+    }
+
+    /**
+     * Verifies the installed mods, mods which are being installed or failed to install are left out.
+     */
+    List<ModIntegrityReportDto> verify(Collection<WorkshopMod> mods) {
+        List<ModIntegrityReportDto> reports = new ArrayList<>();
+        for (WorkshopMod mod : mods) {
+            if (mod.getInstallationStatus() != InstallationStatus.FINISHED || mod.getServerType() == null
+                    || fileManifestStore.isUpdating(mod.getId())) {
+                continue;
+            }
+            try {
+                reports.add(verify(mod));
+            } catch (IOException e) {
+                log.error("Could not verify files of mod '{}' (ID {})", mod.getName(), mod.getId(), e);
+            }
+        }
+        return reports;
+    }
+
+    ModIntegrityReportDto verify(WorkshopMod mod) throws IOException {
+        Path modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+        Optional<ModFileManifest> storedManifest = fileManifestStore.load(mod.getId());
+        if (storedManifest.isEmpty() || !storedManifest.get().isHashed()) {
+            // installed before hashes were kept, the current files are the best known state
+            // unless the mod was updated meanwhile, the update has recorded its own manifest then
+            if (Files.isDirectory(modDirectory)) {
+                ModFileManifest manifest = ModFileManifest.scan(modDirectory);
+                if (fileManifestStore.saveIfUnchanged(mod.getId(), storedManifest.orElse(null),
+                        fileHasher.hashFiles(modDirectory, manifest, storedManifest.orElse(null)))) {
+                    log.info("Indexed files of mod '{}' (ID {})", mod.getName(), mod.getId());
+                }
+            }
+            return ModIntegrityReportDto.notIndexed(mod.getId());
+        }
+
+        Map<String, FileEntry> installedFiles = storedManifest.get().files();
+        Map<String, FileEntry> currentFiles = Files.isDirectory(modDirectory)
+                ? ModFileManifest.scan(modDirectory).files()
+                : Map.of();
+        List<String> missingFiles = new ArrayList<>();
+        List<String> modifiedFiles = new ArrayList<>();
+        List<String> unexpectedFiles = new ArrayList<>();
+        Map<String, FileEntry> filesToHash = new HashMap<>();
+
+        installedFiles.forEach((path, installedFile) -> {
+            FileEntry currentFile = currentFiles.get(path);
+            if (currentFile == null) {
+                missingFiles.add(path);
+            } else if (currentFile.size() != installedFile.size()) {
+                modifiedFiles.add(path);
+            } else if (!currentFile.hasSameAttributes(installedFile)) {
+                filesToHash.put(path, currentFile);
+            }
+        });
+        currentFiles.keySet().stream()
+                .filter(path -> !installedFiles.containsKey(path))
+                .forEach(unexpectedFiles::add);
+
+        Map<String, String> hashes = fileHasher.hash(modDirectory, filesToHash.keySet());
+        Map<String, FileEntry> touchedFiles = new HashMap<>();
+        hashes.forEach((path, hash) -> {
+            if (hash.equals(installedFiles.get(path).hash())) {
+                touchedFiles.put(path, filesToHash.get(path).withHash(hash));
+            } else {
+                modifiedFiles.add(path);
+            }
+        });
+        boolean unchanged;
+        if (!touchedFiles.isEmpty()) {
+            // only touched, the content is the same; stored with the new attributes so it's not read next time
+            Map<String, FileEntry> files = new HashMap<>(installedFiles);
+            files.putAll(touchedFiles);
+            unchanged = fileManifestStore.saveIfUnchanged(mod.getId(), storedManifest.get(),
+                    new ModFileManifest(files));
+        } else {
+            unchanged = fileManifestStore.isUnchanged(mod.getId(), storedManifest.get());
+        }
+        if (!unchanged) {
+            // the files were compared with the manifest of the previous version, the result says nothing
+            log.info("Mod '{}' (ID {}) was updated while being verified, it's verified next time",
+                    mod.getName(), mod.getId());
+            return ModIntegrityReportDto.notIndexed(mod.getId());
+        }
+
+        ModIntegrityReportDto report = new ModIntegrityReportDto(mod.getId(), true,
+                missingFiles.stream().sorted().toList(),
+                modifiedFiles.stream().sorted().toList(),
+                unexpectedFiles.stream().sorted().toList());
+        if (report.isDivergent()) {
+            log.warn("Files of mod '{}' (ID {}) diverge from the installed ones: {} missing, {} modified, "
+                            + "{} unexpected", mod.getName(), mod.getId(), missingFiles.size(), modifiedFiles.size(),
+                    unexpectedFiles.size());
+        }
+        log.debug("Verified mod '{}' (ID {}), {} of {} files hashed", mod.getName(), mod.getId(), hashes.size(),
+                currentFiles.size());
+        return report;
+    }
+}
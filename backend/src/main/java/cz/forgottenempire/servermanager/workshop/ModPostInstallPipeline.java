@@ -0,0 +1,345 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
+import cz.forgottenempire.servermanager.util.FileSystemUtils;
+import cz.forgottenempire.servermanager.util.FileSystemUtils.LowercaseResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installs downloaded mods in stages: the download is verified, files are renamed to lowercase and hashed, keys are
+ * applied to the servers, the mod is linked into the servers, its size is recorded, and finally the mod is saved. Every stage
+ * runs on its own bounded thread pool and mods move through the stages independently, so a large mod held up in one
+ * stage doesn't delay the others. Mods are saved in batches, by a single thread.
+ */
+@Component
+@Slf4j
+class ModPostInstallPipeline {
+
+    enum Stage {
+        VERIFY, LOWERCASE, HASH, KEYS, SYMLINK, SIZE, PERSIST
+    }
+
+    private final PathsFactory pathsFactory;
+    private final WorkshopModsService modsService;
+    private final ServerInstallationService installationService;
+    private final ModFileManifestStore fileManifestStore;
+    private final ModFileHasher fileHasher;
+    private final BiKeyReconciliationService keyReconciliationService;
+    private final Map<Stage, ExecutorService> stageExecutors = new EnumMap<>(Stage.class);
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Timer installationTimer;
+    // renames run on their own threads, sibling directories of a mod are processed in parallel
+    private final ExecutorService lowercaseExecutor;
+    private final BlockingQueue<PostInstallation> persistQueue = new LinkedBlockingQueue<>();
+
+    @Autowired
+    ModPostInstallPipeline(
+            PathsFactory pathsFactory,
+            WorkshopModsService modsService,
+            ServerInstallationService installationService,
+            ModFileManifestStore fileManifestStore,
+            ModFileHasher fileHasher,
+            BiKeyReconciliationService keyReconciliationService,
+            @Value("${workshop.installation.lowercase-threads:4}") int lowercaseThreads,
+            @Value("${workshop.installation.stages.verify-threads:2}") int verifyStageThreads,
+            @Value("${workshop.installation.stages.lowercase-threads:2}") int lowercaseStageThreads,
+            @Value("${workshop.installation.stages.hash-threads:2}") int hashStageThreads,
+            @Value("${workshop.installation.stages.keys-threads:2}") int keysStageThreads,
+            @Value("${workshop.installation.stages.symlink-threads:1}") int symlinkStageThreads,
+            @Value("${workshop.installation.stages.size-threads:2}") int sizeStageThreads,
+            MeterRegistry meterRegistry) {
+        this.pathsFactory = pathsFactory;
+        this.modsService = modsService;
+        this.installationService = installationService;
+        this.fileManifestStore = fileManifestStore;
+        this.fileHasher = fileHasher;
+        this.keyReconciliationService = keyReconciliationService;
+
+        Map<Stage, Integer> stageThreads = Map.of(
+                Stage.VERIFY, verifyStageThreads,
+                Stage.LOWERCASE, lowercaseStageThreads,
+                Stage.HASH, hashStageThreads,
+                Stage.KEYS, keysStageThreads,
+                Stage.SYMLINK, symlinkStageThreads,
+                Stage.SIZE, sizeStageThreads,
+                // a single thread saves whatever mods are waiting at once
+                Stage.PERSIST, 1);
+        for (Stage stage : Stage.values()) {
+            stageExecutors.put(stage, createExecutor(stageThreads.get(stage),
+                    "mod-install-" + stage.name().toLowerCase(Locale.ROOT)));
+            stageTimers.put(stage, Timer.builder("workshop.installation.stage")
+                    .description("Time spent in a stage of a mod installation")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        installationTimer = Timer.builder("workshop.installation.duration")
+                .description("Time spent installing a mod after SteamCMD downloaded it")
+                .register(meterRegistry);
+        lowercaseExecutor = createExecutor(lowercaseThreads, "mod-lowercase");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stageExecutors.values().forEach(ExecutorService::shutdownNow);
+        lowercaseExecutor.shutdownNow();
+    }
+
+    /**
+     * Installs the mods of the finished SteamCMD job.
+     *
+     * @return future completed once all the mods were saved, completed exceptionally if some could not be saved
+     */
+    CompletableFuture<Void> install(SteamCmdJob steamCmdJob) {
+        List<CompletableFuture<Void>> installations = new ArrayList<>();
+        for (WorkshopMod mod : steamCmdJob.getRelatedWorkshopMods()) {
+            PostInstallation installation = new PostInstallation(mod, steamCmdJob);
+            CompletableFuture<PostInstallation> stages = CompletableFuture.completedFuture(installation);
+            stages = runStage(stages, Stage.VERIFY, this::verify);
+            stages = runStage(stages, Stage.LOWERCASE, this::convertModFilesToLowercase);
+            stages = runStage(stages, Stage.HASH, this::hashModFiles);
+            stages = runStage(stages, Stage.KEYS, this::updateBiKeys);
+            stages = runStage(stages, Stage.SYMLINK, this::createSymlink);
+            stages = runStage(stages, Stage.SIZE, this::updateModInfo);
+            installations.add(stages
+                    .thenAccept(this::persist)
+                    .thenCompose(ignored -> installation.persisted));
+        }
+        return CompletableFuture.allOf(installations.toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<PostInstallation> runStage(CompletableFuture<PostInstallation> previousStages,
+            Stage stage, StageAction action) {
+        return previousStages.thenApplyAsync(installation -> {
+            if (installation.done) {
+                return installation;
+            }
+            WorkshopMod mod = installation.mod;
+            long startedAt = System.nanoTime();
+            try {
+                action.run(installation);
+            } catch (Exception e) {
+                log.error("Failed to install mod {} (ID {}) in stage {}", mod.getName(), mod.getId(), stage, e);
+                mod.setInstallationStatus(InstallationStatus.ERROR);
+                mod.setErrorStatus(ErrorStatus.IO);
+                installation.done = true;
+            } finally {
+                stageTimers.get(stage).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+            return installation;
+        }, stageExecutors.get(stage));
+    }
+
+    private void verify(PostInstallation installation) {
+        WorkshopMod mod = installation.mod;
+        ErrorStatus errorStatus = installation.steamCmdJob.getErrorStatusOf(mod.getId());
+        if (errorStatus == ErrorStatus.CANCELLED) {
+            rollBackCancelledInstallation(installation);
+            return;
+        }
+        if (errorStatus != null) {
+            log.error("Download of mod '{}' (id {}) failed, reason: {}",
+                    mod.getName(), mod.getId(), errorStatus);
+            mod.setInstallationStatus(InstallationStatus.ERROR);
+            mod.setErrorStatus(errorStatus);
+            installation.done = true;
+        } else if (!Files.isDirectory(installation.modDirectory)) {
+            log.error("Could not find downloaded mod directory for mod '{}' (id {}) " +
+                    "even though download finished successfully", mod.getName(), mod.getId());
+            mod.setInstallationStatus(InstallationStatus.ERROR);
+            mod.setErrorStatus(ErrorStatus.GENERIC);
+            installation.done = true;
+        } else {
+            log.info("Mod '{}' (ID {}) successfully downloaded, now installing", mod.getName(), mod.getId());
+            installation.previousManifest = fileManifestStore.load(mod.getId()).orElse(null);
+        }
+    }
+
+    private void rollBackCancelledInstallation(PostInstallation installation) {
+        WorkshopMod mod = installation.mod;
+        installation.done = true;
+        if (mod.getLastUpdated() == null) {
+            log.info("Installation of mod '{}' (ID {}) was cancelled, removing the mod", mod.getName(), mod.getId());
+            installation.removed = true;
+            return;
+        }
+
+        // SteamCMD replaces the files of a mod only after the whole update is downloaded, the installed version is kept
+        log.info("Update of mod '{}' (ID {}) was cancelled, keeping the installed version", mod.getName(), mod.getId());
+        mod.setInstallationStatus(InstallationStatus.FINISHED);
+        mod.setErrorStatus(null);
+    }
+
+    private void convertModFilesToLowercase(PostInstallation installation) throws IOException {
+        WorkshopMod mod = installation.mod;
+        Path modDirectory = installation.modDirectory;
+        ModFileManifest previousManifest = installation.previousManifest;
+        // SteamCMD writes an updated file under its original name (recreating its mixed case directories, which are
+        // merged into the lowercase ones), next to the lowercase copy of its previous version
+        LowercaseResult result = FileSystemUtils.directoryToLowercase(modDirectory, lowercaseExecutor,
+                (file, lowercaseFile) -> previousManifest != null
+                        && previousManifest.contains(ModFileManifest.toRelativePath(modDirectory, lowercaseFile))
+                        && !previousManifest.contains(ModFileManifest.toRelativePath(modDirectory, file)));
+        log.debug("Renamed {} files of mod '{}' (ID {}) to lowercase",
+                result.renamedEntries(), mod.getName(), mod.getId());
+        if (!result.collisions().isEmpty()) {
+            // the server sees only the lowercase entry, the other one is left in place for the mod author to fix
+            log.warn("Mod '{}' (ID {}) contains files differing only in case, these were not renamed: {}",
+                    mod.getName(), mod.getId(), result.collisions());
+        }
+    }
+
+    private void hashModFiles(PostInstallation installation) throws IOException {
+        WorkshopMod mod = installation.mod;
+        // only added or changed files are hashed, the others keep their hash from the last installation
+        installation.manifest = fileHasher.hashFiles(installation.modDirectory,
+                ModFileManifest.scan(installation.modDirectory), installation.previousManifest);
+        ModFileManifest.Diff diff = installation.manifest.diff(installation.previousManifest);
+        log.debug("Mod '{}' (ID {}): {} files added or changed, {} removed", mod.getName(), mod.getId(),
+                diff.addedOrChanged().size(), diff.removed().size());
+    }
+
+    private void updateBiKeys(PostInstallation installation) {
+        keyReconciliationService.onModInstalled(installation.mod, installation.manifest);
+    }
+
+    private void createSymlink(PostInstallation installation) throws IOException {
+        WorkshopMod mod = installation.mod;
+        for (ServerType serverType : getRelevantServerTypes(mod)) {
+            Path linkPath = pathsFactory.getModLinkPath(mod.getNormalizedName(), serverType);
+            if (!Files.isSymbolicLink(linkPath)) {
+                log.debug("Creating symlink - link {}, target {}", linkPath, installation.modDirectory);
+                Files.createSymbolicLink(linkPath, installation.modDirectory);
+            }
+        }
+    }
+
+    private Collection<ServerType> getRelevantServerTypes(WorkshopMod mod) {
+        Set<ServerType> serverTypes = new HashSet<>();
+        if (installationService.isServerInstalled(mod.getServerType())) {
+            serverTypes.add(mod.getServerType());
+        }
+        if (mod.getServerType() == ServerType.DAYZ && installationService.isServerInstalled(ServerType.DAYZ_EXP)) {
+            serverTypes.add(ServerType.DAYZ_EXP);
+        }
+        return serverTypes;
+    }
+
+    private void updateModInfo(PostInstallation installation) throws IOException {
+        WorkshopMod mod = installation.mod;
+        mod.setLastUpdated(LocalDateTime.now());
+        // as data about mod size from workshop API are not reliable, the size on disk is used instead
+        mod.setFileSize(installation.manifest.totalSize());
+        // not known when resuming an interrupted installation, the mod is then updated by the next update job
+        mod.setWorkshopTimeUpdated(mod.getPendingWorkshopTimeUpdated());
+        mod.setWorkshopFileSize(mod.getPendingWorkshopFileSize());
+        fileManifestStore.save(mod.getId(), installation.manifest);
+        mod.setInstallationStatus(InstallationStatus.FINISHED);
+        log.info("Mod '{}' (ID {}) successfully installed", mod.getName(), mod.getId());
+    }
+
+    private void persist(PostInstallation installation) {
+        persistQueue.add(installation);
+        stageExecutors.get(Stage.PERSIST).execute(this::persistQueuedMods);
+    }
+
+    private void persistQueuedMods() {
+        List<PostInstallation> batch = new ArrayList<>();
+        persistQueue.drainTo(batch);
+        if (batch.isEmpty()) {
+            // saved together with an earlier mod
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            batch.stream()
+                    .filter(installation -> installation.removed)
+                    .forEach(installation -> modsService.deleteMod(installation.mod));
+            modsService.saveAllMods(batch.stream()
+                    .filter(installation -> !installation.removed)
+                    .map(installation -> installation.mod)
+                    .toList());
+            log.debug("Saved {} installed mods", batch.size());
+        } catch (RuntimeException e) {
+            // the mods are left in progress in the database, they don't count as installed
+            log.error("Could not save {} installed mods", batch.size(), e);
+            stageTimers.get(Stage.PERSIST).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            batch.forEach(installation -> installation.persisted.completeExceptionally(e));
+            return;
+        }
+        long finishedAt = System.nanoTime();
+        stageTimers.get(Stage.PERSIST).record(finishedAt - startedAt, TimeUnit.NANOSECONDS);
+
+        for (PostInstallation installation : batch) {
+            installationTimer.record(finishedAt - installation.startedAtNanos, TimeUnit.NANOSECONDS);
+            installation.persisted.complete(null);
+        }
+    }
+
+    private static ExecutorService createExecutor(int threads, String threadName) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @FunctionalInterface
+    private interface StageAction {
+        void run(PostInstallation installation) throws Exception;
+    }
+
+    /**
+     * State of a mod going through the stages, handed from one stage to the next.
+     */
+    private class PostInstallation {
+
+        private final WorkshopMod mod;
+        private final SteamCmdJob steamCmdJob;
+        private final Path modDirectory;
+        private final long startedAtNanos = System.nanoTime();
+        private final CompletableFuture<Void> persisted = new CompletableFuture<>();
+        private ModFileManifest previousManifest;
+        private ModFileManifest manifest;
+        // the remaining stages are skipped, the mod is only saved
+        private boolean done;
+        // the mod is deleted instead of saved
+        private boolean removed;
+
+        private PostInstallation(WorkshopMod mod, SteamCmdJob steamCmdJob) {
+            this.mod = mod;
+            this.steamCmdJob = steamCmdJob;
+            this.modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import java.util.List;
+
+/**
+ * @param missingModIds   installed mods whose directory was gone, marked as failed
+ * @param recoveredModIds interrupted installations which were finished from the downloaded files
+ * @param outdatedModIds  installed mods whose files are behind
+ * @param filledSizes     number of mods whose size was taken from the SteamCMD manifests
+ */
+record ReconciliationReportDto(
+        List<Long> missingModIds,
+        List<Long> recoveredModIds,
+        List<Long> outdatedModIds,
+        int filledSizes
+) {
+}
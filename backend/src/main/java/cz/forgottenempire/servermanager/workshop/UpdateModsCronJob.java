@@ -2,6 +2,7 @@ package cz.forgottenempire.servermanager.workshop;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -9,18 +10,53 @@ import org.springframework.stereotype.Component;
 @Slf4j
 class UpdateModsCronJob {
 
+    private static final String DISABLED = "-";
+
     private final WorkshopModsFacade modsFacade;
 
     @Autowired
-    public UpdateModsCronJob(WorkshopModsFacade modsFacade) {
+    public UpdateModsCronJob(
+            WorkshopModsFacade modsFacade,
+            @Value("${workshop.update.cron:0 0 3 * * *}") String updateCron,
+            @Value("${workshop.update.full-validation-cron:-}") String fullValidationCron,
+            @Value("${workshop.integrity.cron:-}") String integrityCron,
+            @Value("${workshop.deduplication.cron:-}") String deduplicationCron
+    ) {
         // TODO make customizable through UI
-        log.info("Scheduling mod update cronjob for 03:00 AM every day");
+        log.info("Scheduling mod update job with cron '{}'", updateCron);
+        if (!DISABLED.equals(fullValidationCron)) {
+            log.info("Scheduling full mod validation job with cron '{}'", fullValidationCron);
+        }
+        if (!DISABLED.equals(integrityCron)) {
+            log.info("Scheduling mod integrity check with cron '{}'", integrityCron);
+        }
+        if (!DISABLED.equals(deduplicationCron)) {
+            log.info("Scheduling mod deduplication with cron '{}'", deduplicationCron);
+        }
         this.modsFacade = modsFacade;
     }
 
-    @Scheduled(cron = "0 0 3 * * *")
+    @Scheduled(cron = "${workshop.update.cron:0 0 3 * * *}")
     public void refreshMods() {
         log.info("Running update job");
+        modsFacade.updateChangedMods();
+    }
+
+    @Scheduled(cron = "${workshop.update.full-validation-cron:-}")
+    public void validateMods() {
+        log.info("Running full validation job");
         modsFacade.updateAllMods();
     }
+
+    @Scheduled(cron = "${workshop.integrity.cron:-}")
+    public void verifyMods() {
+        log.info("Running integrity check job");
+        modsFacade.verifyMods(true);
+    }
+
+    @Scheduled(cron = "${workshop.deduplication.cron:-}")
+    public void deduplicateModFiles() {
+        log.info("Running deduplication job");
+        modsFacade.deduplicateModFiles();
+    }
 }
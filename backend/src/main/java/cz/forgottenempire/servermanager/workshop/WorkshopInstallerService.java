@@ -2,12 +2,10 @@ package cz.forgottenempire.servermanager.workshop;
 
 import cz.forgottenempire.servermanager.common.InstallationStatus;
 import cz.forgottenempire.servermanager.common.PathsFactory;
-import cz.forgottenempire.servermanager.common.ServerType;
-import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
 import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
-import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobPriority;
 import cz.forgottenempire.servermanager.steamcmd.SteamCmdService;
-import cz.forgottenempire.servermanager.util.FileSystemUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,10 +17,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.time.LocalDateTime;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 @Service
@@ -32,33 +28,73 @@ class WorkshopInstallerService {
     private final PathsFactory pathsFactory;
     private final WorkshopModsService modsService;
     private final SteamCmdService steamCmdService;
-    private final ServerInstallationService installationService;
+    private final ModFileManifestStore fileManifestStore;
+    private final ModDeduplicationService deduplicationService;
+    private final BiKeyReconciliationService keyReconciliationService;
+    private final ModPostInstallPipeline postInstallPipeline;
 
     @Autowired
     public WorkshopInstallerService(
             PathsFactory pathsFactory,
             WorkshopModsService modsService,
             SteamCmdService steamCmdService,
-            ServerInstallationService installationService) {
+            ModFileManifestStore fileManifestStore,
+            ModDeduplicationService deduplicationService,
+            BiKeyReconciliationService keyReconciliationService,
+            ModPostInstallPipeline postInstallPipeline) {
         this.pathsFactory = pathsFactory;
         this.modsService = modsService;
         this.steamCmdService = steamCmdService;
-        this.installationService = installationService;
+        this.fileManifestStore = fileManifestStore;
+        this.deduplicationService = deduplicationService;
+        this.keyReconciliationService = keyReconciliationService;
+        this.postInstallPipeline = postInstallPipeline;
     }
 
-    @Transactional
-    public void installOrUpdateMods(Collection<WorkshopMod> mods) {
-        steamCmdService.installOrUpdateWorkshopMods(mods)
-                .thenAcceptAsync(steamCmdJob -> steamCmdJob.getRelatedWorkshopMods().forEach(
-                        mod -> handleInstallation(mod, steamCmdJob)
-                ));
+    @Transactional(noRollbackFor = InsufficientDiskSpaceException.class)
+    public void installOrUpdateMods(Collection<WorkshopMod> mods, SteamCmdJobPriority priority) {
+        installOrUpdateMods(mods, priority, Set.of());
+    }
+
+    /**
+     * Installs the mods, the given ones are only installed as they were already downloaded before.
+     */
+    @Transactional(noRollbackFor = InsufficientDiskSpaceException.class)
+    public void installOrUpdateMods(Collection<WorkshopMod> mods, SteamCmdJobPriority priority,
+            Set<Long> downloadedModIds) {
+        List<WorkshopMod> modsToDownload = mods.stream()
+                .filter(mod -> !downloadedModIds.contains(mod.getId()))
+                .toList();
+        // files shared with other mods get private copies on the SteamCMD worker right before it runs
+        long copyBytes = deduplicationService.estimateCopyBytes(modsToDownload);
+        try {
+            // the mods are installed on the pipeline's own threads, the SteamCMD worker is only handing them over
+            steamCmdService.installOrUpdateWorkshopMods(mods, priority, downloadedModIds, copyBytes)
+                    .thenCompose(postInstallPipeline::install)
+                    .whenComplete((ignored, throwable) ->
+                            mods.forEach(mod -> deduplicationService.finishUpdate(mod.getId())));
+        } catch (InsufficientDiskSpaceException e) {
+            mods.forEach(mod -> {
+                if (mod.getLastUpdated() != null) {
+                    // nothing was downloaded, the installed version of the mod stays as it was
+                    mod.setInstallationStatus(InstallationStatus.FINISHED);
+                    mod.setErrorStatus(null);
+                } else {
+                    mod.setInstallationStatus(InstallationStatus.ERROR);
+                    mod.setErrorStatus(ErrorStatus.NO_SPACE);
+                }
+            });
+            modsService.saveAllMods(List.copyOf(mods));
+            throw e;
+        }
     }
 
     public void uninstallMod(WorkshopMod mod) {
         File modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType()).toFile();
         try {
-            deleteBiKeys(mod);
+            keyReconciliationService.onModUninstalled(mod);
             deleteSymlink(mod);
+            fileManifestStore.delete(mod.getId());
             FileUtils.deleteDirectory(modDirectory);
         } catch (NoSuchFileException ignored) {
         } catch (IOException e) {
@@ -68,102 +104,6 @@ class WorkshopInstallerService {
         log.info("Mod {} ({}) successfully deleted", mod.getName(), mod.getId());
     }
 
-    private void handleInstallation(WorkshopMod mod, SteamCmdJob steamCmdJob) {
-        if (steamCmdJob.getErrorStatus() != null) {
-            log.error("Download of mod '{}' (id {}) failed, reason: {}",
-                    mod.getName(), mod.getId(), steamCmdJob.getErrorStatus());
-            mod.setInstallationStatus(InstallationStatus.ERROR);
-            mod.setErrorStatus(steamCmdJob.getErrorStatus());
-        } else if (!verifyModDirectoryExists(mod.getId(), mod.getServerType())) {
-            log.error("Could not find downloaded mod directory for mod '{}' (id {}) " +
-                    "even though download finished successfully", mod.getName(), mod.getId());
-            mod.setInstallationStatus(InstallationStatus.ERROR);
-            mod.setErrorStatus(ErrorStatus.GENERIC);
-        } else {
-            log.info("Mod '{}' (ID {}) successfully downloaded, now installing", mod.getName(), mod.getId());
-            installMod(mod);
-        }
-
-        modsService.saveMod(mod);
-    }
-
-    private void installMod(WorkshopMod mod) {
-        try {
-            convertModFilesToLowercase(mod);
-            updateBiKeys(mod);
-            createSymlink(mod);
-            updateModInfo(mod);
-            mod.setInstallationStatus(InstallationStatus.FINISHED);
-            log.info("Mod '{}' (ID {}) successfully installed", mod.getName(), mod.getId());
-        } catch (Exception e) {
-            log.error("Failed to install mod {} (ID {})", mod.getName(), mod.getId(), e);
-            mod.setInstallationStatus(InstallationStatus.ERROR);
-            mod.setErrorStatus(ErrorStatus.IO);
-        }
-    }
-
-    private void convertModFilesToLowercase(WorkshopMod mod) throws IOException {
-        File modDir = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType()).toFile();
-        FileSystemUtils.directoryToLowercase(modDir);
-    }
-
-    private void updateBiKeys(WorkshopMod mod) throws IOException {
-        deleteBiKeys(mod);
-        installNewBiKeys(mod);
-    }
-
-    private void deleteBiKeys(WorkshopMod mod) {
-        mod.getBiKeys().forEach(biKey -> {
-            for (ServerType serverType : getRelevantServerTypes(mod)) {
-                File keyFile = pathsFactory.getServerKeyPath(biKey, serverType).toFile();
-                FileUtils.deleteQuietly(keyFile);
-            }
-        });
-    }
-
-    private void installNewBiKeys(WorkshopMod mod) throws IOException {
-        String[] extensions = new String[]{"bikey"};
-        File modDirectory = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType()).toFile();
-
-        for (Iterator<File> it = FileUtils.iterateFiles(modDirectory, extensions, true); it.hasNext(); ) {
-            File key = it.next();
-            mod.addBiKey(key.getName());
-            for (ServerType serverType : getRelevantServerTypes(mod)) {
-                log.debug("Copying BiKey {} to server {}", key.getName(), serverType);
-                FileUtils.copyFile(key, pathsFactory.getServerKeyPath(key.getName(), serverType).toFile());
-            }
-        }
-    }
-
-    private void createSymlink(WorkshopMod mod) throws IOException {
-        // create symlink to server directory
-        Path targetPath = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
-
-        for (ServerType serverType : getRelevantServerTypes(mod)) {
-            Path linkPath = pathsFactory.getModLinkPath(mod.getNormalizedName(), serverType);
-            if (!Files.isSymbolicLink(linkPath)) {
-                log.debug("Creating symlink - link {}, target {}", linkPath, targetPath);
-                Files.createSymbolicLink(linkPath, targetPath);
-            }
-        }
-    }
-
-    private Collection<ServerType> getRelevantServerTypes(WorkshopMod mod) {
-        Set<ServerType> serverTypes = new HashSet<>();
-        if (installationService.isServerInstalled(mod.getServerType())) {
-            serverTypes.add(mod.getServerType());
-        }
-        if (mod.getServerType() == ServerType.DAYZ && installationService.isServerInstalled(ServerType.DAYZ_EXP)) {
-            serverTypes.add(ServerType.DAYZ_EXP);
-        }
-        return serverTypes;
-    }
-
-    private void updateModInfo(WorkshopMod mod) {
-        mod.setLastUpdated(LocalDateTime.now());
-        mod.setFileSize(getActualSizeOfMod(mod.getId(), mod.getServerType()));
-    }
-
     private void deleteSymlink(WorkshopMod mod) throws IOException {
         Path linkPath = pathsFactory.getModLinkPath(mod.getNormalizedName(), mod.getServerType());
         log.debug("Deleting symlink {}", linkPath);
@@ -171,17 +111,4 @@ class WorkshopInstallerService {
             Files.delete(linkPath);
         }
     }
-
-    private boolean verifyModDirectoryExists(Long modId, ServerType type) {
-        return pathsFactory.getModInstallationPath(modId, type)
-                .toFile()
-                .isDirectory();
-    }
-
-    // as data about mod size from workshop API are not reliable, find the size of disk instead
-    private Long getActualSizeOfMod(Long modId, ServerType type) {
-        return FileUtils.sizeOfDirectory(
-                pathsFactory.getModInstallationPath(modId, type).toFile()
-        );
-    }
 }
@@ -27,6 +27,18 @@ public class WorkshopMod {
     private LocalDateTime lastUpdated;
     private Long fileSize;
 
+    // version of the mod on the Workshop when it was last installed, to tell whether it needs an update
+    private Long workshopTimeUpdated;
+    private Long workshopFileSize;
+
+    // version being installed, stored as the installed version only once the installation succeeds
+    @Transient
+    @JsonIgnore
+    private Long pendingWorkshopTimeUpdated;
+    @Transient
+    @JsonIgnore
+    private Long pendingWorkshopFileSize;
+
     @Column(name = "server_only")
     private boolean serverOnly;
 
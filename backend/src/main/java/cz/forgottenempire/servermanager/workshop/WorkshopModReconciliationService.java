@@ -0,0 +1,171 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobPriority;
+import cz.forgottenempire.servermanager.workshop.acf.InstalledWorkshopItem;
+import cz.forgottenempire.servermanager.workshop.acf.WorkshopManifest;
+import cz.forgottenempire.servermanager.workshop.acf.WorkshopManifestReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the mods in the database with what SteamCMD recorded in its workshop manifests and with the mod
+ * directories, without going to Steam:
+ * <ul>
+ *     <li>installed mods whose directory is gone are marked as failed, so the next update installs them again,</li>
+ *     <li>installations interrupted by a restart are finished if SteamCMD downloaded the mod completely,</li>
+ *     <li>missing mod sizes are taken from the manifests,</li>
+ *     <li>mods whose installed files are behind are reported as outdated.</li>
+ * </ul>
+ * Runs on startup after interrupted installations were resumed, and on demand.
+ */
+@Service
+@Slf4j
+class WorkshopModReconciliationService {
+
+    private final WorkshopModsService modsService;
+    private final WorkshopInstallerService installerService;
+    private final WorkshopManifestReader manifestReader;
+    private final PathsFactory pathsFactory;
+
+    @Autowired
+    WorkshopModReconciliationService(
+            WorkshopModsService modsService,
+            WorkshopInstallerService installerService,
+            WorkshopManifestReader manifestReader,
+            PathsFactory pathsFactory) {
+        this.modsService = modsService;
+        this.installerService = installerService;
+        this.manifestReader = manifestReader;
+        this.pathsFactory = pathsFactory;
+    }
+
+    // runs after InterruptedModInstallationResumer, which marks mods left in progress as interrupted
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(1)
+    public void reconcileOnStartup() {
+        ReconciliationReportDto report = reconcile();
+        log.info("Reconciled mods with SteamCMD manifests: {}", report);
+    }
+
+    public ReconciliationReportDto reconcile() {
+        Map<ServerType, WorkshopManifest> manifests = readManifests();
+        List<WorkshopMod> changedMods = new ArrayList<>();
+        List<WorkshopMod> modsToInstall = new ArrayList<>();
+        List<Long> missingModIds = new ArrayList<>();
+        List<Long> recoveredModIds = new ArrayList<>();
+        List<Long> outdatedModIds = new ArrayList<>();
+        int filledSizes = 0;
+
+        for (WorkshopMod mod : modsService.getAllMods()) {
+            if (mod.getServerType() == null) {
+                continue;
+            }
+            boolean directoryExists = Files.isDirectory(
+                    pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType()));
+            Optional<InstalledWorkshopItem> item = manifests.getOrDefault(mod.getServerType(), WorkshopManifest.EMPTY).findItem(mod.getId());
+
+            if (mod.getInstallationStatus() == InstallationStatus.FINISHED) {
+                if (!directoryExists) {
+                    log.warn("Directory of mod '{}' (ID {}) is missing", mod.getName(), mod.getId());
+                    mod.setInstallationStatus(InstallationStatus.ERROR);
+                    mod.setErrorStatus(ErrorStatus.GENERIC);
+                    missingModIds.add(mod.getId());
+                    changedMods.add(mod);
+                    continue;
+                }
+                if (item.isPresent() && mod.getFileSize() == null) {
+                    mod.setFileSize(item.get().size());
+                    filledSizes++;
+                    changedMods.add(mod);
+                }
+                if (item.isPresent() && isOutdated(mod, item.get())) {
+                    outdatedModIds.add(mod.getId());
+                }
+            } else if (mod.getErrorStatus() == ErrorStatus.INTERRUPTED && directoryExists && item.isPresent()) {
+                recoveredModIds.add(mod.getId());
+                if (item.get().timeUpdated() == nullToZero(mod.getWorkshopTimeUpdated())) {
+                    // interrupted before SteamCMD replaced the files, the installed version is still in place
+                    mod.setInstallationStatus(InstallationStatus.FINISHED);
+                    mod.setErrorStatus(null);
+                    changedMods.add(mod);
+                } else {
+                    mod.setPendingWorkshopTimeUpdated(item.get().timeUpdated());
+                    mod.setPendingWorkshopFileSize(item.get().size());
+                    modsToInstall.add(mod);
+                }
+            }
+        }
+
+        modsService.saveAllMods(changedMods);
+        if (!modsToInstall.isEmpty()) {
+            installDownloadedMods(modsToInstall);
+        }
+        return new ReconciliationReportDto(missingModIds, recoveredModIds, outdatedModIds, filledSizes);
+    }
+
+    /**
+     * Finds the installed mods whose files are behind, according to the SteamCMD manifests only.
+     */
+    public Set<Long> findOutdatedModIds(Collection<WorkshopMod> mods) {
+        Map<ServerType, WorkshopManifest> manifests = readManifests();
+        return mods.stream()
+                .filter(mod -> mod.getServerType() != null)
+                .filter(mod -> manifests.getOrDefault(mod.getServerType(), WorkshopManifest.EMPTY).findItem(mod.getId())
+                        .map(item -> isOutdated(mod, item))
+                        .orElse(false))
+                .map(WorkshopMod::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private void installDownloadedMods(List<WorkshopMod> mods) {
+        log.info("Finishing installation of {} downloaded mod(s) interrupted by a restart", mods.size());
+        mods.forEach(mod -> {
+            mod.setInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS);
+            mod.setErrorStatus(null);
+        });
+        modsService.saveAllModsForInstallation(mods);
+        Set<Long> downloadedModIds = mods.stream().map(WorkshopMod::getId).collect(Collectors.toSet());
+        try {
+            installerService.installOrUpdateMods(mods, SteamCmdJobPriority.BACKGROUND, downloadedModIds);
+        } catch (InsufficientDiskSpaceException e) {
+            // nothing is downloaded, the exception is not expected
+            log.warn("Could not finish installation of {} mod(s): {}", mods.size(), e.getMessage());
+        }
+    }
+
+    private Map<ServerType, WorkshopManifest> readManifests() {
+        Map<ServerType, WorkshopManifest> manifests = new EnumMap<>(ServerType.class);
+        for (ServerType serverType : List.of(ServerType.ARMA3, ServerType.DAYZ)) {
+            manifests.put(serverType, manifestReader.read(serverType));
+        }
+        return manifests;
+    }
+
+    private static boolean isOutdated(WorkshopMod mod, InstalledWorkshopItem item) {
+        // files older than the version recorded at installation were replaced by something else
+        return item.isBehindLatest() || item.timeUpdated() < nullToZero(mod.getWorkshopTimeUpdated());
+    }
+
+    private static long nullToZero(Long value) {
+        return value != null ? value : 0;
+    }
+}
@@ -57,6 +57,46 @@ class WorkshopModsController {
         return ResponseEntity.ok(modMapper.modToModDto(mod));
     }
 
+    @PostMapping("/reconcile")
+    public ResponseEntity<ReconciliationReportDto> reconcileMods() {
+        log.info("Reconciling mods with SteamCMD manifests");
+        return ResponseEntity.ok(modsFacade.reconcileMods());
+    }
+
+    @PostMapping("/reconcile-keys")
+    public ResponseEntity<BiKeyReconciliationReportDto> reconcileBiKeys() {
+        log.info("Reconciling server keys with installed mods");
+        return ResponseEntity.ok(modsFacade.reconcileBiKeys());
+    }
+
+    @PostMapping("/verify")
+    public ResponseEntity<?> verifyMods(@RequestParam(defaultValue = "false") boolean updateDivergent) {
+        log.info("Verifying files of installed mods");
+        modsFacade.verifyMods(updateDivergent);
+        return ResponseEntity.accepted().build();
+    }
+
+    @GetMapping("/verify")
+    public ResponseEntity<List<ModIntegrityReportDto>> getLastIntegrityReports() {
+        return modsFacade.getLastIntegrityReports()
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    @PostMapping("/deduplicate")
+    public ResponseEntity<?> deduplicateModFiles() {
+        log.info("Deduplicating files of installed mods");
+        modsFacade.deduplicateModFiles();
+        return ResponseEntity.accepted().build();
+    }
+
+    @GetMapping("/deduplicate")
+    public ResponseEntity<ModDeduplicationReportDto> getLastDeduplicationReport() {
+        return modsFacade.getLastDeduplicationReport()
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
     @DeleteMapping
     public ResponseEntity<?> uninstallMods(@RequestParam List<Long> modIds) {
         log.info("Uninstalling mods: {}", modIds);
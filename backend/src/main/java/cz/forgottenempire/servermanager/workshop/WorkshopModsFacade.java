@@ -6,10 +6,14 @@ import cz.forgottenempire.servermanager.common.ServerType;
 import cz.forgottenempire.servermanager.common.exceptions.NotFoundException;
 import cz.forgottenempire.servermanager.common.exceptions.ServerNotInitializedException;
 import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobPriority;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import javax.annotation.Nullable;
 
 import cz.forgottenempire.servermanager.workshop.metadata.ModMetadata;
@@ -26,17 +30,29 @@ public class WorkshopModsFacade {
     private final WorkshopInstallerService installerService;
     private final ModMetadataService fileDetailsService;
     private final ServerInstallationService serverInstallationService;
+    private final WorkshopModReconciliationService reconciliationService;
+    private final ModIntegrityService integrityService;
+    private final ModDeduplicationService deduplicationService;
+    private final BiKeyReconciliationService keyReconciliationService;
 
     @Autowired
     public WorkshopModsFacade(
             WorkshopModsService modsService,
             WorkshopInstallerService installerService,
             ModMetadataService fileDetailsService,
-            ServerInstallationService serverInstallationService) {
+            ServerInstallationService serverInstallationService,
+            WorkshopModReconciliationService reconciliationService,
+            ModIntegrityService integrityService,
+            ModDeduplicationService deduplicationService,
+            BiKeyReconciliationService keyReconciliationService) {
         this.modsService = modsService;
         this.installerService = installerService;
         this.fileDetailsService = fileDetailsService;
         this.serverInstallationService = serverInstallationService;
+        this.reconciliationService = reconciliationService;
+        this.integrityService = integrityService;
+        this.deduplicationService = deduplicationService;
+        this.keyReconciliationService = keyReconciliationService;
     }
 
     public Optional<WorkshopMod> getMod(long id) {
@@ -58,6 +74,10 @@ public class WorkshopModsFacade {
     }
 
     public List<WorkshopMod> saveAndInstallMods(List<Long> ids) {
+        return saveAndInstallMods(ids, SteamCmdJobPriority.INTERACTIVE);
+    }
+
+    public List<WorkshopMod> saveAndInstallMods(List<Long> ids, SteamCmdJobPriority priority) {
         List<WorkshopMod> workshopMods = ids.stream()
                 .map(id -> getMod(id).orElse(new WorkshopMod(id)))
                 .toList();
@@ -68,23 +88,113 @@ public class WorkshopModsFacade {
         });
         modsService.saveAllMods(workshopMods);
 
+        Map<Long, ModMetadata> metadata = fileDetailsService.fetchModMetadata(ids);
         workshopMods.forEach(mod -> {
-            ModMetadata modMetadata = fileDetailsService.fetchModMetadata(mod.getId());
+            ModMetadata modMetadata = metadata.get(mod.getId());
+            if (modMetadata == null) {
+                throw new NotFoundException("Mod ID " + mod.getId() + " not found.");
+            }
             mod.setName(modMetadata.name());
+            mod.setPendingWorkshopTimeUpdated(modMetadata.timeUpdated());
+            mod.setPendingWorkshopFileSize(modMetadata.fileSize());
             setModServerType(mod, modMetadata.consumerAppId());
             validateServerInitialized(mod);
         });
         modsService.saveAllModsForInstallation(workshopMods);
 
-        installerService.installOrUpdateMods(workshopMods);
+        installerService.installOrUpdateMods(workshopMods, priority);
         return workshopMods;
     }
 
+    /**
+     * Updates all mods and lets SteamCMD validate their files, regardless of whether they changed on the Workshop.
+     */
     public void updateAllMods() {
         List<Long> allModIds = modsService.getAllMods().stream()
                 .map(WorkshopMod::getId)
                 .toList();
-        saveAndInstallMods(allModIds);
+        saveAndInstallMods(allModIds, SteamCmdJobPriority.BACKGROUND);
+    }
+
+    /**
+     * Updates only the mods which changed on the Workshop since their last installation, and the mods whose last
+     * installation failed. Mods whose files are behind according to the SteamCMD manifests are updated as well,
+     * even if Steam could only provide their last known metadata. The other mods are left untouched and keep
+     * their status.
+     */
+    public void updateChangedMods() {
+        Collection<WorkshopMod> mods = modsService.getAllMods();
+        Set<Long> outdatedModIds = reconciliationService.findOutdatedModIds(mods);
+        Map<Long, ModMetadata> metadata = fileDetailsService.fetchCurrentModMetadata(
+                mods.stream().map(WorkshopMod::getId).toList());
+
+        List<Long> changedModIds = mods.stream()
+                .filter(mod -> mod.getInstallationStatus() != InstallationStatus.INSTALLATION_IN_PROGRESS)
+                .filter(mod -> {
+                    ModMetadata modMetadata = metadata.get(mod.getId());
+                    if (modMetadata == null) {
+                        log.warn("Mod ID {} not found on the Workshop, skipping its update", mod.getId());
+                        return false;
+                    }
+                    return outdatedModIds.contains(mod.getId()) || isUpdateNeeded(mod, modMetadata);
+                })
+                .map(WorkshopMod::getId)
+                .toList();
+
+        log.info("{} of {} mods need an update", changedModIds.size(), mods.size());
+        if (!changedModIds.isEmpty()) {
+            saveAndInstallMods(changedModIds, SteamCmdJobPriority.BACKGROUND);
+        }
+    }
+
+    public ReconciliationReportDto reconcileMods() {
+        return reconciliationService.reconcile();
+    }
+
+    public BiKeyReconciliationReportDto reconcileBiKeys() {
+        return keyReconciliationService.reconcile();
+    }
+
+    /**
+     * Starts verifying the files of all installed mods against their content hashes in the background, unless it's
+     * running already.
+     *
+     * @param updateDivergentMods if true, the mods whose files diverge are updated once verified, which has SteamCMD
+     *                            validate their files
+     */
+    public void verifyMods(boolean updateDivergentMods) {
+        CompletableFuture<List<ModIntegrityReportDto>> verification = integrityService.verifyInBackground();
+        if (!updateDivergentMods) {
+            return;
+        }
+        verification.thenAccept(reports -> {
+            List<Long> divergentModIds = reports.stream()
+                    .filter(ModIntegrityReportDto::isDivergent)
+                    .map(ModIntegrityReportDto::modId)
+                    .toList();
+            if (!divergentModIds.isEmpty()) {
+                saveAndInstallMods(divergentModIds, SteamCmdJobPriority.BACKGROUND);
+            }
+        }).exceptionally(e -> {
+            log.error("Could not update mods with divergent files", e);
+            return null;
+        });
+    }
+
+    public Optional<List<ModIntegrityReportDto>> getLastIntegrityReports() {
+        return integrityService.getLastReports();
+    }
+
+    /**
+     * Starts replacing identical files of installed mods with hard links in the background, unless it's running
+     * already.
+     */
+    public void deduplicateModFiles() {
+        deduplicationService.deduplicateInBackground();
+    }
+
+    public Optional<ModDeduplicationReportDto> getLastDeduplicationReport() {
+        return deduplicationService.getLastReport();
     }
 
     public void uninstallMod(long id) {
@@ -99,6 +209,16 @@ public class WorkshopModsFacade {
         modsService.saveMod(mod);
     }
 
+    private static boolean isUpdateNeeded(WorkshopMod mod, ModMetadata modMetadata) {
+        if (mod.getInstallationStatus() != InstallationStatus.FINISHED || mod.getWorkshopTimeUpdated() == null) {
+            // failed installations are retried, mods installed before versions were stored get their version now
+            return true;
+        }
+        // the version is unknown if the mod was looked up on its Workshop page, such a mod is always updated
+        return !mod.getWorkshopTimeUpdated().equals(modMetadata.timeUpdated())
+                || (modMetadata.fileSize() != null && !modMetadata.fileSize().equals(mod.getWorkshopFileSize()));
+    }
+
     private void setModServerType(WorkshopMod mod, String consumerAppId) {
         if (Constants.GAME_IDS.get(ServerType.ARMA3).toString().equals(consumerAppId)) {
             mod.setServerType(ServerType.ARMA3);
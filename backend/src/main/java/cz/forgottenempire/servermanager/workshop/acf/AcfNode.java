@@ -0,0 +1,40 @@
+package cz.forgottenempire.servermanager.workshop.acf;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Section of a Valve KeyValues file (such as an ACF manifest). Every key holds either a string value or a nested
+ * section. Keys are case-insensitive, as Steam doesn't always write them the same way.
+ */
+public class AcfNode {
+
+    private final Map<String, Object> entries = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    void put(String key, Object value) {
+        entries.put(key, value);
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public Optional<String> getString(String key) {
+        return entries.get(key) instanceof String value ? Optional.of(value) : Optional.empty();
+    }
+
+    public Optional<Long> getLong(String key) {
+        try {
+            return getString(key).map(Long::valueOf);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public Optional<AcfNode> getSection(String key) {
+        return entries.get(key) instanceof AcfNode section ? Optional.of(section) : Optional.empty();
+    }
+}
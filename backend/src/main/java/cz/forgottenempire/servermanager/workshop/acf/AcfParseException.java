@@ -0,0 +1,8 @@
+package cz.forgottenempire.servermanager.workshop.acf;
+
+public class AcfParseException extends RuntimeException {
+
+    public AcfParseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,142 @@
+package cz.forgottenempire.servermanager.workshop.acf;
+
+/**
+ * Parses the text KeyValues format SteamCMD uses for its manifests:
+ * <pre>
+ * "AppWorkshop"
+ * {
+ *     "appid"    "107410"
+ *     "WorkshopItemsInstalled"
+ *     {
+ *         "450814997"
+ *         {
+ *             "size"          "4424"
+ *             "timeupdated"   "1592407244"
+ *         }
+ *     }
+ * }
+ * </pre>
+ * Unquoted tokens, escape sequences and '//' comments are accepted as well. Conditions ('[$WIN32]') are skipped.
+ */
+public final class AcfParser {
+
+    private final String content;
+    private int position;
+
+    private AcfParser(String content) {
+        this.content = content;
+    }
+
+    /**
+     * @return the root section, holding the top level keys of the file
+     * @throws AcfParseException if the content is not valid KeyValues
+     */
+    public static AcfNode parse(String content) {
+        return new AcfParser(content).parseSection(false);
+    }
+
+    private AcfNode parseSection(boolean nested) {
+        AcfNode section = new AcfNode();
+        while (true) {
+            String key = nextToken();
+            if (key == null) {
+                if (nested) {
+                    throw new AcfParseException("Unexpected end of file, missing '}'");
+                }
+                return section;
+            }
+            if (key.equals("}")) {
+                if (!nested) {
+                    throw new AcfParseException("Unexpected '}' at position " + position);
+                }
+                return section;
+            }
+            if (key.equals("{")) {
+                throw new AcfParseException("Unexpected '{' at position " + position);
+            }
+
+            String value = nextToken();
+            if (value == null) {
+                throw new AcfParseException("Missing value of key '" + key + "'");
+            }
+            if (value.equals("{")) {
+                section.put(key, parseSection(true));
+            } else if (value.equals("}")) {
+                throw new AcfParseException("Missing value of key '" + key + "'");
+            } else {
+                section.put(key, value);
+            }
+        }
+    }
+
+    /**
+     * @return the next string or brace, null at the end of the content
+     */
+    private String nextToken() {
+        while (position < content.length()) {
+            char c = content.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+            } else if (content.startsWith("//", position)) {
+                skipLine();
+            } else if (c == '[') {
+                skipCondition();
+            } else if (c == '{' || c == '}') {
+                position++;
+                return String.valueOf(c);
+            } else if (c == '"') {
+                return readQuotedString();
+            } else {
+                return readUnquotedString();
+            }
+        }
+        return null;
+    }
+
+    private String readQuotedString() {
+        StringBuilder value = new StringBuilder();
+        position++;
+        while (position < content.length()) {
+            char c = content.charAt(position++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\' && position < content.length()) {
+                char escaped = content.charAt(position++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 't' -> value.append('\t');
+                    default -> value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw new AcfParseException("Unterminated string");
+    }
+
+    private String readUnquotedString() {
+        int start = position;
+        while (position < content.length()) {
+            char c = content.charAt(position);
+            if (Character.isWhitespace(c) || c == '{' || c == '}' || c == '"') {
+                break;
+            }
+            position++;
+        }
+        return content.substring(start, position);
+    }
+
+    private void skipLine() {
+        int lineEnd = content.indexOf('\n', position);
+        position = lineEnd < 0 ? content.length() : lineEnd + 1;
+    }
+
+    private void skipCondition() {
+        int conditionEnd = content.indexOf(']', position);
+        if (conditionEnd < 0) {
+            throw new AcfParseException("Unterminated condition");
+        }
+        position = conditionEnd + 1;
+    }
+}
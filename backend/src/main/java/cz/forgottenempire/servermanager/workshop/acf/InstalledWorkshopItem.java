@@ -0,0 +1,20 @@
+package cz.forgottenempire.servermanager.workshop.acf;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Workshop item as recorded by SteamCMD in the workshop manifest of its game.
+ *
+ * @param size              size of the installed item in bytes
+ * @param timeUpdated       time the installed version was updated on the Workshop (epoch seconds)
+ * @param latestTimeUpdated time of the latest version SteamCMD knows of, if it knows one
+ */
+public record InstalledWorkshopItem(long itemId, long size, long timeUpdated, @Nullable Long latestTimeUpdated) {
+
+    /**
+     * @return true if SteamCMD knows of a newer version than the installed one
+     */
+    public boolean isBehindLatest() {
+        return latestTimeUpdated != null && latestTimeUpdated > timeUpdated;
+    }
+}
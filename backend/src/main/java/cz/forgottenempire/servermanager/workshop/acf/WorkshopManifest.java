@@ -0,0 +1,48 @@
+package cz.forgottenempire.servermanager.workshop.acf;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Content of the 'appworkshop_&lt;appid&gt;.acf' manifest SteamCMD keeps of the workshop items it installed for a game.
+ */
+public record WorkshopManifest(long appId, Map<Long, InstalledWorkshopItem> installedItems) {
+
+    public static final WorkshopManifest EMPTY = new WorkshopManifest(0, Map.of());
+
+    public Optional<InstalledWorkshopItem> findItem(long itemId) {
+        return Optional.ofNullable(installedItems.get(itemId));
+    }
+
+    /**
+     * @throws AcfParseException if the content is not a valid manifest
+     */
+    public static WorkshopManifest parse(String content) {
+        AcfNode appWorkshop = AcfParser.parse(content).getSection("AppWorkshop")
+                .orElseThrow(() -> new AcfParseException("Missing 'AppWorkshop' section"));
+        long appId = appWorkshop.getLong("appid").orElse(0L);
+        AcfNode installedItems = appWorkshop.getSection("WorkshopItemsInstalled").orElseGet(AcfNode::new);
+        AcfNode itemDetails = appWorkshop.getSection("WorkshopItemDetails").orElseGet(AcfNode::new);
+
+        Map<Long, InstalledWorkshopItem> items = new HashMap<>();
+        for (String key : installedItems.keys()) {
+            Optional<AcfNode> item = installedItems.getSection(key);
+            Optional<Long> size = item.flatMap(node -> node.getLong("size"));
+            Optional<Long> timeUpdated = item.flatMap(node -> node.getLong("timeupdated"));
+            if (!isItemId(key) || size.isEmpty() || timeUpdated.isEmpty()) {
+                continue;
+            }
+            Long latestTimeUpdated = itemDetails.getSection(key)
+                    .flatMap(node -> node.getLong("latest_timeupdated"))
+                    .orElse(null);
+            long itemId = Long.parseLong(key);
+            items.put(itemId, new InstalledWorkshopItem(itemId, size.get(), timeUpdated.get(), latestTimeUpdated));
+        }
+        return new WorkshopManifest(appId, Map.copyOf(items));
+    }
+
+    private static boolean isItemId(String key) {
+        return !key.isEmpty() && key.chars().allMatch(Character::isDigit);
+    }
+}
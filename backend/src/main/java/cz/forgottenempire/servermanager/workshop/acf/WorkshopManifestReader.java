@@ -0,0 +1,70 @@
+package cz.forgottenempire.servermanager.workshop.acf;
+
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the workshop manifests SteamCMD writes into the mods directory. A manifest is parsed again only after
+ * SteamCMD changed it.
+ */
+@Component
+@Slf4j
+public class WorkshopManifestReader {
+
+    private final PathsFactory pathsFactory;
+    private final Map<Path, ParsedManifest> parsedManifests = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WorkshopManifestReader(PathsFactory pathsFactory) {
+        this.pathsFactory = pathsFactory;
+    }
+
+    /**
+     * @return the manifest of the game's workshop items, empty if SteamCMD hasn't installed any yet or the manifest
+     * can't be read
+     */
+    public WorkshopManifest read(ServerType serverType) {
+        Path manifestPath = pathsFactory.getWorkshopManifestPath(serverType);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(manifestPath, BasicFileAttributes.class);
+            ParsedManifest parsedManifest = parsedManifests.get(manifestPath);
+            if (parsedManifest != null && parsedManifest.isCurrent(attributes)) {
+                return parsedManifest.manifest();
+            }
+
+            WorkshopManifest manifest = WorkshopManifest.parse(Files.readString(manifestPath));
+            parsedManifests.put(manifestPath,
+                    new ParsedManifest(attributes.lastModifiedTime(), attributes.size(), manifest));
+            return manifest;
+        } catch (NoSuchFileException e) {
+            return WorkshopManifest.EMPTY;
+        } catch (IOException | AcfParseException e) {
+            log.warn("Could not read workshop manifest {}", manifestPath, e);
+            return WorkshopManifest.EMPTY;
+        }
+    }
+
+    public Optional<InstalledWorkshopItem> findInstalledItem(long itemId, ServerType serverType) {
+        return read(serverType).findItem(itemId);
+    }
+
+    private record ParsedManifest(FileTime lastModifiedTime, long size, WorkshopManifest manifest) {
+
+        boolean isCurrent(BasicFileAttributes attributes) {
+            return lastModifiedTime.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+}
@@ -4,7 +4,12 @@ import java.util.Optional;
 
 abstract class AbstractModMetadataProvider {
     Optional<ModMetadata> fetchModMetadata(long modId) {
-        PropertyProvider propertyProvider = createPropertyProvider(modId);
+        return toModMetadata(createPropertyProvider(modId));
+    }
+
+    abstract PropertyProvider createPropertyProvider(long modId);
+
+    static Optional<ModMetadata> toModMetadata(PropertyProvider propertyProvider) {
         if (propertyProvider == null) {
             return Optional.empty();
         }
@@ -15,8 +20,7 @@ abstract class AbstractModMetadataProvider {
             return Optional.empty();
         }
 
-        return Optional.of(new ModMetadata(modName, consumerAppId));
+        return Optional.of(new ModMetadata(modName, consumerAppId, propertyProvider.findTimeUpdated(),
+                propertyProvider.findFileSize()));
     }
-
-    abstract PropertyProvider createPropertyProvider(long modId);
 }
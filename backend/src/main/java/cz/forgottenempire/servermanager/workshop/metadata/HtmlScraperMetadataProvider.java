@@ -4,13 +4,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -19,31 +23,57 @@ class HtmlScraperMetadataProvider extends AbstractModMetadataProvider {
     private static final String WORKSHOP_PAGE_URL_BASE = "https://steamcommunity.com/sharedfiles/filedetails/?id=";
 
     private final HttpClient httpClient;
+    private final TokenBucket rateLimiter;
+    private final Duration requestTimeout;
 
     @Autowired
-    HtmlScraperMetadataProvider(HttpClient httpClient) {
+    HtmlScraperMetadataProvider(
+            HttpClient httpClient,
+            @Value("${workshop.metadata.page.requests-per-second:2}") double requestsPerSecond,
+            @Value("${steam.request-timeout-seconds:10}") long requestTimeoutSeconds
+    ) {
         this.httpClient = httpClient;
+        this.rateLimiter = new TokenBucket(requestsPerSecond);
+        this.requestTimeout = Duration.ofSeconds(requestTimeoutSeconds);
     }
 
     @Override
     PropertyProvider createPropertyProvider(long modId) {
-        Document document = fetchWorkshopPageHtml(modId);
+        Document document = fetchWorkshopPageHtml(modId).join();
         if (document == null) {
             return null;
         }
         return new HtmlPropertyProvider(document);
     }
 
-    private Document fetchWorkshopPageHtml(long modId) {
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(WORKSHOP_PAGE_URL_BASE + modId))
-                    .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            return Jsoup.parse(response.body());
-        } catch (IOException | InterruptedException e) {
-            log.error("Failed to fetch Workshop page for mod ID {}", modId, e);
-            return null;
-        }
+    /**
+     * Fetches metadata of the mod from its Workshop page without blocking, so pages of many mods can be fetched
+     * concurrently. The returned future never fails, it's empty if the mod couldn't be fetched.
+     */
+    CompletableFuture<Optional<ModMetadata>> fetchModMetadataAsync(long modId) {
+        return fetchWorkshopPageHtml(modId)
+                .thenApply(document -> document != null
+                        ? toModMetadata(new HtmlPropertyProvider(document))
+                        : Optional.empty());
+    }
+
+    private CompletableFuture<Document> fetchWorkshopPageHtml(long modId) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(WORKSHOP_PAGE_URL_BASE + modId))
+                .timeout(requestTimeout)
+                .build();
+        // the request waits for its turn without holding a thread
+        long delayNanos = rateLimiter.reserve();
+        CompletableFuture<Void> turn = delayNanos == 0
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> {
+                }, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS));
+
+        return turn.thenCompose(ignored -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+                .thenApply(response -> Jsoup.parse(response.body()))
+                .exceptionally(e -> {
+                    log.error("Failed to fetch Workshop page for mod ID {}", modId, e);
+                    return null;
+                });
     }
 }
@@ -22,6 +22,26 @@ class JsonPropertyProvider implements PropertyProvider {
         return getValueFromJson("consumer_app_id", modInfoJson);
     }
 
+    @Override
+    public Long findTimeUpdated() {
+        return getNumberFromJson("time_updated", modInfoJson);
+    }
+
+    @Override
+    public Long findFileSize() {
+        return getNumberFromJson("file_size", modInfoJson);
+    }
+
+    private Long getNumberFromJson(String key, JsonNode modInfoJson) {
+        // the API returns some numbers as strings (e.g. file_size), both forms are accepted
+        String value = getValueFromJson(key, modInfoJson);
+        try {
+            return value != null ? Long.valueOf(value) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private String getValueFromJson(String key, JsonNode modInfoJson) {
         JsonNode value = modInfoJson.findValue(key);
         return value != null ? value.asText() : null;
@@ -1,6 +1,20 @@
 package cz.forgottenempire.servermanager.workshop.metadata;
 
 import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
 
-public record ModMetadata(@Nonnull String name, @Nonnull String consumerAppId) {
+/**
+ * @param timeUpdated time of the last update of the mod on the Workshop (epoch seconds), if known
+ * @param fileSize    size of the mod on the Workshop in bytes, if known
+ */
+public record ModMetadata(
+        @Nonnull String name,
+        @Nonnull String consumerAppId,
+        @Nullable Long timeUpdated,
+        @Nullable Long fileSize
+) {
+
+    public ModMetadata(@Nonnull String name, @Nonnull String consumerAppId) {
+        this(name, consumerAppId, null, null);
+    }
 }
@@ -0,0 +1,272 @@
+package cz.forgottenempire.servermanager.workshop.metadata;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of workshop mod metadata. Metadata are fetched again once they're older than the TTL, mods which
+ * were not found are remembered for a shorter time, so repeated lookups of a wrong ID don't go to Steam every time.
+ * Concurrent lookups of the same mod share a single load.
+ * <p>
+ * Expired metadata are kept as long as there's room for them. If a mod can't be fetched again (most likely because
+ * Steam is unreachable), its last known metadata are served instead and the fetch is retried after the negative TTL.
+ * The cache can be saved into a file, so the first lookups after a restart don't all go to Steam.
+ */
+@Component
+@Slf4j
+class ModMetadataCache {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<Long, CachedMetadata>> PERSISTED_TYPE = new TypeReference<>() {
+    };
+
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Path persistenceFile;
+    private final LongSupplier currentTimeMillis;
+    private final Cache<Long, CachedMetadata> entries;
+    private final Cache<Long, Boolean> missingMods;
+    private final Map<Long, CompletableFuture<Optional<ModMetadata>>> inFlightLoads = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter negativeHitCounter;
+    private final Counter staleCounter;
+    private final Timer loadTimer;
+
+    @Autowired
+    public ModMetadataCache(
+            @Value("${workshop.metadata.cache.ttl-minutes:360}") long ttlMinutes,
+            @Value("${workshop.metadata.cache.negative-ttl-seconds:300}") long negativeTtlSeconds,
+            @Value("${workshop.metadata.cache.max-size:10000}") long maxSize,
+            @Value("${workshop.metadata.cache.file:}") String persistenceFile,
+            MeterRegistry meterRegistry
+    ) {
+        this(TimeUnit.MINUTES.toMillis(ttlMinutes), TimeUnit.SECONDS.toMillis(negativeTtlSeconds), maxSize,
+                Strings.isNullOrEmpty(persistenceFile) ? null : Path.of(persistenceFile), meterRegistry,
+                System::currentTimeMillis);
+    }
+
+    ModMetadataCache(long ttlMillis, long negativeTtlMillis, long maxSize, Path persistenceFile,
+            MeterRegistry meterRegistry, LongSupplier currentTimeMillis) {
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.persistenceFile = persistenceFile;
+        this.currentTimeMillis = currentTimeMillis;
+        entries = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+        missingMods = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(negativeTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        hitCounter = createRequestCounter(meterRegistry, "hit");
+        missCounter = createRequestCounter(meterRegistry, "miss");
+        negativeHitCounter = createRequestCounter(meterRegistry, "negative_hit");
+        staleCounter = createRequestCounter(meterRegistry, "stale");
+        loadTimer = Timer.builder("workshop.metadata.cache.load")
+                .description("Time spent fetching metadata of mods missing in the cache")
+                .register(meterRegistry);
+        Gauge.builder("workshop.metadata.cache.size", entries, Cache::size)
+                .description("Number of mods with cached metadata, including expired ones")
+                .register(meterRegistry);
+
+        loadPersistedEntries();
+    }
+
+    /**
+     * Gets metadata of the mod, loading them with the given loader if they're not cached.
+     */
+    Optional<ModMetadata> get(long modId, Function<Long, Optional<ModMetadata>> loader) {
+        return Optional.ofNullable(getAll(List.of(modId), modIds -> loader.apply(modId)
+                .map(metadata -> Map.of(modId, metadata))
+                .orElse(Map.of()))
+                .get(modId));
+    }
+
+    /**
+     * Gets metadata of the mods, the ones which are not cached are loaded all at once with the given loader.
+     * The loader returns metadata only for the mods it found.
+     *
+     * @return metadata in the order of the given IDs, mods which were not found are left out
+     */
+    Map<Long, ModMetadata> getAll(Collection<Long> modIds,
+            Function<Collection<Long>, Map<Long, ModMetadata>> loader) {
+        return getAll(modIds, loader, false);
+    }
+
+    /**
+     * Loads metadata of the mods again, even if the cached ones are still fresh, and caches them. Used when the
+     * current state of the mods on the Workshop matters, such as when looking for updated mods.
+     *
+     * @return metadata in the order of the given IDs, mods which were not found are left out
+     */
+    Map<Long, ModMetadata> reloadAll(Collection<Long> modIds,
+            Function<Collection<Long>, Map<Long, ModMetadata>> loader) {
+        return getAll(modIds, loader, true);
+    }
+
+    private Map<Long, ModMetadata> getAll(Collection<Long> modIds,
+            Function<Collection<Long>, Map<Long, ModMetadata>> loader, boolean reload) {
+        Map<Long, Optional<ModMetadata>> results = new LinkedHashMap<>();
+        Map<Long, CompletableFuture<Optional<ModMetadata>>> ownLoads = new LinkedHashMap<>();
+        Map<Long, CompletableFuture<Optional<ModMetadata>>> otherLoads = new LinkedHashMap<>();
+
+        for (Long modId : new LinkedHashSet<>(modIds)) {
+            CachedMetadata cachedMetadata = entries.getIfPresent(modId);
+            if (!reload && cachedMetadata != null && isFresh(cachedMetadata)) {
+                hitCounter.increment();
+                results.put(modId, Optional.of(cachedMetadata.metadata()));
+            } else if (!reload && missingMods.getIfPresent(modId) != null) {
+                negativeHitCounter.increment();
+                results.put(modId, Optional.empty());
+            } else {
+                missCounter.increment();
+                CompletableFuture<Optional<ModMetadata>> load = new CompletableFuture<>();
+                CompletableFuture<Optional<ModMetadata>> runningLoad = inFlightLoads.putIfAbsent(modId, load);
+                if (runningLoad == null) {
+                    ownLoads.put(modId, load);
+                } else {
+                    // the mod is being loaded by another request, its result is shared
+                    otherLoads.put(modId, runningLoad);
+                }
+                results.put(modId, null);
+            }
+        }
+
+        if (!ownLoads.isEmpty()) {
+            load(ownLoads, loader);
+        }
+        ownLoads.forEach((modId, load) -> results.put(modId, load.join()));
+        otherLoads.forEach((modId, load) -> results.put(modId, load.join()));
+
+        Map<Long, ModMetadata> metadata = new LinkedHashMap<>();
+        results.forEach((modId, result) -> result.ifPresent(modMetadata -> metadata.put(modId, modMetadata)));
+        return metadata;
+    }
+
+    @Scheduled(fixedDelay = 600000)
+    public void saveIfChanged() {
+        if (dirty) {
+            save();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        saveIfChanged();
+    }
+
+    private void load(Map<Long, CompletableFuture<Optional<ModMetadata>>> loads,
+            Function<Collection<Long>, Map<Long, ModMetadata>> loader) {
+        try {
+            long startedAt = System.nanoTime();
+            Map<Long, ModMetadata> loadedMetadata = loader.apply(List.copyOf(loads.keySet()));
+            loadTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            loads.forEach((modId, load) -> load.complete(store(modId, loadedMetadata.get(modId))));
+        } catch (RuntimeException e) {
+            loads.values().forEach(load -> load.completeExceptionally(e));
+            throw e;
+        } finally {
+            loads.forEach(inFlightLoads::remove);
+        }
+    }
+
+    private Optional<ModMetadata> store(long modId, ModMetadata loadedMetadata) {
+        long now = currentTimeMillis.getAsLong();
+        if (loadedMetadata != null) {
+            entries.put(modId, new CachedMetadata(loadedMetadata, now));
+            missingMods.invalidate(modId);
+            dirty = true;
+            return Optional.of(loadedMetadata);
+        }
+
+        CachedMetadata lastKnownMetadata = entries.getIfPresent(modId);
+        if (lastKnownMetadata == null) {
+            missingMods.put(modId, Boolean.TRUE);
+            return Optional.empty();
+        }
+
+        // the mod was found before, Steam is most likely unreachable; the fetch is retried after the negative TTL
+        log.warn("Could not fetch metadata of mod ID {}, using the last known ones", modId);
+        staleCounter.increment();
+        entries.put(modId, new CachedMetadata(lastKnownMetadata.metadata(), now - ttlMillis + negativeTtlMillis));
+        return Optional.of(lastKnownMetadata.metadata());
+    }
+
+    private boolean isFresh(CachedMetadata cachedMetadata) {
+        return currentTimeMillis.getAsLong() - cachedMetadata.fetchedAtMillis() < ttlMillis;
+    }
+
+    private void loadPersistedEntries() {
+        if (persistenceFile == null || !Files.isRegularFile(persistenceFile)) {
+            return;
+        }
+        try {
+            Map<Long, CachedMetadata> persistedEntries = OBJECT_MAPPER.readValue(persistenceFile.toFile(), PERSISTED_TYPE);
+            entries.putAll(persistedEntries);
+            log.info("Loaded metadata of {} mods from {}", persistedEntries.size(), persistenceFile);
+        } catch (IOException e) {
+            log.warn("Could not load mod metadata cache from {}, starting with an empty cache", persistenceFile, e);
+        }
+    }
+
+    private void save() {
+        if (persistenceFile == null) {
+            return;
+        }
+        dirty = false;
+        try {
+            Path parent = persistenceFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            // written next to the target first, so a crash while saving doesn't leave a truncated file behind
+            Path temporaryFile = Files.createTempFile(parent, "metadata-cache", ".tmp");
+            OBJECT_MAPPER.writeValue(temporaryFile.toFile(), Map.copyOf(entries.asMap()));
+            Files.move(temporaryFile, persistenceFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            dirty = true;
+            log.warn("Could not save mod metadata cache into {}", persistenceFile, e);
+        }
+    }
+
+    private static Counter createRequestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("workshop.metadata.cache.requests")
+                .description("Lookups of mod metadata by their result in the cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    record CachedMetadata(ModMetadata metadata, long fetchedAtMillis) {
+    }
+}
@@ -5,25 +5,97 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Service
 @Slf4j
 public class ModMetadataService {
 
     private final WorkshopApiMetadataProvider apiMetadataProvider;
     private final HtmlScraperMetadataProvider htmlScraperMetadataProvider;
+    private final ModMetadataCache metadataCache;
 
     @Autowired
     public ModMetadataService(
             WorkshopApiMetadataProvider apiMetadataProvider,
-            HtmlScraperMetadataProvider htmlScraperMetadataProvider
+            HtmlScraperMetadataProvider htmlScraperMetadataProvider,
+            ModMetadataCache metadataCache
     ) {
         this.apiMetadataProvider = apiMetadataProvider;
         this.htmlScraperMetadataProvider = htmlScraperMetadataProvider;
+        this.metadataCache = metadataCache;
     }
 
     public ModMetadata fetchModMetadata(long modId) {
+        return metadataCache.get(modId, this::loadModMetadata)
+                .orElseThrow(() -> new NotFoundException("Mod ID " + modId + " not found."));
+    }
+
+    /**
+     * Fetches metadata of many mods at once. Mods which are not cached are fetched together, the Workshop API is
+     * asked for all of them in as few requests as possible, only the mods it didn't return are looked up on their
+     * Workshop pages. The requests run concurrently, limited by the request rates configured for Steam.
+     *
+     * @return metadata in the order of the given IDs, mods which were not found are left out
+     */
+    public Map<Long, ModMetadata> fetchModMetadata(Collection<Long> modIds) {
+        return metadataCache.getAll(modIds, this::loadModsMetadata);
+    }
+
+    /**
+     * Fetches the current metadata of the mods from Steam, bypassing the cache. Mods which can't be fetched
+     * get their last known metadata.
+     *
+     * @return metadata in the order of the given IDs, mods which were not found are left out
+     */
+    public Map<Long, ModMetadata> fetchCurrentModMetadata(Collection<Long> modIds) {
+        return metadataCache.reloadAll(modIds, this::loadModsMetadata);
+    }
+
+    private Optional<ModMetadata> loadModMetadata(long modId) {
         return apiMetadataProvider.fetchModMetadata(modId)
-                .orElseGet(() -> htmlScraperMetadataProvider.fetchModMetadata(modId)
-                        .orElseThrow(() -> new NotFoundException("Mod ID " + modId + " not found.")));
+                .or(() -> htmlScraperMetadataProvider.fetchModMetadata(modId));
+    }
+
+    private Map<Long, ModMetadata> loadModsMetadata(Collection<Long> modIds) {
+        Map<Long, ModMetadata> loadedMetadata = new ConcurrentHashMap<>();
+        // every API request scrapes the pages of the mods it didn't return as soon as it's done, all the requests
+        // run concurrently, so the total time is close to the slowest API request followed by the slowest page
+        CompletableFuture<?>[] loads = WorkshopApiMetadataProvider.splitIntoRequests(modIds).stream()
+                .map(requestModIds -> apiMetadataProvider.fetchModMetadataAsync(requestModIds)
+                        .thenCompose(apiMetadata -> {
+                            loadedMetadata.putAll(apiMetadata);
+                            return scrapeModsMetadata(requestModIds.stream()
+                                    .filter(modId -> !apiMetadata.containsKey(modId))
+                                    .toList(), loadedMetadata);
+                        }))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(loads).join();
+
+        Map<Long, ModMetadata> metadata = new LinkedHashMap<>();
+        for (Long modId : modIds) {
+            ModMetadata modMetadata = loadedMetadata.get(modId);
+            if (modMetadata != null) {
+                metadata.put(modId, modMetadata);
+            }
+        }
+        return metadata;
+    }
+
+    private CompletableFuture<Void> scrapeModsMetadata(List<Long> modIds, Map<Long, ModMetadata> loadedMetadata) {
+        return CompletableFuture.allOf(modIds.stream()
+                .map(modId -> {
+                    log.debug("Mod ID {} not returned by Workshop API, scraping its Workshop page", modId);
+                    return htmlScraperMetadataProvider.fetchModMetadataAsync(modId)
+                            .thenAccept(modMetadata -> modMetadata.ifPresent(
+                                    presentMetadata -> loadedMetadata.put(modId, presentMetadata)));
+                })
+                .toArray(CompletableFuture[]::new));
     }
 }
@@ -4,4 +4,12 @@ interface PropertyProvider {
     String findName();
 
     String findConsumerAppId();
+
+    default Long findTimeUpdated() {
+        return null;
+    }
+
+    default Long findFileSize() {
+        return null;
+    }
 }
@@ -0,0 +1,55 @@
+package cz.forgottenempire.servermanager.workshop.metadata;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate of requests to a host. The bucket holds up to a second worth of permits, so a short burst goes
+ * through at once, after that the requests are spaced evenly. A permit can be reserved in advance, so asynchronous
+ * requests can be delayed without blocking a thread.
+ */
+class TokenBucket {
+
+    private final double nanosPerPermit;
+    private final double capacity;
+    private final LongSupplier nanoTime;
+    private double permits;
+    private long lastRefillNanos;
+
+    TokenBucket(double permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, LongSupplier nanoTime) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive, got " + permitsPerSecond);
+        }
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.capacity = Math.max(1, permitsPerSecond);
+        this.nanoTime = nanoTime;
+        this.permits = capacity;
+        this.lastRefillNanos = nanoTime.getAsLong();
+    }
+
+    /**
+     * Takes a permit, the caller may proceed once the returned delay passed.
+     *
+     * @return nanoseconds to wait before the request may be sent, 0 if it can be sent right away
+     */
+    synchronized long reserve() {
+        long now = nanoTime.getAsLong();
+        permits = Math.min(capacity, permits + (now - lastRefillNanos) / nanosPerPermit);
+        lastRefillNanos = now;
+
+        // the permits go negative while requests are waiting, each of them waits for the permits owed before it
+        permits--;
+        return permits >= 0 ? 0 : (long) Math.ceil(-permits * nanosPerPermit);
+    }
+
+    /**
+     * Takes a permit, blocking until the request may be sent.
+     */
+    void acquire() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve());
+    }
+}
@@ -1,10 +1,11 @@
 package cz.forgottenempire.servermanager.workshop.metadata;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
 import cz.forgottenempire.servermanager.common.Constants;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -18,50 +19,140 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @Service
 @Slf4j
 class WorkshopApiMetadataProvider extends AbstractModMetadataProvider {
+    // GetPublishedFileDetails accepts many items in a single request, larger batches are split into chunks
+    private static final int MAX_ITEMS_PER_REQUEST = 100;
+    // the mapper is thread-safe and expensive to create, so it's shared by all requests
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
     private final String steamApiKey;
     private final RestTemplate restTemplate;
+    private final TokenBucket rateLimiter;
+    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS, runnable -> {
+        Thread thread = new Thread(runnable, "workshop-api-request");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Autowired
-    WorkshopApiMetadataProvider(@Value("${steam.api.key}") String steamApiKey, RestTemplate restTemplate) {
+    WorkshopApiMetadataProvider(
+            @Value("${steam.api.key}") String steamApiKey,
+            RestTemplate restTemplate,
+            @Value("${workshop.metadata.api.requests-per-second:5}") double requestsPerSecond
+    ) {
         this.steamApiKey = steamApiKey;
         this.restTemplate = restTemplate;
+        this.rateLimiter = new TokenBucket(requestsPerSecond);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
     }
 
     @Override
     PropertyProvider createPropertyProvider(long modId) {
-        JsonNode modInfoJson = getModInfoFromSteamApi(modId);
+        JsonNode modInfoJson = getModInfosFromSteamApi(List.of(modId)).get(modId);
         if (modInfoJson == null) {
             return null;
         }
         return new JsonPropertyProvider(modInfoJson);
     }
 
-    private JsonNode getModInfoFromSteamApi(long modId) {
+    /**
+     * Fetches metadata of the given mods using as few requests as possible. Mods which the API didn't return
+     * (e.g. unlisted or non-existing ones) are missing in the result.
+     */
+    Map<Long, ModMetadata> fetchModMetadata(Collection<Long> modIds) {
+        Map<Long, ModMetadata> metadata = new LinkedHashMap<>();
+        splitIntoRequests(modIds).stream()
+                .map(this::fetchModMetadataAsync)
+                .toList()
+                .forEach(request -> metadata.putAll(request.join()));
+        return metadata;
+    }
+
+    /**
+     * Splits the mods into groups which can be fetched in a single request each.
+     */
+    static List<List<Long>> splitIntoRequests(Collection<Long> modIds) {
+        return Lists.partition(List.copyOf(modIds), MAX_ITEMS_PER_REQUEST);
+    }
+
+    /**
+     * Fetches metadata of at most {@link #MAX_ITEMS_PER_REQUEST} mods in a single request, running concurrently with
+     * other requests. The returned future never fails, mods which couldn't be fetched are missing in its result.
+     */
+    CompletableFuture<Map<Long, ModMetadata>> fetchModMetadataAsync(List<Long> modIds) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<Long, ModMetadata> metadata = new HashMap<>();
+            getModInfosFromSteamApi(modIds).forEach((modId, modInfoJson) ->
+                    toModMetadata(new JsonPropertyProvider(modInfoJson))
+                            .ifPresent(modMetadata -> metadata.put(modId, modMetadata)));
+            return metadata;
+        }, requestExecutor);
+    }
+
+    private Map<Long, JsonNode> getModInfosFromSteamApi(List<Long> modIds) {
         try {
-            ResponseEntity<String> response = restTemplate.postForEntity(Constants.STEAM_API_URL, prepareRequest(modId), String.class);
-            JsonNode parsedResponse = new ObjectMapper().readTree(response.getBody());
-            return parsedResponse.findValue("publishedfiledetails");
+            rateLimiter.acquire();
+            ResponseEntity<String> response = restTemplate.postForEntity(Constants.STEAM_API_URL, prepareRequest(modIds), String.class);
+            JsonNode parsedResponse = OBJECT_MAPPER.readTree(response.getBody());
+            JsonNode fileDetails = parsedResponse.findValue("publishedfiledetails");
+            if (fileDetails == null || !fileDetails.isArray()) {
+                return Map.of();
+            }
+            return mapFileDetailsToModIds(modIds, fileDetails);
         } catch (RestClientException e) {
-            log.error("Request to Steam Workshop API for mod ID '{}' failed", modId, e);
-            return null;
+            log.error("Request to Steam Workshop API for mod IDs {} failed", modIds, e);
+            return Map.of();
         } catch (JsonProcessingException e) {
-            log.error("Failed to process Workshop API response for mod ID {}", modId, e);
-            return null;
+            log.error("Failed to process Workshop API response for mod IDs {}", modIds, e);
+            return Map.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Map.of();
         }
     }
 
-    private HttpEntity<MultiValueMap<String, String>> prepareRequest(long modId) {
-        return new HttpEntity<>(prepareRequestBody(modId), prepareRequestHeaders());
+    // the details are returned in the order of the request, the ID in the details is preferred if there is one
+    private static Map<Long, JsonNode> mapFileDetailsToModIds(List<Long> modIds, JsonNode fileDetails) {
+        Map<Long, JsonNode> modInfos = new HashMap<>();
+        for (int i = 0; i < fileDetails.size(); i++) {
+            JsonNode modInfoJson = fileDetails.get(i);
+            JsonNode publishedFileId = modInfoJson.get("publishedfileid");
+            if (publishedFileId != null) {
+                modInfos.put(publishedFileId.asLong(), modInfoJson);
+            } else if (i < modIds.size()) {
+                modInfos.put(modIds.get(i), modInfoJson);
+            }
+        }
+        return modInfos;
+    }
+
+    private HttpEntity<MultiValueMap<String, String>> prepareRequest(List<Long> modIds) {
+        return new HttpEntity<>(prepareRequestBody(modIds), prepareRequestHeaders());
     }
 
-    private MultiValueMap<String, String> prepareRequestBody(long modId) {
+    private MultiValueMap<String, String> prepareRequestBody(List<Long> modIds) {
         MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
         map.add("key", steamApiKey);
-        map.add("itemcount", "1");
-        map.add("publishedfileids[0]", String.valueOf(modId));
+        map.add("itemcount", String.valueOf(modIds.size()));
+        for (int i = 0; i < modIds.size(); i++) {
+            map.add("publishedfileids[" + i + "]", String.valueOf(modIds.get(i)));
+        }
         return map;
     }
 
@@ -0,0 +1,21 @@
+-- SteamCMD jobs which were queued or running, so they can be resumed after a restart
+CREATE TABLE steamcmd_job
+(
+    id             BIGINT AUTO_INCREMENT NOT NULL,
+    related_server VARCHAR(255)          NULL,
+    priority       VARCHAR(255)          NOT NULL,
+    created_at     DATETIME              NOT NULL,
+    CONSTRAINT pk_steamcmd_job PRIMARY KEY (id)
+);
+
+CREATE TABLE steamcmd_job_item
+(
+    steamcmd_job_id BIGINT NOT NULL,
+    item_id         BIGINT NOT NULL,
+    finished        BIT(1) NOT NULL DEFAULT 0,
+    PRIMARY KEY (steamcmd_job_id, item_id),
+    CONSTRAINT fk_steamcmd_job_item_steamcmd_job FOREIGN KEY (steamcmd_job_id) REFERENCES steamcmd_job (id)
+        ON DELETE CASCADE
+);
+
+CREATE INDEX idx_steamcmd_job_item_item_id ON steamcmd_job_item (item_id);
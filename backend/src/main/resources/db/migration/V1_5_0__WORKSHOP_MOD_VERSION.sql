@@ -0,0 +1,4 @@
+-- version of the mod on the Workshop at the time of its last successful installation
+ALTER TABLE workshop_mod
+    ADD COLUMN workshop_time_updated BIGINT NULL,
+    ADD COLUMN workshop_file_size    BIGINT NULL;
@@ -0,0 +1,3 @@
+-- size of the server files after its last successful installation
+ALTER TABLE server_installation
+    ADD COLUMN file_size BIGINT NULL;
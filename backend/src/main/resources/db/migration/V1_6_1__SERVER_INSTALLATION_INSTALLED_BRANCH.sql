@@ -0,0 +1,7 @@
+-- branch the server files were installed from, the selected branch can differ until the next update
+ALTER TABLE server_installation
+    ADD COLUMN installed_branch VARCHAR(255) NULL;
+
+UPDATE server_installation
+SET installed_branch = branch
+WHERE last_updated_at IS NOT NULL;
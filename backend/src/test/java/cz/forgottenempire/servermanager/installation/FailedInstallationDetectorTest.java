@@ -1,27 +1,37 @@
 package cz.forgottenempire.servermanager.installation;
 
 import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.ServerType;
 import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.PersistedSteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class FailedInstallationDetectorTest {
 
+    private final ServerInstallationRepository repository = Mockito.mock(ServerInstallationRepository.class);
+    private final ServerInstallerService installerService = Mockito.mock(ServerInstallerService.class);
+    private final SteamCmdService steamCmdService = Mockito.mock(SteamCmdService.class);
+    private final FailedInstallationDetector detector =
+            new FailedInstallationDetector(repository, installerService, steamCmdService);
+
     @Test
-    void setErrorStatusOnInterruptedInstallations_whenInstallationsWereInterrupted_thenStatusesAreSet() {
+    void resumeInterruptedInstallations_whenInstallationsWereInterrupted_thenStatusesAreSet() {
         ServerInstallation interruptedInstallation = new ServerInstallation();
         interruptedInstallation.setInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS);
-        ServerInstallationRepository repository = Mockito.mock(ServerInstallationRepository.class);
         when(repository.findAllByInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS))
                 .thenReturn(List.of(interruptedInstallation));
 
-        new FailedInstallationDetector(repository).setErrorStatusOnInterruptedInstallations();
+        detector.resumeInterruptedInstallations();
 
         assertThat(interruptedInstallation.getInstallationStatus())
                 .as("The installation status should be 'ERROR'")
@@ -31,4 +41,25 @@ class FailedInstallationDetectorTest {
                 .isEqualTo(ErrorStatus.INTERRUPTED);
         verify(repository).saveAll(List.of(interruptedInstallation));
     }
+
+    @Test
+    void resumeInterruptedInstallations_whenInterruptedJobIsStored_thenInstallationIsResumed() {
+        ServerInstallation interruptedInstallation = new ServerInstallation();
+        interruptedInstallation.setType(ServerType.ARMA3);
+        interruptedInstallation.setInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS);
+        PersistedSteamCmdJob interruptedJob = new PersistedSteamCmdJob();
+        interruptedJob.setRelatedServer(ServerType.ARMA3);
+        when(steamCmdService.takeInterruptedServerJobs()).thenReturn(List.of(interruptedJob));
+        when(repository.findById(ServerType.ARMA3)).thenReturn(Optional.of(interruptedInstallation));
+        when(repository.findAllByInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS))
+                .thenReturn(List.of(interruptedInstallation));
+
+        detector.resumeInterruptedInstallations();
+
+        verify(installerService).installServer(interruptedInstallation);
+        assertThat(interruptedInstallation.getErrorStatus())
+                .as("The resumed installation should not be marked as interrupted")
+                .isNull();
+        verify(repository, never()).saveAll(List.of(interruptedInstallation));
+    }
 }
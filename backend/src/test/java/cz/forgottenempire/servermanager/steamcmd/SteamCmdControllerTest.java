@@ -2,8 +2,6 @@ package cz.forgottenempire.servermanager.steamcmd;
 
 import cz.forgottenempire.servermanager.common.exceptions.NotFoundException;
 import cz.forgottenempire.servermanager.serverinstance.LogFile;
-import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
-import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,10 +11,10 @@ import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -28,24 +26,27 @@ class SteamCmdControllerTest {
     @Mock(stubOnly = true)
     private SteamCmdLogsService logsService;
     @Mock(stubOnly = true)
-    private SteamCmdItemInfoRepository itemInfoRepository;
+    private SteamCmdProgressStreamService progressStreamService;
+    @Mock(stubOnly = true)
+    private SteamCmdExecutor steamCmdExecutor;
+    @Mock(stubOnly = true)
+    private SteamCmdThroughputTracker throughputTracker;
 
     private SteamCmdController steamCmdController;
 
     @BeforeEach
     void setUp() {
-        steamCmdController = new SteamCmdController(itemInfoRepository, logsService);
+        steamCmdController = new SteamCmdController(progressStreamService, logsService, steamCmdExecutor, throughputTracker);
     }
 
     @Test
-    void getItemInfos() {
-        SteamCmdItemInfo itemInfo = new SteamCmdItemInfo(1L, SteamCmdItemInfo.SteamCmdStatus.FINISHED, 100, 1000L, 1000L);
-        Map<Long, SteamCmdItemInfo> expectedItemInfos = Map.of(1L, itemInfo);
-        when(itemInfoRepository.getAll()).thenReturn(expectedItemInfos);
+    void streamProgress() {
+        SseEmitter emitter = new SseEmitter();
+        when(progressStreamService.subscribe()).thenReturn(emitter);
 
-        ResponseEntity<Map<Long, SteamCmdItemInfo>> itemInfos = steamCmdController.getItemInfos();
+        SseEmitter response = steamCmdController.streamProgress();
 
-        assertThat(itemInfos).isEqualTo(ResponseEntity.ok(expectedItemInfos));
+        assertThat(response).isSameAs(emitter);
     }
 
     @Test
@@ -96,4 +97,21 @@ class SteamCmdControllerTest {
 
         assertThat(response).isEqualTo(ResponseEntity.ok(expectedLogLines));
     }
+
+    @Test
+    void cancelQueuedItem() {
+        when(steamCmdExecutor.cancelItem(123L)).thenReturn(true);
+
+        ResponseEntity<?> response = steamCmdController.cancelItem(123L);
+
+        assertThat(response).isEqualTo(ResponseEntity.noContent().build());
+    }
+
+    @Test
+    void cancelUnknownItemThrowsNotFoundException() {
+        when(steamCmdExecutor.cancelItem(123L)).thenReturn(false);
+
+        assertThatThrownBy(() -> steamCmdController.cancelItem(123L))
+                .isInstanceOf(NotFoundException.class);
+    }
 }
@@ -0,0 +1,67 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.exceptions.InsufficientDiskSpaceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SteamCmdDiskSpaceGuardTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final SteamCmdDiskSpaceGuard guard = new SteamCmdDiskSpaceGuard(0, new SimpleMeterRegistry());
+    private long usableBytes;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        usableBytes = Files.getFileStore(tempDir).getUsableSpace();
+    }
+
+    @Test
+    void whenJobFits_thenSpaceIsReserved() {
+        guard.reserve(tempDir, usableBytes / 4);
+
+        assertThat(guard.getReservedBytes()).isEqualTo(usableBytes / 4);
+    }
+
+    @Test
+    void whenJobDoesNotFit_thenItIsRejected() {
+        assertThatThrownBy(() -> guard.reserve(tempDir, usableBytes * 2))
+                .isInstanceOf(InsufficientDiskSpaceException.class);
+        assertThat(guard.getReservedBytes()).isZero();
+    }
+
+    @Test
+    void whenSpaceIsReservedByQueuedJob_thenNextJobDoesNotFit() {
+        guard.reserve(tempDir, usableBytes * 3 / 5);
+
+        assertThatThrownBy(() -> guard.reserve(tempDir, usableBytes * 3 / 5))
+                .isInstanceOf(InsufficientDiskSpaceException.class);
+    }
+
+    @Test
+    void whenReservationIsReleased_thenSpaceIsAvailableAgain() {
+        SteamCmdDiskSpaceGuard.Reservation reservation = guard.reserve(tempDir, usableBytes * 3 / 5);
+        reservation.release();
+        reservation.release();
+
+        assertThat(guard.getReservedBytes()).isZero();
+        guard.reserve(tempDir, usableBytes * 3 / 5);
+    }
+
+    @Test
+    void whenTargetDoesNotExistYet_thenVolumeOfItsParentIsChecked() {
+        guard.reserve(tempDir.resolve("servers").resolve("ARMA3"), usableBytes / 4);
+
+        assertThat(guard.getReservedBytes()).isEqualTo(usableBytes / 4);
+    }
+}
@@ -0,0 +1,228 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SteamCmdJobBatchTest {
+
+    private static final Path MODS_DIR = Path.of("/mods");
+
+    @Test
+    void whenCoalescingWorkshopJobs_thenDuplicateItemsAreDownloadedOnlyOnce() {
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(createWorkshopJob(1L, 2L), new CompletableFuture<>());
+
+        batch.coalesce(createWorkshopJob(2L, 3L), new CompletableFuture<>());
+        SteamCmdJob job = batch.takeNextJob(0);
+
+        assertThat(batch.getCallerCount()).isEqualTo(2);
+        assertThat(job.getRelatedWorkshopMods())
+                .extracting(WorkshopMod::getId)
+                .containsExactly(1L, 2L, 3L);
+        assertThat(job.getSteamCmdParameters().get())
+                .filteredOn(parameter -> parameter.startsWith("+workshop_download_item"))
+                .hasSize(3);
+        assertThat(batch.hasRemainingWork()).isFalse();
+    }
+
+    @Test
+    void whenJobsHaveDifferentPriority_thenTheyAreNotCoalesced() {
+        SteamCmdJob backgroundJob = createWorkshopJob(2L);
+        backgroundJob.setPriority(SteamCmdJobPriority.BACKGROUND);
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(createWorkshopJob(1L), new CompletableFuture<>());
+
+        assertThat(batch.canCoalesce(backgroundJob)).isFalse();
+    }
+
+    @Test
+    void whenTakingChunks_thenBatchIsDoneOnlyAfterAllChunksFinish() {
+        SteamCmdJob job = createWorkshopJob(1L, 2L, 3L);
+        CompletableFuture<SteamCmdJob> future = new CompletableFuture<>();
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(job, future);
+
+        SteamCmdJob firstChunk = batch.takeNextJob(2);
+        firstChunk.markItemFinished(1L);
+        firstChunk.markItemFinished(2L);
+        batch.onJobFinished(firstChunk);
+
+        assertThat(firstChunk.getRelatedWorkshopMods()).extracting(WorkshopMod::getId).containsExactly(1L, 2L);
+        assertThat(batch.isDone()).isFalse();
+
+        SteamCmdJob secondChunk = batch.takeNextJob(2);
+        secondChunk.markItemFinished(3L);
+        batch.onJobFinished(secondChunk);
+        batch.complete();
+
+        assertThat(secondChunk.getRelatedWorkshopMods()).extracting(WorkshopMod::getId).containsExactly(3L);
+        assertThat(batch.isDone()).isTrue();
+        assertThat(future).isCompletedWithValue(job);
+        assertThat(job.getErrorStatus()).isNull();
+    }
+
+    @Test
+    void whenCoalescedBatchFails_thenOnlyCallersWithUnfinishedItemsReceiveTheError() {
+        SteamCmdJob firstJob = createWorkshopJob(1L);
+        SteamCmdJob secondJob = createWorkshopJob(2L);
+        CompletableFuture<SteamCmdJob> firstFuture = new CompletableFuture<>();
+        CompletableFuture<SteamCmdJob> secondFuture = new CompletableFuture<>();
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(firstJob, firstFuture);
+        batch.coalesce(secondJob, secondFuture);
+
+        SteamCmdJob job = batch.takeNextJob(0);
+        job.markItemFinished(1L);
+        job.setErrorStatus(ErrorStatus.NO_SUBSCRIPTION);
+        batch.onJobFinished(job);
+        batch.complete();
+
+        assertThat(firstFuture).isCompletedWithValue(firstJob);
+        assertThat(firstJob.getErrorStatus()).isNull();
+        assertThat(secondFuture).isCompletedWithValue(secondJob);
+        assertThat(secondJob.getErrorStatus()).isEqualTo(ErrorStatus.NO_SUBSCRIPTION);
+    }
+
+    @Test
+    void whenSingleItemFails_thenOnlyThatItemReceivesItsError() {
+        SteamCmdJob callerJob = createWorkshopJob(1L, 2L, 3L);
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(callerJob, new CompletableFuture<>());
+
+        SteamCmdJob job = batch.takeNextJob(0);
+        job.markItemFinished(1L);
+        job.setItemErrorStatus(2L, ErrorStatus.NO_MATCH);
+        job.setErrorStatus(ErrorStatus.TIMEOUT);
+        batch.onJobFinished(job);
+        batch.complete();
+
+        assertThat(callerJob.getErrorStatusOf(1L)).isNull();
+        assertThat(callerJob.getErrorStatusOf(2L)).isEqualTo(ErrorStatus.NO_MATCH);
+        assertThat(callerJob.getErrorStatusOf(3L)).isEqualTo(ErrorStatus.TIMEOUT);
+    }
+
+    @Test
+    void whenItemTimesOutOnce_thenItIsRetriedAndSucceeds() {
+        SteamCmdJob callerJob = createWorkshopJob(1L, 2L);
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(callerJob, new CompletableFuture<>());
+        SteamCmdJob job = batch.takeNextJob(0);
+
+        boolean settled = job.recordItemFailure(1L, ErrorStatus.TIMEOUT, 3);
+
+        assertThat(settled).isFalse();
+        assertThat(job.isItemSettled(1L)).isFalse();
+        assertThat(job.hasUnsettledItems()).isTrue();
+
+        job.markItemFinished(1L);
+        job.markItemFinished(2L);
+        batch.onJobFinished(job);
+        batch.complete();
+
+        assertThat(callerJob.getErrorStatusOf(1L)).isNull();
+        assertThat(callerJob.getErrorStatus()).isNull();
+    }
+
+    @Test
+    void whenItemFailsForGood_thenItIsSettled() {
+        SteamCmdJob job = createWorkshopJob(1L, 2L);
+
+        job.recordItemFailure(1L, ErrorStatus.NO_MATCH, 3);
+        job.recordItemFailure(2L, ErrorStatus.RATE_LIMIT, 3);
+        job.recordItemFailure(2L, ErrorStatus.RATE_LIMIT, 3);
+
+        assertThat(job.isItemSettled(1L)).isTrue();
+        assertThat(job.isItemSettled(2L)).isFalse();
+
+        job.recordItemFailure(2L, ErrorStatus.RATE_LIMIT, 3);
+
+        assertThat(job.isItemSettled(2L)).isTrue();
+        assertThat(job.getErrorStatusOf(2L)).isEqualTo(ErrorStatus.RATE_LIMIT);
+        assertThat(job.hasUnsettledItems()).isFalse();
+    }
+
+    @Test
+    void whenJobIsServerJob_thenItCannotBeCoalesced() {
+        SteamCmdJob serverJob = new SteamCmdJob(ServerType.ARMA3, new SteamCmdParameters.Builder().build(),
+                Set.of(new SteamCmdInstallTarget(Path.of("/servers/ARMA3"), Constants.SERVER_IDS.get(ServerType.ARMA3))));
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(createWorkshopJob(1L), new CompletableFuture<>());
+
+        assertThat(batch.canCoalesce(serverJob)).isFalse();
+    }
+
+    @Test
+    void whenWaitingItemIsCancelled_thenItIsNotTakenAndCallerReceivesCancellation() {
+        SteamCmdJob callerJob = createWorkshopJob(1L, 2L);
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(callerJob, new CompletableFuture<>());
+
+        Set<Long> cancelledItemIds = batch.cancelWaitingItems(Set.of(2L, 3L));
+        SteamCmdJob job = batch.takeNextJob(0);
+        job.markItemFinished(1L);
+        batch.onJobFinished(job);
+        batch.complete();
+
+        assertThat(cancelledItemIds).containsExactly(2L);
+        assertThat(job.getRelatedWorkshopMods()).extracting(WorkshopMod::getId).containsExactly(1L);
+        assertThat(callerJob.getErrorStatusOf(1L)).isNull();
+        assertThat(callerJob.getErrorStatusOf(2L)).isEqualTo(ErrorStatus.CANCELLED);
+    }
+
+    @Test
+    void whenWaitingServerJobIsCancelled_thenBatchIsDone() {
+        SteamCmdJob serverJob = new SteamCmdJob(ServerType.ARMA3, new SteamCmdParameters.Builder().build(),
+                Set.of(new SteamCmdInstallTarget(Path.of("/servers/ARMA3"), Constants.SERVER_IDS.get(ServerType.ARMA3))));
+        CompletableFuture<SteamCmdJob> future = new CompletableFuture<>();
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(serverJob, future);
+
+        batch.cancelWaitingItems(Set.of(Constants.SERVER_IDS.get(ServerType.ARMA3)));
+        batch.complete();
+
+        assertThat(batch.isDone()).isTrue();
+        assertThat(future).isCompletedWithValue(serverJob);
+        assertThat(serverJob.getErrorStatus()).isEqualTo(ErrorStatus.CANCELLED);
+    }
+
+    @Test
+    void whenJobIsPreempted_thenItsUnfinishedItemsAreTakenFirst() {
+        SteamCmdJob callerJob = createWorkshopJob(1L, 2L, 3L, 4L);
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(callerJob, new CompletableFuture<>());
+
+        SteamCmdJob firstChunk = batch.takeNextJob(2);
+        firstChunk.markItemFinished(1L);
+        batch.onJobPreempted(firstChunk);
+        SteamCmdJob secondChunk = batch.takeNextJob(2);
+
+        assertThat(batch.isDone()).isFalse();
+        assertThat(secondChunk.getRelatedWorkshopMods()).extracting(WorkshopMod::getId).containsExactly(2L, 3L);
+    }
+
+    @Test
+    void whenGettingItemsOfJobsContainingItem_thenOnlyMatchingCallersAreIncluded() {
+        SteamCmdJobBatch batch = new SteamCmdJobBatch(createWorkshopJob(1L, 2L), new CompletableFuture<>());
+        batch.coalesce(createWorkshopJob(3L), new CompletableFuture<>());
+
+        assertThat(batch.getItemIdsOfJobsContaining(2L)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(batch.getItemIdsOfJobsContaining(4L)).isEmpty();
+    }
+
+    private static SteamCmdJob createWorkshopJob(Long... modIds) {
+        List<WorkshopMod> mods = Arrays.stream(modIds)
+                .map(id -> {
+                    WorkshopMod mod = new WorkshopMod(id);
+                    mod.setServerType(ServerType.ARMA3);
+                    return mod;
+                })
+                .toList();
+        SteamCmdParameters parameters = new SteamCmdParameters.Builder()
+                .withInstallDir(MODS_DIR.toString())
+                .withLogin()
+                .withWorkshopItemsInstall(mods, true)
+                .build();
+        return new SteamCmdJob(mods, parameters,
+                Set.of(new SteamCmdInstallTarget(MODS_DIR, Constants.GAME_IDS.get(ServerType.ARMA3))));
+    }
+}
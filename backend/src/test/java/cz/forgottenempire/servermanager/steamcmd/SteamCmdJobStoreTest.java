@@ -0,0 +1,142 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoChangedEvent;
+import cz.forgottenempire.servermanager.workshop.WorkshopMod;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SteamCmdJobStoreTest {
+
+    private static final Path MODS_DIR = Path.of("/mods");
+
+    private final PersistedSteamCmdJobRepository repository = mock(PersistedSteamCmdJobRepository.class);
+    private final AtomicLong lastJobId = new AtomicLong();
+    private SteamCmdJobStore jobStore;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.save(any())).thenAnswer(invocation -> {
+            PersistedSteamCmdJob persistedJob = invocation.getArgument(0);
+            persistedJob.setId(lastJobId.incrementAndGet());
+            return persistedJob;
+        });
+        jobStore = new SteamCmdJobStore(repository);
+    }
+
+    @Test
+    void whenJobIsSaved_thenItsDownloadedItemsAreMarkedAsFinished() {
+        SteamCmdJob job = createWorkshopJob(1L, 2L);
+        job.markItemFinished(1L);
+
+        jobStore.save(job);
+
+        ArgumentCaptor<PersistedSteamCmdJob> persistedJob = ArgumentCaptor.forClass(PersistedSteamCmdJob.class);
+        verify(repository).save(persistedJob.capture());
+        assertThat(persistedJob.getValue().getItems()).isEqualTo(Map.of(1L, true, 2L, false));
+        assertThat(persistedJob.getValue().isWorkshopJob()).isTrue();
+    }
+
+    @Test
+    void whenManagerIsRestarted_thenJobsOfPreviousRunAreTakenAsInterrupted() {
+        PersistedSteamCmdJob interruptedJob = persistedWorkshopJob(jobStore.save(createWorkshopJob(1L, 2L)));
+        SteamCmdJobStore restartedJobStore = new SteamCmdJobStore(repository);
+        PersistedSteamCmdJob ownJob = persistedWorkshopJob(restartedJobStore.save(createWorkshopJob(3L)));
+        PersistedSteamCmdJob interruptedServerJob = new PersistedSteamCmdJob();
+        interruptedServerJob.setId(100L);
+        interruptedServerJob.setRelatedServer(ServerType.ARMA3);
+        when(repository.findAll()).thenReturn(List.of(interruptedJob, ownJob, interruptedServerJob));
+
+        List<PersistedSteamCmdJob> interruptedJobs = restartedJobStore.takeInterruptedJobs(true);
+
+        assertThat(interruptedJobs).containsExactly(interruptedJob);
+        verify(repository).deleteAll(List.of(interruptedJob));
+    }
+
+    @Test
+    void whenItemFinishes_thenItIsMarkedOnlyInJobsBeingRun() {
+        SteamCmdJob runningJob = createWorkshopJob(1L, 2L);
+        runningJob.setStoredJobIds(Set.of(jobStore.save(runningJob)));
+        SteamCmdJob queuedJob = createWorkshopJob(1L);
+        queuedJob.setStoredJobIds(Set.of(jobStore.save(queuedJob)));
+        SteamCmdJob chunk = new SteamCmdJobBatch(runningJob, new CompletableFuture<>()).takeNextJob(0);
+
+        jobStore.onJobStarting(new SteamCmdJobStartingEvent(chunk));
+        jobStore.onItemInfoChanged(finished(1L));
+
+        verify(repository).markItemFinished(Set.of(1L), 1L);
+    }
+
+    @Test
+    void whenItemFinishesAfterItsJobStopped_thenNothingIsMarked() {
+        SteamCmdJob job = createWorkshopJob(1L);
+        job.setStoredJobIds(Set.of(jobStore.save(job)));
+
+        jobStore.onJobStarting(new SteamCmdJobStartingEvent(job));
+        jobStore.onJobFinished(new SteamCmdJobFinishedEvent(job.getItemIds()));
+        jobStore.onItemInfoChanged(finished(1L));
+
+        verify(repository, never()).markItemFinished(anyCollection(), anyLong());
+    }
+
+    @Test
+    void whenServerUpdateFinishes_thenNothingIsMarked() {
+        long serverAppId = Constants.SERVER_IDS.get(ServerType.ARMA3);
+        SteamCmdJob serverJob = new SteamCmdJob(ServerType.ARMA3, new SteamCmdParameters.Builder().build(),
+                Set.of(new SteamCmdInstallTarget(Path.of("/servers/ARMA3"), serverAppId)));
+        serverJob.setStoredJobIds(Set.of(jobStore.save(serverJob)));
+
+        jobStore.onJobStarting(new SteamCmdJobStartingEvent(serverJob));
+        jobStore.onItemInfoChanged(finished(serverAppId));
+
+        verify(repository, never()).markItemFinished(anyCollection(), anyLong());
+    }
+
+    private static SteamCmdItemInfoChangedEvent finished(long itemId) {
+        return new SteamCmdItemInfoChangedEvent(new SteamCmdItemInfo(itemId, SteamCmdStatus.FINISHED, 100, 0, 0));
+    }
+
+    private static PersistedSteamCmdJob persistedWorkshopJob(long id) {
+        PersistedSteamCmdJob persistedJob = new PersistedSteamCmdJob();
+        persistedJob.setId(id);
+        return persistedJob;
+    }
+
+    private static SteamCmdJob createWorkshopJob(Long... modIds) {
+        List<WorkshopMod> mods = Arrays.stream(modIds)
+                .map(id -> {
+                    WorkshopMod mod = new WorkshopMod(id);
+                    mod.setServerType(ServerType.ARMA3);
+                    return mod;
+                })
+                .toList();
+        SteamCmdParameters parameters = new SteamCmdParameters.Builder()
+                .withInstallDir(MODS_DIR.toString())
+                .withLogin()
+                .withWorkshopItemsInstall(mods, true)
+                .build();
+        return new SteamCmdJob(mods, parameters,
+                Set.of(new SteamCmdInstallTarget(MODS_DIR, Constants.GAME_IDS.get(ServerType.ARMA3))));
+    }
+}
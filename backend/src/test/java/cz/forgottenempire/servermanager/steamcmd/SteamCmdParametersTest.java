@@ -0,0 +1,39 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SteamCmdParametersTest {
+
+    @Test
+    void whenConvertingToSessionCommands_thenLoginOptionsAndQuitAreLeftOut() {
+        SteamCmdParameters parameters = new SteamCmdParameters.Builder()
+                .withInstallDir("/home/arma/mods dir")
+                .withLogin()
+                .withWorkshopItemInstall(107410L, 450814997L, true)
+                .build();
+
+        assertThat(parameters.getSessionCommands()).containsExactly(
+                "force_install_dir \"/home/arma/mods dir\"",
+                "workshop_download_item 107410 450814997 validate"
+        );
+    }
+
+    @Test
+    void whenRemovingWorkshopItems_thenOnlyTheirDownloadsAreLeftOut() {
+        SteamCmdParameters parameters = new SteamCmdParameters.Builder()
+                .withInstallDir("/mods")
+                .withLogin()
+                .withWorkshopItemInstall(107410L, 1L, true)
+                .withWorkshopItemInstall(107410L, 2L, true)
+                .build();
+
+        assertThat(parameters.withoutWorkshopItems(Set.of(1L)).get())
+                .filteredOn(parameter -> parameter.startsWith("+workshop_download_item"))
+                .containsExactly("+workshop_download_item 107410 2 validate");
+        assertThat(parameters.withoutWorkshopItems(Set.of(1L)).get()).endsWith("+quit");
+    }
+}
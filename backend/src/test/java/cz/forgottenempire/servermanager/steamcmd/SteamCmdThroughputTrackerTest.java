@@ -0,0 +1,113 @@
+package cz.forgottenempire.servermanager.steamcmd;
+
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfoChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SteamCmdThroughputTrackerTest {
+
+    private static final long APP_ID = 233780L;
+    private static final long MOD_ID = 450814997L;
+    private static final long TOTAL_BYTES = 10_000_000L;
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SteamCmdThroughputTracker tracker = new SteamCmdThroughputTracker(60, meterRegistry, now::get);
+
+    @Test
+    void whenBytesAreDownloadedSteadily_thenThroughputAndEtaConverge() {
+        for (int second = 0; second <= 60; second++) {
+            reportProgress(SteamCmdStatus.DOWNLOADING, second * 100_000L);
+            advanceSeconds(1);
+        }
+        advanceSeconds(-1);
+
+        SteamCmdItemThroughputDto item = tracker.getThroughput().items().get(0);
+        assertThat(item.bytesPerSecond()).isCloseTo(100_000, within(1_000.0));
+        assertThat(item.etaSeconds()).isCloseTo(40L, within(1L));
+        assertThat(item.stalled()).isFalse();
+    }
+
+    @Test
+    void whenBytesStopMoving_thenItemIsReportedAsStalled() {
+        reportProgress(SteamCmdStatus.DOWNLOADING, 0);
+        advanceSeconds(1);
+        reportProgress(SteamCmdStatus.DOWNLOADING, 100_000L);
+        advanceSeconds(61);
+        reportProgress(SteamCmdStatus.DOWNLOADING, 100_000L);
+        tracker.detectStalls();
+
+        SteamCmdThroughputDto throughput = tracker.getThroughput();
+        assertThat(throughput.stalledItems()).isEqualTo(1);
+        assertThat(throughput.items().get(0).secondsSinceProgress()).isEqualTo(61);
+        assertThat(throughput.bytesPerSecond()).isLessThan(1_000);
+        assertThat(meterRegistry.get("steamcmd.download.stalls").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void whenItemFinishes_thenItIsNoLongerTracked() {
+        reportProgress(SteamCmdStatus.DOWNLOADING, 0);
+        reportProgress(SteamCmdStatus.FINISHED, TOTAL_BYTES);
+
+        assertThat(tracker.getThroughput().items()).isEmpty();
+    }
+
+    @Test
+    void whenItemReportsNoBytes_thenItIsNeverReportedAsStalled() {
+        // workshop items only tell they are downloading, without any byte counts
+        SteamCmdItemInfo itemInfo = new SteamCmdItemInfo(MOD_ID, SteamCmdStatus.DOWNLOADING, 0, 0, 0);
+        tracker.onItemInfoChanged(new SteamCmdItemInfoChangedEvent(itemInfo));
+        advanceSeconds(300);
+        tracker.detectStalls();
+
+        SteamCmdThroughputDto throughput = tracker.getThroughput();
+        assertThat(throughput.stalledItems()).isZero();
+        assertThat(throughput.items().get(0).stalled()).isFalse();
+        assertThat(throughput.items().get(0).etaSeconds()).isNull();
+        assertThat(meterRegistry.get("steamcmd.download.stalls").counter().count()).isZero();
+    }
+
+    @Test
+    void whenJobFinishesWithoutFinalItemStatus_thenItsItemsAreNoLongerTracked() {
+        reportProgress(SteamCmdStatus.DOWNLOADING, 100_000L);
+        advanceSeconds(61);
+        tracker.onJobFinished(new SteamCmdJobFinishedEvent(Set.of(APP_ID)));
+
+        SteamCmdThroughputDto throughput = tracker.getThroughput();
+        assertThat(throughput.items()).isEmpty();
+        assertThat(throughput.stalledItems()).isZero();
+        assertThat(meterRegistry.get("steamcmd.download.stalled").gauge().value()).isZero();
+    }
+
+    @Test
+    void whenPhaseChanges_thenThroughputStartsOver() {
+        reportProgress(SteamCmdStatus.DOWNLOADING, 0);
+        advanceSeconds(1);
+        reportProgress(SteamCmdStatus.DOWNLOADING, TOTAL_BYTES);
+        reportProgress(SteamCmdStatus.VERIFYING, 0);
+
+        SteamCmdItemThroughputDto item = tracker.getThroughput().items().get(0);
+        assertThat(item.status()).isEqualTo(SteamCmdStatus.VERIFYING);
+        assertThat(item.bytesPerSecond()).isZero();
+        assertThat(item.etaSeconds()).isNull();
+    }
+
+    private void reportProgress(SteamCmdStatus status, long bytesFinished) {
+        SteamCmdItemInfo itemInfo = new SteamCmdItemInfo(APP_ID, status,
+                (double) bytesFinished / TOTAL_BYTES, bytesFinished, TOTAL_BYTES);
+        tracker.onItemInfoChanged(new SteamCmdItemInfoChangedEvent(itemInfo));
+    }
+
+    private void advanceSeconds(long seconds) {
+        now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
@@ -0,0 +1,53 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class SteamCmdItemInfoRepositoryTest {
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final SteamCmdItemInfoRepository repository = new SteamCmdItemInfoRepository(eventPublisher);
+
+    @Test
+    void whenItemInfoChanges_thenChangeIsPublished() {
+        SteamCmdItemInfo queued = new SteamCmdItemInfo(1L, SteamCmdStatus.IN_QUEUE, 0, 0, 0);
+        SteamCmdItemInfo downloading = new SteamCmdItemInfo(1L, SteamCmdStatus.DOWNLOADING, 0.5, 50, 100);
+
+        repository.store(1L, queued);
+        repository.store(1L, downloading);
+
+        verify(eventPublisher).publishEvent(new SteamCmdItemInfoChangedEvent(queued));
+        verify(eventPublisher).publishEvent(new SteamCmdItemInfoChangedEvent(downloading));
+    }
+
+    @Test
+    void whenSameItemInfoIsStoredAgain_thenNothingIsPublished() {
+        SteamCmdItemInfo itemInfo = new SteamCmdItemInfo(1L, SteamCmdStatus.DOWNLOADING, 0.5, 50, 100);
+
+        repository.store(1L, itemInfo);
+        repository.store(1L, itemInfo);
+
+        verify(eventPublisher, times(1)).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void whenItemIsSettled_thenItIsPublishedAndDropped() {
+        SteamCmdItemInfo downloading = new SteamCmdItemInfo(1L, SteamCmdStatus.DOWNLOADING, 0.5, 50, 100);
+        SteamCmdItemInfo finished = new SteamCmdItemInfo(1L, SteamCmdStatus.FINISHED, 100, 100, 100);
+        SteamCmdItemInfo cancelled = new SteamCmdItemInfo(2L, SteamCmdStatus.CANCELLED, 0, 0, 0);
+        SteamCmdItemInfo queued = new SteamCmdItemInfo(3L, SteamCmdStatus.IN_QUEUE, 0, 0, 0);
+
+        repository.store(1L, downloading);
+        repository.store(1L, finished);
+        repository.store(2L, cancelled);
+        repository.store(3L, queued);
+
+        verify(eventPublisher).publishEvent(new SteamCmdItemInfoChangedEvent(finished));
+        verify(eventPublisher).publishEvent(new SteamCmdItemInfoChangedEvent(cancelled));
+        assertThat(repository.getAll()).containsOnlyKeys(3L);
+    }
+}
@@ -0,0 +1,41 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class SteamCmdLogWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void whenWriterIsShutDown_thenAllQueuedLinesAreWritten() throws Exception {
+        File logFile = tempDir.resolve("logs/steamcmd.log").toFile();
+        PathsFactory pathsFactory = mock(PathsFactory.class, withSettings().stubOnly());
+        when(pathsFactory.getSteamCmdLogFile()).thenReturn(logFile);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SteamCmdLogWriter logWriter = new SteamCmdLogWriter(pathsFactory, meterRegistry, 100, 2, 60000, 50);
+
+        logWriter.write("Loading Steam API...OK");
+        logWriter.write("Logging in user 'user' to Steam Public...OK");
+        logWriter.write("Success. Downloaded item 450814997");
+        logWriter.writeSeparator();
+        logWriter.shutdown();
+
+        List<String> lines = Files.readAllLines(logFile.toPath());
+        assertThat(lines).hasSize(5);
+        assertThat(lines.get(0)).matches("\\[\\d{2}:\\d{2}:\\d{2}] Loading Steam API\\.\\.\\.OK");
+        assertThat(lines.get(2)).endsWith("Success. Downloaded item 450814997");
+        assertThat(meterRegistry.get("steamcmd.log.lines.dropped").counter().count()).isZero();
+    }
+}
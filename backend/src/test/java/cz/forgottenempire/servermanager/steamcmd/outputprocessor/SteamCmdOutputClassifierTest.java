@@ -0,0 +1,102 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SteamCmdOutputClassifierTest {
+
+    @Test
+    void whenOutputContainsNoErrors_thenNoFailureIsDetected() {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+
+        classifier.accept("Loading Steam API...OK");
+        classifier.accept("WARNING: setlocale('en_US.UTF-8') failed, using locale: 'C'");
+        classifier.accept("dlopen failed trying to load: steamservice.so: cannot open shared object file");
+        classifier.accept("Success. Downloaded item 450814997 to \"/mods/steamapps/workshop/content/107410/450814997\" (1000 bytes)");
+
+        assertThat(classifier.hasFailed()).isFalse();
+        assertThat(classifier.getErrorStatus()).isNull();
+    }
+
+    @Test
+    void whenSuccessfulDownloadIsReplayed_thenNoFailureIsDetected() throws IOException {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+
+        try (BufferedReader transcript = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("/steamcmd/workshop-download.log"), StandardCharsets.UTF_8))) {
+            transcript.lines().forEach(classifier::accept);
+        }
+
+        assertThat(classifier.hasFailed()).isFalse();
+        assertThat(classifier.getTail()).contains("KeyValues Error");
+    }
+
+    @Test
+    void whenLineOnlyMentionsAnError_thenNoFailureIsDetected() {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+
+        classifier.accept("KeyValues Error: RecursiveLoadFromBuffer:  got EOF instead of keyname");
+        classifier.accept("src/common/contentmanifest.cpp (650) : Assertion Failed: !m_bIsFinalized");
+
+        assertThat(classifier.hasFailed()).isFalse();
+    }
+
+    @Test
+    void whenLoginFails_thenWrongAuthIsDetectedImmediately() {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+
+        classifier.accept("Logging in user 'user' to Steam Public...");
+        classifier.accept("FAILED (Invalid Password)");
+
+        assertThat(classifier.hasFailed()).isTrue();
+        assertThat(classifier.getErrorStatus()).isEqualTo(ErrorStatus.WRONG_AUTH);
+    }
+
+    @Test
+    void whenMultipleErrorsOccur_thenTheFirstOneDeterminesTheResult() {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+
+        classifier.accept("ERROR! Download item 123 failed (Rate Limit Exceeded).");
+        classifier.accept("ERROR! Download item 456 failed (No subscription).");
+
+        assertThat(classifier.getErrorStatus()).isEqualTo(ErrorStatus.RATE_LIMIT);
+        assertThat(classifier.getErrorLine()).contains("123");
+    }
+
+    @Test
+    void whenDownloadOfItemFails_thenTheItemIsIdentified() {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+
+        classifier.accept("ERROR! Download item 450814997 failed (Timeout).");
+
+        assertThat(classifier.getErrorStatus()).isEqualTo(ErrorStatus.TIMEOUT);
+        assertThat(classifier.getFailedItemId()).isEqualTo(450814997L);
+    }
+
+    @Test
+    void whenErrorIsNotRelatedToAnItem_thenNoItemIsIdentified() {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier();
+
+        classifier.accept("FAILED (Invalid Password)");
+
+        assertThat(classifier.getFailedItemId()).isNull();
+    }
+
+    @Test
+    void whenOutputIsLong_thenOnlyTheTailIsKept() {
+        SteamCmdOutputClassifier classifier = new SteamCmdOutputClassifier(2);
+
+        classifier.accept("line 1");
+        classifier.accept("line 2");
+        classifier.accept("line 3");
+
+        assertThat(classifier.getTail()).isEqualTo("line 2" + System.lineSeparator() + "line 3");
+    }
+}
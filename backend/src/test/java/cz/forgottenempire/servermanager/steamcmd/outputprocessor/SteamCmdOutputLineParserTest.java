@@ -0,0 +1,87 @@
+package cz.forgottenempire.servermanager.steamcmd.outputprocessor;
+
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.outputprocessor.SteamCmdItemInfo.SteamCmdStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class SteamCmdOutputLineParserTest {
+
+    private static final long ARMA3_SERVER_ID = Constants.SERVER_IDS.get(ServerType.ARMA3);
+
+    private final SteamCmdOutputLineParser parser = new SteamCmdOutputLineParser();
+
+    @Test
+    void whenLineCarriesNoProgress_thenNothingIsParsed() {
+        List<SteamCmdItemInfo> result = parse("Logging in user 'user' to Steam Public...OK", serverJob());
+
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    void whenWorkshopItemIsDownloaded_thenItemIsFinished() {
+        List<SteamCmdItemInfo> result = parse(
+                "Success. Downloaded item 450814997 to \"/mods/steamapps/workshop/content/107410/450814997\" (1234 bytes)",
+                workshopJob());
+
+        assertThat(result).containsExactly(
+                new SteamCmdItemInfo(450814997L, SteamCmdStatus.FINISHED, 100, 1234, 1234));
+    }
+
+    @Test
+    void whenUpdateStateIsReported_thenProgressIsParsed() {
+        List<SteamCmdItemInfo> result = parse(
+                " Update state (0x61) downloading, progress: 25.00 (250 / 1000)", serverJob());
+
+        assertThat(result).containsExactly(
+                new SteamCmdItemInfo(ARMA3_SERVER_ID, SteamCmdStatus.DOWNLOADING, 0.25, 250, 1000));
+    }
+
+    @Test
+    void whenUpdateStateIsReportedForWorkshopJob_thenItIsIgnored() {
+        List<SteamCmdItemInfo> result = parse(
+                " Update state (0x61) downloading, progress: 25.00 (250 / 1000)", workshopJob());
+
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    void whenAppIsInstalled_thenAppIsFinished() {
+        List<SteamCmdItemInfo> result = parse("Success! App '233780' fully installed.", serverJob());
+
+        assertThat(result).containsExactly(new SteamCmdItemInfo(233780L, SteamCmdStatus.FINISHED, 100, 0, 0));
+    }
+
+    @Test
+    void whenItemDownloadStartsWithoutLineBreak_thenBothPartsAreParsed() {
+        List<SteamCmdItemInfo> result = parse(
+                "Update state (0x81) verifying, progress: 50.00 (1 / 2)Downloading item 623475643 ...", serverJob());
+
+        assertThat(result).containsExactly(
+                new SteamCmdItemInfo(ARMA3_SERVER_ID, SteamCmdStatus.VERIFYING, 0.5, 1, 2),
+                new SteamCmdItemInfo(623475643L, SteamCmdStatus.DOWNLOADING, 0, 0, 0));
+    }
+
+    private List<SteamCmdItemInfo> parse(String line, SteamCmdJob job) {
+        List<SteamCmdItemInfo> result = new ArrayList<>();
+        parser.parse(line, job, result::add);
+        return result;
+    }
+
+    private static SteamCmdJob serverJob() {
+        SteamCmdJob job = mock(SteamCmdJob.class, withSettings().stubOnly());
+        when(job.getRelatedServer()).thenReturn(ServerType.ARMA3);
+        return job;
+    }
+
+    private static SteamCmdJob workshopJob() {
+        return mock(SteamCmdJob.class, withSettings().stubOnly());
+    }
+}
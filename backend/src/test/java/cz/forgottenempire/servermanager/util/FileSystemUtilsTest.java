@@ -0,0 +1,108 @@
+package cz.forgottenempire.servermanager.util;
+
+import cz.forgottenempire.servermanager.util.FileSystemUtils.LowercaseResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class FileSystemUtilsTest {
+
+    @TempDir
+    Path modDirectory;
+
+    @Test
+    void whenDirectoryIsConvertedToLowercase_thenAllNestedEntriesAreRenamed() throws IOException {
+        createFile("Mod.cpp");
+        createFile("Addons/CBA_Main.pbo");
+        createFile("Addons/Sub/Deep/Texture.PAA");
+        createFile("Keys/cba.bikey");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        LowercaseResult result;
+        try {
+            result = FileSystemUtils.directoryToLowercase(modDirectory, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(listRelativePaths()).containsExactlyInAnyOrder(
+                "mod.cpp", "addons", "addons/cba_main.pbo", "addons/sub", "addons/sub/deep",
+                "addons/sub/deep/texture.paa", "keys", "keys/cba.bikey");
+        assertThat(result.renamedEntries()).isEqualTo(7);
+        assertThat(result.collisions()).isEmpty();
+    }
+
+    @Test
+    void whenLowercaseNameIsTaken_thenCollisionIsReported() throws IOException {
+        createFile("addons/data.pbo");
+        createFile("addons/Data.pbo");
+        // on case-insensitive file systems the two names are the same file, there's no collision to detect
+        assumeFalse(listRelativePaths().size() < 3);
+
+        LowercaseResult result = FileSystemUtils.directoryToLowercase(modDirectory.toFile());
+
+        assertThat(result.collisions()).containsExactly(modDirectory.resolve("addons/Data.pbo"));
+        assertThat(result.renamedEntries()).isZero();
+        assertThat(modDirectory.resolve("addons/Data.pbo")).exists();
+    }
+
+    @Test
+    void whenMixedCaseDirectoryIsRecreated_thenItIsMergedIntoLowercaseOne() throws IOException {
+        createFile("addons/cba_main.pbo");
+        createFile("addons/cba_xeh.pbo");
+        createFile("addons/sub/texture.paa");
+        // an update written under the original names, next to the lowercase files of the previous version
+        createFile("Addons/CBA_Main.pbo");
+        createFile("Addons/CBA_Common.pbo");
+        createFile("Addons/Sub/Texture.paa");
+        assumeFalse(listRelativePaths().size() < 9);
+
+        LowercaseResult result = FileSystemUtils.directoryToLowercase(modDirectory, Runnable::run,
+                (file, lowercaseFile) -> !modDirectory.relativize(file).toString().equals(
+                        modDirectory.relativize(file).toString().toLowerCase()));
+
+        assertThat(listRelativePaths()).containsExactlyInAnyOrder(
+                "addons", "addons/cba_main.pbo", "addons/cba_xeh.pbo", "addons/cba_common.pbo", "addons/sub",
+                "addons/sub/texture.paa");
+        assertThat(modDirectory.resolve("addons/cba_main.pbo")).hasContent("Addons/CBA_Main.pbo");
+        assertThat(modDirectory.resolve("addons/sub/texture.paa")).hasContent("Addons/Sub/Texture.paa");
+        assertThat(result.collisions()).isEmpty();
+    }
+
+    @Test
+    void whenFileOfMergedDirectoryCannotReplaceExistingOne_thenCollisionIsReported() throws IOException {
+        createFile("addons/data.pbo");
+        createFile("Addons/Data.pbo");
+        assumeFalse(listRelativePaths().size() < 4);
+
+        LowercaseResult result = FileSystemUtils.directoryToLowercase(modDirectory.toFile());
+
+        assertThat(result.collisions()).containsExactly(modDirectory.resolve("Addons/data.pbo"));
+        assertThat(modDirectory.resolve("addons/data.pbo")).hasContent("addons/data.pbo");
+        assertThat(modDirectory.resolve("Addons/data.pbo")).exists();
+    }
+
+    private void createFile(String relativePath) throws IOException {
+        Path file = modDirectory.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, relativePath);
+    }
+
+    private List<String> listRelativePaths() throws IOException {
+        try (Stream<Path> paths = Files.walk(modDirectory)) {
+            return paths.filter(path -> !path.equals(modDirectory))
+                    .map(path -> modDirectory.relativize(path).toString().replace('\\', '/'))
+                    .toList();
+        }
+    }
+}
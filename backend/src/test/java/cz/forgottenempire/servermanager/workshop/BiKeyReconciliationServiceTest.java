@@ -0,0 +1,155 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BiKeyReconciliationServiceTest {
+
+    @TempDir
+    Path serversDirectory;
+    @TempDir
+    Path modsDirectory;
+
+    private final List<WorkshopMod> installedMods = new ArrayList<>();
+    private PathsFactory pathsFactory;
+    private BiKeyReconciliationService keyReconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        pathsFactory = new PathsFactory(serversDirectory.toString(), modsDirectory.toString(), "logs");
+        WorkshopModsService modsService = mock(WorkshopModsService.class);
+        when(modsService.getAllMods()).thenReturn(installedMods);
+        ServerInstallationService installationService = mock(ServerInstallationService.class);
+        when(installationService.isServerInstalled(ServerType.ARMA3)).thenReturn(true);
+        keyReconciliationService = new BiKeyReconciliationService(pathsFactory, modsService, installationService,
+                new ModFileManifestStore(pathsFactory));
+    }
+
+    @Test
+    void whenModIsInstalled_thenItsKeysAreAddedToServer() throws IOException {
+        WorkshopMod mod = createMod(1L);
+        ModFileManifest manifest = createKey(mod, "keys/cba.bikey", "cba");
+
+        keyReconciliationService.onModInstalled(mod, manifest);
+
+        assertThat(serverKey("cba.bikey")).hasContent("cba");
+        assertThat(mod.getBiKeys()).containsExactly("cba.bikey");
+    }
+
+    @Test
+    void whenModSharingKeyIsUninstalled_thenKeyIsKeptForOtherMod() throws IOException {
+        WorkshopMod firstMod = createMod(1L);
+        WorkshopMod secondMod = createMod(2L);
+        keyReconciliationService.onModInstalled(firstMod, createKey(firstMod, "keys/cba.bikey", "cba"));
+        install(firstMod);
+        keyReconciliationService.onModInstalled(secondMod, createKey(secondMod, "Keys/cba.bikey", "cba"));
+        install(secondMod);
+
+        keyReconciliationService.onModUninstalled(firstMod);
+        installedMods.remove(firstMod);
+
+        assertThat(serverKey("cba.bikey")).exists();
+
+        keyReconciliationService.onModUninstalled(secondMod);
+
+        assertThat(serverKey("cba.bikey")).doesNotExist();
+    }
+
+    @Test
+    void whenKeyWasNotInstalledFromMod_thenItIsNotRemoved() throws IOException {
+        Files.createDirectories(pathsFactory.getServerKeysPath(ServerType.ARMA3));
+        Files.writeString(serverKey("a3.bikey"), "a3");
+        WorkshopMod mod = createMod(1L);
+        keyReconciliationService.onModInstalled(mod, createKey(mod, "keys/cba.bikey", "cba"));
+        install(mod);
+
+        keyReconciliationService.onModUninstalled(mod);
+
+        assertThat(serverKey("a3.bikey")).exists();
+        assertThat(serverKey("cba.bikey")).doesNotExist();
+    }
+
+    @Test
+    void whenKeyOfUpdatedModChanged_thenItIsReplaced() throws IOException {
+        WorkshopMod mod = createMod(1L);
+        keyReconciliationService.onModInstalled(mod, createKey(mod, "keys/cba_3.16.bikey", "old"));
+        install(mod);
+
+        Files.delete(modDirectory(mod).resolve("keys/cba_3.16.bikey"));
+        keyReconciliationService.onModInstalled(mod, createKey(mod, "keys/cba_3.17.bikey", "new"));
+        // a new file, the installed key might be a hard link to the old one
+        Files.delete(modDirectory(mod).resolve("keys/cba_3.17.bikey"));
+        Files.writeString(modDirectory(mod).resolve("keys/cba_3.17.bikey"), "newer");
+        keyReconciliationService.onModInstalled(mod, ModFileManifest.scan(modDirectory(mod)));
+
+        assertThat(serverKey("cba_3.16.bikey")).doesNotExist();
+        assertThat(serverKey("cba_3.17.bikey")).hasContent("newer");
+        assertThat(mod.getBiKeys()).containsExactly("cba_3.17.bikey");
+    }
+
+    @Test
+    void whenModIsInstalled_thenKeysOfModsBeingUpdatedOrFailedAreKept() throws IOException {
+        WorkshopMod updatingMod = createMod(2L);
+        createKey(updatingMod, "keys/ace.bikey", "ace");
+        WorkshopMod failedMod = createMod(3L);
+        createKey(failedMod, "keys/rhs.bikey", "rhs");
+        failedMod.setInstallationStatus(InstallationStatus.ERROR);
+        installedMods.add(updatingMod);
+        installedMods.add(failedMod);
+        keyReconciliationService.reconcile();
+
+        WorkshopMod mod = createMod(1L);
+        keyReconciliationService.onModInstalled(mod, createKey(mod, "keys/cba.bikey", "cba"));
+
+        assertThat(serverKey("cba.bikey")).hasContent("cba");
+        assertThat(serverKey("ace.bikey")).hasContent("ace");
+        assertThat(serverKey("rhs.bikey")).hasContent("rhs");
+
+        keyReconciliationService.reconcile();
+
+        assertThat(serverKey("ace.bikey")).exists();
+        assertThat(serverKey("rhs.bikey")).exists();
+    }
+
+    private WorkshopMod createMod(long id) {
+        WorkshopMod mod = new WorkshopMod(id);
+        mod.setServerType(ServerType.ARMA3);
+        mod.setInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS);
+        return mod;
+    }
+
+    private void install(WorkshopMod mod) {
+        mod.setInstallationStatus(InstallationStatus.FINISHED);
+        installedMods.add(mod);
+    }
+
+    private ModFileManifest createKey(WorkshopMod mod, String relativePath, String content) throws IOException {
+        Path key = modDirectory(mod).resolve(relativePath);
+        Files.createDirectories(key.getParent());
+        Files.writeString(key, content);
+        return ModFileManifest.scan(modDirectory(mod));
+    }
+
+    private Path modDirectory(WorkshopMod mod) {
+        return pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType());
+    }
+
+    private Path serverKey(String keyName) {
+        return pathsFactory.getServerKeyPath(keyName, ServerType.ARMA3);
+    }
+}
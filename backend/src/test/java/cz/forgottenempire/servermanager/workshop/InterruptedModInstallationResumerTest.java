@@ -0,0 +1,104 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.PersistedSteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobPriority;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InterruptedModInstallationResumerTest {
+
+    private final WorkshopModsService modsService = mock(WorkshopModsService.class);
+    private final WorkshopInstallerService installerService = mock(WorkshopInstallerService.class);
+    private final SteamCmdService steamCmdService = mock(SteamCmdService.class);
+    private final Map<Long, WorkshopMod> mods = new HashMap<>();
+    private InterruptedModInstallationResumer resumer;
+
+    @BeforeEach
+    void setUp() {
+        when(modsService.getMod(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(mods.get(invocation.<Long>getArgument(0))));
+        when(modsService.getAllMods()).thenReturn(mods.values());
+        resumer = new InterruptedModInstallationResumer(modsService, installerService, steamCmdService);
+    }
+
+    @Test
+    void whenJobWasInterrupted_thenItIsResumedWithoutDownloadingFinishedItems() {
+        WorkshopMod downloadedMod = createMod(1L, InstallationStatus.INSTALLATION_IN_PROGRESS);
+        WorkshopMod waitingMod = createMod(2L, InstallationStatus.INSTALLATION_IN_PROGRESS);
+        PersistedSteamCmdJob job = createJob(SteamCmdJobPriority.BACKGROUND, Map.of(1L, true, 2L, false, 3L, false));
+        when(steamCmdService.takeInterruptedWorkshopJobs()).thenReturn(List.of(job));
+
+        resumer.resumeInterruptedInstallations();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<WorkshopMod>> resumedMods = ArgumentCaptor.forClass(Collection.class);
+        verify(installerService).installOrUpdateMods(resumedMods.capture(), eq(SteamCmdJobPriority.BACKGROUND),
+                eq(Set.of(1L)));
+        // mod 3 was deleted meanwhile
+        assertThat(resumedMods.getValue()).containsExactlyInAnyOrder(downloadedMod, waitingMod);
+    }
+
+    @Test
+    void whenModsOfJobWereDeleted_thenJobIsNotResumed() {
+        when(steamCmdService.takeInterruptedWorkshopJobs())
+                .thenReturn(List.of(createJob(SteamCmdJobPriority.INTERACTIVE, Map.of(1L, false))));
+
+        resumer.resumeInterruptedInstallations();
+
+        verify(installerService, never()).installOrUpdateMods(anyCollection(), any(), any());
+    }
+
+    @Test
+    void whenModInProgressHasNoJob_thenItIsMarkedAsInterrupted() {
+        WorkshopMod resumedMod = createMod(1L, InstallationStatus.INSTALLATION_IN_PROGRESS);
+        WorkshopMod interruptedMod = createMod(2L, InstallationStatus.INSTALLATION_IN_PROGRESS);
+        WorkshopMod installedMod = createMod(3L, InstallationStatus.FINISHED);
+        when(steamCmdService.takeInterruptedWorkshopJobs())
+                .thenReturn(List.of(createJob(SteamCmdJobPriority.INTERACTIVE, Map.of(1L, false))));
+
+        resumer.resumeInterruptedInstallations();
+
+        assertThat(resumedMod.getInstallationStatus()).isEqualTo(InstallationStatus.INSTALLATION_IN_PROGRESS);
+        assertThat(interruptedMod.getInstallationStatus()).isEqualTo(InstallationStatus.ERROR);
+        assertThat(interruptedMod.getErrorStatus()).isEqualTo(ErrorStatus.INTERRUPTED);
+        assertThat(installedMod.getInstallationStatus()).isEqualTo(InstallationStatus.FINISHED);
+        verify(modsService).saveAllMods(List.of(interruptedMod));
+    }
+
+    private WorkshopMod createMod(long id, InstallationStatus installationStatus) {
+        WorkshopMod mod = new WorkshopMod(id);
+        mod.setServerType(ServerType.ARMA3);
+        mod.setInstallationStatus(installationStatus);
+        mods.put(id, mod);
+        return mod;
+    }
+
+    private static PersistedSteamCmdJob createJob(SteamCmdJobPriority priority, Map<Long, Boolean> items) {
+        PersistedSteamCmdJob job = new PersistedSteamCmdJob();
+        job.setPriority(priority);
+        job.setItems(new HashMap<>(items));
+        return job;
+    }
+}
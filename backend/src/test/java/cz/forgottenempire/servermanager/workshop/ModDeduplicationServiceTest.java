@@ -0,0 +1,124 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobStartingEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ModDeduplicationServiceTest {
+
+    private static final String SHARED_CONTENT = "shared content of a pbo";
+
+    @TempDir
+    Path modsDirectory;
+
+    private PathsFactory pathsFactory;
+    private WorkshopMod firstMod;
+    private WorkshopMod secondMod;
+    private ModDeduplicationService deduplicationService;
+
+    @BeforeEach
+    void setUp() {
+        pathsFactory = new PathsFactory("servers", modsDirectory.toString(), "logs");
+        firstMod = createMod(1L);
+        secondMod = createMod(2L);
+        WorkshopModsService modsService = mock(WorkshopModsService.class);
+        when(modsService.getAllMods()).thenReturn(List.of(firstMod, secondMod));
+        deduplicationService = new ModDeduplicationService(pathsFactory, modsService,
+                new ModFileManifestStore(pathsFactory), 1, Long.MAX_VALUE, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        deduplicationService.shutdown();
+    }
+
+    @Test
+    void whenModsShareFiles_thenDuplicatesAreLinked() throws IOException {
+        Path firstFile = createFile(firstMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        Path secondFile = createFile(secondMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        Path differentFile = createFile(secondMod, "addons/other.pbo", SHARED_CONTENT.toUpperCase());
+
+        ModDeduplicationReportDto report = deduplicationService.deduplicate();
+
+        assertThat(Files.isSameFile(firstFile, secondFile)).isTrue();
+        assertThat(Files.isSameFile(firstFile, differentFile)).isFalse();
+        assertThat(report.linkedFiles()).isEqualTo(1);
+        assertThat(report.reclaimedBytes()).isEqualTo(SHARED_CONTENT.length());
+        assertThat(deduplicationService.getLastReport()).contains(report);
+    }
+
+    @Test
+    void whenModIsBeingUpdated_thenItsFilesAreNotLinked() throws IOException {
+        Path firstFile = createFile(firstMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        Path secondFile = createFile(secondMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        deduplicationService.prepareForUpdate(List.of(secondMod));
+
+        ModDeduplicationReportDto report = deduplicationService.deduplicate();
+
+        assertThat(Files.isSameFile(firstFile, secondFile)).isFalse();
+        assertThat(report.linkedFiles()).isZero();
+    }
+
+    @Test
+    void whenLinkedModIsUpdated_thenItGetsItsOwnCopy() throws IOException {
+        Path firstFile = createFile(firstMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        Path secondFile = createFile(secondMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        deduplicationService.deduplicate();
+
+        deduplicationService.prepareForUpdate(List.of(secondMod));
+        Files.writeString(secondFile, "updated content");
+
+        assertThat(Files.isSameFile(firstFile, secondFile)).isFalse();
+        assertThat(firstFile).hasContent(SHARED_CONTENT);
+    }
+
+    @Test
+    void whenSteamCmdJobStarts_thenLinkedFilesAreCopiedAsReserved() throws IOException {
+        Path firstFile = createFile(firstMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        Path secondFile = createFile(secondMod, "addons/cba_main.pbo", SHARED_CONTENT);
+        deduplicationService.deduplicate();
+        SteamCmdJob job = mock(SteamCmdJob.class);
+        when(job.isWorkshopJob()).thenReturn(true);
+        when(job.getRelatedWorkshopMods()).thenReturn(List.of(secondMod));
+
+        assertThat(deduplicationService.estimateCopyBytes(List.of(secondMod))).isEqualTo(SHARED_CONTENT.length());
+        deduplicationService.onSteamCmdJobStarting(new SteamCmdJobStartingEvent(job));
+
+        assertThat(Files.isSameFile(firstFile, secondFile)).isFalse();
+        assertThat(deduplicationService.estimateCopyBytes(List.of(secondMod))).isZero();
+        verify(job, never()).setItemErrorStatus(anyLong(), any());
+    }
+
+    private WorkshopMod createMod(long id) {
+        WorkshopMod mod = new WorkshopMod(id);
+        mod.setServerType(ServerType.ARMA3);
+        mod.setInstallationStatus(InstallationStatus.FINISHED);
+        return mod;
+    }
+
+    private Path createFile(WorkshopMod mod, String relativePath, String content) throws IOException {
+        Path file = pathsFactory.getModInstallationPath(mod.getId(), mod.getServerType()).resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+}
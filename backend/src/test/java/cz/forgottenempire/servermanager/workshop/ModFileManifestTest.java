@@ -0,0 +1,98 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModFileManifestTest {
+
+    @TempDir
+    Path modDirectory;
+    @TempDir
+    Path modsDirectory;
+
+    @Test
+    void whenModIsScanned_thenAllFilesAreRecorded() throws IOException {
+        createFile("mod.cpp", "mod");
+        createFile("addons/cba_main.pbo", "content");
+
+        ModFileManifest manifest = ModFileManifest.scan(modDirectory);
+
+        assertThat(manifest.files()).containsOnlyKeys("mod.cpp", "addons/cba_main.pbo");
+        assertThat(manifest.totalSize()).isEqualTo(10);
+    }
+
+    @Test
+    void whenFilesChangeAfterScan_thenOnlyChangedFilesAreInDiff() throws IOException {
+        createFile("mod.cpp", "mod");
+        createFile("addons/cba_main.pbo", "content");
+        createFile("addons/cba_old.pbo", "old");
+        ModFileManifest previousManifest = ModFileManifest.scan(modDirectory);
+
+        createFile("addons/cba_main.pbo", "updated content");
+        createFile("keys/cba.bikey", "key");
+        Files.delete(modDirectory.resolve("addons/cba_old.pbo"));
+        ModFileManifest.Diff diff = ModFileManifest.scan(modDirectory).diff(previousManifest);
+
+        assertThat(diff.addedOrChanged()).containsExactlyInAnyOrder("addons/cba_main.pbo", "keys/cba.bikey");
+        assertThat(diff.removed()).containsExactly("addons/cba_old.pbo");
+    }
+
+    @Test
+    void whenThereIsNoPreviousManifest_thenAllFilesAreNew() throws IOException {
+        createFile("mod.cpp", "mod");
+
+        ModFileManifest.Diff diff = ModFileManifest.scan(modDirectory).diff(null);
+
+        assertThat(diff.addedOrChanged()).containsExactly("mod.cpp");
+        assertThat(diff.removed()).isEmpty();
+    }
+
+    @Test
+    void whenManifestIsSaved_thenItIsLoadedUnchanged() throws IOException {
+        createFile("addons/cba_main.pbo", "content");
+        ModFileManifest manifest = ModFileManifest.scan(modDirectory);
+        ModFileManifestStore store = new ModFileManifestStore(
+                new PathsFactory("servers", modsDirectory.toString(), "logs"));
+
+        store.save(1L, manifest);
+
+        assertThat(store.load(1L)).contains(manifest);
+        assertThat(store.load(2L)).isEmpty();
+    }
+
+    @Test
+    void whenManifestWasReplacedSinceItWasLoaded_thenChangedCopyIsNotSaved() throws IOException {
+        createFile("addons/cba_main.pbo", "content");
+        ModFileManifest manifest = ModFileManifest.scan(modDirectory);
+        ModFileManifestStore store = new ModFileManifestStore(
+                new PathsFactory("servers", modsDirectory.toString(), "logs"));
+        store.save(1L, manifest);
+        ModFileManifest loadedManifest = store.load(1L).orElseThrow();
+
+        createFile("addons/cba_extra.pbo", "extra");
+        ModFileManifest updatedManifest = ModFileManifest.scan(modDirectory);
+        store.save(1L, updatedManifest);
+
+        assertThat(store.saveIfUnchanged(1L, loadedManifest, manifest)).isFalse();
+        assertThat(store.load(1L)).contains(updatedManifest);
+        assertThat(store.saveIfUnchanged(1L, updatedManifest, manifest)).isTrue();
+        assertThat(store.load(1L)).contains(manifest);
+
+        store.beginUpdate(1L);
+
+        assertThat(store.saveIfUnchanged(1L, manifest, updatedManifest)).isFalse();
+    }
+
+    private void createFile(String relativePath, String content) throws IOException {
+        Path file = modDirectory.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
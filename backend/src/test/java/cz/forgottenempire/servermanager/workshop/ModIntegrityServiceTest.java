@@ -0,0 +1,175 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.workshop.ModFileManifest.FileEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ModIntegrityServiceTest {
+
+    private static final long MOD_ID = 1L;
+
+    @TempDir
+    Path modsDirectory;
+
+    private PathsFactory pathsFactory;
+    private Path modDirectory;
+    private WorkshopMod mod;
+    private ModFileManifestStore fileManifestStore;
+    private ModFileHasher fileHasher;
+    private WorkshopModsService modsService;
+    private ModIntegrityService integrityService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pathsFactory = new PathsFactory("servers", modsDirectory.toString(), "logs");
+        fileManifestStore = new ModFileManifestStore(pathsFactory);
+        fileHasher = new ModFileHasher(2);
+        modsService = mock(WorkshopModsService.class);
+        integrityService = new ModIntegrityService(pathsFactory, fileManifestStore, fileHasher, modsService);
+
+        mod = new WorkshopMod(MOD_ID);
+        mod.setServerType(ServerType.ARMA3);
+        mod.setInstallationStatus(InstallationStatus.FINISHED);
+        modDirectory = Files.createDirectories(pathsFactory.getModInstallationPath(MOD_ID, ServerType.ARMA3));
+        createFile("mod.cpp", "mod");
+        createFile("addons/cba_main.pbo", "content");
+        createFile("addons/cba_extra.pbo", "extra");
+    }
+
+    @AfterEach
+    void tearDown() {
+        integrityService.shutdown();
+        fileHasher.shutdown();
+    }
+
+    @Test
+    void whenVerifiedInBackground_thenReportsAreKeptAsLastReports() throws Exception {
+        when(modsService.getAllMods()).thenReturn(List.of(mod));
+        assertThat(integrityService.getLastReports()).isEmpty();
+
+        List<ModIntegrityReportDto> reports = integrityService.verifyInBackground().get(10, TimeUnit.SECONDS);
+
+        assertThat(reports).extracting(ModIntegrityReportDto::modId).containsExactly(MOD_ID);
+        assertThat(integrityService.getLastReports()).hasValue(reports);
+    }
+
+    @Test
+    void whenModHasNoHashes_thenTheyAreComputedWithoutReportingDivergence() throws IOException {
+        ModIntegrityReportDto report = integrityService.verify(mod);
+
+        assertThat(report.indexed()).isFalse();
+        assertThat(report.isDivergent()).isFalse();
+        assertThat(fileManifestStore.load(MOD_ID)).hasValueSatisfying(
+                manifest -> assertThat(manifest.isHashed()).isTrue());
+    }
+
+    @Test
+    void whenFilesAreUnchanged_thenModIsNotDivergent() throws IOException {
+        index();
+
+        ModIntegrityReportDto report = integrityService.verify(mod);
+
+        assertThat(report.indexed()).isTrue();
+        assertThat(report.isDivergent()).isFalse();
+    }
+
+    @Test
+    void whenFilesDiverge_thenTheyAreReported() throws IOException {
+        index();
+        Path mainPbo = modDirectory.resolve("addons/cba_main.pbo");
+        FileTime installedTime = Files.getLastModifiedTime(mainPbo);
+        Files.writeString(mainPbo, "CONTENT");
+        Files.setLastModifiedTime(mainPbo, FileTime.fromMillis(installedTime.toMillis() + 1000));
+        Files.writeString(modDirectory.resolve("mod.cpp"), "modified");
+        Files.delete(modDirectory.resolve("addons/cba_extra.pbo"));
+        createFile("addons/unknown.pbo", "unknown");
+
+        ModIntegrityReportDto report = integrityService.verify(mod);
+
+        assertThat(report.isDivergent()).isTrue();
+        assertThat(report.modifiedFiles()).containsExactly("addons/cba_main.pbo", "mod.cpp");
+        assertThat(report.missingFiles()).containsExactly("addons/cba_extra.pbo");
+        assertThat(report.unexpectedFiles()).containsExactly("addons/unknown.pbo");
+    }
+
+    @Test
+    void whenFileIsOnlyTouched_thenModIsNotDivergentAndNewTimeIsStored() throws IOException {
+        index();
+        Path mainPbo = modDirectory.resolve("addons/cba_main.pbo");
+        FileTime touchedTime = FileTime.fromMillis(Files.getLastModifiedTime(mainPbo).toMillis() + 1000);
+        Files.setLastModifiedTime(mainPbo, touchedTime);
+
+        ModIntegrityReportDto report = integrityService.verify(mod);
+
+        assertThat(report.isDivergent()).isFalse();
+        assertThat(fileManifestStore.load(MOD_ID).orElseThrow().files().get("addons/cba_main.pbo").lastModifiedMillis())
+                .isEqualTo(touchedTime.toMillis());
+    }
+
+    @Test
+    void whenModIsUpdatedWhileBeingVerified_thenItsNewManifestIsKept() throws IOException {
+        index();
+        Path mainPbo = modDirectory.resolve("addons/cba_main.pbo");
+        Files.setLastModifiedTime(mainPbo, FileTime.fromMillis(Files.getLastModifiedTime(mainPbo).toMillis() + 1000));
+        ModFileManifest updatedManifest = new ModFileManifest(Map.of("mod.cpp", new FileEntry(3, 1, "updated")));
+        // the installation of the update saves its manifest while the files are being hashed
+        ModFileHasher updatingHasher = new ModFileHasher(1) {
+            @Override
+            Map<String, String> hash(Path directory, Collection<String> relativePaths) throws IOException {
+                fileManifestStore.save(MOD_ID, updatedManifest);
+                return super.hash(directory, relativePaths);
+            }
+        };
+        ModIntegrityService service = new ModIntegrityService(pathsFactory, fileManifestStore, updatingHasher,
+                modsService);
+
+        try {
+            ModIntegrityReportDto report = service.verify(mod);
+
+            assertThat(report.indexed()).isFalse();
+            assertThat(report.isDivergent()).isFalse();
+            assertThat(fileManifestStore.load(MOD_ID)).contains(updatedManifest);
+        } finally {
+            service.shutdown();
+            updatingHasher.shutdown();
+        }
+    }
+
+    @Test
+    void whenModIsBeingUpdated_thenItIsNotVerified() {
+        fileManifestStore.beginUpdate(MOD_ID);
+
+        List<ModIntegrityReportDto> reports = integrityService.verify(List.of(mod));
+
+        assertThat(reports).isEmpty();
+        assertThat(fileManifestStore.load(MOD_ID)).isEmpty();
+    }
+
+    private void index() throws IOException {
+        fileManifestStore.save(MOD_ID, fileHasher.hashFiles(modDirectory, ModFileManifest.scan(modDirectory), null));
+    }
+
+    private void createFile(String relativePath, String content) throws IOException {
+        Path file = modDirectory.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,123 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ModPostInstallPipelineTest {
+
+    @TempDir
+    Path serversDirectory;
+    @TempDir
+    Path modsDirectory;
+
+    private final List<WorkshopMod> savedMods = new ArrayList<>();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PathsFactory pathsFactory;
+    private WorkshopModsService modsService;
+    private ModFileHasher fileHasher;
+    private ModPostInstallPipeline pipeline;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pathsFactory = new PathsFactory(serversDirectory.toString(), modsDirectory.toString(), "logs");
+        Files.createDirectories(pathsFactory.getServerPath(ServerType.ARMA3));
+        modsService = mock(WorkshopModsService.class);
+        doAnswer(invocation -> {
+            List<WorkshopMod> mods = invocation.getArgument(0);
+            synchronized (savedMods) {
+                savedMods.addAll(mods);
+            }
+            return mods;
+        }).when(modsService).saveAllMods(anyList());
+        ServerInstallationService installationService = mock(ServerInstallationService.class);
+        when(installationService.isServerInstalled(ServerType.ARMA3)).thenReturn(true);
+        ModFileManifestStore fileManifestStore = new ModFileManifestStore(pathsFactory);
+        fileHasher = new ModFileHasher(2);
+
+        pipeline = new ModPostInstallPipeline(pathsFactory, modsService, installationService, fileManifestStore,
+                fileHasher, new BiKeyReconciliationService(pathsFactory, modsService, installationService,
+                fileManifestStore), 2, 1, 1, 1, 1, 1, 1, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        fileHasher.shutdown();
+    }
+
+    @Test
+    void whenModsAreDownloaded_thenTheyAreInstalledAndSaved() throws Exception {
+        WorkshopMod installedMod = createMod(1L, "CBA_A3");
+        WorkshopMod failedMod = createMod(2L, "ACE");
+        Path modDirectory = pathsFactory.getModInstallationPath(installedMod.getId(), ServerType.ARMA3);
+        Files.createDirectories(modDirectory.resolve("Keys"));
+        Files.writeString(modDirectory.resolve("Keys/CBA_3.17.bikey"), "key");
+        Files.writeString(modDirectory.resolve("mod.cpp"), "mod");
+        SteamCmdJob steamCmdJob = mock(SteamCmdJob.class);
+        when(steamCmdJob.getRelatedWorkshopMods()).thenReturn(List.of(installedMod, failedMod));
+        when(steamCmdJob.getErrorStatusOf(failedMod.getId())).thenReturn(ErrorStatus.TIMEOUT);
+
+        pipeline.install(steamCmdJob).get(10, TimeUnit.SECONDS);
+
+        assertThat(savedMods).containsExactlyInAnyOrder(installedMod, failedMod);
+        assertThat(installedMod.getInstallationStatus()).isEqualTo(InstallationStatus.FINISHED);
+        assertThat(installedMod.getFileSize()).isEqualTo(6L);
+        assertThat(installedMod.getBiKeys()).containsExactly("cba_3.17.bikey");
+        assertThat(pathsFactory.getServerKeyPath("cba_3.17.bikey", ServerType.ARMA3)).hasContent("key");
+        assertThat(pathsFactory.getModLinkPath(installedMod.getNormalizedName(), ServerType.ARMA3)).isSymbolicLink();
+        assertThat(failedMod.getInstallationStatus()).isEqualTo(InstallationStatus.ERROR);
+        assertThat(failedMod.getErrorStatus()).isEqualTo(ErrorStatus.TIMEOUT);
+        assertThat(meterRegistry.get("workshop.installation.stage").tag("stage", "hash").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("workshop.installation.stage").tag("stage", "keys").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void whenModsCannotBeSaved_thenInstallationFails() throws IOException {
+        WorkshopMod mod = createMod(1L, "CBA_A3");
+        Files.createDirectories(pathsFactory.getModInstallationPath(mod.getId(), ServerType.ARMA3));
+        SteamCmdJob steamCmdJob = mock(SteamCmdJob.class);
+        when(steamCmdJob.getRelatedWorkshopMods()).thenReturn(List.of(mod));
+        doThrow(new IllegalStateException("database is down")).when(modsService).saveAllMods(anyList());
+
+        assertThatThrownBy(() -> pipeline.install(steamCmdJob).get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(meterRegistry.get("workshop.installation.duration").timer().count()).isZero();
+    }
+
+    private WorkshopMod createMod(long id, String name) {
+        WorkshopMod mod = new WorkshopMod(id);
+        mod.setName(name);
+        mod.setServerType(ServerType.ARMA3);
+        mod.setInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS);
+        return mod;
+    }
+}
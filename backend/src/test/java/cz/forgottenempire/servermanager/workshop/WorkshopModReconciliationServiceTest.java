@@ -0,0 +1,133 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.PathsFactory;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.steamcmd.ErrorStatus;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobPriority;
+import cz.forgottenempire.servermanager.workshop.acf.InstalledWorkshopItem;
+import cz.forgottenempire.servermanager.workshop.acf.WorkshopManifest;
+import cz.forgottenempire.servermanager.workshop.acf.WorkshopManifestReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WorkshopModReconciliationServiceTest {
+
+    private static final long MOD_ID = 450814997L;
+
+    @TempDir
+    Path modsDirectory;
+
+    private final WorkshopModsService modsService = Mockito.mock(WorkshopModsService.class);
+    private final WorkshopInstallerService installerService = Mockito.mock(WorkshopInstallerService.class);
+    private final WorkshopManifestReader manifestReader = Mockito.mock(WorkshopManifestReader.class);
+    private PathsFactory pathsFactory;
+    private WorkshopModReconciliationService reconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        pathsFactory = new PathsFactory("servers", modsDirectory.toString(), "logs");
+        reconciliationService =
+                new WorkshopModReconciliationService(modsService, installerService, manifestReader, pathsFactory);
+        when(manifestReader.read(any())).thenReturn(WorkshopManifest.EMPTY);
+    }
+
+    @Test
+    void whenDirectoryOfInstalledModIsMissing_thenModIsMarkedAsFailed() {
+        WorkshopMod mod = createMod(InstallationStatus.FINISHED, null);
+        when(modsService.getAllMods()).thenReturn(List.of(mod));
+
+        ReconciliationReportDto report = reconciliationService.reconcile();
+
+        assertThat(report.missingModIds()).containsExactly(MOD_ID);
+        assertThat(mod.getInstallationStatus()).isEqualTo(InstallationStatus.ERROR);
+        assertThat(mod.getErrorStatus()).isEqualTo(ErrorStatus.GENERIC);
+    }
+
+    @Test
+    void whenInstalledModHasNoSize_thenSizeIsTakenFromManifest() throws IOException {
+        WorkshopMod mod = createMod(InstallationStatus.FINISHED, null);
+        createModDirectory();
+        mockManifest(new InstalledWorkshopItem(MOD_ID, 4424, 1700000000L, null));
+        when(modsService.getAllMods()).thenReturn(List.of(mod));
+
+        ReconciliationReportDto report = reconciliationService.reconcile();
+
+        assertThat(report.filledSizes()).isEqualTo(1);
+        assertThat(mod.getFileSize()).isEqualTo(4424L);
+        verify(modsService).saveAllMods(List.of(mod));
+    }
+
+    @Test
+    void whenInterruptedUpdateDidNotReplaceFiles_thenInstalledVersionIsKept() throws IOException {
+        WorkshopMod mod = createMod(InstallationStatus.ERROR, ErrorStatus.INTERRUPTED);
+        mod.setWorkshopTimeUpdated(1700000000L);
+        createModDirectory();
+        mockManifest(new InstalledWorkshopItem(MOD_ID, 4424, 1700000000L, null));
+        when(modsService.getAllMods()).thenReturn(List.of(mod));
+
+        ReconciliationReportDto report = reconciliationService.reconcile();
+
+        assertThat(report.recoveredModIds()).containsExactly(MOD_ID);
+        assertThat(mod.getInstallationStatus()).isEqualTo(InstallationStatus.FINISHED);
+        assertThat(mod.getErrorStatus()).isNull();
+        verify(installerService, never()).installOrUpdateMods(anyCollection(), any(), any());
+    }
+
+    @Test
+    void whenInterruptedInstallationWasDownloaded_thenItIsInstalledWithoutDownload() throws IOException {
+        WorkshopMod mod = createMod(InstallationStatus.ERROR, ErrorStatus.INTERRUPTED);
+        createModDirectory();
+        mockManifest(new InstalledWorkshopItem(MOD_ID, 4424, 1700000000L, null));
+        when(modsService.getAllMods()).thenReturn(List.of(mod));
+
+        reconciliationService.reconcile();
+
+        assertThat(mod.getInstallationStatus()).isEqualTo(InstallationStatus.INSTALLATION_IN_PROGRESS);
+        assertThat(mod.getPendingWorkshopTimeUpdated()).isEqualTo(1700000000L);
+        verify(installerService).installOrUpdateMods(List.of(mod), SteamCmdJobPriority.BACKGROUND, Set.of(MOD_ID));
+    }
+
+    @Test
+    void whenInstalledFilesAreOlderThanRecordedVersion_thenModIsOutdated() throws IOException {
+        WorkshopMod mod = createMod(InstallationStatus.FINISHED, null);
+        mod.setWorkshopTimeUpdated(1700000000L);
+        createModDirectory();
+        mockManifest(new InstalledWorkshopItem(MOD_ID, 4424, 1600000000L, null));
+
+        assertThat(reconciliationService.findOutdatedModIds(List.of(mod))).containsExactly(MOD_ID);
+    }
+
+    private WorkshopMod createMod(InstallationStatus installationStatus, ErrorStatus errorStatus) {
+        WorkshopMod mod = new WorkshopMod(MOD_ID);
+        mod.setServerType(ServerType.ARMA3);
+        mod.setInstallationStatus(installationStatus);
+        mod.setErrorStatus(errorStatus);
+        return mod;
+    }
+
+    private void createModDirectory() throws IOException {
+        Files.createDirectories(pathsFactory.getModInstallationPath(MOD_ID, ServerType.ARMA3));
+    }
+
+    private void mockManifest(InstalledWorkshopItem item) {
+        when(manifestReader.read(ServerType.ARMA3))
+                .thenReturn(new WorkshopManifest(107410L, Map.of(item.itemId(), item)));
+    }
+}
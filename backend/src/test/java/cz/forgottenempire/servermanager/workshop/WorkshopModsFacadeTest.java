@@ -0,0 +1,150 @@
+package cz.forgottenempire.servermanager.workshop;
+
+import cz.forgottenempire.servermanager.common.Constants;
+import cz.forgottenempire.servermanager.common.InstallationStatus;
+import cz.forgottenempire.servermanager.common.ServerType;
+import cz.forgottenempire.servermanager.installation.ServerInstallationService;
+import cz.forgottenempire.servermanager.steamcmd.SteamCmdJobPriority;
+import cz.forgottenempire.servermanager.workshop.metadata.ModMetadata;
+import cz.forgottenempire.servermanager.workshop.metadata.ModMetadataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WorkshopModsFacadeTest {
+
+    private static final String ARMA3_APP_ID = Constants.GAME_IDS.get(ServerType.ARMA3).toString();
+
+    private final WorkshopModsService modsService = mock(WorkshopModsService.class);
+    private final WorkshopInstallerService installerService = mock(WorkshopInstallerService.class);
+    private final ModMetadataService metadataService = mock(ModMetadataService.class);
+    private final WorkshopModReconciliationService reconciliationService =
+            mock(WorkshopModReconciliationService.class);
+    private final Map<Long, WorkshopMod> mods = new HashMap<>();
+    private final Map<Long, ModMetadata> metadata = new HashMap<>();
+    private WorkshopModsFacade modsFacade;
+
+    @BeforeEach
+    void setUp() {
+        when(modsService.getAllMods()).thenReturn(mods.values());
+        when(modsService.getMod(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(mods.get(invocation.<Long>getArgument(0))));
+        when(metadataService.fetchCurrentModMetadata(anyCollection())).thenReturn(metadata);
+        when(metadataService.fetchModMetadata(anyCollection())).thenReturn(metadata);
+        when(reconciliationService.findOutdatedModIds(anyCollection())).thenReturn(Set.of());
+        ServerInstallationService serverInstallationService = mock(ServerInstallationService.class);
+        when(serverInstallationService.isServerInstalled(ServerType.ARMA3)).thenReturn(true);
+
+        modsFacade = new WorkshopModsFacade(modsService, installerService, metadataService, serverInstallationService,
+                reconciliationService, mock(ModIntegrityService.class), mock(ModDeduplicationService.class),
+                mock(BiKeyReconciliationService.class));
+    }
+
+    @Test
+    void whenWorkshopVersionDiffersFromInstalledOne_thenOnlyChangedModsAreUpdated() {
+        createInstalledMod(1L, 100L, 1000L, new ModMetadata("Unchanged", ARMA3_APP_ID, 100L, 1000L));
+        createInstalledMod(2L, 100L, 1000L, new ModMetadata("Newer", ARMA3_APP_ID, 200L, 1000L));
+        createInstalledMod(3L, 100L, 1000L, new ModMetadata("Resized", ARMA3_APP_ID, 100L, 2000L));
+        createInstalledMod(4L, 100L, 1000L, new ModMetadata("Size unknown", ARMA3_APP_ID, 100L, null));
+
+        modsFacade.updateChangedMods();
+
+        assertThat(getUpdatedModIds()).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(mods.get(2L).getPendingWorkshopTimeUpdated()).isEqualTo(200L);
+        assertThat(mods.get(2L).getInstallationStatus()).isEqualTo(InstallationStatus.INSTALLATION_IN_PROGRESS);
+        assertThat(mods.get(1L).getInstallationStatus()).isEqualTo(InstallationStatus.FINISHED);
+    }
+
+    @Test
+    void whenVersionOfModIsUnknown_thenModIsUpdated() {
+        createInstalledMod(1L, null, null, new ModMetadata("Installed before versions", ARMA3_APP_ID, 100L, 1000L));
+        createInstalledMod(2L, 100L, 1000L, new ModMetadata("Looked up on its page", ARMA3_APP_ID));
+
+        modsFacade.updateChangedMods();
+
+        assertThat(getUpdatedModIds()).containsExactlyInAnyOrder(1L, 2L);
+    }
+
+    @Test
+    void whenInstallationOfModFailed_thenItIsRetried() {
+        WorkshopMod mod = createInstalledMod(1L, 100L, 1000L, new ModMetadata("Failed", ARMA3_APP_ID, 100L, 1000L));
+        mod.setInstallationStatus(InstallationStatus.ERROR);
+
+        modsFacade.updateChangedMods();
+
+        assertThat(getUpdatedModIds()).containsExactly(1L);
+    }
+
+    @Test
+    void whenModIsBeingInstalled_thenItIsSkipped() {
+        WorkshopMod mod = createInstalledMod(1L, 100L, 1000L, new ModMetadata("Updating", ARMA3_APP_ID, 200L, 1000L));
+        mod.setInstallationStatus(InstallationStatus.INSTALLATION_IN_PROGRESS);
+        when(reconciliationService.findOutdatedModIds(anyCollection())).thenReturn(Set.of(1L));
+
+        modsFacade.updateChangedMods();
+
+        verify(installerService, never()).installOrUpdateMods(anyCollection(), any());
+        verify(modsService, never()).saveAllMods(any());
+    }
+
+    @Test
+    void whenModIsOutdatedAccordingToSteamCmdManifest_thenItIsUpdatedDespiteUnchangedMetadata() {
+        createInstalledMod(1L, 100L, 1000L, new ModMetadata("Behind on disk", ARMA3_APP_ID, 100L, 1000L));
+        createInstalledMod(2L, 100L, 1000L, new ModMetadata("Unchanged", ARMA3_APP_ID, 100L, 1000L));
+        when(reconciliationService.findOutdatedModIds(anyCollection())).thenReturn(Set.of(1L));
+
+        modsFacade.updateChangedMods();
+
+        assertThat(getUpdatedModIds()).containsExactly(1L);
+    }
+
+    @Test
+    void whenModIsNotFoundOnWorkshop_thenItIsSkipped() {
+        createInstalledMod(1L, 100L, 1000L, null);
+        createInstalledMod(2L, 100L, 1000L, new ModMetadata("Newer", ARMA3_APP_ID, 200L, 1000L));
+        when(reconciliationService.findOutdatedModIds(anyCollection())).thenReturn(Set.of(1L));
+
+        modsFacade.updateChangedMods();
+
+        assertThat(getUpdatedModIds()).containsExactly(2L);
+    }
+
+    private WorkshopMod createInstalledMod(long id, Long timeUpdated, Long fileSize, ModMetadata modMetadata) {
+        WorkshopMod mod = new WorkshopMod(id);
+        mod.setServerType(ServerType.ARMA3);
+        mod.setInstallationStatus(InstallationStatus.FINISHED);
+        mod.setWorkshopTimeUpdated(timeUpdated);
+        mod.setWorkshopFileSize(fileSize);
+        mods.put(id, mod);
+        if (modMetadata != null) {
+            metadata.put(id, modMetadata);
+        }
+        return mod;
+    }
+
+    private List<Long> getUpdatedModIds() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<WorkshopMod>> updatedMods = ArgumentCaptor.forClass(Collection.class);
+        verify(installerService).installOrUpdateMods(updatedMods.capture(), eq(SteamCmdJobPriority.BACKGROUND));
+        return updatedMods.getValue().stream()
+                .map(WorkshopMod::getId)
+                .toList();
+    }
+}
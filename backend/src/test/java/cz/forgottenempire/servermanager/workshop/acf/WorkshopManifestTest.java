@@ -0,0 +1,73 @@
+package cz.forgottenempire.servermanager.workshop.acf;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WorkshopManifestTest {
+
+    private static final String MANIFEST = """
+            "AppWorkshop"
+            {
+            	"appid"		"107410"
+            	"SizeOnDisk"		"5324"
+            	"NeedsUpdate"		"0"
+            	"TimeLastUpdated"		"1700000100"
+            	"WorkshopItemsInstalled"
+            	{
+            		"450814997"
+            		{
+            			"size"		"4424"
+            			"timeupdated"		"1592407244"
+            			"manifest"		"2917326356395404297"
+            		}
+            		"463939057"
+            		{
+            			"size"		"900"
+            			"timeupdated"		"1700000000"
+            			"manifest"		"6473542216362587893"
+            		}
+            	}
+            	"WorkshopItemDetails"
+            	{
+            		// the latest version is known only for items Steam checked for updates
+            		"450814997"
+            		{
+            			"manifest"		"2917326356395404297"
+            			"timeupdated"		"1592407244"
+            			"latest_timeupdated"		"1600000000"
+            			"latest_manifest"		"1234"
+            		}
+            	}
+            }
+            """;
+
+    @Test
+    void whenParsingManifest_thenInstalledItemsAreRead() {
+        WorkshopManifest manifest = WorkshopManifest.parse(MANIFEST);
+
+        assertThat(manifest.appId()).isEqualTo(107410L);
+        assertThat(manifest.installedItems()).containsOnlyKeys(450814997L, 463939057L);
+        assertThat(manifest.findItem(450814997L))
+                .contains(new InstalledWorkshopItem(450814997L, 4424, 1592407244L, 1600000000L));
+        assertThat(manifest.findItem(463939057L))
+                .contains(new InstalledWorkshopItem(463939057L, 900, 1700000000L, null));
+    }
+
+    @Test
+    void whenLatestVersionIsNewer_thenItemIsBehind() {
+        WorkshopManifest manifest = WorkshopManifest.parse(MANIFEST);
+
+        assertThat(manifest.findItem(450814997L).orElseThrow().isBehindLatest()).isTrue();
+        assertThat(manifest.findItem(463939057L).orElseThrow().isBehindLatest()).isFalse();
+    }
+
+    @Test
+    void whenManifestIsTruncated_thenParsingFails() {
+        String truncatedManifest = MANIFEST.substring(0, MANIFEST.indexOf("\"463939057\""));
+
+        assertThatThrownBy(() -> WorkshopManifest.parse(truncatedManifest))
+                .isInstanceOf(AcfParseException.class);
+    }
+}
@@ -0,0 +1,173 @@
+package cz.forgottenempire.servermanager.workshop.metadata;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class ModMetadataCacheTest {
+
+    private static final long TTL_MILLIS = 60_000;
+    private static final long NEGATIVE_TTL_MILLIS = 5_000;
+    private static final ModMetadata METADATA = new ModMetadata("Mod Name", "107410");
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void whenMetadataAreFresh_thenTheyAreNotLoadedAgain() {
+        ModMetadataCache cache = createCache(null);
+
+        cache.get(1L, this::loadFound);
+        now.addAndGet(TTL_MILLIS - 1);
+        Optional<ModMetadata> metadata = cache.get(1L, this::loadFound);
+
+        assertThat(metadata).contains(METADATA);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void whenMetadataExpire_thenTheyAreLoadedAgain() {
+        ModMetadataCache cache = createCache(null);
+
+        cache.get(1L, this::loadFound);
+        now.addAndGet(TTL_MILLIS);
+        cache.get(1L, this::loadFound);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void whenModIsNotFound_thenTheMissIsCachedOnlyBriefly() throws Exception {
+        ModMetadataCache cache = new ModMetadataCache(TTL_MILLIS, 100, 100, null, new SimpleMeterRegistry(), now::get);
+
+        Optional<ModMetadata> firstResult = cache.get(1L, this::loadMissing);
+        Optional<ModMetadata> secondResult = cache.get(1L, this::loadMissing);
+        Thread.sleep(200);
+        cache.get(1L, this::loadMissing);
+
+        assertThat(firstResult).isEmpty();
+        assertThat(secondResult).isEmpty();
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void whenReloadOfKnownModFails_thenLastKnownMetadataAreServed() {
+        ModMetadataCache cache = createCache(null);
+
+        cache.get(1L, this::loadFound);
+        now.addAndGet(TTL_MILLIS);
+        Optional<ModMetadata> staleMetadata = cache.get(1L, this::loadMissing);
+        now.addAndGet(NEGATIVE_TTL_MILLIS - 1);
+        cache.get(1L, this::loadMissing);
+
+        assertThat(staleMetadata).contains(METADATA);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void whenGettingManyMods_thenOnlyMissingOnesAreLoadedInOneCall() {
+        ModMetadataCache cache = createCache(null);
+        cache.get(1L, this::loadFound);
+
+        Map<Long, ModMetadata> metadata = cache.getAll(List.of(3L, 1L, 2L), modIds -> {
+            loads.incrementAndGet();
+            assertThat(modIds).containsExactly(3L, 2L);
+            return Map.of(2L, METADATA);
+        });
+
+        assertThat(metadata).containsOnlyKeys(1L, 2L);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void whenReloadingMods_thenFreshMetadataAreLoadedAgain() {
+        ModMetadataCache cache = createCache(null);
+        cache.get(1L, this::loadFound);
+        ModMetadata updatedMetadata = new ModMetadata("Mod Name", "107410", 1_700_000_000L, 1024L);
+
+        Map<Long, ModMetadata> metadata = cache.reloadAll(List.of(1L), modIds -> {
+            loads.incrementAndGet();
+            return Map.of(1L, updatedMetadata);
+        });
+
+        assertThat(metadata).containsExactly(entry(1L, updatedMetadata));
+        assertThat(cache.get(1L, this::loadFound)).contains(updatedMetadata);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void whenSameModIsRequestedConcurrently_thenItIsLoadedOnce() throws Exception {
+        ModMetadataCache cache = createCache(null);
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch finishLoad = new CountDownLatch(1);
+
+        CompletableFuture<Optional<ModMetadata>> firstRequest = CompletableFuture.supplyAsync(
+                () -> cache.get(1L, modId -> {
+                    loadStarted.countDown();
+                    awaitQuietly(finishLoad);
+                    return loadFound(modId);
+                }));
+        assertThat(loadStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Optional<ModMetadata>> secondRequest = CompletableFuture.supplyAsync(
+                () -> cache.get(1L, this::loadFound));
+        Thread.sleep(100);
+        finishLoad.countDown();
+
+        assertThat(firstRequest.get(5, TimeUnit.SECONDS)).contains(METADATA);
+        assertThat(secondRequest.get(5, TimeUnit.SECONDS)).contains(METADATA);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void whenCacheIsSaved_thenItIsLoadedAfterRestart() {
+        Path cacheFile = tempDir.resolve("metadata-cache.json");
+        ModMetadataCache cache = createCache(cacheFile);
+        cache.get(1L, this::loadFound);
+        cache.shutdown();
+
+        ModMetadataCache restartedCache = createCache(cacheFile);
+        Optional<ModMetadata> metadata = restartedCache.get(1L, this::loadFound);
+
+        assertThat(metadata).contains(METADATA);
+        assertThat(loads).hasValue(1);
+    }
+
+    private ModMetadataCache createCache(Path persistenceFile) {
+        return new ModMetadataCache(TTL_MILLIS, NEGATIVE_TTL_MILLIS, 100, persistenceFile, new SimpleMeterRegistry(),
+                now::get);
+    }
+
+    private Optional<ModMetadata> loadFound(long modId) {
+        loads.incrementAndGet();
+        return Optional.of(METADATA);
+    }
+
+    private Optional<ModMetadata> loadMissing(long modId) {
+        loads.incrementAndGet();
+        return Optional.empty();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package cz.forgottenempire.servermanager.workshop.metadata;
 
 import cz.forgottenempire.servermanager.common.Constants;
 import cz.forgottenempire.servermanager.common.exceptions.NotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -21,9 +22,14 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,6 +40,7 @@ class ModMetadataServiceTest {
     private static final long MOD_ID = 1L;
     private static final long UNLISTED_MOD_ID = 2L;
     private static final long NON_EXISTING_MOD_ID = 3L;
+    private static final long SLOW_RESPONSE_MILLIS = 500;
 
     @Mock(stubOnly = true)
     private RestTemplate restTemplate;
@@ -48,9 +55,13 @@ class ModMetadataServiceTest {
 
     @BeforeEach
     void setUp() {
-        WorkshopApiMetadataProvider workshopApiMetadataProvider = new WorkshopApiMetadataProvider(STEAM_API_KEY, restTemplate);
-        HtmlScraperMetadataProvider htmlScraperMetadataProvider = new HtmlScraperMetadataProvider(httpClient);
-        fileDetailsService = new ModMetadataService(workshopApiMetadataProvider, htmlScraperMetadataProvider);
+        WorkshopApiMetadataProvider workshopApiMetadataProvider =
+                new WorkshopApiMetadataProvider(STEAM_API_KEY, restTemplate, 1000);
+        HtmlScraperMetadataProvider htmlScraperMetadataProvider = new HtmlScraperMetadataProvider(httpClient, 1000, 5);
+        ModMetadataCache metadataCache = new ModMetadataCache(60000, 1000, 100, null, new SimpleMeterRegistry(),
+                System::currentTimeMillis);
+        fileDetailsService = new ModMetadataService(workshopApiMetadataProvider, htmlScraperMetadataProvider,
+                metadataCache);
     }
 
     @Test
@@ -64,7 +75,9 @@ class ModMetadataServiceTest {
                             "publishedfiledetails": [
                               {
                                 "title": "Mod Name",
-                                "consumer_app_id": "107410"
+                                "consumer_app_id": "107410",
+                                "file_size": "1048576",
+                                "time_updated": 1700000000
                               }
                             ]
                           }
@@ -75,6 +88,8 @@ class ModMetadataServiceTest {
 
         assertThat(metadata.name()).isEqualTo("Mod Name");
         assertThat(metadata.consumerAppId()).isEqualTo("107410");
+        assertThat(metadata.timeUpdated()).isEqualTo(1700000000L);
+        assertThat(metadata.fileSize()).isEqualTo(1048576L);
     }
 
     @Test
@@ -89,8 +104,8 @@ class ModMetadataServiceTest {
                           }
                         }
                         """);
-        when(httpClient.send(prepareHttpRequest(UNLISTED_MOD_ID), HttpResponse.BodyHandlers.ofString()))
-                .thenReturn(htmlResponse);
+        when(httpClient.sendAsync(prepareHttpRequest(UNLISTED_MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(CompletableFuture.completedFuture(htmlResponse));
         when(htmlResponse.body()).thenReturn("""
                 <html>
                     <head>
@@ -123,8 +138,8 @@ class ModMetadataServiceTest {
                           }
                         }
                         """);
-        when(httpClient.send(prepareHttpRequest(NON_EXISTING_MOD_ID), HttpResponse.BodyHandlers.ofString()))
-                .thenReturn(htmlResponse);
+        when(httpClient.sendAsync(prepareHttpRequest(NON_EXISTING_MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(CompletableFuture.completedFuture(htmlResponse));
         when(htmlResponse.body()).thenReturn("""
                 <html>
                     <head>
@@ -145,8 +160,8 @@ class ModMetadataServiceTest {
     void whenFetchingFromSteamApiFails_thenHtmlScraperIsUsedInstead() throws Exception {
         when(restTemplate.postForEntity(Constants.STEAM_API_URL, prepareRestRequest(MOD_ID), String.class))
                 .thenThrow(new RestClientException("REST call failed."));
-        when(httpClient.send(prepareHttpRequest(MOD_ID), HttpResponse.BodyHandlers.ofString()))
-                .thenReturn(htmlResponse);
+        when(httpClient.sendAsync(prepareHttpRequest(MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(CompletableFuture.completedFuture(htmlResponse));
         when(htmlResponse.body()).thenReturn("""
                 <html>
                     <head>
@@ -171,14 +186,114 @@ class ModMetadataServiceTest {
     void whenFetchingFromBothSteamApiAndWorkshopPageFails_thenNotFoundExceptionIsThrown() throws Exception {
         when(restTemplate.postForEntity(Constants.STEAM_API_URL, prepareRestRequest(MOD_ID), String.class))
                 .thenThrow(new RestClientException("REST call failed."));
-        when(httpClient.send(prepareHttpRequest(MOD_ID), HttpResponse.BodyHandlers.ofString()))
-                .thenThrow(new IOException("HTTP call failed."));
+        when(httpClient.sendAsync(prepareHttpRequest(MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("HTTP call failed.")));
 
         assertThatThrownBy(() -> fileDetailsService.fetchModMetadata(MOD_ID))
                 .isInstanceOf(NotFoundException.class)
                 .hasMessage("Mod ID " + MOD_ID + " not found.");
     }
 
+    @Test
+    void whenFetchingMetadataOfManyMods_thenApiIsCalledOnceAndOnlyUnresolvedModsAreScraped() throws Exception {
+        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
+        body.add("key", STEAM_API_KEY);
+        body.add("itemcount", "3");
+        body.add("publishedfileids[0]", String.valueOf(MOD_ID));
+        body.add("publishedfileids[1]", String.valueOf(UNLISTED_MOD_ID));
+        body.add("publishedfileids[2]", String.valueOf(NON_EXISTING_MOD_ID));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        when(restTemplate.postForEntity(Constants.STEAM_API_URL, new HttpEntity<>(body, headers), String.class))
+                .thenReturn(restResponse);
+        when(restResponse.getBody()).thenReturn(
+                """
+                        {
+                          "response": {
+                            "publishedfiledetails": [
+                              {
+                                "publishedfileid": "1",
+                                "result": 1,
+                                "title": "Mod Name",
+                                "consumer_app_id": 107410
+                              },
+                              {
+                                "publishedfileid": "2",
+                                "result": 9
+                              },
+                              {
+                                "publishedfileid": "3",
+                                "result": 9
+                              }
+                            ]
+                          }
+                        }
+                        """);
+        when(httpClient.sendAsync(prepareHttpRequest(UNLISTED_MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(CompletableFuture.completedFuture(htmlResponse));
+        when(htmlResponse.body()).thenReturn("""
+                <html>
+                    <body>
+                        <a data-appid="221100">
+                            <span>Store Page</span>
+                        </a>
+                        <div class="workshopItemTitle">Unlisted Mod Name</div>
+                    </body>
+                </html>
+                """);
+        when(httpClient.sendAsync(prepareHttpRequest(NON_EXISTING_MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("HTTP call failed.")));
+
+        Map<Long, ModMetadata> metadata = fileDetailsService.fetchModMetadata(
+                List.of(MOD_ID, UNLISTED_MOD_ID, NON_EXISTING_MOD_ID));
+
+        assertThat(metadata).containsOnly(
+                entry(MOD_ID, new ModMetadata("Mod Name", "107410")),
+                entry(UNLISTED_MOD_ID, new ModMetadata("Unlisted Mod Name", "221100"))
+        );
+    }
+
+    @Test
+    void whenManyModsAreScraped_thenWorkshopPagesAreFetchedConcurrently() {
+        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
+        body.add("key", STEAM_API_KEY);
+        body.add("itemcount", "2");
+        body.add("publishedfileids[0]", String.valueOf(MOD_ID));
+        body.add("publishedfileids[1]", String.valueOf(UNLISTED_MOD_ID));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        when(restTemplate.postForEntity(Constants.STEAM_API_URL, new HttpEntity<>(body, headers), String.class))
+                .thenThrow(new RestClientException("REST call failed."));
+        when(httpClient.sendAsync(prepareHttpRequest(MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(respondSlowly(htmlResponse));
+        when(httpClient.sendAsync(prepareHttpRequest(UNLISTED_MOD_ID), HttpResponse.BodyHandlers.ofString()))
+                .thenReturn(respondSlowly(htmlResponse));
+        when(htmlResponse.body()).thenReturn("""
+                <html>
+                    <body>
+                        <a data-appid="107410">
+                            <span>Store Page</span>
+                        </a>
+                        <div class="workshopItemTitle">Mod Name</div>
+                    </body>
+                </html>
+                """);
+
+        long startedAt = System.nanoTime();
+        Map<Long, ModMetadata> metadata = fileDetailsService.fetchModMetadata(List.of(MOD_ID, UNLISTED_MOD_ID));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertThat(metadata).containsOnlyKeys(MOD_ID, UNLISTED_MOD_ID);
+        assertThat(elapsedMillis)
+                .as("The pages should be fetched at the same time")
+                .isLessThan(2 * SLOW_RESPONSE_MILLIS);
+    }
+
+    private static CompletableFuture<HttpResponse<String>> respondSlowly(HttpResponse<String> response) {
+        return CompletableFuture.supplyAsync(() -> response,
+                CompletableFuture.delayedExecutor(SLOW_RESPONSE_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
     private static HttpEntity<MultiValueMap<String, String>> prepareRestRequest(long modId) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -0,0 +1,43 @@
+package cz.forgottenempire.servermanager.workshop.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void whenBurstFitsIntoBucket_thenRequestsAreNotDelayed() {
+        TokenBucket bucket = new TokenBucket(2, now::get);
+
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isZero();
+    }
+
+    @Test
+    void whenBucketIsEmpty_thenRequestsAreSpacedEvenly() {
+        TokenBucket bucket = new TokenBucket(2, now::get);
+        bucket.reserve();
+        bucket.reserve();
+
+        assertThat(bucket.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(bucket.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    void whenTimePasses_thenBucketIsRefilledUpToItsCapacity() {
+        TokenBucket bucket = new TokenBucket(2, now::get);
+        bucket.reserve();
+        bucket.reserve();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isZero();
+        assertThat(bucket.reserve()).isPositive();
+    }
+}
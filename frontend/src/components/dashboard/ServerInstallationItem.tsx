@@ -39,12 +39,13 @@ const isInstalling = (installation: ServerInstallationDto) => {
 type ServerInstallationItemProps = {
     installation: ServerInstallationDto,
     onUpdateClicked: (serverType: ServerType) => void,
+    onCancelClicked: (serverType: ServerType) => void,
     onBranchChanged: (e: SelectChangeEvent, serverType: ServerType) => Promise<void>,
     steamCmdItemInfo: SteamCmdItemInfoDto | undefined
 }
 
 const ServerInstallationItem = (props: ServerInstallationItemProps) => {
-    const {installation, steamCmdItemInfo, onUpdateClicked, onBranchChanged} = props;
+    const {installation, steamCmdItemInfo, onUpdateClicked, onCancelClicked, onBranchChanged} = props;
 
     const hasMultipleAvailableBranches = () => installation.availableBranches.length > 1;
 
@@ -75,11 +76,19 @@ const ServerInstallationItem = (props: ServerInstallationItemProps) => {
                 displayText = steamCmdItemInfo.status;
             }
 
-            return <Button fullWidth variant="contained" disabled>
-                {displayText.toUpperCase()}&nbsp;
-                {steamCmdItemInfo.status !== SteamCmdStatus.FINISHED && steamCmdItemInfo.status !== SteamCmdStatus.IN_QUEUE &&
-                    `(${humanFileSize(steamCmdItemInfo.bytesFinished)} / ${humanFileSize(steamCmdItemInfo.bytesTotal)})`}
-            </Button>
+            return <Stack direction="row" spacing={1} width="100%">
+                <Button fullWidth variant="contained" disabled>
+                    {displayText.toUpperCase()}&nbsp;
+                    {steamCmdItemInfo.status !== SteamCmdStatus.FINISHED && steamCmdItemInfo.status !== SteamCmdStatus.IN_QUEUE &&
+                        `(${humanFileSize(steamCmdItemInfo.bytesFinished)} / ${humanFileSize(steamCmdItemInfo.bytesTotal)})`}
+                </Button>
+                {steamCmdItemInfo.status !== SteamCmdStatus.FINISHED &&
+                    <Button variant="outlined" color="error"
+                            onClick={() => onCancelClicked(ServerType[installation.type])}>
+                        Cancel
+                    </Button>
+                }
+            </Stack>
         }
 
         return <Button fullWidth variant="contained"
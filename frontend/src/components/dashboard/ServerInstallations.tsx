@@ -6,7 +6,7 @@ import ServerInstallationItem from "./ServerInstallationItem";
 import {ServerInstallationDto} from "../../dtos/ServerInstallationDto.ts";
 import {ServerType} from "../../dtos/ServerDto.ts";
 import {SteamCmdItemInfoDto} from "../../dtos/SteamCmdItemInfoDto.ts";
-import {getItemInfo} from "../../services/steamCmdService.ts";
+import {cancelItem, subscribeToItemInfo} from "../../services/steamCmdService.ts";
 
 type WorkshopItemInfoResponse = {
     [id: number]: SteamCmdItemInfoDto
@@ -18,12 +18,17 @@ const ServerInstallations = () => {
 
     useEffect(() => {
         void fetchServerInstallations();
-        void fetchSteamCmdItemInfo();
+    }, []);
+
+    useEffect(() => {
+        return subscribeToItemInfo(
+            itemInfos => setSteamCmdItemInfo(itemInfos),
+            itemInfo => setSteamCmdItemInfo(prevState => ({...prevState, [itemInfo.itemId]: itemInfo}))
+        );
     }, []);
 
     useInterval(() => {
         void fetchServerInstallations();
-        void fetchSteamCmdItemInfo();
     }, 5000);
 
     const fetchServerInstallations = async () => {
@@ -33,11 +38,6 @@ const ServerInstallations = () => {
         setServerInstallations(installations);
     };
 
-    const fetchSteamCmdItemInfo = async () => {
-        const {data} = await getItemInfo();
-        setSteamCmdItemInfo(data);
-    };
-
     const handleUpdateClicked = async (serverType: ServerType) => {
         await installServer(serverType);
 
@@ -60,6 +60,11 @@ const ServerInstallations = () => {
         });
     };
 
+    const handleCancelClicked = async (serverType: ServerType) => {
+        await cancelItem(serverTypeToId(serverType));
+        await fetchServerInstallations();
+    };
+
     const handleBranchChanged = async (e: SelectChangeEvent, serverType: ServerType) => {
         const selectedBranch = e.target.value;
 
@@ -99,6 +104,7 @@ const ServerInstallations = () => {
                                                 steamCmdItemInfo={steamCmdItemInfo[serverTypeToId(installation.type)]}
                                                 onBranchChanged={handleBranchChanged}
                                                 onUpdateClicked={handleUpdateClicked}
+                                                onCancelClicked={handleCancelClicked}
                         />
                     </Grid>
                 ))}
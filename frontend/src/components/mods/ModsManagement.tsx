@@ -8,7 +8,7 @@ import {toast} from "material-react-toastify";
 import {createModPreset} from "../../services/modPresetsService";
 import {ModDto} from "../../dtos/ModDto.ts";
 import {SteamCmdItemInfoDto} from "../../dtos/SteamCmdItemInfoDto.ts";
-import {getItemInfo} from "../../services/steamCmdService.ts";
+import {cancelItem, subscribeToItemInfo} from "../../services/steamCmdService.ts";
 
 type WorkshopItemInfoResponse = {
     [id: number]: SteamCmdItemInfoDto
@@ -24,12 +24,17 @@ export default function ModsManagement() {
 
     useEffect(() => {
         void fetchMods();
-        void fetchSteamCmdItemInfo();
+    }, []);
+
+    useEffect(() => {
+        return subscribeToItemInfo(
+            itemInfos => setSteamCmdItemInfo(itemInfos),
+            itemInfo => setSteamCmdItemInfo(prevState => ({...prevState, [itemInfo.itemId]: itemInfo}))
+        );
     }, []);
 
     useInterval(() => {
         void fetchMods();
-        void fetchSteamCmdItemInfo();
     }, 5000);
 
     const fetchMods = async () => {
@@ -44,11 +49,6 @@ export default function ModsManagement() {
         setInitialLoading(false);
     };
 
-    const fetchSteamCmdItemInfo = async () => {
-        const {data} = await getItemInfo();
-        setSteamCmdItemInfo(data);
-    };
-
     const handleInstall = async (modId: number) => {
         const {data: mod} = await installMod(modId);
         setMods(prevState => {
@@ -81,6 +81,11 @@ export default function ModsManagement() {
         await updateMods(selectedModsIds.join(","));
     };
 
+    const handleCancel = async (modId: number) => {
+        await cancelItem(modId);
+        await fetchMods();
+    };
+
     const handleUninstall = async () => {
         setMods(prevState => {
             return prevState.filter(mod => selectedModsIds.indexOf(mod.id) === -1);
@@ -188,7 +193,7 @@ export default function ModsManagement() {
                    dayZModsCount={dayZModsCount} mixedModsSelected={mixedModsSelected}
                    steamCmdItemInfo={steamCmdItemInfo}
                    onRowClick={handleRowClick} onSelectAllRowsClick={handleSelectAllRowsClick}
-                   onModUpdateClicked={handleModUpdate}
+                   onModUpdateClicked={handleModUpdate} onModCancelClicked={handleCancel}
                    onModUninstallClicked={handleUninstall} onModInstallClicked={handleInstall}
                    onFilterChange={handleFilterChange} onCreatePresetClicked={handlePresedDialogOpen}
                    onServerOnlyChanged={handleServerOnlyChanged}
@@ -4,7 +4,7 @@ import Paper from '@mui/material/Paper';
 import ModsTableToolbar from "./ModsTableToolbar";
 import {ModDto} from "../../dtos/ModDto.ts";
 import {EnhancedTable, EnhancedTableHeadCell, EnhancedTableRow} from "../../UI/EnhancedTable/EnhancedTable.tsx";
-import {Button, CircularProgress, Stack, Switch, TextField} from "@mui/material";
+import {Button, CircularProgress, IconButton, Stack, Switch, TextField} from "@mui/material";
 import Tooltip from "@mui/material/Tooltip";
 import workshopErrorStatusMap from "../../util/workshopErrorStatusMap.ts";
 import {ErrorStatus} from "../../dtos/Status.ts";
@@ -12,6 +12,7 @@ import ReportProblemIcon from "@mui/icons-material/ReportProblem";
 import CheckIcon from "@mui/icons-material/Check";
 import HourglassBottomIcon from '@mui/icons-material/HourglassBottom';
 import DownloadDoneIcon from '@mui/icons-material/DownloadDone';
+import CancelIcon from '@mui/icons-material/Cancel';
 import {ServerType} from "../../dtos/ServerDto.ts";
 import SERVER_NAMES from "../../util/serverNames.ts";
 import {humanFileSize} from "../../util/util.ts";
@@ -63,6 +64,7 @@ type ModsTableProps = {
     steamCmdItemInfo: { [id: number]: SteamCmdItemInfoDto }
     onModInstallClicked: (modId: number) => void,
     onModUpdateClicked: () => void,
+    onModCancelClicked: (modId: number) => void,
     onCreatePresetClicked: () => void,
     onModUninstallClicked: () => void,
     onFilterChange: (_: any, newValue: string) => void,
@@ -88,14 +90,24 @@ const ModsTable = (props: ModsTableProps) => {
         const modItemInfo = props.steamCmdItemInfo[mod.id];
 
         if (status === "INSTALLATION_IN_PROGRESS") {
-            if (modItemInfo?.status === SteamCmdStatus.IN_QUEUE) {
-                return <Tooltip title="In queue"><HourglassBottomIcon/></Tooltip>;
-            }
             if (modItemInfo?.status === SteamCmdStatus.FINISHED) {
                 return <Tooltip title="Waiting for installation"><DownloadDoneIcon/></Tooltip>;
             }
 
-            return <CircularProgress size={20}/>;
+            return <Stack direction="row" alignItems="center" spacing={1}>
+                {modItemInfo?.status === SteamCmdStatus.IN_QUEUE ?
+                    <Tooltip title="In queue"><HourglassBottomIcon/></Tooltip>
+                    : <CircularProgress size={20}/>
+                }
+                <Tooltip title="Cancel">
+                    <IconButton size="small" onClick={(e) => {
+                        e.stopPropagation();
+                        props.onModCancelClicked(mod.id);
+                    }}>
+                        <CancelIcon fontSize="small"/>
+                    </IconButton>
+                </Tooltip>
+            </Stack>;
         }
         if (status === "ERROR") {
             return <Tooltip
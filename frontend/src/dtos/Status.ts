@@ -6,7 +6,9 @@ export enum ErrorStatus {
     NO_SUBSCRIPTION,
     RATE_LIMIT,
     GENERIC,
-    INTERRUPTED
+    INTERRUPTED,
+    NO_SPACE,
+    CANCELLED
 }
 
 export enum InstallationStatus {
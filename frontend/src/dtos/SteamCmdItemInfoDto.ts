@@ -12,5 +12,6 @@ export enum SteamCmdStatus {
     VERIFYING = "VERIFYING",
     DOWNLOADING = "DOWNLOADING",
     PREALLOCATING = "PREALLOCATING",
-    COMMITTING = "COMMITTING"
+    COMMITTING = "COMMITTING",
+    CANCELLED = "CANCELLED"
 }
\ No newline at end of file
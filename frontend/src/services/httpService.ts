@@ -21,11 +21,16 @@ function setJwt(jwt: string) {
     axios.defaults.headers.common['Authorization'] = jwt;
 }
 
+function getJwt(): string | undefined {
+    return axios.defaults.headers.common['Authorization']?.toString();
+}
+
 export default {
     get: axios.get,
     post: axios.post,
     put: axios.put,
     delete: axios.delete,
     patch: axios.patch,
-    setJwt
+    setJwt,
+    getJwt
 };
@@ -23,3 +23,27 @@ export function uninstallMods(modIdsList: string) {
 export function setModServerOnly(modId: number, isServerOnly: boolean) {
     return http.patch(apiEndpoint + "/" + modId, {serverOnly: isServerOnly});
 }
+
+export function reconcileMods() {
+    return http.post(apiEndpoint + "/reconcile");
+}
+
+export function reconcileBiKeys() {
+    return http.post(apiEndpoint + "/reconcile-keys");
+}
+
+export function verifyMods(updateDivergent: boolean) {
+    return http.post(apiEndpoint + "/verify?updateDivergent=" + updateDivergent);
+}
+
+export function getLastIntegrityReports() {
+    return http.get(apiEndpoint + "/verify");
+}
+
+export function deduplicateModFiles() {
+    return http.post(apiEndpoint + "/deduplicate");
+}
+
+export function getLastDeduplicationReport() {
+    return http.get(apiEndpoint + "/deduplicate");
+}
@@ -1,10 +1,84 @@
 import http from "./httpService";
 import config from "../config";
+import {SteamCmdItemInfoDto} from "../dtos/SteamCmdItemInfoDto.ts";
 
 const apiEndpoint = config.apiUrl + "/steamcmd";
+const RECONNECT_DELAY_MS = 5000;
 
-export function getItemInfo() {
-    return http.get(apiEndpoint);
+type SteamCmdItemInfoMap = {
+    [id: number]: SteamCmdItemInfoDto
+}
+
+/**
+ * Subscribes to the stream of SteamCMD progress. A snapshot of all items is received after (re)connecting,
+ * followed by changes of single items. The stream is read with fetch, as EventSource can't send the auth header.
+ *
+ * @return function closing the subscription
+ */
+export function subscribeToItemInfo(onSnapshot: (itemInfos: SteamCmdItemInfoMap) => void,
+                                    onChange: (itemInfo: SteamCmdItemInfoDto) => void): () => void {
+    const abortController = new AbortController();
+
+    const handleEvent = (name: string, data: string) => {
+        if (name === "snapshot") {
+            onSnapshot(JSON.parse(data));
+        } else if (name === "progress") {
+            onChange(JSON.parse(data));
+        }
+    };
+
+    const connect = async () => {
+        while (!abortController.signal.aborted) {
+            try {
+                const response = await fetch(apiEndpoint + "/progress", {
+                    headers: {Authorization: http.getJwt() ?? ""},
+                    signal: abortController.signal
+                });
+                if (response.ok && response.body) {
+                    await readEvents(response.body, handleEvent);
+                }
+            } catch (e) {
+                if (abortController.signal.aborted) {
+                    return;
+                }
+            }
+            await new Promise(resolve => setTimeout(resolve, RECONNECT_DELAY_MS));
+        }
+    };
+
+    void connect();
+    return () => abortController.abort();
+}
+
+async function readEvents(body: ReadableStream<Uint8Array>, onEvent: (name: string, data: string) => void) {
+    const reader = body.pipeThrough(new TextDecoderStream()).getReader();
+    let buffer = "";
+    for (;;) {
+        const {value, done} = await reader.read();
+        if (done) {
+            return;
+        }
+
+        buffer += value;
+        let separatorIndex;
+        while ((separatorIndex = buffer.indexOf("\n\n")) >= 0) {
+            const rawEvent = buffer.substring(0, separatorIndex);
+            buffer = buffer.substring(separatorIndex + 2);
+
+            let name = "message";
+            const dataLines = [];
+            for (const line of rawEvent.split("\n")) {
+                if (line.startsWith("event:")) {
+                    name = line.substring("event:".length).trim();
+                } else if (line.startsWith("data:")) {
+                    dataLines.push(line.substring("data:".length));
+                }
+            }
+            if (dataLines.length > 0) {
+                onEvent(name, dataLines.join("\n"));
+            }
+        }
+    }
 }
 
 export function getLogs() {
@@ -30,4 +104,11 @@ export function downloadLogFile() {
             link.click();
             document.body.removeChild(link);
         })
-}
\ No newline at end of file
+}
+
+/**
+ * Cancels a single queued or running item (mod or server), the rest of its job goes on.
+ */
+export function cancelItem(itemId: number) {
+    return http.delete(apiEndpoint + "/items/" + itemId);
+}
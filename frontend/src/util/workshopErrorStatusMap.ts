@@ -8,7 +8,9 @@ const workshopErrorStatusMap = new Map<ErrorStatus, String>([
     [ErrorStatus.TIMEOUT, "The request timed out, please retry.",],
     [ErrorStatus.WRONG_AUTH, "Incorrect Steam authorization. Please check username, password and Steam Guard token.",],
     [ErrorStatus.RATE_LIMIT, "Too many incorrect login attempts. Please try again later (no sooner than 30 minutes after last attempt)."],
-    [ErrorStatus.INTERRUPTED, "The installation was interrupted. Please try again."]
+    [ErrorStatus.INTERRUPTED, "The installation was interrupted. Please try again."],
+    [ErrorStatus.NO_SPACE, "Not enough disk space for the installation. Free up some space and try again."],
+    [ErrorStatus.CANCELLED, "The installation was cancelled."]
 ]);
 
 export default workshopErrorStatusMap;
\ No newline at end of file
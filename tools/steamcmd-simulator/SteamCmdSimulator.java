@@ -0,0 +1,426 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Stand-in for the SteamCMD executable, used for load testing the SteamCMD pipeline without Steam and real
+ * credentials. Understands the commands the manager sends (given as '+command' arguments or, without '+quit', typed
+ * into the 'Steam>' prompt), prints the same lines as SteamCMD and writes synthetic mod trees to the install dir.
+ * <p>
+ * Configured by a properties file (path in STEAMCMD_SIMULATOR_CONFIG, or 'simulator.properties' in the working
+ * directory), every property can be overridden by an environment variable, e.g. 'bytes-per-second' by
+ * STEAMCMD_SIMULATOR_BYTES_PER_SECOND. See README.md for the list of properties.
+ * <p>
+ * Single source file without dependencies, started by the 'steamcmd' script next to it.
+ */
+public class SteamCmdSimulator {
+
+    private static final String PROMPT = "Steam>";
+    private static final int EXIT_CODE_FAILED_COMMAND = 5;
+    // the exit code of SteamCMD killed by its own watchdog, the manager retries the unfinished items
+    private static final int EXIT_CODE_TIMEOUT = 134;
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    private final Config config;
+    private final Random random;
+    private final PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+    private Path installDir = Path.of("").toAbsolutePath();
+    private boolean loggedIn;
+    private boolean shutdownOnFailedCommand = true;
+
+    private SteamCmdSimulator(Config config, Random random) {
+        this.config = config;
+        this.random = random;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.load();
+        long seed = config.getLong("seed", System.nanoTime()) ^ String.join(" ", args).hashCode();
+        SteamCmdSimulator simulator = new SteamCmdSimulator(config, new Random(seed));
+
+        String transcript = config.getString("transcript", "");
+        if (!transcript.isEmpty()) {
+            simulator.replay(Path.of(transcript));
+            System.exit(config.getInt("transcript-exit-code", 0));
+        }
+        System.exit(simulator.run(parseArguments(args)));
+    }
+
+    private int run(List<List<String>> commands) throws IOException, InterruptedException {
+        printBanner();
+        for (List<String> command : commands) {
+            Integer exitCode = execute(command);
+            if (exitCode != null) {
+                return exitCode;
+            }
+        }
+
+        // without '+quit' SteamCMD stays open and reads further commands from its standard input
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        while (true) {
+            out.print(System.lineSeparator() + PROMPT);
+            out.flush();
+            String line = input.readLine();
+            if (line == null) {
+                return 0;
+            }
+            List<String> command = tokenize(line);
+            if (command.isEmpty()) {
+                continue;
+            }
+            Integer exitCode = execute(command);
+            if (exitCode != null) {
+                return exitCode;
+            }
+        }
+    }
+
+    /**
+     * @return exit code if SteamCMD should exit after the command, null otherwise
+     */
+    private Integer execute(List<String> command) throws IOException, InterruptedException {
+        String name = command.get(0);
+        List<String> arguments = command.subList(1, command.size());
+        boolean succeeded;
+        if (name.startsWith("@")) {
+            succeeded = setOption(name.substring(1), arguments);
+        } else {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "quit", "exit" -> {
+                    return 0;
+                }
+                case "force_install_dir" -> succeeded = forceInstallDir(arguments);
+                case "login" -> succeeded = login(arguments);
+                case "workshop_download_item" -> succeeded = downloadWorkshopItem(arguments);
+                case "app_update" -> succeeded = updateApp(arguments);
+                default -> {
+                    println("Command not found: " + name);
+                    succeeded = false;
+                }
+            }
+        }
+
+        if (!succeeded && shutdownOnFailedCommand) {
+            return EXIT_CODE_FAILED_COMMAND;
+        }
+        return null;
+    }
+
+    private boolean setOption(String option, List<String> arguments) {
+        String value = arguments.isEmpty() ? "" : arguments.get(0);
+        println("\"@" + option + "\" = \"" + value + "\"");
+        if (option.equalsIgnoreCase("ShutdownOnFailedCommand")) {
+            shutdownOnFailedCommand = value.equals("1");
+        }
+        return true;
+    }
+
+    private boolean forceInstallDir(List<String> arguments) {
+        if (arguments.isEmpty()) {
+            println("Usage: force_install_dir <path>");
+            return false;
+        }
+        installDir = Path.of(arguments.get(0)).toAbsolutePath();
+        return true;
+    }
+
+    private boolean login(List<String> arguments) throws InterruptedException {
+        if (arguments.isEmpty()) {
+            println("Usage: login <username> [<password>] [<Steam guard code>]");
+            return false;
+        }
+        if (arguments.get(0).equals("anonymous")) {
+            sleep(config.getLong("login-delay-ms", 500));
+            println("Connecting anonymously to Steam Public...OK");
+            println("Waiting for client config...OK");
+            println("Waiting for user info...OK");
+            loggedIn = true;
+            return true;
+        }
+
+        sleep(config.getLong("login-delay-ms", 500));
+        String loginLine = "Logging in user '" + arguments.get(0) + "' to Steam Public...";
+        String loginError = config.getString("login-error", "none");
+        switch (loginError) {
+            case "none" -> {
+                println(loginLine + "OK");
+                println("Waiting for client config...OK");
+                println("Waiting for user info...OK");
+                loggedIn = true;
+                return true;
+            }
+            case "invalid-password" -> println(loginLine + "FAILED (Invalid Password)");
+            case "two-factor" -> println(loginLine + "FAILED (Two-factor code mismatch)");
+            case "rate-limit" -> println(loginLine + "FAILED (Rate Limit Exceeded)");
+            default -> println(loginLine + "FAILED (" + loginError + ")");
+        }
+        return false;
+    }
+
+    private boolean downloadWorkshopItem(List<String> arguments) throws IOException, InterruptedException {
+        if (arguments.size() < 2) {
+            println("Usage: workshop_download_item <appid> <itemid> [validate]");
+            return false;
+        }
+        if (!loggedIn) {
+            println("ERROR! Not logged on.");
+            return false;
+        }
+
+        long appId = Long.parseLong(arguments.get(0));
+        long itemId = Long.parseLong(arguments.get(1));
+        long size = getItemSize();
+        println("Downloading item " + itemId + " ...");
+
+        if (random.nextDouble() < config.getDouble("timeout-rate", 0)) {
+            simulateTransfer(size / 2);
+            println("Timeout downloading item " + itemId);
+            out.flush();
+            System.exit(EXIT_CODE_TIMEOUT);
+        }
+        if (random.nextDouble() < config.getDouble("rate-limit-rate", 0)) {
+            println("ERROR! Download item " + itemId + " failed (Rate Limit Exceeded).");
+            return false;
+        }
+        if (random.nextDouble() < config.getDouble("failure-rate", 0)) {
+            simulateTransfer(size / 2);
+            println("ERROR! Download item " + itemId + " failed (Failure).");
+            return false;
+        }
+
+        Path itemDir = installDir.resolve(Path.of("steamapps", "workshop", "content",
+                String.valueOf(appId), String.valueOf(itemId)));
+        printNoise();
+        simulateTransfer(size);
+        writeModTree(itemDir, itemId, size);
+        println("Success. Downloaded item " + itemId + " to \"" + itemDir + "\" (" + size + " bytes) ");
+        return true;
+    }
+
+    private boolean updateApp(List<String> arguments) throws IOException, InterruptedException {
+        if (arguments.isEmpty()) {
+            println("Usage: app_update <appid> [-beta <betaname>] [validate]");
+            return false;
+        }
+        if (!loggedIn) {
+            println("ERROR! Not logged on.");
+            return false;
+        }
+
+        String appId = arguments.get(0);
+        long size = config.getLong("app-size-bytes", 1L << 30);
+        reportUpdateState("0x61", "downloading", size);
+        reportUpdateState("0x81", "verifying install", size);
+        writeSparseFile(installDir.resolve("server_" + appId + ".bin"), appId, size);
+        println("Success! App '" + appId + "' fully installed.");
+        return true;
+    }
+
+    private void reportUpdateState(String code, String state, long size) throws InterruptedException {
+        long bytesPerSecond = config.getLong("bytes-per-second", 100L << 20);
+        long bytesPerUpdate = bytesPerSecond > 0 ? Math.max(1, bytesPerSecond * PROGRESS_INTERVAL_MILLIS / 1000) : size;
+        for (long done = 0; done < size; done = Math.min(size, done + bytesPerUpdate)) {
+            println(String.format(Locale.ROOT, " Update state (%s) %s, progress: %.2f (%d / %d)",
+                    code, state, done * 100.0 / size, done, size));
+            simulateTransfer(Math.min(bytesPerUpdate, size - done));
+        }
+    }
+
+    /**
+     * Prints the harmless error lines real SteamCMD prints while downloading, they must not fail the download.
+     */
+    private void printNoise() {
+        int noiseLines = random.nextInt(config.getInt("noise-lines", 4) + 1);
+        for (int line = 0; line < noiseLines; line++) {
+            println("KeyValues Error: RecursiveLoadFromBuffer:  got EOF instead of keyname");
+        }
+    }
+
+    private long getItemSize() {
+        long size = config.getLong("item-size-bytes", 20L << 20);
+        double jitter = config.getDouble("item-size-jitter", 0.5);
+        return Math.max(1, Math.round(size * (1 + jitter * (2 * random.nextDouble() - 1))));
+    }
+
+    private void simulateTransfer(long bytes) throws InterruptedException {
+        long bytesPerSecond = config.getLong("bytes-per-second", 100L << 20);
+        if (bytesPerSecond > 0) {
+            sleep(bytes * 1000 / bytesPerSecond);
+        }
+    }
+
+    /**
+     * Writes a mod the way it's downloaded from the workshop, including the mixed case names the manager has to
+     * convert to lowercase. The addons are sparse files, so even huge mods take almost no disk space.
+     */
+    private void writeModTree(Path itemDir, long itemId, long size) throws IOException {
+        deleteRecursively(itemDir);
+        String prefix = "SimMod_" + itemId;
+        Path addonsDir = Files.createDirectories(itemDir.resolve("Addons"));
+        Path keysDir = Files.createDirectories(itemDir.resolve("Keys"));
+
+        int addonCount = Math.max(1, config.getInt("item-files", 8));
+        for (int addon = 0; addon < addonCount; addon++) {
+            String addonName = prefix + "_" + addon + ".pbo";
+            long addonSize = size / addonCount + (addon == 0 ? size % addonCount : 0);
+            writeSparseFile(addonsDir.resolve(addonName), itemId + "/" + addon, addonSize);
+            Files.writeString(addonsDir.resolve(addonName + "." + prefix + ".bisign"), "signature " + addonName);
+        }
+        Files.writeString(keysDir.resolve(prefix + ".bikey"), "bikey " + prefix);
+        Files.writeString(itemDir.resolve("meta.cpp"),
+                "protocol = 1;\npublishedid = " + itemId + ";\nname = \"Simulated mod " + itemId + "\";\n");
+        Files.writeString(itemDir.resolve("Mod.cpp"), "name = \"Simulated mod " + itemId + "\";\n");
+    }
+
+    private static void writeSparseFile(Path file, String content, long size) throws IOException {
+        byte[] header = content.getBytes(StandardCharsets.UTF_8);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(0);
+            raf.write(header, 0, (int) Math.min(header.length, size));
+            raf.setLength(size);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private void replay(Path transcript) throws IOException, InterruptedException {
+        long lineDelayMillis = config.getLong("transcript-line-delay-ms", 0);
+        try (BufferedReader reader = Files.newBufferedReader(transcript, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                println(line);
+                sleep(lineDelayMillis);
+            }
+        }
+    }
+
+    private void printBanner() throws InterruptedException {
+        println("Redirecting stderr to '" + Path.of("logs", "stderr.txt").toAbsolutePath() + "'");
+        println("[  0%] Checking for available updates...");
+        println("[----] Verifying installation...");
+        println("Steam Console Client (c) Valve Corporation - version 1716584667");
+        println("-- type 'quit' to exit --");
+        sleep(config.getLong("startup-delay-ms", 1000));
+        println("Loading Steam API...dlmopen steamservice.so failed: steamservice.so: cannot open shared object file: "
+                + "No such file or directory");
+        println("OK");
+    }
+
+    private void println(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    /**
+     * Groups the arguments into commands. A command starts with '+', its arguments are either in the same argument
+     * (e.g. '+login user password') or follow as separate ones (e.g. '+force_install_dir' '/path with spaces').
+     */
+    static List<List<String>> parseArguments(String[] args) {
+        List<List<String>> commands = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("+")) {
+                commands.add(new ArrayList<>(tokenize(arg.substring(1))));
+            } else if (!commands.isEmpty()) {
+                commands.get(commands.size() - 1).add(arg);
+            }
+        }
+        commands.removeIf(List::isEmpty);
+        return commands;
+    }
+
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (char character : line.trim().toCharArray()) {
+            if (character == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(character) && !quoted) {
+                if (!token.isEmpty()) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                token.append(character);
+            }
+        }
+        if (!token.isEmpty()) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static class Config {
+
+        private static final String ENVIRONMENT_PREFIX = "STEAMCMD_SIMULATOR_";
+
+        private final Properties properties;
+
+        private Config(Properties properties) {
+            this.properties = properties;
+        }
+
+        static Config load() throws IOException {
+            Properties properties = new Properties();
+            String configPath = System.getenv(ENVIRONMENT_PREFIX + "CONFIG");
+            Path configFile = Path.of(configPath != null ? configPath : "simulator.properties");
+            if (Files.isRegularFile(configFile)) {
+                try (InputStream input = Files.newInputStream(configFile)) {
+                    properties.load(input);
+                }
+            }
+            return new Config(properties);
+        }
+
+        String getString(String key, String defaultValue) {
+            String environmentValue = System.getenv(
+                    ENVIRONMENT_PREFIX + key.toUpperCase(Locale.ROOT).replace('-', '_'));
+            if (environmentValue != null) {
+                return environmentValue.trim();
+            }
+            return properties.getProperty(key, defaultValue).trim();
+        }
+
+        long getLong(String key, long defaultValue) {
+            String value = getString(key, "");
+            return value.isEmpty() ? defaultValue : Long.parseLong(value);
+        }
+
+        int getInt(String key, int defaultValue) {
+            return (int) getLong(key, defaultValue);
+        }
+
+        double getDouble(String key, double defaultValue) {
+            String value = getString(key, "");
+            return value.isEmpty() ? defaultValue : Double.parseDouble(value);
+        }
+    }
+}